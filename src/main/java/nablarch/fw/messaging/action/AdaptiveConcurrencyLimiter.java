@@ -0,0 +1,227 @@
+package nablarch.fw.messaging.action;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.core.util.annotation.Published;
+
+/**
+ * 受信電文の登録処理の処理時間に応じて、同時に処理する電文数を増減させるクラス。
+ * <p/>
+ * AIMD(Additive Increase / Multiplicative Decrease)方式で同時処理数の上限値を制御する。
+ * <ul>
+ *   <li>処理時間が{@link #setLatencyThreshold(long)}以下の場合、上限値を少しずつ(上限値分の処理が完了する毎に1)増やす。</li>
+ *   <li>処理時間が{@link #setLatencyThreshold(long)}を超えた場合やエラーが発生した場合、
+ *       上限値に{@link #setBackoffRatio(double)}を乗じた値まで減らす。
+ *       連続して減らし過ぎることを防ぐため、減少は{@link #setBackoffInterval(long)}に1回までとする。</li>
+ * </ul>
+ * 処理時間の計測は{@link AsyncMessageReceiveAction}が行い、同時処理数の制御は
+ * {@link nablarch.fw.messaging.handler.ConcurrencyLimitHandler}が行う。
+ * このため、本クラスは"concurrencyLimiter"という名前でコンポーネント定義し、
+ * {@link nablarch.fw.messaging.handler.ConcurrencyLimitHandler}にも同じインスタンスを設定すること。
+ */
+@Published(tag = "architect")
+public class AdaptiveConcurrencyLimiter {
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(AdaptiveConcurrencyLimiter.class);
+
+    /** 同時処理数の上限値の最小値 */
+    private int minLimit = 1;
+
+    /** 同時処理数の上限値の最大値 */
+    private int maxLimit = 0;
+
+    /** 処理時間の閾値(msec) */
+    private long latencyThreshold = 1000;
+
+    /** 上限値を減らす際の乗数 */
+    private double backoffRatio = 0.5;
+
+    /** 上限値を減らす最小間隔(msec) */
+    private long backoffInterval = 1000;
+
+    /** 現在の同時処理数の上限値 */
+    private double limit = 0;
+
+    /** 前回上限値を減らした日時(msec) */
+    private long lastBackoffAt = 0;
+
+    /** 処理中の電文数 */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * 処理の実行権を取得する。
+     *
+     * @return 処理中の電文数が上限値未満で、実行権を取得できた場合はtrue
+     */
+    public boolean tryAcquire() {
+        int currentLimit = getLimit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= currentLimit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * {@link #tryAcquire()}で取得した実行権を解放する。
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 処理時間を記録し、同時処理数の上限値を見直す。
+     *
+     * @param latency 処理時間(msec)
+     */
+    public void onSample(long latency) {
+        if (latency > latencyThreshold) {
+            backoff("latency = [" + latency + "ms]");
+        } else {
+            synchronized (this) {
+                double current = currentLimit();
+                limit = Math.min(maxLimit, current + 1.0 / current);
+            }
+        }
+    }
+
+    /**
+     * 処理中にエラーが発生したことを記録し、同時処理数の上限値を減らす。
+     */
+    public void onError() {
+        backoff("an error occurred");
+    }
+
+    /**
+     * 同時処理数の上限値を減らす。
+     *
+     * @param reason 理由(ログ出力用)
+     */
+    private synchronized void backoff(String reason) {
+        long now = System.currentTimeMillis();
+        if (now - lastBackoffAt < backoffInterval) {
+            return;
+        }
+        double current = currentLimit();
+        double next = Math.max(minLimit, Math.floor(current * backoffRatio));
+        if (next < current) {
+            LOGGER.logInfo("the concurrency limit was decreased. limit = ["
+                    + (int) current + " -> " + (int) next + "], " + reason);
+        }
+        limit = next;
+        lastBackoffAt = now;
+    }
+
+    /**
+     * 現在の上限値を取得する。未初期化の場合は最大値で初期化する。
+     *
+     * @return 現在の上限値
+     */
+    private synchronized double currentLimit() {
+        if (maxLimit <= 0) {
+            throw new IllegalStateException("maxLimit was not set.");
+        }
+        if (limit <= 0) {
+            limit = maxLimit;
+        }
+        return limit;
+    }
+
+    /**
+     * 現在の同時処理数の上限値を取得する。
+     *
+     * @return 同時処理数の上限値
+     */
+    public int getLimit() {
+        return (int) currentLimit();
+    }
+
+    /**
+     * 処理中の電文数を取得する。
+     *
+     * @return 処理中の電文数
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 同時処理数の上限値の最小値を設定する。
+     * 明示的に指定しなかった場合のデフォルトは1となる。
+     *
+     * @param minLimit 上限値の最小値
+     * @return このオブジェクト自体
+     */
+    public AdaptiveConcurrencyLimiter setMinLimit(int minLimit) {
+        if (minLimit <= 0) {
+            throw new IllegalArgumentException("minLimit must be greater than 0. minLimit = " + minLimit);
+        }
+        this.minLimit = minLimit;
+        return this;
+    }
+
+    /**
+     * 同時処理数の上限値の最大値を設定する。
+     * <p/>
+     * 同時処理数の上限値の初期値は本設定値となる。
+     * 通常は、{@link nablarch.fw.handler.MultiThreadExecutionHandler}の並行実行スレッド数と同じ値を設定する。
+     *
+     * @param maxLimit 上限値の最大値
+     * @return このオブジェクト自体
+     */
+    public AdaptiveConcurrencyLimiter setMaxLimit(int maxLimit) {
+        if (maxLimit <= 0) {
+            throw new IllegalArgumentException("maxLimit must be greater than 0. maxLimit = " + maxLimit);
+        }
+        this.maxLimit = maxLimit;
+        return this;
+    }
+
+    /**
+     * 処理時間の閾値(msec)を設定する。
+     * 処理時間がこの値を超えた場合、同時処理数の上限値を減らす。
+     * 明示的に指定しなかった場合のデフォルトは1秒となる。
+     *
+     * @param latencyThreshold 処理時間の閾値(msec)
+     * @return このオブジェクト自体
+     */
+    public AdaptiveConcurrencyLimiter setLatencyThreshold(long latencyThreshold) {
+        this.latencyThreshold = latencyThreshold;
+        return this;
+    }
+
+    /**
+     * 同時処理数の上限値を減らす際の乗数(0より大きく1未満)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは0.5となる。
+     *
+     * @param backoffRatio 乗数
+     * @return このオブジェクト自体
+     */
+    public AdaptiveConcurrencyLimiter setBackoffRatio(double backoffRatio) {
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException(
+                    "backoffRatio must be greater than 0 and less than 1. backoffRatio = " + backoffRatio);
+        }
+        this.backoffRatio = backoffRatio;
+        return this;
+    }
+
+    /**
+     * 同時処理数の上限値を減らす最小間隔(msec)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは1秒となる。
+     *
+     * @param backoffInterval 最小間隔(msec)
+     * @return このオブジェクト自体
+     */
+    public AdaptiveConcurrencyLimiter setBackoffInterval(long backoffInterval) {
+        this.backoffInterval = backoffInterval;
+        return this;
+    }
+}
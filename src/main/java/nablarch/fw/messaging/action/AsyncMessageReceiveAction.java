@@ -1,19 +1,44 @@
 package nablarch.fw.messaging.action;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import nablarch.common.idgenerator.IdGenerator;
+import nablarch.core.ThreadContext;
+import nablarch.core.dataformat.DataRecord;
+import nablarch.core.date.SystemTimeUtil;
+import nablarch.core.db.DbAccessException;
 import nablarch.core.db.connection.AppDbConnection;
 import nablarch.core.db.connection.DbConnectionContext;
+import nablarch.core.db.connection.TransactionManagerConnection;
 import nablarch.core.db.statement.ParameterizedSqlPStatement;
+import nablarch.core.db.statement.exception.DuplicateStatementException;
+import nablarch.core.db.statement.exception.SqlStatementException;
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
 import nablarch.core.repository.SystemRepository;
+import nablarch.core.util.StringUtil;
 import nablarch.core.util.annotation.Published;
 import nablarch.fw.DataReader;
 import nablarch.fw.ExecutionContext;
 import nablarch.fw.Result;
 import nablarch.fw.action.BatchAction;
+import nablarch.fw.handler.LoopHandler;
+import nablarch.fw.launcher.CommandLine;
 import nablarch.fw.messaging.RequestMessage;
+import nablarch.fw.messaging.provider.JmsMessagingProvider.Context.JmsHeaderName;
+import nablarch.fw.messaging.provider.QueueLagMonitor;
 
 /**
  * MQ応答なし受信用アクション。
@@ -40,7 +65,8 @@ import nablarch.fw.messaging.RequestMessage;
  * </pre>
  * <p/>
  * 本クラスは1電文を1レコードとして受信テーブルに保存する場合に利用できる。
- * 1電文を複数レコードとして登録する場合や、複数テーブルに保存する場合は本クラスを継承し
+ * 1電文の業務データ部の各レコードを1レコードとして登録する場合は、{@link MultiRecordInsertSettings}を設定すること。
+ * それ以外の方法で複数レコードとして登録する場合や、複数テーブルに保存する場合は本クラスを継承し
  * #handle(nablarch.fw.messaging.RequestMessage, nablarch.fw.ExecutionContext)や
  * #insertMessageTable(String, Object)をオーバライドすること。
  *
@@ -49,9 +75,61 @@ import nablarch.fw.messaging.RequestMessage;
 @Published(tag = "architect")
 public class AsyncMessageReceiveAction extends BatchAction<RequestMessage> {
 
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(AsyncMessageReceiveAction.class);
+
     /** システムリポジトリ上の設定クラスの格納キー値 */
     private static final String ACTION_SETTINGS_KEY = "asyncMessageReceiveActionSettings";
 
+    /** システムリポジトリ上のラグ計測モニタの格納キー値 */
+    private static final String QUEUE_LAG_MONITOR_KEY = "queueLagMonitor";
+
+    /** システムリポジトリ上の同時処理数制御クラスの格納キー値 */
+    private static final String CONCURRENCY_LIMITER_KEY = "concurrencyLimiter";
+
+    /** システムリポジトリ上のリクエストID単位のバルクヘッドの格納キー値 */
+    private static final String REQUEST_BULKHEAD_KEY = "requestBulkhead";
+
+    /** システムリポジトリ上のバッチ登録設定の格納キー値 */
+    private static final String BATCH_INSERT_SETTINGS_KEY = "batchInsertSettings";
+
+    /** システムリポジトリ上の処理済み電文の検出クラスの格納キー値 */
+    private static final String DEDUPLICATOR_KEY = "receivedMessageDeduplicator";
+
+    /** システムリポジトリ上の受信電文のジャーナルの格納キー値 */
+    private static final String MESSAGE_JOURNAL_KEY = "messageJournal";
+
+    /** システムリポジトリ上のメッセージの属性設定の格納キー値 */
+    private static final String MESSAGE_PROPERTY_SETTINGS_KEY = "messagePropertySettings";
+
+    /** システムリポジトリ上のFormクラスを使用しない登録の設定の格納キー値 */
+    private static final String DIRECT_BINDING_SETTINGS_KEY = "directBindingSettings";
+
+    /** システムリポジトリ上の複数レコードの電文の登録設定の格納キー値 */
+    private static final String MULTI_RECORD_INSERT_SETTINGS_KEY = "multiRecordInsertSettings";
+
+    /** 登録待ちのFormオブジェクトを保持するリクエストスコープ変数名 */
+    private static final String PENDING_INSERTS_KEY = "nablarch_async-message-receive_pending-inserts";
+
+    /** 完了ラグの計測待ちの電文を保持するリクエストスコープ変数名 */
+    private static final String PENDING_LAGS_KEY = "nablarch_async-message-receive_pending-lags";
+
+    /** Formファクトリのキャッシュ件数の上限値 */
+    private static final int MAX_FORM_FACTORY_CACHE_SIZE = 1024;
+
+    /** リクエストIDをキーとするFormファクトリのキャッシュ */
+    private final ConcurrentMap<String, FormFactory> formFactoryCache =
+            new ConcurrentHashMap<String, FormFactory>();
+
+    /** Formクラスを使用しない登録のパラメータ名の索引 */
+    private volatile ParameterIndex parameterIndex;
+
+    /** スレッド毎のINSERT文のキャッシュの件数の上限値 */
+    private static final int MAX_STATEMENT_CACHE_SIZE = 128;
+
+    /** スレッド毎のINSERT文のキャッシュ */
+    private final ThreadLocal<StatementCache> statementCache = new ThreadLocal<StatementCache>();
+
     /**
      * {@inheritDoc}
      * <p/>
@@ -66,21 +144,695 @@ public class AsyncMessageReceiveAction extends BatchAction<RequestMessage> {
      * <li>受信電文INSERT用のSQL文</li>
      * <li></li>
      * </ol>
+     * <p/>
+     * {@link #getBatchInsertSettings()}がバッチ登録設定を返す場合、受信電文は{@link #insertMessageTableInBatch(String, List)}
+     * によりバッチ登録する(この場合、{@link #insertMessageTable(String, Object)}は呼び出されない)。
+     * 登録待ちの電文は、コミット直前の電文の処理終了時(読み飛ばしや転送により処理を終了した場合を含む)に全て登録し、
+     * 電文の処理で例外が発生した場合は破棄する。
+     * <p/>
+     * {@link #getReceivedMessageDeduplicator()}が処理済み電文の検出クラスを返す場合、
+     * 処理済みの電文は受信テーブルに格納せずに処理を終了する。
+     * <p/>
+     * {@link #getMessageJournal()}がジャーナルを返す場合、受信電文は受信テーブルに格納せずジャーナルに追記する。
+     * ジャーナルに追記した電文は、{@link MessageJournalLoader}が受信テーブルに格納する。
+     * <p/>
+     * {@link #getRequestBulkhead()}がバルクヘッドを返す場合、リクエストID単位の同時処理数の上限を超えた電文は
+     * 受信テーブルに格納せず、{@link RequestBulkhead#overflow(RequestMessage)}により転送する。
+     * <p/>
+     * {@link #getMessagePropertySettings()}がメッセージの属性設定を返す場合、リクエストIDは電文の属性から取得する。
+     * また、電文の属性のレイアウトのバージョンが設定と異なる場合は、メッセージボディー部を読み込まずに
+     * {@link IllegalStateException}を送出する。
+     * <p/>
+     * {@link #getDirectBindingSettings()}がFormクラスを使用しない登録の設定を返す場合、対象のリクエストIDの電文は
+     * Formオブジェクトを生成せず、受信電文のレコードから生成したパラメータのMapで登録する。
+     * <p/>
+     * {@link #getMultiRecordInsertSettings()}が複数レコードの電文の登録設定を返す場合、対象のリクエストIDの電文は
+     * {@link #insertRecords(String, RequestMessage, MultiRecordInsertSettings)}により業務データ部のレコード毎に登録する。
      */
     @Override
     public Result handle(RequestMessage inputData, ExecutionContext ctx) {
+        if (getBatchInsertSettings() == null) {
+            return handleMessage(inputData, ctx);
+        }
+        Result result;
+        try {
+            result = handleMessage(inputData, ctx);
+        } catch (RuntimeException e) {
+            discardPendingInserts(ctx);
+            throw e;
+        } catch (Error e) {
+            discardPendingInserts(ctx);
+            throw e;
+        }
+        // 登録待ちのFormオブジェクトは、電文の処理結果(読み飛ばしや転送を含む)に関わらずコミット直前に登録する。
+        if (LoopHandler.isAboutToCommit(ctx)) {
+            flushPendingInserts(ctx);
+        }
+        return result;
+    }
+
+    /**
+     * 受信電文を受信テーブルに格納する(バッチ登録の場合は登録待ちに追加する)。
+     *
+     * @param inputData 受信電文
+     * @param ctx 実行コンテキスト
+     * @return 処理結果
+     */
+    private Result handleMessage(RequestMessage inputData, ExecutionContext ctx) {
+
+        String requestId = getRequestId(inputData);
+
+        // リクエストID単位の同時処理数の上限を超えた場合は、電文を転送して処理を終了する。
+        RequestBulkhead bulkhead = getRequestBulkhead();
+        if (bulkhead != null && !bulkhead.tryAcquire(requestId)) {
+            bulkhead.overflow(inputData);
+            return new Result.Success();
+        }
+        try {
+            // 処理済みの電文(再配信された電文など)は、受信テーブルに格納せずに処理を終了する。
+            ReceivedMessageDeduplicator deduplicator = getReceivedMessageDeduplicator();
+            if (deduplicator != null && (deduplicator.isDuplicate(inputData) || !deduplicator.record(inputData))) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.logDebug("the message was already processed. the message was skipped."
+                            + " request id = [" + requestId + "]");
+                }
+                return new Result.Success();
+            }
 
-        // メッセージボディー部を読み込む
-        inputData.readRecords();
+            // 複数レコードの電文は、業務データ部のレコード毎に受信テーブルに登録する。
+            // (ジャーナルとの併用は初期処理で拒否しているが、レコードを失わないようジャーナルより先に判定する)
+            MultiRecordInsertSettings multiRecordInsertSettings = getMultiRecordInsertSettings();
+            if (multiRecordInsertSettings != null && (multiRecordInsertSettings.getRequestIds().isEmpty()
+                    || multiRecordInsertSettings.getRequestIds().contains(requestId))) {
+                insertRecords(requestId, inputData, multiRecordInsertSettings);
+                recordCompletionLag(inputData);
+                return new Result.Success();
+            }
 
-        String requestId = inputData.getRequestPath();
-        // Formオブジェクトを生成し、受信電文をデータベースに登録する。
-        Object form = createForm(requestId, inputData);
-        insertMessageTable(requestId, form);
+            // ジャーナルが設定されている場合は、受信電文をジャーナルに追記して処理を終了する。
+            MessageJournal journal = getMessageJournal();
+            if (journal != null) {
+                // 完了ラグは、MessageJournalLoaderが受信テーブルへの登録を完了した時点で計測する。
+                journal.append(generateReceivedSequence(), requestId, inputData.getDestination(),
+                        getSentAt(inputData), inputData.getBodyBytes());
+                return new Result.Success();
+            }
 
+            // メッセージボディー部を読み込む
+            inputData.readRecords();
+
+            // Formオブジェクト(又はパラメータのMap)を生成し、受信電文をデータベースに登録する。
+            Object form = createInsertParameter(requestId, inputData, null);
+            BatchInsertSettings batchInsertSettings = getBatchInsertSettings();
+            if (batchInsertSettings == null) {
+                insertMessageTable(requestId, form, getConcurrencyLimiter());
+            } else {
+                addBatch(requestId, form, batchInsertSettings.getBatchSize(), ctx);
+                // 完了ラグは、コミット直前に登録待ちの電文を全て登録した時点で計測する。
+                addPendingLag(inputData, ctx);
+                return new Result.Success();
+            }
+        } finally {
+            if (bulkhead != null) {
+                bulkhead.release(requestId);
+            }
+        }
+
+        recordCompletionLag(inputData);
         return new Result.Success();
     }
 
+    /**
+     * 電文の業務データ部のレコードを1件ずつ読み込み、受信テーブルにバッチ登録する。
+     * <p/>
+     * レコード毎に受信電文連番を採番し、{@link DirectBindingSettings}の設定に従ってINSERT文のパラメータのMapを生成する。
+     * レコードタイプ名が設定と異なるレコード(トレーラ部など)は登録しない。
+     * パラメータのMapはバッチサイズに達した時点、及び最後のレコードを読み込んだ時点で
+     * {@link #insertRecordsInBatch(String, List)}によりバッチ登録する。
+     * 読み込んだレコードは電文から破棄し、メモリ上には最大でバッチサイズ分のパラメータのMapのみを保持する。
+     * <p/>
+     * いずれかのレコードの登録に失敗した場合は例外を送出し、電文全体を失敗とする。
+     * (トランザクションがロールバックされるため、一部のレコードのみが登録されることはない)
+     *
+     * @param requestId リクエストID
+     * @param message リクエストメッセージ
+     * @param settings 複数レコードの電文の登録設定
+     */
+    protected void insertRecords(String requestId, RequestMessage message, MultiRecordInsertSettings settings) {
+        DirectBindingSettings bindingSettings = getDirectBindingSettings();
+        if (bindingSettings == null) {
+            bindingSettings = new DirectBindingSettings();
+        }
+        AdaptiveConcurrencyLimiter limiter = getConcurrencyLimiter();
+        List<Object> parameters = new ArrayList<Object>(settings.getBatchSize());
+        DataRecord record;
+        while ((record = message.readRecord()) != null) {
+            message.getRecords().clear();
+            if (!bindingSettings.getRecordType().equals(record.getRecordType())) {
+                continue;
+            }
+            parameters.add(createParameters(bindingSettings, record, generateReceivedSequence()));
+            if (parameters.size() >= settings.getBatchSize()) {
+                insertRecordsInBatch(requestId, parameters, limiter);
+                parameters.clear();
+            }
+        }
+        if (!parameters.isEmpty()) {
+            insertRecordsInBatch(requestId, parameters, limiter);
+        }
+    }
+
+    /**
+     * レコードのバッチ登録を行い、処理時間を同時処理数制御クラスに通知する。
+     *
+     * @param requestId リクエストID
+     * @param parameters 登録対象のパラメータのMap
+     * @param limiter 同時処理数制御クラス
+     */
+    private void insertRecordsInBatch(String requestId, List<Object> parameters, AdaptiveConcurrencyLimiter limiter) {
+        if (limiter == null) {
+            insertRecordsInBatch(requestId, parameters);
+            return;
+        }
+        long startedAt = System.currentTimeMillis();
+        try {
+            insertRecordsInBatch(requestId, parameters);
+        } catch (DuplicateStatementException e) {
+            throw e;
+        } catch (DbAccessException e) {
+            limiter.onError();
+            throw e;
+        }
+        limiter.onSample(System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * 複数レコードの電文のレコードを、業務用の受信テーブルにバッチ登録する。
+     * <p/>
+     * {@link #insertMessageTableInBatch(String, List)}と異なり、エラーとなったレコードの特定及び読み飛ばしは行わず、
+     * バッチ更新のエラーをそのまま送出する。
+     *
+     * @param requestId リクエストID
+     * @param parameters 登録対象のパラメータのMap
+     */
+    protected void insertRecordsInBatch(String requestId, List<Object> parameters) {
+        AppDbConnection connection = DbConnectionContext.getConnection(getSettings().getDbTransactionName());
+        ParameterizedSqlPStatement statement = prepareInsertStatement(connection, requestId);
+        try {
+            for (Object parameter : parameters) {
+                addBatch(statement, parameter);
+            }
+            statement.executeBatch();
+        } catch (DbAccessException e) {
+            // キャッシュしたINSERT文を再利用するため、未実行のバッチを破棄する。
+            statement.clearBatch();
+            throw e;
+        }
+    }
+
+    /**
+     * 受信電文のリクエストIDを取得する。
+     * <p/>
+     * メッセージの属性設定があり、電文がリクエストIDの属性を持つ場合は属性の値を、
+     * それ以外の場合は{@link RequestMessage#getRequestPath()}の値をリクエストIDとする。
+     * 電文がリクエストIDの属性を持ち、フレームワーク制御ヘッダのリクエストIDと異なる場合は、
+     * {@link IllegalStateException}を送出する。
+     * 電文がレイアウトのバージョンの属性を持ち、その値がリクエストIDに対して設定されたバージョンと異なる場合は、
+     * {@link IllegalStateException}を送出する。
+     *
+     * @param message 受信電文
+     * @return リクエストID
+     */
+    private String getRequestId(RequestMessage message) {
+        MessagePropertySettings settings = getMessagePropertySettings();
+        if (settings == null) {
+            return message.getRequestPath();
+        }
+        Object property = message.getHeader(settings.getRequestIdPropertyName());
+        String requestId = property == null ? message.getRequestPath() : property.toString();
+        if (property != null && !StringUtil.isNullOrEmpty(message.getRequestPath())
+                && !requestId.equals(message.getRequestPath())) {
+            throw new IllegalStateException("the request id of the message property does not match"
+                    + " the request id of the framework header."
+                    + " property request id = [" + requestId + "], header request id = ["
+                    + message.getRequestPath() + "]");
+        }
+
+        Object layoutVersion = message.getHeader(settings.getLayoutVersionPropertyName());
+        String expectedLayoutVersion = settings.getLayoutVersions().get(requestId);
+        if (layoutVersion != null && expectedLayoutVersion != null
+                && !expectedLayoutVersion.equals(layoutVersion.toString())) {
+            throw new IllegalStateException("the layout version of the received message is not supported."
+                    + " request id = [" + requestId + "], layout version = [" + layoutVersion
+                    + "], expected layout version = [" + expectedLayoutVersion + "]");
+        }
+        return requestId;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * ジャーナルと複数レコードの電文の登録設定が両方設定されている場合は、{@link IllegalStateException}を送出する。
+     * ジャーナルに追記した電文は1電文1レコードとして登録されるため、複数レコードの電文の2レコード目以降が失われるためである。
+     * <p/>
+     * バッチ登録設定があり、後続のハンドラに{@link LoopHandler}が存在しない場合も、{@link IllegalStateException}を送出する。
+     * 登録待ちのFormオブジェクトはコミット直前の判定({@link LoopHandler#isAboutToCommit(ExecutionContext)})により
+     * 登録するため、コミット間隔を制御する{@link LoopHandler}が必要となるためである。
+     */
+    @Override
+    protected void initialize(CommandLine command, ExecutionContext context) { // SUPPRESS CHECKSTYLE @OverrideでJavaDocは継承されるので除外
+        if (getMessageJournal() != null && getMultiRecordInsertSettings() != null) {
+            throw new IllegalStateException("messageJournal and multiRecordInsertSettings cannot be used together."
+                    + " journaled messages are inserted as single-record messages.");
+        }
+        if (getBatchInsertSettings() != null && !containsLoopHandler(context)) {
+            throw new IllegalStateException("batchInsertSettings requires LoopHandler in the handler queue."
+                    + " pending inserts are flushed only when LoopHandler is about to commit.");
+        }
+    }
+
+    /**
+     * ハンドラキューに{@link LoopHandler}が含まれるか否か。
+     *
+     * @param context 実行コンテキスト
+     * @return {@link LoopHandler}が含まれる場合はtrue
+     */
+    private static boolean containsLoopHandler(ExecutionContext context) {
+        for (Object handler : context.getHandlerQueue()) {
+            if (handler instanceof LoopHandler) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 受信電文の完了ラグ(送信日時から業務処理完了までの時間)を計測する。
+     * <p/>
+     * {@link #getQueueLagMonitor()}がnullを返す場合や、
+     * 受信電文がJMSTimestampヘッダを持たない場合は何もしない。
+     * バルクヘッドにより転送された電文は、最初に受信した電文の送信日時({@link RequestBulkhead#ORIGINAL_TIMESTAMP})から計測する。
+     *
+     * @param message 受信電文
+     */
+    protected void recordCompletionLag(RequestMessage message) {
+        recordCompletionLag(message.getDestination(), getSentAt(message));
+    }
+
+    /**
+     * 完了ラグを計測する。
+     * <p/>
+     * {@link #getQueueLagMonitor()}がnullを返す場合や、送信日時が不明(0以下)の場合は何もしない。
+     * ジャーナルに追記した電文の登録完了時に、{@link MessageJournalLoader}からも呼び出される。
+     *
+     * @param destination 受信したキューの論理名
+     * @param sentAt 送信日時
+     */
+    void recordCompletionLag(String destination, long sentAt) {
+        QueueLagMonitor monitor = getQueueLagMonitor();
+        if (monitor == null || sentAt <= 0) {
+            return;
+        }
+        monitor.recordCompletionLag(destination, sentAt, System.currentTimeMillis());
+    }
+
+    /**
+     * 受信電文の送信日時を取得する。
+     * <p/>
+     * バルクヘッドにより転送された電文の場合は、最初に受信した電文の送信日時を返す。
+     *
+     * @param message 受信電文
+     * @return 送信日時。不明な場合は0
+     */
+    private static long getSentAt(RequestMessage message) {
+        Object timestamp = message.getHeader(RequestBulkhead.ORIGINAL_TIMESTAMP);
+        if (!(timestamp instanceof Long)) {
+            timestamp = message.getHeader(JmsHeaderName.TIMESTAMP);
+        }
+        return timestamp instanceof Long ? (Long) timestamp : 0L;
+    }
+
+    /**
+     * 受信テーブルへの登録を行い、処理時間を同時処理数制御クラスに通知する。
+     * <p/>
+     * データベースアクセス時にエラーが発生した場合(一意制約違反を除く)は、エラーを通知する。
+     * 同時処理数制御クラスがnullの場合は、{@link #insertMessageTable(String, Object)}を呼び出すのみ。
+     *
+     * @param requestId リクエストID
+     * @param form 登録対象の電文を持ったオブジェクト
+     * @param limiter 同時処理数制御クラス
+     */
+    private void insertMessageTable(String requestId, Object form, AdaptiveConcurrencyLimiter limiter) {
+        if (limiter == null) {
+            insertMessageTable(requestId, form);
+            return;
+        }
+        long startedAt = System.currentTimeMillis();
+        try {
+            insertMessageTable(requestId, form);
+        } catch (DuplicateStatementException e) {
+            throw e;
+        } catch (DbAccessException e) {
+            limiter.onError();
+            throw e;
+        }
+        limiter.onSample(System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * Formオブジェクトを登録待ちに追加する。
+     * <p/>
+     * 登録待ちのFormオブジェクトは、リクエストスコープ(1トランザクションの処理中に共有される領域)に保持する。
+     * リクエストID単位の登録待ち件数がバッチサイズに達した場合にバッチ登録を行う。
+     * トランザクションのコミット直前({@link LoopHandler#isAboutToCommit(ExecutionContext)}がtrue)の場合は、
+     * {@link #handle(RequestMessage, ExecutionContext)}の終了時に登録待ちのFormオブジェクトを全てバッチ登録する。
+     *
+     * @param requestId リクエストID
+     * @param form 登録対象の電文を持ったオブジェクト
+     * @param batchSize バッチサイズ
+     * @param ctx 実行コンテキスト
+     */
+    private void addBatch(String requestId, Object form, int batchSize, ExecutionContext ctx) {
+        Map<String, List<Object>> pendingInserts = ctx.getRequestScopedVar(PENDING_INSERTS_KEY);
+        if (pendingInserts == null) {
+            pendingInserts = new LinkedHashMap<String, List<Object>>();
+            ctx.setRequestScopedVar(PENDING_INSERTS_KEY, pendingInserts);
+        }
+        List<Object> forms = pendingInserts.get(requestId);
+        if (forms == null) {
+            forms = new ArrayList<Object>(batchSize);
+            pendingInserts.put(requestId, forms);
+        }
+        forms.add(form);
+        if (forms.size() >= batchSize) {
+            pendingInserts.remove(requestId);
+            insertMessageTableInBatch(requestId, forms, getConcurrencyLimiter());
+        }
+    }
+
+    /**
+     * 登録待ちのFormオブジェクトを全てバッチ登録する。
+     *
+     * @param ctx 実行コンテキスト
+     */
+    private void flushPendingInserts(ExecutionContext ctx) {
+        List<PendingLag> pendingLags = ctx.getRequestScopedVar(PENDING_LAGS_KEY);
+        List<PendingLag> lags = pendingLags == null ? null : new ArrayList<PendingLag>(pendingLags);
+        if (pendingLags != null) {
+            pendingLags.clear();
+        }
+        Map<String, List<Object>> pendingInserts = ctx.getRequestScopedVar(PENDING_INSERTS_KEY);
+        if (pendingInserts != null && !pendingInserts.isEmpty()) {
+            List<Map.Entry<String, List<Object>>> entries =
+                    new ArrayList<Map.Entry<String, List<Object>>>(pendingInserts.entrySet());
+            pendingInserts.clear();
+            for (Map.Entry<String, List<Object>> entry : entries) {
+                insertMessageTableInBatch(entry.getKey(), entry.getValue(), getConcurrencyLimiter());
+            }
+        }
+        if (lags != null) {
+            for (PendingLag lag : lags) {
+                recordCompletionLag(lag.destination, lag.sentAt);
+            }
+        }
+    }
+
+    /**
+     * 完了ラグの計測待ちに電文を追加する。
+     * <p/>
+     * 電文の送信日時が不明な場合や、完了ラグを計測しない場合は追加しない。
+     *
+     * @param message 受信電文
+     * @param ctx 実行コンテキスト
+     */
+    private void addPendingLag(RequestMessage message, ExecutionContext ctx) {
+        long sentAt = getSentAt(message);
+        if (sentAt <= 0 || getQueueLagMonitor() == null) {
+            return;
+        }
+        List<PendingLag> pendingLags = ctx.getRequestScopedVar(PENDING_LAGS_KEY);
+        if (pendingLags == null) {
+            pendingLags = new ArrayList<PendingLag>();
+            ctx.setRequestScopedVar(PENDING_LAGS_KEY, pendingLags);
+        }
+        pendingLags.add(new PendingLag(message.getDestination(), sentAt));
+    }
+
+    /**
+     * 登録待ちのFormオブジェクトを破棄する。
+     * <p/>
+     * 電文の処理で例外が発生した場合、トランザクションはロールバックされ電文は再配信されるため、
+     * 登録待ちのFormオブジェクトを後続のトランザクションで登録しないよう破棄する。
+     *
+     * @param ctx 実行コンテキスト
+     */
+    private static void discardPendingInserts(ExecutionContext ctx) {
+        Map<String, List<Object>> pendingInserts = ctx.getRequestScopedVar(PENDING_INSERTS_KEY);
+        if (pendingInserts != null) {
+            pendingInserts.clear();
+        }
+        List<PendingLag> pendingLags = ctx.getRequestScopedVar(PENDING_LAGS_KEY);
+        if (pendingLags != null) {
+            pendingLags.clear();
+        }
+    }
+
+    /**
+     * バッチ登録を行い、処理時間を同時処理数制御クラスに通知する。
+     *
+     * @param requestId リクエストID
+     * @param forms 登録対象のFormオブジェクト
+     * @param limiter 同時処理数制御クラス
+     */
+    private void insertMessageTableInBatch(String requestId, List<Object> forms, AdaptiveConcurrencyLimiter limiter) {
+        if (limiter == null) {
+            insertMessageTableInBatch(requestId, forms);
+            return;
+        }
+        long startedAt = System.currentTimeMillis();
+        try {
+            insertMessageTableInBatch(requestId, forms);
+        } catch (DbAccessException e) {
+            limiter.onError();
+            throw e;
+        }
+        limiter.onSample(System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * 業務用の受信テーブルに受信電文をバッチ登録する。
+     * <p/>
+     * バッチ更新がSQL文の実行エラー({@link SqlStatementException})となった場合、
+     * セーブポイントまでロールバックした上で対象を二分して再実行し、エラーとなる電文を特定する。
+     * エラーとなった電文は{@link #onBatchInsertError(String, Object, SqlStatementException)}に通知し、
+     * それ以外の電文は登録する。
+     * ただし、全ての電文がエラーとなった場合は、電文固有の問題ではないとみなし、例外を送出する。
+     * <p/>
+     * 例外として、全ての電文が一意制約違反({@link DuplicateStatementException})となった場合は例外を送出せず、
+     * 各電文を{@link #onBatchInsertError(String, Object, SqlStatementException)}に通知する。
+     * 一意制約違反は登録済みの電文の再登録で発生するものであり、
+     * 例外を送出すると同じ電文の再登録が失敗し続けるためである。
+     *
+     * @param requestId リクエストID
+     * @param forms 登録対象のFormオブジェクト
+     */
+    protected void insertMessageTableInBatch(String requestId, List<Object> forms) {
+        TransactionManagerConnection connection = DbConnectionContext.getTransactionManagerConnection(
+                getSettings().getDbTransactionName());
+        List<Object> failedForms = new ArrayList<Object>();
+        List<SqlStatementException> errors = new ArrayList<SqlStatementException>();
+        executeBatch(connection, requestId, forms, failedForms, errors);
+        if (failedForms.isEmpty()) {
+            return;
+        }
+        if (failedForms.size() == forms.size() && !isAllDuplicated(errors)) {
+            throw errors.get(0);
+        }
+        for (int i = 0; i < failedForms.size(); i++) {
+            onBatchInsertError(requestId, failedForms.get(i), errors.get(i));
+        }
+    }
+
+    /**
+     * 全ての例外が一意制約違反か否か。
+     *
+     * @param errors 例外
+     * @return 全ての例外が一意制約違反の場合はtrue
+     */
+    private static boolean isAllDuplicated(List<SqlStatementException> errors) {
+        for (SqlStatementException error : errors) {
+            if (!(error instanceof DuplicateStatementException)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * ジャーナルに追記された受信電文を、業務用の受信テーブルに登録する。
+     * <p/>
+     * 受信電文は、リクエストID単位にバッチ登録する。
+     * 一意制約違反以外のエラーとなった電文がある場合は例外を送出し、電文の特定は{@link MessageJournalLoader}に委ねる。
+     * リクエストIDは、ジャーナルへの追記時に解決した値(電文の属性から取得した値を含む)を使用する。
+     * Formオブジェクトは{@link #createForm(String, RequestMessage, String)}で生成し、
+     * 受信電文連番にはジャーナルへの追記時に採番した値を使用する。
+     * <p/>
+     * 本メソッドは{@link MessageJournalLoader}から、トランザクション内で呼び出される。
+     *
+     * @param requestIds リクエストID
+     * @param receivedSequences 受信電文連番(リクエストIDと同じ順序であること)
+     * @param messages 受信電文(リクエストIDと同じ順序であること)
+     */
+    protected void insertJournaledMessages(List<String> requestIds, List<String> receivedSequences,
+            List<RequestMessage> messages) {
+        Map<String, List<Object>> formsByRequestId = new LinkedHashMap<String, List<Object>>();
+        for (int i = 0; i < messages.size(); i++) {
+            RequestMessage message = messages.get(i);
+            String requestId = requestIds.get(i);
+            message.readRecords();
+            List<Object> forms = formsByRequestId.get(requestId);
+            if (forms == null) {
+                forms = new ArrayList<Object>();
+                formsByRequestId.put(requestId, forms);
+            }
+            forms.add(createInsertParameter(requestId, message, receivedSequences.get(i)));
+        }
+        for (Map.Entry<String, List<Object>> entry : formsByRequestId.entrySet()) {
+            insertJournaledMessagesInBatch(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * ジャーナルに追記された受信電文を、業務用の受信テーブルにバッチ登録する。
+     * <p/>
+     * {@link #insertMessageTableInBatch(String, List)}と異なり、一意制約違反以外のエラーとなった電文がある場合は、
+     * その例外を送出する。エラーとなった電文は{@link MessageJournalLoader}が特定し、
+     * {@link MessageJournalLoader#onLoadError(MessageJournal.Entry, RuntimeException)}に通知するためである。
+     * 一意制約違反となった電文は登録済みの電文とみなし、{@link #onBatchInsertError(String, Object, SqlStatementException)}に通知する。
+     *
+     * @param requestId リクエストID
+     * @param forms 登録対象のFormオブジェクト
+     */
+    private void insertJournaledMessagesInBatch(String requestId, List<Object> forms) {
+        TransactionManagerConnection connection = DbConnectionContext.getTransactionManagerConnection(
+                getSettings().getDbTransactionName());
+        List<Object> failedForms = new ArrayList<Object>();
+        List<SqlStatementException> errors = new ArrayList<SqlStatementException>();
+        executeBatch(connection, requestId, forms, failedForms, errors);
+        for (SqlStatementException error : errors) {
+            if (!(error instanceof DuplicateStatementException)) {
+                throw error;
+            }
+        }
+        for (int i = 0; i < failedForms.size(); i++) {
+            onBatchInsertError(requestId, failedForms.get(i), errors.get(i));
+        }
+    }
+
+    /**
+     * バッチ更新を実行する。エラーとなった場合は対象を二分して再実行する。
+     *
+     * @param connection データベース接続
+     * @param requestId リクエストID
+     * @param forms 登録対象のFormオブジェクト
+     * @param failedForms エラーとなったFormオブジェクトの格納先
+     * @param errors エラーとなったFormオブジェクトに対応する例外の格納先
+     */
+    private void executeBatch(TransactionManagerConnection connection, String requestId, List<Object> forms,
+            List<Object> failedForms, List<SqlStatementException> errors) {
+        ParameterizedSqlPStatement statement = prepareInsertStatement(connection, requestId);
+        Savepoint savepoint = setSavepoint(connection);
+        try {
+            for (Object form : forms) {
+                addBatch(statement, form);
+            }
+            statement.executeBatch();
+        } catch (SqlStatementException e) {
+            statement.clearBatch();
+            rollback(connection, savepoint);
+            if (forms.size() == 1) {
+                failedForms.add(forms.get(0));
+                errors.add(e);
+                return;
+            }
+            int half = forms.size() / 2;
+            executeBatch(connection, requestId, forms.subList(0, half), failedForms, errors);
+            executeBatch(connection, requestId, forms.subList(half, forms.size()), failedForms, errors);
+        }
+    }
+
+    /**
+     * セーブポイントを設定する。
+     *
+     * @param connection データベース接続
+     * @return セーブポイント
+     */
+    private static Savepoint setSavepoint(TransactionManagerConnection connection) {
+        try {
+            return connection.getConnection().setSavepoint();
+        } catch (SQLException e) {
+            throw new DbAccessException("failed to set savepoint.", e);
+        }
+    }
+
+    /**
+     * セーブポイントまでロールバックする。
+     *
+     * @param connection データベース接続
+     * @param savepoint セーブポイント
+     */
+    private static void rollback(TransactionManagerConnection connection, Savepoint savepoint) {
+        try {
+            connection.getConnection().rollback(savepoint);
+        } catch (SQLException e) {
+            throw new DbAccessException("failed to rollback to savepoint.", e);
+        }
+    }
+
+    /**
+     * バッチ登録時にエラーとなった電文を通知する。
+     * <p/>
+     * デフォルト実装では、以下の処理を行う。
+     * <ul>
+     * <li>一意制約違反の場合は、登録済みの電文とみなし、WARNレベルのログを出力して電文を破棄する。</li>
+     * <li>バッチ登録設定にエラー電文登録用のSQL_ID({@link BatchInsertSettings#getErrorSqlId()})が設定されている場合は、
+     * 受信テーブルと同じSQLリソースの当該SQL文で、エラーとなった電文をエラーテーブルに登録する。
+     * (受信電文と同じトランザクションで登録するため、電文が失われることはない)</li>
+     * <li>上記以外の場合は、発生した例外をそのまま送出する。
+     * トランザクションはロールバックされ、コミット間隔内の電文は全て登録されない。</li>
+     * </ul>
+     * エラーとなった電文のみを読み飛ばして他の電文を登録する場合は、エラー電文登録用のSQL_IDを設定するか、
+     * 本メソッドをオーバーライドしてエラーとなった電文を別の方法で退避すること。
+     * (受信電文は受信時に確認応答済みのため、例外を送出せずに破棄した電文は失われる)
+     *
+     * @param requestId リクエストID
+     * @param form エラーとなった電文を持ったオブジェクト
+     * @param e 発生した例外
+     */
+    @SuppressWarnings("unchecked")
+    protected void onBatchInsertError(String requestId, Object form, SqlStatementException e) {
+        if (e instanceof DuplicateStatementException) {
+            LOGGER.logWarn("the received message was already inserted. the message was skipped."
+                    + " request id = [" + requestId + "]", e);
+            return;
+        }
+        BatchInsertSettings batchInsertSettings = getBatchInsertSettings();
+        String errorSqlId = batchInsertSettings == null ? null : batchInsertSettings.getErrorSqlId();
+        if (errorSqlId == null) {
+            throw e;
+        }
+        LOGGER.logWarn("failed to insert a received message. the message was inserted into the error table."
+                + " request id = [" + requestId + "], sql id = [" + errorSqlId + "]", e);
+        AppDbConnection connection = DbConnectionContext.getConnection(getSettings().getDbTransactionName());
+        ParameterizedSqlPStatement statement = connection.prepareParameterizedSqlStatementBySqlId(
+                getSettings().getSqlFilePackage() + '.' + requestId + '#' + errorSqlId);
+        if (form instanceof Map) {
+            statement.executeUpdateByMap((Map<String, ?>) form);
+        } else {
+            statement.executeUpdateByObject(form);
+        }
+    }
+
     /**
      * {@inheritDoc}
      * 本実装では、{@link DataReader}の生成は行わない。
@@ -94,17 +846,151 @@ public class AsyncMessageReceiveAction extends BatchAction<RequestMessage> {
 
     /**
      * 業務用の受信テーブルに受信電文を登録する。
+     * <p/>
+     * 登録対象がパラメータのMap(Formクラスを使用しない登録)の場合は、{@link ParameterizedSqlPStatement#executeUpdateByMap(Map)}で登録する。
      *
      * @param requestId リクエストID
      * @param form 登録対象の電文を持ったオブジェクト
      */
+    @SuppressWarnings("unchecked")
     protected void insertMessageTable(String requestId, Object form) {
         AppDbConnection connection = DbConnectionContext.getConnection(
                 getSettings().getDbTransactionName());
-        ParameterizedSqlPStatement statement = connection
-                .prepareParameterizedSqlStatementBySqlId(getSqlResource(
-                        requestId));
-        statement.executeUpdateByObject(form);
+        ParameterizedSqlPStatement statement = prepareInsertStatement(connection, requestId);
+        if (form instanceof Map) {
+            statement.executeUpdateByMap((Map<String, ?>) form);
+        } else {
+            statement.executeUpdateByObject(form);
+        }
+    }
+
+    /**
+     * 登録対象をバッチに追加する。
+     *
+     * @param statement INSERT文
+     * @param form 登録対象の電文を持ったオブジェクト(又はパラメータのMap)
+     */
+    @SuppressWarnings("unchecked")
+    private static void addBatch(ParameterizedSqlPStatement statement, Object form) {
+        if (form instanceof Map) {
+            statement.addBatchMap((Map<String, ?>) form);
+        } else {
+            statement.addBatchObject(form);
+        }
+    }
+
+    /**
+     * リクエストIDに対応する受信テーブルへのINSERT文を取得する。
+     * <p/>
+     * 生成したINSERT文は、スレッド毎にリクエストID単位でキャッシュする。
+     * キャッシュはデータベース接続に紐付き、データベース接続が切り替わった場合は破棄する。
+     * また、キャッシュ件数が{@link #MAX_STATEMENT_CACHE_SIZE}に達した場合は、最も長く使用されていないINSERT文を破棄する。
+     * (破棄したINSERT文は、データベース接続の終了時にクローズされる)
+     *
+     * @param connection データベース接続
+     * @param requestId リクエストID
+     * @return INSERT文
+     */
+    private ParameterizedSqlPStatement prepareInsertStatement(AppDbConnection connection, String requestId) {
+        StatementCache cache = statementCache.get();
+        if (cache == null || cache.connection != connection) {
+            cache = new StatementCache(connection);
+            statementCache.set(cache);
+        }
+        ParameterizedSqlPStatement statement = cache.get(requestId);
+        if (statement == null || statement.isClosed()) {
+            statement = connection.prepareParameterizedSqlStatementBySqlId(getSqlResource(requestId));
+            cache.put(requestId, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * 受信テーブルにINSERTを行うための登録対象を生成する。
+     * <p/>
+     * Formクラスを使用しない登録の対象のリクエストIDの場合はパラメータのMapを、
+     * それ以外の場合はFormオブジェクトを生成する。
+     *
+     * @param requestId リクエストID
+     * @param message リクエストメッセージ
+     * @param receivedSequence 受信電文連番(nullの場合は採番する)
+     * @return 登録対象
+     */
+    private Object createInsertParameter(String requestId, RequestMessage message, String receivedSequence) {
+        DirectBindingSettings settings = getDirectBindingSettings();
+        if (settings == null
+                || (!settings.getRequestIds().isEmpty() && !settings.getRequestIds().contains(requestId))) {
+            return receivedSequence == null ? createForm(requestId, message)
+                                            : createForm(requestId, message, receivedSequence);
+        }
+        return createParameters(settings, requestId, message,
+                receivedSequence == null ? generateReceivedSequence() : receivedSequence);
+    }
+
+    /**
+     * 受信電文のレコードから、INSERT文のパラメータのMapを生成する。
+     * <p/>
+     * レコードの各項目に加え、受信電文連番及び共通項目を設定で指定されたパラメータ名で設定する。
+     *
+     * @param settings Formクラスを使用しない登録の設定
+     * @param requestId リクエストID
+     * @param message リクエストメッセージ
+     * @param receivedSequence 受信電文連番
+     * @return パラメータのMap
+     */
+    private Map<String, Object> createParameters(DirectBindingSettings settings, String requestId,
+            RequestMessage message, String receivedSequence) {
+        DataRecord record = message.getRecordOf(settings.getRecordType());
+        if (record == null) {
+            throw new IllegalStateException("record was not found in the received message."
+                    + " request id = [" + requestId + "], record type = [" + settings.getRecordType() + "]");
+        }
+        return createParameters(settings, record, receivedSequence);
+    }
+
+    /**
+     * レコードから、INSERT文のパラメータのMapを生成する。
+     * <p/>
+     * レコードの内容は複製せず、パラメータ名の索引({@link ParameterIndex})に従って
+     * 受信電文連番及び共通項目の値を優先して返し、それ以外はレコードの値を返すMapを生成する。
+     *
+     * @param settings Formクラスを使用しない登録の設定
+     * @param record レコード
+     * @param receivedSequence 受信電文連番
+     * @return パラメータのMap
+     */
+    private Map<String, Object> createParameters(DirectBindingSettings settings, DataRecord record,
+            String receivedSequence) {
+        ParameterIndex index = getParameterIndex(settings);
+        Object[] values = new Object[ParameterIndex.SIZE];
+        values[ParameterIndex.RECEIVED_SEQUENCE] = receivedSequence;
+        values[ParameterIndex.USER_ID] = ThreadContext.getUserId();
+        values[ParameterIndex.REQUEST_ID] = ThreadContext.getRequestId();
+        values[ParameterIndex.EXECUTION_ID] = ThreadContext.getExecutionId();
+        if (index.usesCurrentDateTime) {
+            values[ParameterIndex.CURRENT_DATE_TIME] = SystemTimeUtil.getTimestamp();
+        }
+        if (index.usesCurrentDate) {
+            values[ParameterIndex.CURRENT_DATE] = SystemTimeUtil.getDateString();
+        }
+        return new BindingParameters(index, values, record);
+    }
+
+    /**
+     * Formクラスを使用しない登録の設定に対応するパラメータ名の索引を取得する。
+     * <p/>
+     * 索引は設定オブジェクト単位に1度だけ生成し、設定オブジェクトが切り替わった場合は再生成する。
+     *
+     * @param settings Formクラスを使用しない登録の設定
+     * @return パラメータ名の索引
+     */
+    private ParameterIndex getParameterIndex(DirectBindingSettings settings) {
+        ParameterIndex index = parameterIndex;
+        if (index == null || index.settings != settings) {
+            index = new ParameterIndex(settings);
+            parameterIndex = index;
+        }
+        return index;
     }
 
     /**
@@ -118,43 +1004,63 @@ public class AsyncMessageReceiveAction extends BatchAction<RequestMessage> {
      * <li>受信電文連番:{@link String}</li>
      * <li>受信メッセージ:{@link RequestMessage}</li>
      * </oi>
+     * <p/>
+     * Formクラスのコンストラクタは、Formクラス名単位に1度だけ解決しキャッシュする。
      *
      * @param requestId リクエストID
      * @param message リクエストメッセージ
      * @return 生成したFormオブジェクト
      */
     protected Object createForm(String requestId, RequestMessage message) {
-        String formPackage = getSettings().getFormClassPackage();
-        String className = formPackage + '.' + requestId + getSettings()
-                .getFormClassSuffix();
-        try {
-            Class<?> clazz = Class.forName(className);
-            Constructor<?> constructor = clazz.getConstructor(
-                    String.class, RequestMessage.class);
-            return constructor.newInstance(generateReceivedSequence(), message);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(String.format("form class was not found."
-                    + " form class name = %s", className), e);
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException(String.format(
-                    "required constructor was not found. "
-                            + "required constructor:first parameter is String,"
-                            + " second parameter is RequestMessage. form class name = %s",
-                    className),
-                    e);
-        } catch (InvocationTargetException e) {
-            throw new RuntimeException(String.format(
-                    "failed to create form instance. form class name = %s",
-                    className), e);
-        } catch (InstantiationException e) {
-            throw new RuntimeException(String.format(
-                    "failed to create form instance. form class name = %s",
-                    className), e);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(String.format(
-                    "failed to create form instance. form class name = %s",
-                    className), e);
+        return createForm(requestId, message, null);
+    }
+
+    /**
+     * 受信テーブルにINSERTを行うためのFormオブジェクトを生成する。
+     * <p/>
+     * 受信電文連番を指定した場合はその値を、nullの場合は採番した値をFormオブジェクトの受信電文連番とする。
+     * ジャーナルに追記された電文の登録時は、追記時に採番した受信電文連番を指定して呼び出される。
+     * Formオブジェクトの生成方法を変更する場合は、本メソッドをオーバーライドすること。
+     *
+     * @param requestId リクエストID
+     * @param message リクエストメッセージ
+     * @param receivedSequence 受信電文連番(nullの場合は採番する)
+     * @return 生成したFormオブジェクト
+     */
+    protected Object createForm(String requestId, RequestMessage message, String receivedSequence) {
+        FormFactory factory = getFormFactory(requestId);
+        // 受信電文連番を無駄に採番しないよう、採番前にコンストラクタの解決結果を確認する。
+        factory.assertAvailable();
+        return factory.create(receivedSequence == null ? generateReceivedSequence() : receivedSequence, message);
+    }
+
+    /**
+     * リクエストIDに対応するFormファクトリを取得する。
+     * <p/>
+     * Formファクトリは、リクエストID単位にキャッシュする。
+     * Formクラス名は、キャッシュに存在しない場合にのみ設定オブジェクトから組み立てるため、
+     * キャッシュ後に設定オブジェクトのFormクラスのパッケージやサフィックスを変更しても反映されない。
+     * Formクラスやコンストラクタが存在しない場合も、エラーを送出するFormファクトリをキャッシュする。
+     * ただし、存在しないリクエストIDは受信電文の内容によって際限なく増える可能性があるため、
+     * キャッシュ件数が{@link #MAX_FORM_FACTORY_CACHE_SIZE}に達した後はキャッシュしない。
+     *
+     * @param requestId リクエストID
+     * @return Formファクトリ
+     */
+    private FormFactory getFormFactory(String requestId) {
+        FormFactory factory = formFactoryCache.get(requestId);
+        if (factory == null) {
+            AsyncMessageReceiveActionSettings settings = getSettings();
+            factory = FormFactory.of(settings.getFormClassPackage() + '.' + requestId
+                    + settings.getFormClassSuffix());
+            if (factory.isAvailable() || formFactoryCache.size() < MAX_FORM_FACTORY_CACHE_SIZE) {
+                FormFactory cached = formFactoryCache.putIfAbsent(requestId, factory);
+                if (cached != null) {
+                    factory = cached;
+                }
+            }
         }
+        return factory;
     }
 
     /**
@@ -185,6 +1091,114 @@ public class AsyncMessageReceiveAction extends BatchAction<RequestMessage> {
         return SystemRepository.get(ACTION_SETTINGS_KEY);
     }
 
+    /**
+     * 完了ラグを計測するモニタを取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から"queueLagMonitor"という名前の
+     * コンポーネントを取得する。設定されていない場合はnullを返す。
+     *
+     * @return 完了ラグを計測するモニタ
+     */
+    protected QueueLagMonitor getQueueLagMonitor() {
+        return SystemRepository.get(QUEUE_LAG_MONITOR_KEY);
+    }
+
+    /**
+     * 受信テーブルへの登録処理の同時処理数を制御するクラスを取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から"concurrencyLimiter"という名前の
+     * コンポーネントを取得する。設定されていない場合はnullを返す。
+     *
+     * @return 同時処理数を制御するクラス
+     */
+    protected AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return SystemRepository.get(CONCURRENCY_LIMITER_KEY);
+    }
+
+    /**
+     * 処理済みの電文を検出するクラスを取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から"receivedMessageDeduplicator"という名前の
+     * コンポーネントを取得する。設定されていない場合はnullを返す(処理済みの電文の検出は行わない)。
+     *
+     * @return 処理済みの電文を検出するクラス
+     */
+    protected ReceivedMessageDeduplicator getReceivedMessageDeduplicator() {
+        return SystemRepository.get(DEDUPLICATOR_KEY);
+    }
+
+    /**
+     * 受信電文のジャーナルを取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から"messageJournal"という名前の
+     * コンポーネントを取得する。設定されていない場合はnullを返す(ジャーナルは使用しない)。
+     *
+     * @return 受信電文のジャーナル
+     */
+    protected MessageJournal getMessageJournal() {
+        return SystemRepository.get(MESSAGE_JOURNAL_KEY);
+    }
+
+    /**
+     * 受信電文をバッチ登録する場合の設定を取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から"batchInsertSettings"という名前の
+     * コンポーネントを取得する。設定されていない場合はnullを返す(バッチ登録は行わない)。
+     *
+     * @return バッチ登録設定
+     */
+    protected BatchInsertSettings getBatchInsertSettings() {
+        return SystemRepository.get(BATCH_INSERT_SETTINGS_KEY);
+    }
+
+    /**
+     * Formクラスを使用しない登録の設定を取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から"directBindingSettings"という名前の
+     * コンポーネントを取得する。設定されていない場合はnullを返す(Formクラスを使用して登録する)。
+     *
+     * @return Formクラスを使用しない登録の設定
+     */
+    protected DirectBindingSettings getDirectBindingSettings() {
+        return SystemRepository.get(DIRECT_BINDING_SETTINGS_KEY);
+    }
+
+    /**
+     * 複数レコードの電文の登録設定を取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から"multiRecordInsertSettings"という名前の
+     * コンポーネントを取得する。設定されていない場合はnullを返す(1電文を1レコードとして登録する)。
+     *
+     * @return 複数レコードの電文の登録設定
+     */
+    protected MultiRecordInsertSettings getMultiRecordInsertSettings() {
+        return SystemRepository.get(MULTI_RECORD_INSERT_SETTINGS_KEY);
+    }
+
+    /**
+     * メッセージの属性設定を取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から"messagePropertySettings"という名前の
+     * コンポーネントを取得する。設定されていない場合はnullを返す(リクエストIDは電文のヘッダ部から取得する)。
+     *
+     * @return メッセージの属性設定
+     */
+    protected MessagePropertySettings getMessagePropertySettings() {
+        return SystemRepository.get(MESSAGE_PROPERTY_SETTINGS_KEY);
+    }
+
+    /**
+     * リクエストID単位に同時処理数の上限を設けるバルクヘッドを取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から"requestBulkhead"という名前の
+     * コンポーネントを取得する。設定されていない場合はnullを返す。
+     *
+     * @return リクエストID単位のバルクヘッド
+     */
+    protected RequestBulkhead getRequestBulkhead() {
+        return SystemRepository.get(REQUEST_BULKHEAD_KEY);
+    }
+
     /**
      * 電文を受信テーブルに登録するためのINSERT文を表すSQLリソースを取得する。
      * <p/>
@@ -201,5 +1215,293 @@ public class AsyncMessageReceiveAction extends BatchAction<RequestMessage> {
         return getSettings().getSqlFilePackage() + '.' + requestId
                 + "#INSERT_MESSAGE";
     }
-}
 
+    /**
+     * データベース接続に紐付くINSERT文のキャッシュ。
+     * <p/>
+     * リクエストIDをキーとし、キャッシュ件数が上限値に達した場合は最も長く使用されていないINSERT文を破棄する。
+     */
+    private static final class StatementCache extends LinkedHashMap<String, ParameterizedSqlPStatement> {
+
+        /** キャッシュが紐付くデータベース接続 */
+        private final AppDbConnection connection;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param connection キャッシュが紐付くデータベース接続
+         */
+        private StatementCache(AppDbConnection connection) {
+            super(16, 0.75f, true);
+            this.connection = connection;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ParameterizedSqlPStatement> eldest) {
+            return size() > MAX_STATEMENT_CACHE_SIZE;
+        }
+    }
+
+    /**
+     * Formクラスのコンストラクタ(String, RequestMessage)を呼び出してFormオブジェクトを生成するクラス。
+     * <p/>
+     * コンストラクタの解決は生成時に1度だけ行い、以降は{@link MethodHandle}を用いて呼び出す。
+     * コンストラクタを解決できなかった場合は、{@link #assertAvailable()}の呼び出し時に
+     * 解決時のエラーを原因とする例外を送出する。
+     */
+    private static final class FormFactory {
+
+        /** Formクラスのコンストラクタの型 */
+        private static final MethodType CONSTRUCTOR_TYPE =
+                MethodType.methodType(void.class, String.class, RequestMessage.class);
+
+        /** Formクラス名 */
+        private final String className;
+
+        /** Formクラスのコンストラクタ。解決できなかった場合はnull */
+        private final MethodHandle constructor;
+
+        /** コンストラクタ解決時のエラーメッセージ */
+        private final String errorMessage;
+
+        /** コンストラクタ解決時のエラー */
+        private final Throwable error;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param className Formクラス名
+         * @param constructor Formクラスのコンストラクタ
+         * @param errorMessage コンストラクタ解決時のエラーメッセージ
+         * @param error コンストラクタ解決時のエラー
+         */
+        private FormFactory(String className, MethodHandle constructor, String errorMessage, Throwable error) {
+            this.className = className;
+            this.constructor = constructor;
+            this.errorMessage = errorMessage;
+            this.error = error;
+        }
+
+        /**
+         * Formクラス名に対応するFormファクトリを生成する。
+         *
+         * @param className Formクラス名
+         * @return Formファクトリ
+         */
+        static FormFactory of(String className) {
+            try {
+                Class<?> clazz = Class.forName(className);
+                MethodHandle constructor = MethodHandles.publicLookup()
+                        .findConstructor(clazz, CONSTRUCTOR_TYPE)
+                        .asType(MethodType.methodType(Object.class, String.class, RequestMessage.class));
+                return new FormFactory(className, constructor, null, null);
+            } catch (ClassNotFoundException e) {
+                return new FormFactory(className, null, String.format("form class was not found."
+                        + " form class name = %s", className), e);
+            } catch (NoSuchMethodException e) {
+                return new FormFactory(className, null, String.format(
+                        "required constructor was not found. "
+                                + "required constructor:first parameter is String,"
+                                + " second parameter is RequestMessage. form class name = %s",
+                        className), e);
+            } catch (IllegalAccessException e) {
+                return new FormFactory(className, null, String.format(
+                        "failed to create form instance. form class name = %s",
+                        className), e);
+            }
+        }
+
+        /**
+         * コンストラクタを解決できたか否か。
+         *
+         * @return 解決できた場合はtrue
+         */
+        boolean isAvailable() {
+            return constructor != null;
+        }
+
+        /**
+         * コンストラクタを解決できたことを確認する。
+         *
+         * @throws RuntimeException コンストラクタを解決できなかった場合
+         */
+        void assertAvailable() {
+            if (constructor == null) {
+                throw new RuntimeException(errorMessage, error);
+            }
+        }
+
+        /**
+         * Formオブジェクトを生成する。
+         * <p/>
+         * コンストラクタで発生した例外は、{@link RuntimeException}でラップして送出する。
+         * {@link Error}はラップせずにそのまま送出する。
+         *
+         * @param receivedSequence 受信電文連番
+         * @param message リクエストメッセージ
+         * @return 生成したFormオブジェクト
+         */
+        Object create(String receivedSequence, RequestMessage message) {
+            assertAvailable();
+            try {
+                return (Object) constructor.invokeExact(receivedSequence, message);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(String.format(
+                        "failed to create form instance. form class name = %s",
+                        className), e);
+            }
+        }
+    }
+
+    /**
+     * Formクラスを使用しない登録で、受信電文連番及び共通項目を設定するパラメータ名の索引。
+     * <p/>
+     * パラメータ名から値の格納位置を引けるよう、設定オブジェクトの内容から1度だけ生成する。
+     * 同じパラメータ名が複数の項目に指定された場合は、後に設定した項目(システム日付が最優先)の値とする。
+     */
+    private static final class ParameterIndex {
+
+        /** 受信電文連番の格納位置 */
+        private static final int RECEIVED_SEQUENCE = 0;
+
+        /** ユーザIDの格納位置 */
+        private static final int USER_ID = 1;
+
+        /** リクエストIDの格納位置 */
+        private static final int REQUEST_ID = 2;
+
+        /** 実行時IDの格納位置 */
+        private static final int EXECUTION_ID = 3;
+
+        /** システム日時の格納位置 */
+        private static final int CURRENT_DATE_TIME = 4;
+
+        /** システム日付の格納位置 */
+        private static final int CURRENT_DATE = 5;
+
+        /** 格納位置の数 */
+        private static final int SIZE = 6;
+
+        /** 索引の生成元の設定オブジェクト */
+        private final DirectBindingSettings settings;
+
+        /** パラメータ名をキーとする値の格納位置 */
+        private final Map<String, Integer> positions = new LinkedHashMap<String, Integer>();
+
+        /** システム日時を使用するか否か */
+        private final boolean usesCurrentDateTime;
+
+        /** システム日付を使用するか否か */
+        private final boolean usesCurrentDate;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param settings Formクラスを使用しない登録の設定
+         */
+        private ParameterIndex(DirectBindingSettings settings) {
+            this.settings = settings;
+            positions.put(settings.getReceivedSequenceParameterName(), RECEIVED_SEQUENCE);
+            putAll(settings.getUserIdParameterNames(), USER_ID);
+            putAll(settings.getRequestIdParameterNames(), REQUEST_ID);
+            putAll(settings.getExecutionIdParameterNames(), EXECUTION_ID);
+            putAll(settings.getCurrentDateTimeParameterNames(), CURRENT_DATE_TIME);
+            putAll(settings.getCurrentDateParameterNames(), CURRENT_DATE);
+            usesCurrentDateTime = positions.containsValue(CURRENT_DATE_TIME);
+            usesCurrentDate = positions.containsValue(CURRENT_DATE);
+        }
+
+        /**
+         * 指定されたパラメータ名の全てに格納位置を設定する。
+         *
+         * @param names パラメータ名のリスト
+         * @param position 格納位置
+         */
+        private void putAll(List<String> names, int position) {
+            for (String name : names) {
+                positions.put(name, position);
+            }
+        }
+    }
+
+    /**
+     * Formクラスを使用しない登録で、INSERT文に設定するパラメータのMap。
+     * <p/>
+     * 索引に含まれるパラメータ名は受信電文連番及び共通項目の値を、それ以外のパラメータ名はレコードの値を返す。
+     * レコードの内容は複製しない。
+     */
+    private static final class BindingParameters extends AbstractMap<String, Object> {
+
+        /** パラメータ名の索引 */
+        private final ParameterIndex index;
+
+        /** 受信電文連番及び共通項目の値 */
+        private final Object[] values;
+
+        /** レコード */
+        private final DataRecord record;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param index パラメータ名の索引
+         * @param values 受信電文連番及び共通項目の値
+         * @param record レコード
+         */
+        private BindingParameters(ParameterIndex index, Object[] values, DataRecord record) {
+            this.index = index;
+            this.values = values;
+            this.record = record;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer position = index.positions.get(key);
+            return position == null ? record.get(key) : values[position];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return index.positions.containsKey(key) || record.containsKey(key);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p/>
+         * 全ての項目を列挙する場合のみ、レコードの値と受信電文連番及び共通項目の値を合わせたMapを生成する。
+         */
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            Map<String, Object> parameters = new LinkedHashMap<String, Object>(record);
+            for (Map.Entry<String, Integer> entry : index.positions.entrySet()) {
+                parameters.put(entry.getKey(), values[entry.getValue()]);
+            }
+            return parameters.entrySet();
+        }
+    }
+
+    /**
+     * 完了ラグの計測待ちの電文。
+     */
+    private static final class PendingLag {
+
+        /** 受信したキューの論理名 */
+        private final String destination;
+
+        /** 送信日時 */
+        private final long sentAt;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param destination 受信したキューの論理名
+         * @param sentAt 送信日時
+         */
+        private PendingLag(String destination, long sentAt) {
+            this.destination = destination;
+            this.sentAt = sentAt;
+        }
+    }
+}
@@ -1,10 +1,21 @@
 package nablarch.fw.messaging.action;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import nablarch.core.ThreadContext;
 import nablarch.core.dataformat.DataRecordFormatter;
 import nablarch.core.dataformat.FormatterFactory;
 import nablarch.core.db.connection.AppDbConnection;
@@ -19,10 +30,12 @@ import nablarch.fw.DataReader;
 import nablarch.fw.ExecutionContext;
 import nablarch.fw.Result;
 import nablarch.fw.action.BatchAction;
+import nablarch.fw.handler.LoopHandler;
 import nablarch.fw.launcher.CommandLine;
 import nablarch.fw.messaging.FwHeader;
 import nablarch.fw.messaging.MessagingContext;
 import nablarch.fw.messaging.SendingMessage;
+import nablarch.fw.messaging.provider.JmsMessagingProvider.Context.JmsHeaderName;
 import nablarch.fw.reader.DatabaseRecordReader;
 
 /**
@@ -49,20 +62,64 @@ public class AsyncMessageSendAction extends BatchAction<SqlRow> {
     /** システムリポジトリ上の設定クラスの格納キー値 */
     private static final String ACTION_SETTINGS_KEY = "asyncMessageSendActionSettings";
     
+    /** システムリポジトリ上のステータスのバッチ更新設定の格納キー値 */
+    private static final String BATCH_STATUS_UPDATE_SETTINGS_KEY = "batchStatusUpdateSettings";
+
+    /** ステータスの更新待ちのインプットデータを保持するリクエストスコープ変数名 */
+    private static final String PENDING_UPDATES_KEY = "nablarch_async-message-send_pending-updates";
+
+    /** システムリポジトリ上の電文のまとめ送信設定の格納キー値 */
+    private static final String TELEGRAM_PACKING_SETTINGS_KEY = "telegramPackingSettings";
+
+    /** 送信待ちの電文を保持するリクエストスコープ変数名 */
+    private static final String PENDING_TELEGRAMS_KEY = "nablarch_async-message-send_pending-telegrams";
+
+    /** システムリポジトリ上の送信用テーブルのレコードの占有設定の格納キー値 */
+    private static final String CLAIMING_SEND_SETTINGS_KEY = "claimingSendSettings";
+
+    /** システムリポジトリ上の送信対象データの振り分け設定の格納キー値 */
+    private static final String PARTITIONED_SEND_SETTINGS_KEY = "partitionedSendSettings";
+
+    /** システムリポジトリ上の複数メッセージリクエストIDの送信設定の格納キー値 */
+    private static final String MULTI_REQUEST_SEND_SETTINGS_KEY = "multiRequestSendSettings";
+
+    /** システムリポジトリ上のメッセージの属性設定の格納キー値 */
+    private static final String MESSAGE_PROPERTY_SETTINGS_KEY = "messagePropertySettings";
+
+    /** システムリポジトリ上の最新データのみの送信設定の格納キー値 */
+    private static final String COALESCING_SEND_SETTINGS_KEY = "coalescingSendSettings";
+
+    /** システムリポジトリ上の配信日時指定の送信設定の格納キー値 */
+    private static final String SCHEDULED_DELIVERY_SETTINGS_KEY = "scheduledDeliverySettings";
+
     /** 電文フォーマット定義ファイルのサフィックス */
     private static final String LAYOUT_FILE_NAME_SUFFIX = "_SEND";
 
-    /** Formクラスのインスタンスを生成するためのコンストラクタ */
-    private Constructor<?> formConstructor;
+    /** Formクラス名をキーとした、Formクラスのインスタンスを生成するためのコンストラクタ */
+    private final ConcurrentMap<String, Constructor<?>> formConstructors = new ConcurrentHashMap<String, Constructor<?>>();
 
     /** 送信メッセージのメッセージリクエストID */
     private String sendMessageRequestId;
-    
+
+    /** 送信対象データを読み込むデータリーダ(最新データのみの送信設定がある場合) */
+    private volatile CoalescingDataReader coalescingDataReader;
+
+    /** ヘッダ部のフォーマット定義ファイル */
+    private volatile File headerLayoutFile;
+
+    /** メッセージリクエストIDをキーとしたデータ部のフォーマット定義ファイル */
+    private final ConcurrentMap<String, File> dataLayoutFiles = new ConcurrentHashMap<String, File>();
+
+    /** ヘッダ部に設定する項目 */
+    private volatile String[] headerItems;
 
     /**
      * 初期処理を行う。
      * <p/>
      * 起動引数から送信対象のメッセージのリクエストIDを取得し、保持する。
+     * <p/>
+     * {@link #getMultiRequestSendSettings()}が複数メッセージリクエストIDの送信設定を返す場合、
+     * 起動引数のメッセージリクエストIDは使用しない(指定不要)。
      */
     @Override
     protected void initialize(CommandLine command, ExecutionContext context) { // SUPPRESS CHECKSTYLE @OverrideでJavaDocは継承されるので除外
@@ -77,24 +134,164 @@ public class AsyncMessageSendAction extends BatchAction<SqlRow> {
      * <ol>
      * <li>ヘッダ部は、{@link #createHeaderRecord(nablarch.core.db.statement.SqlRow)}で生成する。</li>
      * <li>業務データ部は、インプットデータ(本メソッドの引数)をそのまま使用する。</li>
-     * <li>送信先のキューは、{@link #getQueueName()}から取得する。</li>
+     * <li>送信先のキューは、{@link #getQueueName(String)}から取得する。</li>
      * </ol>
+     * 複数メッセージリクエストIDの送信設定がある場合、業務データ部のフォーマット及び送信先のキューは、
+     * インプットデータを読み込んだメッセージリクエストID毎に解決する。
+     * <p/>
+     * {@link #getMessagePropertySettings()}がメッセージの属性設定を返す場合、
+     * メッセージリクエストID及びレイアウトのバージョンをメッセージの属性として設定する。
+     * <p/>
+     * {@link #getTelegramPackingSettings()}が電文のまとめ送信設定を返す場合、インプットデータは
+     * メッセージリクエストID毎の送信待ちの電文に業務データ部のレコードとして追加し、
+     * 電文は{@link TelegramPackingSettings}に従ってまとめて送信する。
+     * <p/>
+     * {@link #getScheduledDeliverySettings()}が配信日時指定の送信設定を返す場合、インプットデータの配信日時を
+     * メッセージの配信日時ヘッダに設定する。(まとめて送信する電文には、配信日時が同じインプットデータのみを格納する。)
      */
     @Override // SUPPRESS CHECKSTYLE @OverrideでJavaDocは継承されるので除外
     public Result handle(SqlRow inputData, ExecutionContext ctx) { // SUPPRESS CHECKSTYLE @OverrideでJavaDocは継承されるので除外
+        String messageRequestId = getMessageRequestId(inputData);
+        TelegramPackingSettings telegramPackingSettings = getTelegramPackingSettings();
+        if (telegramPackingSettings != null) {
+            addToTelegram(inputData, messageRequestId, telegramPackingSettings, ctx);
+            return new Result.Success();
+        }
+
+        SendingMessage message = createMessage(inputData, messageRequestId);
+        message.addRecord(inputData);
+        MessagingContext context = MessagingContext.getInstance();
+        context.send(message);
+
+        return new Result.Success();
+    }
+
+    /**
+     * ヘッダ部を設定し、業務データ部のフォーマッタを設定したメッセージオブジェクトを生成する。
+     *
+     * @param inputData ヘッダ部を生成するインプットデータ
+     * @param messageRequestId メッセージリクエストID
+     * @return メッセージオブジェクト
+     */
+    private SendingMessage createMessage(SqlRow inputData, String messageRequestId) {
         SendingMessage message = new SendingMessage();
 
         message.setFormatter(createHeaderRecordFormatter());
         message.addRecord(createHeaderRecord(inputData));
 
-        message.setFormatter(createDataRecordFormatter());
-        message.addRecord(inputData);
+        message.setFormatter(createDataRecordFormatter(messageRequestId));
 
-        message.setDestination(getQueueName());
-        MessagingContext context = MessagingContext.getInstance();
-        context.send(message);
+        message.setDestination(getQueueName(messageRequestId));
+        MessagePropertySettings messagePropertySettings = getMessagePropertySettings();
+        if (messagePropertySettings != null) {
+            message.setHeader(messagePropertySettings.getRequestIdPropertyName(), messageRequestId);
+            String layoutVersion = messagePropertySettings.getLayoutVersions().get(messageRequestId);
+            if (layoutVersion != null) {
+                message.setHeader(messagePropertySettings.getLayoutVersionPropertyName(), layoutVersion);
+            }
+        }
+        Object deliveryTime = getDeliveryTime(inputData);
+        if (deliveryTime != null) {
+            message.setHeader(JmsHeaderName.DELIVERY_TIME, deliveryTime);
+        }
+        return message;
+    }
 
-        return new Result.Success();
+    /**
+     * インプットデータの配信日時を取得する。
+     *
+     * @param inputData インプットデータ
+     * @return 配信日時(配信日時指定の送信設定が無い場合や、配信日時カラムの値がnullの場合はnull)
+     */
+    private Object getDeliveryTime(SqlRow inputData) {
+        ScheduledDeliverySettings scheduledDeliverySettings = getScheduledDeliverySettings();
+        if (scheduledDeliverySettings == null) {
+            return null;
+        }
+        return inputData.get(scheduledDeliverySettings.getDeliveryTimeColumnName());
+    }
+
+    /**
+     * インプットデータを送信待ちの電文に追加する。
+     * <p/>
+     * 送信待ちの電文は、リクエストスコープ(1トランザクションの処理中に共有される領域)にメッセージリクエストID毎に保持する。
+     * 追加すると最大バイト数を超える場合や、インプットデータの配信日時が送信待ちの電文の配信日時と異なる場合は、
+     * 追加前に送信待ちの電文を送信する。
+     * (最大バイト数は、インプットデータを送信待ちの電文に書き込んだ上で判定し、超えた場合は書き込みを取り消す。)
+     * また、追加後にレコード数が最大レコード数に達した場合、及びトランザクションのコミット直前
+     * ({@link LoopHandler#isAboutToCommit(ExecutionContext)}がtrue)の場合は、送信待ちの電文を送信する。
+     *
+     * @param inputData インプットデータ
+     * @param messageRequestId メッセージリクエストID
+     * @param settings 電文のまとめ送信設定
+     * @param ctx 実行コンテキスト
+     */
+    private void addToTelegram(SqlRow inputData, String messageRequestId, TelegramPackingSettings settings,
+            ExecutionContext ctx) {
+        Map<String, PackedTelegram> pendingTelegrams = ctx.getRequestScopedVar(PENDING_TELEGRAMS_KEY);
+        if (pendingTelegrams == null) {
+            pendingTelegrams = new LinkedHashMap<String, PackedTelegram>();
+            ctx.setRequestScopedVar(PENDING_TELEGRAMS_KEY, pendingTelegrams);
+        }
+        PackedTelegram telegram = pendingTelegrams.get(messageRequestId);
+        if (telegram != null && !isSameDeliveryTime(telegram.deliveryTime, getDeliveryTime(inputData))) {
+            pendingTelegrams.remove(messageRequestId);
+            MessagingContext.getInstance().send(telegram.message);
+            telegram = null;
+        }
+        if (telegram != null && !telegram.add(inputData, settings.getMaxBytes())) {
+            pendingTelegrams.remove(messageRequestId);
+            MessagingContext.getInstance().send(telegram.message);
+            telegram = null;
+        }
+        if (telegram == null) {
+            telegram = new PackedTelegram(createMessage(inputData, messageRequestId), getDeliveryTime(inputData));
+            pendingTelegrams.put(messageRequestId, telegram);
+            telegram.add(inputData, 0);
+        }
+        if (telegram.recordCount >= settings.getMaxRecords()) {
+            pendingTelegrams.remove(messageRequestId);
+            MessagingContext.getInstance().send(telegram.message);
+        }
+        if (LoopHandler.isAboutToCommit(ctx) && !pendingTelegrams.isEmpty()) {
+            List<PackedTelegram> telegrams = new ArrayList<PackedTelegram>(pendingTelegrams.values());
+            pendingTelegrams.clear();
+            for (PackedTelegram pending : telegrams) {
+                MessagingContext.getInstance().send(pending.message);
+            }
+        }
+    }
+
+    /**
+     * 配信日時が同じか否か。
+     * <p/>
+     * 日時({@link java.util.Date})とエポックミリ秒の数値は、エポックミリ秒に変換して比較する。
+     *
+     * @param deliveryTime 配信日時
+     * @param other 比較対象の配信日時
+     * @return 配信日時が同じ(共にnullの場合を含む)場合はtrue
+     */
+    private static boolean isSameDeliveryTime(Object deliveryTime, Object other) {
+        if (deliveryTime == null || other == null) {
+            return deliveryTime == other;
+        }
+        return toEpochMillis(deliveryTime).equals(toEpochMillis(other));
+    }
+
+    /**
+     * 配信日時をエポックミリ秒に変換する。
+     *
+     * @param deliveryTime 配信日時
+     * @return エポックミリ秒(日時及び数値以外の場合は、配信日時をそのまま返す)
+     */
+    private static Object toEpochMillis(Object deliveryTime) {
+        if (deliveryTime instanceof Date) {
+            return ((Date) deliveryTime).getTime();
+        }
+        if (deliveryTime instanceof Number) {
+            return ((Number) deliveryTime).longValue();
+        }
+        return deliveryTime;
     }
 
     /**
@@ -104,10 +301,38 @@ public class AsyncMessageSendAction extends BatchAction<SqlRow> {
      * <p/>
      * ステータスを更新するSQL文は、{@link #getSqlResource()}で取得した
      * SQLリソース内に記述されたSQL_ID=UPDATE_NORMAL_ENDを使用する。
+     * <p/>
+     * {@link #getBatchStatusUpdateSettings()}がバッチ更新設定を返す場合、インプットデータは更新待ちとして保持し、
+     * バッチサイズに達した時点またはトランザクションのコミット直前
+     * ({@link LoopHandler#isAboutToCommit(ExecutionContext)}がtrue)の場合に、
+     * {@link #updateStatusInBatch(List, String)}でまとめて更新する。
+     * <p/>
+     * 最新データのみの送信設定がある場合は、インプットデータにより置き換えられた(送信しなかった)古いデータのステータスも
+     * 処理済みに更新する。
      */
     @Override
     public void transactionNormalEnd(SqlRow inputData, ExecutionContext ctx) { // SUPPRESS CHECKSTYLE @OverrideでJavaDocは継承されるので除外
-        updateStatus(inputData, "UPDATE_NORMAL_END");
+        List<SqlRow> supersededRows = removeSupersededRows(inputData);
+        BatchStatusUpdateSettings batchStatusUpdateSettings = getBatchStatusUpdateSettings();
+        if (batchStatusUpdateSettings == null) {
+            updateStatus(inputData, "UPDATE_NORMAL_END");
+            if (!supersededRows.isEmpty()) {
+                updateStatusInBatch(supersededRows, "UPDATE_NORMAL_END");
+            }
+            return;
+        }
+        List<SqlRow> pendingUpdates = ctx.getRequestScopedVar(PENDING_UPDATES_KEY);
+        if (pendingUpdates == null) {
+            pendingUpdates = new ArrayList<SqlRow>();
+            ctx.setRequestScopedVar(PENDING_UPDATES_KEY, pendingUpdates);
+        }
+        pendingUpdates.add(inputData);
+        pendingUpdates.addAll(supersededRows);
+        if (pendingUpdates.size() >= batchStatusUpdateSettings.getBatchSize() || LoopHandler.isAboutToCommit(ctx)) {
+            List<SqlRow> inputDataList = new ArrayList<SqlRow>(pendingUpdates);
+            pendingUpdates.clear();
+            updateStatusInBatch(inputDataList, "UPDATE_NORMAL_END");
+        }
     }
 
     /**
@@ -119,10 +344,47 @@ public class AsyncMessageSendAction extends BatchAction<SqlRow> {
      * <p/>
      * ステータスを更新するSQL文は、{@link #getSqlResource()}で取得した
      * SQLリソース内に記述されたSQL_ID=UPDATE_ABNORMAL_ENDを使用する。
+     * <p/>
+     * 更新待ちのインプットデータを保持している場合、それらの送信はロールバックされたトランザクションに含まれるため、
+     * 更新待ちのインプットデータは破棄する(次回の対象データ抽出時に再度送信対象となる)。
+     * 同様に、送信待ちの電文も破棄する。
+     * <p/>
+     * 最新データのみの送信設定がある場合は、インプットデータにより置き換えられた古いデータのステータスもエラーに更新する。
+     * <p/>
+     * ステータスのバッチ更新で更新件数が1件とならなかったことによる異常終了の場合は、
+     * インプットデータではなく、更新件数が1件とならなかったデータのステータスをエラーに更新する
+     * (更新件数の確認は行わない)。インプットデータ及び置き換えられた古いデータは、次回の対象データ抽出時に再度送信対象となる。
      */
     @Override
     public void transactionAbnormalEnd(Throwable e, SqlRow inputData, ExecutionContext ctx) { // SUPPRESS CHECKSTYLE @OverrideでJavaDocは継承されるので除外
+        List<SqlRow> pendingUpdates = ctx.getRequestScopedVar(PENDING_UPDATES_KEY);
+        if (pendingUpdates != null) {
+            pendingUpdates.clear();
+        }
+        Map<String, PackedTelegram> pendingTelegrams = ctx.getRequestScopedVar(PENDING_TELEGRAMS_KEY);
+        if (pendingTelegrams != null) {
+            pendingTelegrams.clear();
+        }
+        List<SqlRow> supersededRows = removeSupersededRows(inputData);
+        if (e instanceof StatusUpdateException) {
+            executeStatusUpdate(((StatusUpdateException) e).inputData, "UPDATE_ABNORMAL_END");
+            return;
+        }
         updateStatus(inputData, "UPDATE_ABNORMAL_END");
+        if (!supersededRows.isEmpty()) {
+            updateStatusInBatch(supersededRows, "UPDATE_ABNORMAL_END");
+        }
+    }
+
+    /**
+     * インプットデータにより置き換えられた古いデータを取得する。
+     *
+     * @param inputData インプットデータ
+     * @return 置き換えられたデータ(最新データのみの送信設定が無い場合は空のリスト)
+     */
+    private List<SqlRow> removeSupersededRows(SqlRow inputData) {
+        CoalescingDataReader reader = coalescingDataReader;
+        return reader == null ? Collections.<SqlRow>emptyList() : reader.removeSupersededRows(inputData);
     }
 
     /**
@@ -131,18 +393,13 @@ public class AsyncMessageSendAction extends BatchAction<SqlRow> {
      * 指定されたインプットデータ、SQL_IDを元にステータスを更新する。
      * ステータスを更新するためのFormクラスは、nablarch.fw.messaging.action.AsyncMessageSendActionSettings#getFormClassName()
      * から取得したFormクラスを使用して行う。
+     * (複数メッセージリクエストIDの送信設定でFormクラス名が指定されている場合は、そのFormクラスを使用する。)
      *
      * @param inputData インプットデータ
      * @param sqlId SQL_ID
      */
     protected void updateStatus(SqlRow inputData, String sqlId) {
-        Object instance = createFormInstance(inputData);
-        AppDbConnection connection = DbConnectionContext.getConnection(
-                getTransactionName());
-        ParameterizedSqlPStatement statement = connection
-                .prepareParameterizedSqlStatementBySqlId(
-                        getSqlResource() + '#' + sqlId);
-        int updateCount = statement.executeUpdateByObject(instance);
+        int updateCount = executeStatusUpdate(inputData, sqlId);
         if (updateCount != 1) {
             throw new IllegalStateException(
                     "update data was not single record. updated record count = "
@@ -150,16 +407,222 @@ public class AsyncMessageSendAction extends BatchAction<SqlRow> {
         }
     }
 
+    /**
+     * ステータスを更新し、更新件数を返す。
+     *
+     * @param inputData インプットデータ
+     * @param sqlId SQL_ID
+     * @return 更新件数
+     */
+    private int executeStatusUpdate(SqlRow inputData, String sqlId) {
+        String messageRequestId = getMessageRequestId(inputData);
+        Object instance = createFormInstance(messageRequestId, inputData);
+        AppDbConnection connection = DbConnectionContext.getConnection(
+                getTransactionName());
+        ParameterizedSqlPStatement statement = connection
+                .prepareParameterizedSqlStatementBySqlId(
+                        getSqlResource(messageRequestId) + '#' + sqlId);
+        return statement.executeUpdateByObject(instance);
+    }
+
+    /**
+     * ステータスをバッチ更新する。
+     * <p/>
+     * 指定されたインプットデータ毎に{@link #updateStatus(SqlRow, String)}と同じFormクラスを生成し、
+     * JDBCのバッチ更新でまとめて更新する。
+     * 複数メッセージリクエストIDの送信設定がある場合は、メッセージリクエストID毎にバッチ更新を行う。
+     * <p/>
+     * インプットデータ毎の更新件数が1件とならなかった場合は、そのインプットデータをメッセージに含めた
+     * {@link IllegalStateException}を送出する。
+     * ただし、JDBCドライバが更新件数を返さない場合({@link Statement#SUCCESS_NO_INFO})は、そのインプットデータの更新件数の確認は行わない。
+     *
+     * @param inputDataList インプットデータのリスト
+     * @param sqlId SQL_ID
+     */
+    protected void updateStatusInBatch(List<SqlRow> inputDataList, String sqlId) {
+        Map<String, List<SqlRow>> inputDataByRequestId = new LinkedHashMap<String, List<SqlRow>>();
+        for (SqlRow inputData : inputDataList) {
+            String messageRequestId = getMessageRequestId(inputData);
+            List<SqlRow> list = inputDataByRequestId.get(messageRequestId);
+            if (list == null) {
+                list = new ArrayList<SqlRow>();
+                inputDataByRequestId.put(messageRequestId, list);
+            }
+            list.add(inputData);
+        }
+        for (Map.Entry<String, List<SqlRow>> entry : inputDataByRequestId.entrySet()) {
+            updateStatusInBatch(entry.getKey(), entry.getValue(), sqlId);
+        }
+    }
+
+    /**
+     * 指定されたメッセージリクエストIDのステータスをバッチ更新する。
+     *
+     * @param messageRequestId メッセージリクエストID
+     * @param inputDataList インプットデータのリスト
+     * @param sqlId SQL_ID
+     */
+    private void updateStatusInBatch(String messageRequestId, List<SqlRow> inputDataList, String sqlId) {
+        AppDbConnection connection = DbConnectionContext.getConnection(
+                getTransactionName());
+        ParameterizedSqlPStatement statement = connection
+                .prepareParameterizedSqlStatementBySqlId(
+                        getSqlResource(messageRequestId) + '#' + sqlId);
+        for (SqlRow inputData : inputDataList) {
+            statement.addBatchObject(createFormInstance(messageRequestId, inputData));
+        }
+        int[] updateCounts = statement.executeBatch();
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] != 1 && updateCounts[i] != Statement.SUCCESS_NO_INFO) {
+                throw new StatusUpdateException(inputDataList.get(i),
+                        "update data was not single record. updated record count = " + updateCounts[i]
+                                + ", message request id = " + messageRequestId
+                                + ", input data = " + inputDataList.get(i));
+            }
+        }
+    }
+
+    /**
+     * バッチ更新で更新件数が1件とならなかったインプットデータを保持する例外。
+     */
+    private static final class StatusUpdateException extends IllegalStateException {
+
+        /** 更新件数が1件とならなかったインプットデータ */
+        private final SqlRow inputData;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param inputData 更新件数が1件とならなかったインプットデータ
+         * @param message メッセージ
+         */
+        private StatusUpdateException(SqlRow inputData, String message) {
+            super(message);
+            this.inputData = inputData;
+        }
+    }
+
     /**
      * 送信対象のデータを抽出するための{@link nablarch.fw.reader.DatabaseRecordReader}を生成する。
      * {@link nablarch.fw.reader.DatabaseRecordReader}生成時に指定する{@link SqlPStatement}は、
      * #createStatement()により生成する。
+     * <p/>
+     * {@link #getClaimingSendSettings()}が占有設定を返す場合は、
+     * {@link nablarch.fw.reader.DatabaseRecordReader}の代わりに{@link ClaimingSendDataReader}を使用する。
+     * 占有者には、本メソッドの呼び出し毎に生成したUUIDを使用する。
+     * <p/>
+     * {@link #getPartitionedSendSettings()}が振り分け設定を返す場合は、
+     * {@link nablarch.fw.reader.DatabaseRecordReader}を{@link KeyPartitionedDataReader}でラップして返す。
+     * パーティション数は、{@link ThreadContext#getConcurrentNumber()}(マルチスレッド実行制御ハンドラのスレッド数)となる。
+     * <p/>
+     * {@link #getMultiRequestSendSettings()}が複数メッセージリクエストIDの送信設定を返す場合は、
+     * メッセージリクエストID毎に上記のリーダを生成し、各リーダから1件ずつ順番に読み込むリーダを返す。
+     * <p/>
+     * {@link #getCoalescingSendSettings()}が最新データのみの送信設定を返す場合は、上記のリーダを
+     * {@link CoalescingDataReader}でラップする(振り分け設定がある場合は、振り分け前にラップする)。
+     * キー値には、設定されたキー項目の値に加えてメッセージリクエストIDを含める。
      */
     @Override // SUPPRESS CHECKSTYLE @OverrideでJavaDocは継承されるので除外
     public DataReader<SqlRow> createReader(ExecutionContext ctx) { // SUPPRESS CHECKSTYLE @OverrideでJavaDocは継承されるので除外
-        DatabaseRecordReader reader = new DatabaseRecordReader();
-        reader.setStatement(createStatement());
-        return reader;
+        DataReader<SqlRow> reader;
+        MultiRequestSendSettings multiRequestSendSettings = getMultiRequestSendSettings();
+        if (multiRequestSendSettings == null) {
+            reader = createReader(sendMessageRequestId);
+        } else {
+            Map<String, DataReader<SqlRow>> readers = new LinkedHashMap<String, DataReader<SqlRow>>();
+            for (String messageRequestId : multiRequestSendSettings.getMessageRequestIds()) {
+                readers.put(messageRequestId, createReader(messageRequestId));
+            }
+            reader = new RequestIdRotatingDataReader(readers);
+        }
+        CoalescingSendSettings coalescingSendSettings = getCoalescingSendSettings();
+        if (coalescingSendSettings == null) {
+            coalescingDataReader = null;
+        } else {
+            coalescingDataReader = new CoalescingDataReader(reader, coalescingSendSettings.getKeyColumnNames(),
+                    coalescingSendSettings.getWindowSize()) {
+                @Override
+                protected List<Object> keyOf(SqlRow row) {
+                    List<Object> key = super.keyOf(row);
+                    key.add(getMessageRequestId(row));
+                    return key;
+                }
+            };
+            reader = coalescingDataReader;
+        }
+        PartitionedSendSettings partitionedSendSettings = getPartitionedSendSettings();
+        if (partitionedSendSettings == null) {
+            return reader;
+        }
+        return new KeyPartitionedDataReader(reader, partitionedSendSettings.getKeyColumnName(),
+                ThreadContext.getConcurrentNumber(), partitionedSendSettings.getMaxBufferedRows());
+    }
+
+    /**
+     * 指定されたメッセージリクエストIDの送信対象データを読み込むデータリーダを生成する。
+     *
+     * @param messageRequestId メッセージリクエストID
+     * @return データリーダ
+     */
+    private DataReader<SqlRow> createReader(String messageRequestId) {
+        ClaimingSendSettings claimingSendSettings = getClaimingSendSettings();
+        if (claimingSendSettings == null) {
+            DatabaseRecordReader databaseRecordReader = new DatabaseRecordReader();
+            databaseRecordReader.setStatement(isSendMessageRequestId(messageRequestId)
+                    ? createStatement() : createStatement(messageRequestId));
+            return databaseRecordReader;
+        }
+        return new ClaimingSendDataReader(claimingSendSettings.getDbTransactionManager(),
+                getSqlResource(messageRequestId), claimingSendSettings.getKeyColumnName(),
+                UUID.randomUUID().toString(), claimingSendSettings.getChunkSize(), claimingSendSettings.getLeaseTime());
+    }
+
+    /**
+     * 複数メッセージリクエストIDの送信設定を取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から設定を取得する。
+     * リポジトリに設定されていない場合は{@code null}を返し、起動引数で指定したメッセージリクエストIDのみを送信する。
+     *
+     * @return 複数メッセージリクエストIDの送信設定
+     */
+    protected MultiRequestSendSettings getMultiRequestSendSettings() {
+        return SystemRepository.get(MULTI_REQUEST_SEND_SETTINGS_KEY);
+    }
+
+    /**
+     * 最新データのみの送信設定を取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から設定を取得する。
+     * リポジトリに設定されていない場合は{@code null}を返し、全ての送信対象データを送信する。
+     *
+     * @return 最新データのみの送信設定
+     */
+    protected CoalescingSendSettings getCoalescingSendSettings() {
+        return SystemRepository.get(COALESCING_SEND_SETTINGS_KEY);
+    }
+
+    /**
+     * 送信用テーブルのレコードの占有設定を取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から占有設定を取得する。
+     * リポジトリに設定されていない場合は{@code null}を返す。
+     *
+     * @return 占有設定
+     */
+    protected ClaimingSendSettings getClaimingSendSettings() {
+        return SystemRepository.get(CLAIMING_SEND_SETTINGS_KEY);
+    }
+
+    /**
+     * 送信対象データの振り分け設定を取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から振り分け設定を取得する。
+     * リポジトリに設定されていない場合は{@code null}を返す。
+     *
+     * @return 振り分け設定
+     */
+    protected PartitionedSendSettings getPartitionedSendSettings() {
+        return SystemRepository.get(PARTITIONED_SEND_SETTINGS_KEY);
     }
 
     /**
@@ -174,10 +637,20 @@ public class AsyncMessageSendAction extends BatchAction<SqlRow> {
      * @return {@link SqlPStatement}
      */
     protected SqlPStatement createStatement() {
+        return createStatement(sendMessageRequestId);
+    }
+
+    /**
+     * 指定されたメッセージリクエストIDのインプットデータを抽出するための{@link SqlPStatement}を生成する。
+     *
+     * @param messageRequestId メッセージリクエストID
+     * @return {@link SqlPStatement}
+     */
+    private SqlPStatement createStatement(String messageRequestId) {
         AppDbConnection connection = DbConnectionContext.getConnection(
                 getTransactionName());
         return connection.prepareStatementBySqlId(
-                getSqlResource()
+                getSqlResource(messageRequestId)
                         + "#SELECT_SEND_DATA");
     }
 
@@ -193,6 +666,21 @@ public class AsyncMessageSendAction extends BatchAction<SqlRow> {
         return getSettings().getSqlFilePackage() + '.' + sendMessageRequestId;
     }
 
+    /**
+     * 指定されたメッセージリクエストIDのSQLリソース名称を取得する。
+     * <p/>
+     * 起動引数で指定したメッセージリクエストIDの場合は、{@link #getSqlResource()}の値を返す。
+     *
+     * @param messageRequestId メッセージリクエストID
+     * @return SQLリソース名称
+     */
+    protected String getSqlResource(String messageRequestId) {
+        if (isSendMessageRequestId(messageRequestId)) {
+            return getSqlResource();
+        }
+        return getSettings().getSqlFilePackage() + '.' + messageRequestId;
+    }
+
     /**
      * 本アクションを実行するために必要となる設定値を保持するオブジェクトを取得する。
      * <p/>
@@ -204,18 +692,34 @@ public class AsyncMessageSendAction extends BatchAction<SqlRow> {
         return SystemRepository.get(ACTION_SETTINGS_KEY);
     }
 
+    /**
+     * ステータスのバッチ更新設定を取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})からバッチ更新設定を取得する。
+     * リポジトリに設定されていない場合は{@code null}を返し、ステータスは1レコード毎に更新される。
+     *
+     * @return バッチ更新設定
+     */
+    protected BatchStatusUpdateSettings getBatchStatusUpdateSettings() {
+        return SystemRepository.get(BATCH_STATUS_UPDATE_SETTINGS_KEY);
+    }
+
     /**
      * ヘッダ部のフォーマットを生成する。
      * <p/>
      * ヘッダ部を表すフォーマット定義ファイル名は、{@link #getHeaderFormatName()}より取得する。
+     * フォーマッタの生成方法は、{@link #createFormatter(File)}を参照。
      *
      * @return 生成したフォーマッタ
      */
     protected DataRecordFormatter createHeaderRecordFormatter() {
-        FormatterFactory formatterFactory = FormatterFactory.getInstance();
-        return formatterFactory.createFormatter(
-                FilePathSetting.getInstance().getFileWithoutCreate(
-                        getFormatDir(), getHeaderFormatName()));
+        File layoutFile = headerLayoutFile;
+        if (layoutFile == null) {
+            layoutFile = FilePathSetting.getInstance().getFileWithoutCreate(
+                    getFormatDir(), getHeaderFormatName());
+            headerLayoutFile = layoutFile;
+        }
+        return createFormatter(layoutFile);
     }
 
     /**
@@ -250,26 +754,124 @@ public class AsyncMessageSendAction extends BatchAction<SqlRow> {
      */
     protected Map<String, Object> createHeaderRecord(SqlRow inputData) {
         FwHeader fwHeader = new FwHeader();
-        fwHeader.setRequestId(sendMessageRequestId);
+        fwHeader.setRequestId(getMessageRequestId(inputData));
 
-        List<String> itemList = getSettings().getHeaderItemList();
-        for (String item : itemList) {
+        for (String item : getHeaderItems()) {
             Object data = inputData.get(item);
             fwHeader.put(item, data);
         }
         return fwHeader;
     }
 
+    /**
+     * ヘッダ部に設定する項目を取得する。
+     * <p/>
+     * nablarch.fw.messaging.action.AsyncMessageSendActionSettings#getHeaderItemList()から取得した項目を、
+     * 初回呼び出し時に配列に変換して保持する。
+     *
+     * @return ヘッダ部に設定する項目
+     */
+    private String[] getHeaderItems() {
+        String[] items = headerItems;
+        if (items == null) {
+            List<String> itemList = getSettings().getHeaderItemList();
+            items = itemList.toArray(new String[itemList.size()]);
+            headerItems = items;
+        }
+        return items;
+    }
+
     /**
      * データ部のフォーマッタ生成する。
+     * <p/>
+     * フォーマッタの生成方法は、{@link #createFormatter(File)}を参照。
      *
      * @return 生成したフォーマッタ
      */
     protected DataRecordFormatter createDataRecordFormatter() {
-        FormatterFactory formatterFactory = FormatterFactory.getInstance();
-        return formatterFactory.createFormatter(
-                FilePathSetting.getInstance().getFileWithoutCreate(getFormatDir(),
-                        sendMessageRequestId + LAYOUT_FILE_NAME_SUFFIX));
+        return createFormatter(getDataLayoutFile(sendMessageRequestId));
+    }
+
+    /**
+     * 指定されたメッセージリクエストIDのデータ部のフォーマッタを生成する。
+     * <p/>
+     * 起動引数で指定したメッセージリクエストIDの場合は、{@link #createDataRecordFormatter()}で生成する。
+     *
+     * @param messageRequestId メッセージリクエストID
+     * @return 生成したフォーマッタ
+     */
+    protected DataRecordFormatter createDataRecordFormatter(String messageRequestId) {
+        if (isSendMessageRequestId(messageRequestId)) {
+            return createDataRecordFormatter();
+        }
+        return createFormatter(getDataLayoutFile(messageRequestId));
+    }
+
+    /**
+     * 指定されたメッセージリクエストIDのデータ部のフォーマット定義ファイルを取得する。
+     * <p/>
+     * フォーマット定義ファイルは、メッセージリクエストID単位に保持する。
+     *
+     * @param messageRequestId メッセージリクエストID
+     * @return フォーマット定義ファイル
+     */
+    private File getDataLayoutFile(String messageRequestId) {
+        File layoutFile = dataLayoutFiles.get(messageRequestId);
+        if (layoutFile == null) {
+            layoutFile = FilePathSetting.getInstance().getFileWithoutCreate(getFormatDir(),
+                    messageRequestId + LAYOUT_FILE_NAME_SUFFIX);
+            dataLayoutFiles.put(messageRequestId, layoutFile);
+        }
+        return layoutFile;
+    }
+
+    /**
+     * 指定されたフォーマット定義ファイルのフォーマッタを生成する。
+     * <p/>
+     * フォーマッタは{@link FormatterFactory}を使用して生成する。
+     * フォーマット定義ファイルの解析結果をキャッシュする場合は、{@link FormatterCache}をリポジトリに設定すること。
+     *
+     * @param layoutFile フォーマット定義ファイル
+     * @return 生成したフォーマッタ
+     */
+    private DataRecordFormatter createFormatter(File layoutFile) {
+        return FormatterFactory.getInstance().createFormatter(layoutFile);
+    }
+
+    /**
+     * 電文のまとめ送信設定を取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から設定を取得する。
+     * リポジトリに設定されていない場合は{@code null}を返し、インプットデータ毎に電文を送信する。
+     *
+     * @return 電文のまとめ送信設定
+     */
+    protected TelegramPackingSettings getTelegramPackingSettings() {
+        return SystemRepository.get(TELEGRAM_PACKING_SETTINGS_KEY);
+    }
+
+    /**
+     * 配信日時指定の送信設定を取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から設定を取得する。
+     * リポジトリに設定されていない場合は{@code null}を返し、メッセージに配信日時を設定しない。
+     *
+     * @return 配信日時指定の送信設定
+     */
+    protected ScheduledDeliverySettings getScheduledDeliverySettings() {
+        return SystemRepository.get(SCHEDULED_DELIVERY_SETTINGS_KEY);
+    }
+
+    /**
+     * メッセージの属性設定を取得する。
+     * <p/>
+     * デフォルト動作では、リポジトリ({@link SystemRepository})から設定を取得する。
+     * リポジトリに設定されていない場合は{@code null}を返し、メッセージに属性を設定しない。
+     *
+     * @return メッセージの属性設定
+     */
+    protected MessagePropertySettings getMessagePropertySettings() {
+        return SystemRepository.get(MESSAGE_PROPERTY_SETTINGS_KEY);
     }
 
     /**
@@ -281,6 +883,26 @@ public class AsyncMessageSendAction extends BatchAction<SqlRow> {
         return getSettings().getQueueName();
     }
 
+    /**
+     * 指定されたメッセージリクエストIDの送信キュー名を取得する。
+     * <p/>
+     * 複数メッセージリクエストIDの送信設定でキュー名が指定されている場合はその値を、
+     * 指定されていない場合は{@link #getQueueName()}の値を返す。
+     *
+     * @param messageRequestId メッセージリクエストID
+     * @return 送信キュー名
+     */
+    protected String getQueueName(String messageRequestId) {
+        MultiRequestSendSettings multiRequestSendSettings = getMultiRequestSendSettings();
+        if (multiRequestSendSettings != null) {
+            String queueName = multiRequestSendSettings.getQueueNames().get(messageRequestId);
+            if (queueName != null) {
+                return queueName;
+            }
+        }
+        return getQueueName();
+    }
+
     /**
      * フォーマット定義ファイルの配置ディレクトリを示す論理名を取得する。
      *
@@ -293,19 +915,55 @@ public class AsyncMessageSendAction extends BatchAction<SqlRow> {
 
     /**
      * 送信用一時テーブルを更新するためのFormオブジェクトを生成する。
+     * <p/>
+     * Formクラスのコンストラクタは初回呼び出し時に取得して保持する。
+     * マルチスレッドで送信する場合に競合しないよう、本メソッドは同期化しない。
+     *
+     * @param inputData Formインスタンスを生成するためのインプットデータ
+     * @return 生成したFormクラスのインスタンス
+     */
+    protected Object createFormInstance(Map<String, ?> inputData) {
+        return newFormInstance(getSettings().getFormClassName(), inputData);
+    }
+
+    /**
+     * 指定されたメッセージリクエストIDの送信用一時テーブルを更新するためのFormオブジェクトを生成する。
+     * <p/>
+     * 複数メッセージリクエストIDの送信設定でFormクラス名が指定されている場合はそのFormクラスを、
+     * 指定されていない場合は{@link #createFormInstance(Map)}で生成する。
+     *
+     * @param messageRequestId メッセージリクエストID
+     * @param inputData Formインスタンスを生成するためのインプットデータ
+     * @return 生成したFormクラスのインスタンス
+     */
+    private Object createFormInstance(String messageRequestId, Map<String, ?> inputData) {
+        MultiRequestSendSettings multiRequestSendSettings = getMultiRequestSendSettings();
+        if (multiRequestSendSettings != null) {
+            String className = multiRequestSendSettings.getFormClassNames().get(messageRequestId);
+            if (className != null) {
+                return newFormInstance(className, inputData);
+            }
+        }
+        return createFormInstance(inputData);
+    }
+
+    /**
+     * 指定されたFormクラスのインスタンスを生成する。
      *
+     * @param className Formクラス名
      * @param inputData Formインスタンスを生成するためのインプットデータ
      * @return 生成したFormクラスのインスタンス
      */
-    protected synchronized Object createFormInstance(Map<String, ?> inputData) {
-        String className = getSettings().getFormClassName();
+    private Object newFormInstance(String className, Map<String, ?> inputData) {
         try {
-            if (formConstructor == null) {
+            Constructor<?> constructor = formConstructors.get(className);
+            if (constructor == null) {
                 Class<?> clazz = Class.forName(
                         className);
-                formConstructor = clazz.getConstructor(Map.class);
+                constructor = clazz.getConstructor(Map.class);
+                formConstructors.put(className, constructor);
             }
-            return formConstructor.newInstance(inputData);
+            return constructor.newInstance(inputData);
         } catch (ClassNotFoundException e) {
             throw new RuntimeException(String.format("form class was not found."
                     + " form class name = %s", className), e);
@@ -339,5 +997,157 @@ public class AsyncMessageSendAction extends BatchAction<SqlRow> {
         return getSettings().getTransactionName();
     }
 
+    /**
+     * 起動引数で指定したメッセージリクエストIDか否か。
+     *
+     * @param messageRequestId メッセージリクエストID
+     * @return 起動引数で指定したメッセージリクエストIDの場合はtrue
+     */
+    private boolean isSendMessageRequestId(String messageRequestId) {
+        return messageRequestId == null ? sendMessageRequestId == null : messageRequestId.equals(sendMessageRequestId);
+    }
+
+    /**
+     * インプットデータを読み込んだメッセージリクエストIDを取得する。
+     *
+     * @param inputData インプットデータ
+     * @return メッセージリクエストID
+     */
+    private String getMessageRequestId(SqlRow inputData) {
+        if (inputData instanceof RequestIdSqlRow) {
+            return ((RequestIdSqlRow) inputData).messageRequestId;
+        }
+        return sendMessageRequestId;
+    }
+
+    /**
+     * 送信待ちの電文。
+     */
+    private static final class PackedTelegram {
+
+        /** メッセージオブジェクト */
+        private final SendingMessage message;
+
+        /** 業務データ部のレコード数 */
+        private int recordCount;
+
+        /** 配信日時(配信日時を指定しない場合はnull) */
+        private final Object deliveryTime;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param message ヘッダ部を設定したメッセージオブジェクト
+         * @param deliveryTime 配信日時
+         */
+        private PackedTelegram(SendingMessage message, Object deliveryTime) {
+            this.message = message;
+            this.deliveryTime = deliveryTime;
+        }
+
+        /**
+         * 業務データ部のレコードを追加する。
+         * <p/>
+         * レコードを書き込んだ結果、電文のバイト数が最大バイト数を超えた場合は、書き込んだレコードを取り消して追加しない。
+         * ただし、レコードが1件も格納されていない場合は、最大バイト数を超えても追加する。
+         *
+         * @param record レコード
+         * @param maxBytes 最大バイト数(0の場合は制限なし)
+         * @return 追加した場合はtrue
+         */
+        private boolean add(SqlRow record, int maxBytes) {
+            ByteArrayOutputStream body = message.getBodyStream();
+            int before = body.size();
+            message.addRecord(record);
+            if (maxBytes > 0 && recordCount > 0 && body.size() > maxBytes) {
+                byte[] bytes = body.toByteArray();
+                body.reset();
+                body.write(bytes, 0, before);
+                message.getRecords().remove(message.getRecords().size() - 1);
+                return false;
+            }
+            recordCount++;
+            return true;
+        }
+    }
+
+    /**
+     * 読み込んだメッセージリクエストIDを保持するインプットデータ。
+     */
+    private static final class RequestIdSqlRow extends SqlRow {
+
+        /** メッセージリクエストID */
+        private final String messageRequestId;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param orig 読み込んだインプットデータ
+         * @param messageRequestId メッセージリクエストID
+         */
+        private RequestIdSqlRow(SqlRow orig, String messageRequestId) {
+            super(orig);
+            this.messageRequestId = messageRequestId;
+        }
+    }
+
+    /**
+     * メッセージリクエストID毎のデータリーダから、1件ずつ順番に読み込むデータリーダ。
+     * <p/>
+     * 読み込むデータが無くなったデータリーダは読み飛ばす。
+     */
+    private static final class RequestIdRotatingDataReader implements DataReader<SqlRow> {
+
+        /** メッセージリクエストIDのリスト */
+        private final List<String> messageRequestIds;
+
+        /** データリーダのリスト */
+        private final List<DataReader<SqlRow>> readers;
+
+        /** 次に読み込むデータリーダのインデックス */
+        private int next;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param readers メッセージリクエストIDをキーとしたデータリーダ
+         */
+        private RequestIdRotatingDataReader(Map<String, DataReader<SqlRow>> readers) {
+            messageRequestIds = new ArrayList<String>(readers.keySet());
+            this.readers = new ArrayList<DataReader<SqlRow>>(readers.values());
+        }
+
+        /** {@inheritDoc} */
+        public synchronized SqlRow read(ExecutionContext ctx) {
+            for (int i = 0; i < readers.size(); i++) {
+                int index = next;
+                next = (next + 1) % readers.size();
+                DataReader<SqlRow> reader = readers.get(index);
+                if (reader.hasNext(ctx)) {
+                    SqlRow row = reader.read(ctx);
+                    return row == null ? null : new RequestIdSqlRow(row, messageRequestIds.get(index));
+                }
+            }
+            return null;
+        }
+
+        /** {@inheritDoc} */
+        public synchronized boolean hasNext(ExecutionContext ctx) {
+            for (DataReader<SqlRow> reader : readers) {
+                if (reader.hasNext(ctx)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        public synchronized void close(ExecutionContext ctx) {
+            for (DataReader<SqlRow> reader : readers) {
+                reader.close(ctx);
+            }
+        }
+    }
+
 }
 
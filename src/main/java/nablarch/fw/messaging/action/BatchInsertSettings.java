@@ -0,0 +1,84 @@
+package nablarch.fw.messaging.action;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link AsyncMessageReceiveAction}で受信電文をバッチ登録する場合の設定を保持するクラス。
+ * <p/>
+ * システムリポジトリ上に"batchInsertSettings"という名前で本クラスを設定した場合、
+ * {@link AsyncMessageReceiveAction}は受信電文をリクエストID単位にJDBCのバッチ更新で登録する。
+ * バッチ更新はバッチサイズに達した時点、及びトランザクションのコミット直前に実行される。
+ * このため、コミット間隔を指定したループ制御ハンドラ({@link nablarch.fw.handler.LoopHandler})と組み合わせて使用すること。
+ * ({@link nablarch.fw.handler.LoopHandler}が後続のハンドラに存在しない場合は、初期処理でエラーとなる)
+ * <p/>
+ * バッチ更新でエラーとなった電文(一意制約違反を除く)は、エラー電文登録用のSQL_IDが設定されている場合に
+ * エラーテーブルに登録し、他の電文の登録を継続する。
+ * 設定されていない場合は例外を送出し、トランザクションをロールバックする。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="batchInsertSettings" class="nablarch.fw.messaging.action.BatchInsertSettings">
+ *   <property name="batchSize" value="100" />
+ *   <property name="errorSqlId" value="INSERT_ERROR_MESSAGE" />
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class BatchInsertSettings {
+
+    /** バッチサイズ */
+    private int batchSize = 100;
+
+    /** エラー電文登録用のSQL_ID */
+    private String errorSqlId;
+
+    /**
+     * バッチサイズを取得する。
+     *
+     * @return バッチサイズ
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * バッチサイズを設定する。
+     * 明示的に指定しなかった場合のデフォルトは100件となる。
+     *
+     * @param batchSize バッチサイズ
+     * @return このオブジェクト自体
+     */
+    public BatchInsertSettings setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than 0. batchSize = " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * エラー電文登録用のSQL_IDを取得する。
+     *
+     * @return エラー電文登録用のSQL_ID(設定されていない場合はnull)
+     */
+    public String getErrorSqlId() {
+        return errorSqlId;
+    }
+
+    /**
+     * エラー電文登録用のSQL_IDを設定する。
+     * <p/>
+     * SQL文は、受信テーブルへのINSERT文(INSERT_MESSAGE)と同じSQLリソースに定義すること。
+     * SQL文のパラメータには、受信テーブルへのINSERT文と同じFormオブジェクト(又はパラメータのMap)が設定される。
+     * 明示的に指定しなかった場合は、バッチ更新のエラーを送出してトランザクションをロールバックする。
+     *
+     * @param errorSqlId エラー電文登録用のSQL_ID
+     * @return このオブジェクト自体
+     */
+    public BatchInsertSettings setErrorSqlId(String errorSqlId) {
+        this.errorSqlId = errorSqlId;
+        return this;
+    }
+}
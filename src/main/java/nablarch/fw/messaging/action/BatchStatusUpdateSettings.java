@@ -0,0 +1,51 @@
+package nablarch.fw.messaging.action;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link AsyncMessageSendAction}で送信済みレコードのステータスをバッチ更新する場合の設定を保持するクラス。
+ * <p/>
+ * システムリポジトリ上に"batchStatusUpdateSettings"という名前で本クラスを設定した場合、
+ * {@link AsyncMessageSendAction}は送信済みレコードのステータス(SQL_ID=UPDATE_NORMAL_END)をJDBCのバッチ更新で更新する。
+ * バッチ更新はバッチサイズに達した時点、及びトランザクションのコミット直前に実行される。
+ * このため、コミット間隔を指定したループ制御ハンドラ({@link nablarch.fw.handler.LoopHandler})と組み合わせて使用すること。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="batchStatusUpdateSettings" class="nablarch.fw.messaging.action.BatchStatusUpdateSettings">
+ *   <property name="batchSize" value="100" />
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class BatchStatusUpdateSettings {
+
+    /** バッチサイズ */
+    private int batchSize = 100;
+
+    /**
+     * バッチサイズを取得する。
+     *
+     * @return バッチサイズ
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * バッチサイズを設定する。
+     * 明示的に指定しなかった場合のデフォルトは100件となる。
+     *
+     * @param batchSize バッチサイズ
+     * @return このオブジェクト自体
+     */
+    public BatchStatusUpdateSettings setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than 0. batchSize = " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+}
@@ -0,0 +1,233 @@
+package nablarch.fw.messaging.action;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import nablarch.common.idgenerator.IdFormatter;
+import nablarch.common.idgenerator.IdGenerator;
+import nablarch.core.util.annotation.Published;
+
+/**
+ * 採番値をブロック単位に確保し、メモリ上から払い出す採番クラス。
+ * <p/>
+ * {@link #setBlockNumberGenerator(IdGenerator)}で指定した採番クラスでブロック番号を採番し、
+ * ブロック番号nに対して「(n - 1) * ブロックサイズ + 1」から「n * ブロックサイズ」までの値を確保する。
+ * 確保した値は、ブロックを使い切るまでデータベースにアクセスせずに払い出す。
+ * ブロック番号は採番テーブル等で一意に採番されるため、複数のJVMから使用した場合でも採番値は重複しない。
+ * <p/>
+ * プロセスを再起動した場合、確保済みで未使用の値は欠番となる。
+ * このため、欠番が許容される採番対象(受信電文連番など)にのみ使用すること。
+ * また、使用開始後にブロックサイズを変更すると採番値が重複する可能性があるため、
+ * ブロックサイズを変更する場合はブロック番号の採番テーブルも合わせて初期化すること。
+ * <p/>
+ * ブロック番号の採番クラスには、業務トランザクションとは別のトランザクションで採番結果を確定する実装
+ * (nablarch.common.idgenerator.FastTableIdGeneratorなど)を使用すること。
+ * <p/>
+ * {@link AsyncMessageReceiveAction}で使用する場合の設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="asyncMessageReceiveActionSettings"
+ *     class="nablarch.fw.messaging.action.AsyncMessageReceiveActionSettings">
+ *   <property name="receivedSequenceGenerator">
+ *     <component class="nablarch.fw.messaging.action.BlockAllocatingIdGenerator">
+ *       <property name="blockNumberGenerator" ref="idGenerator" />
+ *       <property name="defaultBlockSize" value="1000" />
+ *     </component>
+ *   </property>
+ *   <!-- その他の設定は省略 -->
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class BlockAllocatingIdGenerator implements IdGenerator {
+
+    /** ブロック番号の採番クラス */
+    private IdGenerator blockNumberGenerator;
+
+    /** 個別にブロックサイズを設定していない採番対象IDのブロックサイズ */
+    private int defaultBlockSize = 100;
+
+    /** 採番対象ID毎のブロックサイズ */
+    private Map<String, Integer> blockSizes = new HashMap<String, Integer>();
+
+    /** 採番対象ID毎の払い出し中のブロック */
+    private final ConcurrentMap<String, AtomicReference<Block>> blocks =
+            new ConcurrentHashMap<String, AtomicReference<Block>>();
+
+    /**
+     * {@inheritDoc}
+     */
+    public String generateId(String id) {
+        return generateId(id, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 払い出し中のブロックに未使用の値が残っていない場合は、新たなブロックを確保する。
+     */
+    public String generateId(String id, IdFormatter formatter) {
+        String no = String.valueOf(nextValue(id));
+        return formatter == null ? no : formatter.format(id, no);
+    }
+
+    /**
+     * 採番対象IDに対応する次の値を取得する。
+     *
+     * @param id 採番対象ID
+     * @return 次の値
+     */
+    private long nextValue(String id) {
+        AtomicReference<Block> reference = getBlockReference(id);
+        while (true) {
+            Block block = reference.get();
+            if (block != null) {
+                long value = block.next();
+                if (value > 0) {
+                    return value;
+                }
+            }
+            // ブロックの確保は、払い出し中のブロックを使い切ったスレッドのうち1スレッドのみが行う。
+            synchronized (reference) {
+                if (reference.get() == block) {
+                    reference.set(allocate(id));
+                }
+            }
+        }
+    }
+
+    /**
+     * 採番対象IDに対応する新たなブロックを確保する。
+     *
+     * @param id 採番対象ID
+     * @return 確保したブロック
+     */
+    private Block allocate(String id) {
+        String blockNumber = blockNumberGenerator.generateId(id);
+        long number;
+        try {
+            number = Long.parseLong(blockNumber.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(String.format(
+                    "block number must be numeric. id = [%s], block number = [%s]", id, blockNumber), e);
+        }
+        if (number <= 0) {
+            throw new IllegalStateException(String.format(
+                    "block number must be greater than 0. id = [%s], block number = [%s]", id, blockNumber));
+        }
+        long blockSize = getBlockSize(id);
+        return new Block((number - 1) * blockSize + 1, number * blockSize);
+    }
+
+    /**
+     * 採番対象IDに対応するブロックの参照を取得する。
+     *
+     * @param id 採番対象ID
+     * @return ブロックの参照
+     */
+    private AtomicReference<Block> getBlockReference(String id) {
+        AtomicReference<Block> reference = blocks.get(id);
+        if (reference == null) {
+            AtomicReference<Block> newReference = new AtomicReference<Block>();
+            reference = blocks.putIfAbsent(id, newReference);
+            if (reference == null) {
+                reference = newReference;
+            }
+        }
+        return reference;
+    }
+
+    /**
+     * 採番対象IDに対応するブロックサイズを取得する。
+     *
+     * @param id 採番対象ID
+     * @return ブロックサイズ
+     */
+    private int getBlockSize(String id) {
+        Integer blockSize = blockSizes.get(id);
+        return blockSize == null ? defaultBlockSize : blockSize;
+    }
+
+    /**
+     * ブロック番号の採番クラスを設定する。
+     *
+     * @param blockNumberGenerator ブロック番号の採番クラス
+     * @return このオブジェクト自体
+     */
+    public BlockAllocatingIdGenerator setBlockNumberGenerator(IdGenerator blockNumberGenerator) {
+        this.blockNumberGenerator = blockNumberGenerator;
+        return this;
+    }
+
+    /**
+     * 個別にブロックサイズを設定していない採番対象IDのブロックサイズを設定する。
+     * 明示的に指定しなかった場合のデフォルトは100となる。
+     *
+     * @param defaultBlockSize ブロックサイズ
+     * @return このオブジェクト自体
+     */
+    public BlockAllocatingIdGenerator setDefaultBlockSize(int defaultBlockSize) {
+        if (defaultBlockSize <= 0) {
+            throw new IllegalArgumentException(
+                    "defaultBlockSize must be greater than 0. defaultBlockSize = " + defaultBlockSize);
+        }
+        this.defaultBlockSize = defaultBlockSize;
+        return this;
+    }
+
+    /**
+     * 採番対象ID毎のブロックサイズを設定する。
+     *
+     * @param blockSizes 採番対象IDをキー、ブロックサイズを値とするMap
+     * @return このオブジェクト自体
+     */
+    public BlockAllocatingIdGenerator setBlockSizes(Map<String, Integer> blockSizes) {
+        for (Map.Entry<String, Integer> entry : blockSizes.entrySet()) {
+            if (entry.getValue() == null || entry.getValue() <= 0) {
+                throw new IllegalArgumentException(String.format(
+                        "block size must be greater than 0. id = [%s], block size = [%s]",
+                        entry.getKey(), entry.getValue()));
+            }
+        }
+        this.blockSizes = new HashMap<String, Integer>(blockSizes);
+        return this;
+    }
+
+    /**
+     * 確保済みの採番値の範囲を保持するクラス。
+     */
+    private static final class Block {
+
+        /** 次に払い出す値 */
+        private final AtomicLong next;
+
+        /** 払い出し可能な最大値 */
+        private final long end;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param start 払い出し可能な最小値
+         * @param end 払い出し可能な最大値
+         */
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+
+        /**
+         * 次の値を払い出す。
+         *
+         * @return 次の値。ブロックを使い切った場合は-1
+         */
+        private long next() {
+            long value = next.getAndIncrement();
+            return value <= end ? value : -1;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package nablarch.fw.messaging.action;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nablarch.core.db.connection.AppDbConnection;
+import nablarch.core.db.statement.ParameterizedSqlPStatement;
+import nablarch.core.db.statement.SelectOption;
+import nablarch.core.db.statement.SqlRow;
+import nablarch.core.db.transaction.SimpleDbTransactionExecutor;
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
+import nablarch.core.util.annotation.Published;
+import nablarch.core.util.map.MultipleKeyCaseMap;
+import nablarch.fw.DataReader;
+import nablarch.fw.ExecutionContext;
+
+/**
+ * 送信用テーブルのレコードを一定件数ずつ占有(リース)しながら読み込むデータリーダ。
+ * <p/>
+ * 同じ送信用テーブルを複数の送信プロセスで処理する場合に、レコードが重複して送信されることを防ぐ。
+ * 読み込みは以下の手順で、チャンク単位に本リーダ専用のトランザクションで行う。
+ * <ol>
+ * <li>SQL_ID=SELECT_CLAIMABLE_SEND_DATAで占有可能なレコードを最大でチャンクサイズ分取得する。</li>
+ * <li>取得したレコード毎にSQL_ID=CLAIM_SEND_DATAで占有者及びリース期限を更新する(JDBCのバッチ更新)。
+ * 更新件数が1件のレコードのみを、本リーダが占有したレコードとして読み込む。
+ * (このため、JDBCドライバはバッチ更新の更新件数を返す必要がある。
+ * 更新件数が返されない({@link Statement#SUCCESS_NO_INFO})場合は、占有をロールバックし{@link IllegalStateException}を送出する。)</li>
+ * </ol>
+ * 占有可能なレコードが存在しなくなった時点で、読み込みを終了する。
+ * <p/>
+ * 各SQL文には以下のパラメータを指定する。
+ * <ul>
+ * <li>currentDate:現在日時。SELECT_CLAIMABLE_SEND_DATA及びCLAIM_SEND_DATAの条件に、
+ * 未占有またはリース期限が現在日時より前であることを含めること。</li>
+ * <li>lastKey:前回のチャンクの最後のレコードのキー項目の値(初回はnull)。
+ * SELECT_CLAIMABLE_SEND_DATAでは、可変条件({@code $if(lastKey) {KEY > :lastKey}})として指定し、キー項目の昇順に取得すること。</li>
+ * <li>owner:占有者。CLAIM_SEND_DATAで更新する値。</li>
+ * <li>leaseExpiryDate:リース期限。CLAIM_SEND_DATAで更新する値。</li>
+ * </ul>
+ * CLAIM_SEND_DATAには、上記に加えてSELECT_CLAIMABLE_SEND_DATAで取得したレコードの項目を指定できる。
+ * <p/>
+ * 前回のチャンクより後ろのキーのみを対象とするため(キーセットページネーション)、
+ * 読み込み中にリース期限が切れたキーの小さいレコードは、次回のプロセス起動時に読み込まれる。
+ * リース期限は、コミット間隔分のレコードを送信するのに十分な時間を設定すること。
+ */
+@Published(tag = "architect")
+public class ClaimingSendDataReader implements DataReader<SqlRow> {
+
+    /** トランザクション管理クラス */
+    private final SimpleDbTransactionManager dbTransactionManager;
+
+    /** SQLリソース名 */
+    private final String sqlResource;
+
+    /** キー項目名 */
+    private final String keyColumnName;
+
+    /** 占有者 */
+    private final String owner;
+
+    /** チャンクサイズ */
+    private final int chunkSize;
+
+    /** リース期間(msec) */
+    private final long leaseTime;
+
+    /** 占有済みで未読のレコード */
+    private final Deque<SqlRow> claimedRows = new ArrayDeque<SqlRow>();
+
+    /** 前回のチャンクの最後のレコードのキー項目の値 */
+    private Object lastKey;
+
+    /** 占有可能なレコードが存在しない場合はtrue */
+    private boolean exhausted;
+
+    /**
+     * コンストラクタ。
+     *
+     * @param dbTransactionManager トランザクション管理クラス
+     * @param sqlResource SQLリソース名
+     * @param keyColumnName キー項目名
+     * @param owner 占有者
+     * @param chunkSize チャンクサイズ
+     * @param leaseTime リース期間(msec)
+     */
+    public ClaimingSendDataReader(SimpleDbTransactionManager dbTransactionManager, String sqlResource,
+            String keyColumnName, String owner, int chunkSize, long leaseTime) {
+        this.dbTransactionManager = dbTransactionManager;
+        this.sqlResource = sqlResource;
+        this.keyColumnName = keyColumnName;
+        this.owner = owner;
+        this.chunkSize = chunkSize;
+        this.leaseTime = leaseTime;
+    }
+
+    /**
+     * 占有したレコードを1件読み込む。
+     *
+     * @param ctx 実行コンテキスト
+     * @return 読み込んだレコード(占有可能なレコードが存在しない場合はnull)
+     */
+    public synchronized SqlRow read(ExecutionContext ctx) {
+        if (!hasNext(ctx)) {
+            return null;
+        }
+        return claimedRows.poll();
+    }
+
+    /**
+     * 次に読み込むレコードが存在するか否かを返す。
+     * <p/>
+     * 占有済みで未読のレコードが存在しない場合は、次のチャンクの占有を行う。
+     *
+     * @param ctx 実行コンテキスト
+     * @return 次に読み込むレコードが存在する場合はtrue
+     */
+    public synchronized boolean hasNext(ExecutionContext ctx) {
+        while (claimedRows.isEmpty() && !exhausted) {
+            claimNextChunk();
+        }
+        return !claimedRows.isEmpty();
+    }
+
+    /**
+     * 占有済みで未読のレコードを破棄する。
+     * <p/>
+     * 破棄したレコードは、リース期限経過後に他のプロセスから読み込まれる。
+     *
+     * @param ctx 実行コンテキスト
+     */
+    public synchronized void close(ExecutionContext ctx) {
+        claimedRows.clear();
+        exhausted = true;
+    }
+
+    /**
+     * 次のチャンクのレコードを占有する。
+     */
+    private void claimNextChunk() {
+        new SimpleDbTransactionExecutor<Void>(dbTransactionManager) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                long now = currentTimeMillis();
+                Map<String, Object> condition = new HashMap<String, Object>();
+                condition.put("currentDate", new Timestamp(now));
+                condition.put("lastKey", lastKey);
+
+                ParameterizedSqlPStatement select = connection.prepareParameterizedSqlStatementBySqlId(
+                        sqlResource + "#SELECT_CLAIMABLE_SEND_DATA", condition, new SelectOption(1, chunkSize));
+                select.setFetchSize(chunkSize);
+                List<SqlRow> candidates = new ArrayList<SqlRow>(select.retrieve(condition));
+                if (candidates.isEmpty()) {
+                    exhausted = true;
+                    return null;
+                }
+                lastKey = candidates.get(candidates.size() - 1).get(keyColumnName);
+
+                ParameterizedSqlPStatement claim = connection.prepareParameterizedSqlStatementBySqlId(
+                        sqlResource + "#CLAIM_SEND_DATA");
+                for (SqlRow candidate : candidates) {
+                    MultipleKeyCaseMap<Object> params = new MultipleKeyCaseMap<Object>(candidate);
+                    params.put("currentDate", new Timestamp(now));
+                    params.put("owner", owner);
+                    params.put("leaseExpiryDate", new Timestamp(now + leaseTime));
+                    claim.addBatchMap(params);
+                }
+                int[] updateCounts = executeClaim(claim);
+                for (int updateCount : updateCounts) {
+                    if (updateCount == Statement.SUCCESS_NO_INFO) {
+                        throw new IllegalStateException(
+                                "the JDBC driver did not return the update counts of CLAIM_SEND_DATA."
+                                        + " claimed rows cannot be determined. sql resource = " + sqlResource);
+                    }
+                }
+                for (int i = 0; i < candidates.size(); i++) {
+                    if (updateCounts[i] == 1) {
+                        claimedRows.add(candidates.get(i));
+                    }
+                }
+                return null;
+            }
+        }.doTransaction();
+    }
+
+    /**
+     * 占有のバッチ更新を実行する。
+     *
+     * @param claim 占有を行うステートメント
+     * @return レコード毎の更新件数
+     */
+    int[] executeClaim(ParameterizedSqlPStatement claim) {
+        return claim.executeBatch();
+    }
+
+    /**
+     * 現在時刻を取得する。
+     *
+     * @return 現在時刻(msec)
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,134 @@
+package nablarch.fw.messaging.action;
+
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link AsyncMessageSendAction}で送信用テーブルのレコードを占有しながら読み込む場合の設定を保持するクラス。
+ * <p/>
+ * システムリポジトリ上に"claimingSendSettings"という名前で本クラスを設定した場合、
+ * {@link AsyncMessageSendAction}は送信対象データを{@link ClaimingSendDataReader}で読み込む。
+ * これにより、同じ送信用テーブルを複数の送信プロセスで並行して処理できる。
+ * 使用するSQL文の仕様は、{@link ClaimingSendDataReader}を参照。
+ * <p/>
+ * 占有に使用するトランザクション管理クラスのトランザクション名は、
+ * 送信処理のトランザクション名と異なる名前を設定すること。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="claimingSendSettings" class="nablarch.fw.messaging.action.ClaimingSendSettings">
+ *   <property name="dbTransactionManager" ref="claimTransaction" />
+ *   <property name="keyColumnName" value="MESSAGE_ID" />
+ *   <property name="chunkSize" value="100" />
+ *   <property name="leaseTime" value="300000" />
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class ClaimingSendSettings {
+
+    /** トランザクション管理クラス */
+    private SimpleDbTransactionManager dbTransactionManager;
+
+    /** キー項目名 */
+    private String keyColumnName;
+
+    /** チャンクサイズ */
+    private int chunkSize = 100;
+
+    /** リース期間(msec) */
+    private long leaseTime = 300000L;
+
+    /**
+     * 占有に使用するトランザクション管理クラスを取得する。
+     *
+     * @return トランザクション管理クラス
+     */
+    public SimpleDbTransactionManager getDbTransactionManager() {
+        return dbTransactionManager;
+    }
+
+    /**
+     * 占有に使用するトランザクション管理クラスを設定する。
+     *
+     * @param dbTransactionManager トランザクション管理クラス
+     * @return このオブジェクト自体
+     */
+    public ClaimingSendSettings setDbTransactionManager(SimpleDbTransactionManager dbTransactionManager) {
+        this.dbTransactionManager = dbTransactionManager;
+        return this;
+    }
+
+    /**
+     * キー項目名を取得する。
+     *
+     * @return キー項目名
+     */
+    public String getKeyColumnName() {
+        return keyColumnName;
+    }
+
+    /**
+     * キー項目名を設定する。
+     * <p/>
+     * 送信用テーブルの一意キーで、SELECT_CLAIMABLE_SEND_DATAのソート順となる項目を指定すること。
+     *
+     * @param keyColumnName キー項目名
+     * @return このオブジェクト自体
+     */
+    public ClaimingSendSettings setKeyColumnName(String keyColumnName) {
+        this.keyColumnName = keyColumnName;
+        return this;
+    }
+
+    /**
+     * チャンクサイズを取得する。
+     *
+     * @return チャンクサイズ
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * 1回に占有するレコード数(チャンクサイズ)を設定する。
+     * 取得時のフェッチサイズにも使用する。
+     * 明示的に指定しなかった場合のデフォルトは100件となる。
+     *
+     * @param chunkSize チャンクサイズ
+     * @return このオブジェクト自体
+     */
+    public ClaimingSendSettings setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be greater than 0. chunkSize = " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * リース期間(msec)を取得する。
+     *
+     * @return リース期間
+     */
+    public long getLeaseTime() {
+        return leaseTime;
+    }
+
+    /**
+     * リース期間(msec)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは5分となる。
+     *
+     * @param leaseTime リース期間
+     * @return このオブジェクト自体
+     */
+    public ClaimingSendSettings setLeaseTime(long leaseTime) {
+        if (leaseTime <= 0) {
+            throw new IllegalArgumentException("leaseTime must be greater than 0. leaseTime = " + leaseTime);
+        }
+        this.leaseTime = leaseTime;
+        return this;
+    }
+}
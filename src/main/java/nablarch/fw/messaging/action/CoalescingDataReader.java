@@ -0,0 +1,152 @@
+package nablarch.fw.messaging.action;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nablarch.core.db.statement.SqlRow;
+import nablarch.core.util.annotation.Published;
+import nablarch.fw.DataReader;
+import nablarch.fw.ExecutionContext;
+
+/**
+ * 同じキー値を持つ入力データのうち、最新のデータのみを読み込むデータリーダ。
+ * <p/>
+ * 元となるデータリーダから読み込み単位の件数まで先読みし、キー項目の値が同じデータは最後に読み込んだデータ
+ * (最新のデータ)のみを返す。古いデータ(最新のデータにより置き換えられたデータ)は返さずに、
+ * 最新のデータに紐付けて保持する。保持したデータは{@link #removeSupersededRows(SqlRow)}で取得できる。
+ * <p/>
+ * 最新のデータは、元となるデータリーダから読み込んだ順に返す。
+ * このため、元となるデータリーダは、同じキー値を持つデータを古い順に読み込むこと。
+ * 置き換えは読み込み単位の中でのみ行い、読み込み単位を跨いだデータは置き換えない。
+ */
+@Published(tag = "architect")
+public class CoalescingDataReader implements DataReader<SqlRow> {
+
+    /** 元となるデータリーダ */
+    private final DataReader<SqlRow> sourceReader;
+
+    /** キー項目名のリスト */
+    private final List<String> keyColumnNames;
+
+    /** 読み込み単位の件数 */
+    private final int windowSize;
+
+    /** 読み込み待ちのデータ */
+    private Iterator<SqlRow> window = Collections.<SqlRow>emptyList().iterator();
+
+    /** 最新のデータをキーとした、置き換えられたデータ */
+    private final Map<SqlRow, List<SqlRow>> supersededRows = new IdentityHashMap<SqlRow, List<SqlRow>>();
+
+    /**
+     * コンストラクタ。
+     *
+     * @param sourceReader 元となるデータリーダ
+     * @param keyColumnNames キー項目名のリスト
+     * @param windowSize 読み込み単位の件数
+     */
+    public CoalescingDataReader(DataReader<SqlRow> sourceReader, List<String> keyColumnNames, int windowSize) {
+        if (keyColumnNames == null || keyColumnNames.isEmpty()) {
+            throw new IllegalArgumentException("keyColumnNames must not be empty.");
+        }
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be greater than 0. windowSize = " + windowSize);
+        }
+        this.sourceReader = sourceReader;
+        this.keyColumnNames = keyColumnNames;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * 最新のデータを読み込む。
+     * <p/>
+     * 読み込み待ちのデータが無い場合は、元となるデータリーダから読み込み単位の件数まで読み込み、
+     * キー値毎に最新のデータのみを読み込み待ちとする。
+     *
+     * @param ctx 実行コンテキスト
+     * @return 読み込んだデータ(読み込むデータが無い場合はnull)
+     */
+    public synchronized SqlRow read(ExecutionContext ctx) {
+        if (!window.hasNext()) {
+            fill(ctx);
+        }
+        return window.hasNext() ? window.next() : null;
+    }
+
+    /**
+     * 元となるデータリーダから読み込み単位の件数まで読み込み、読み込み待ちのデータとする。
+     *
+     * @param ctx 実行コンテキスト
+     */
+    private void fill(ExecutionContext ctx) {
+        Map<List<Object>, SqlRow> latestRows = new LinkedHashMap<List<Object>, SqlRow>();
+        for (int i = 0; i < windowSize && sourceReader.hasNext(ctx); i++) {
+            SqlRow row = sourceReader.read(ctx);
+            if (row == null) {
+                continue;
+            }
+            List<Object> key = keyOf(row);
+            SqlRow superseded = latestRows.remove(key);
+            latestRows.put(key, row);
+            if (superseded != null) {
+                List<SqlRow> rows = supersededRows.remove(superseded);
+                if (rows == null) {
+                    rows = new ArrayList<SqlRow>();
+                }
+                rows.add(superseded);
+                supersededRows.put(row, rows);
+            }
+        }
+        window = new ArrayList<SqlRow>(latestRows.values()).iterator();
+    }
+
+    /**
+     * データのキー値を返す。
+     * <p/>
+     * キー項目以外の値もキーに含める場合は、本メソッドをオーバーライドすること。
+     *
+     * @param row データ
+     * @return キー項目の値のリスト
+     */
+    protected List<Object> keyOf(SqlRow row) {
+        List<Object> key = new ArrayList<Object>(keyColumnNames.size());
+        for (String keyColumnName : keyColumnNames) {
+            key.add(row.get(keyColumnName));
+        }
+        return key;
+    }
+
+    /**
+     * 指定された最新のデータにより置き換えられたデータを取得し、保持しているデータから削除する。
+     *
+     * @param row 本リーダが返した最新のデータ
+     * @return 置き換えられたデータ(古い順)。置き換えられたデータが無い場合は空のリスト
+     */
+    public synchronized List<SqlRow> removeSupersededRows(SqlRow row) {
+        List<SqlRow> rows = supersededRows.remove(row);
+        return rows == null ? Collections.<SqlRow>emptyList() : rows;
+    }
+
+    /**
+     * 呼び出し元が読み込むデータが存在するか否かを返す。
+     *
+     * @param ctx 実行コンテキスト
+     * @return 読み込み待ちのデータがあるか、元となるデータリーダに未読のデータがある場合はtrue
+     */
+    public synchronized boolean hasNext(ExecutionContext ctx) {
+        return window.hasNext() || sourceReader.hasNext(ctx);
+    }
+
+    /**
+     * 元となるデータリーダをクローズする。
+     *
+     * @param ctx 実行コンテキスト
+     */
+    public synchronized void close(ExecutionContext ctx) {
+        sourceReader.close(ctx);
+    }
+}
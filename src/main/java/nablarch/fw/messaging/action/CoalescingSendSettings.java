@@ -0,0 +1,90 @@
+package nablarch.fw.messaging.action;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link AsyncMessageSendAction}で同じキー値を持つ送信対象データのうち、最新のデータのみを送信する場合の設定を保持するクラス。
+ * <p/>
+ * システムリポジトリ上に"coalescingSendSettings"という名前で本クラスを設定した場合、
+ * {@link AsyncMessageSendAction}は送信対象データを{@link CoalescingDataReader}で読み込む。
+ * 読み込み単位の件数の中で同じキー値を持つ送信対象データは、最新のデータのみを送信し、
+ * 古いデータのステータスは最新のデータと同じトランザクションでまとめて更新する。
+ * (最新のデータの送信に失敗した場合、古いデータのステータスもエラーに更新する。)
+ * <p/>
+ * 最新のデータは、送信対象データを抽出するSQL文(SELECT_SEND_DATA)で後から抽出されたデータとなる。
+ * このため、SQL文では送信用テーブルへの登録順(受信電文連番など)にソートすること。
+ * <p/>
+ * 残高の更新通知など、最新の状態のみを通知すれば良い電文に使用できる。
+ * 複数メッセージリクエストIDの送信設定({@link MultiRequestSendSettings})がある場合は、
+ * メッセージリクエストID毎に置き換えを行う。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="coalescingSendSettings" class="nablarch.fw.messaging.action.CoalescingSendSettings">
+ *   <property name="keyColumnNames">
+ *     <list>
+ *       <value>KEI_NO</value>
+ *     </list>
+ *   </property>
+ *   <property name="windowSize" value="500" />
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class CoalescingSendSettings {
+
+    /** キー項目名のリスト */
+    private List<String> keyColumnNames = new ArrayList<String>();
+
+    /** 読み込み単位の件数 */
+    private int windowSize = 100;
+
+    /**
+     * キー項目名のリストを取得する。
+     *
+     * @return キー項目名のリスト
+     */
+    public List<String> getKeyColumnNames() {
+        return keyColumnNames;
+    }
+
+    /**
+     * キー項目名のリストを設定する。
+     *
+     * @param keyColumnNames キー項目名のリスト
+     * @return このオブジェクト自体
+     */
+    public CoalescingSendSettings setKeyColumnNames(List<String> keyColumnNames) {
+        this.keyColumnNames = keyColumnNames;
+        return this;
+    }
+
+    /**
+     * 読み込み単位の件数を取得する。
+     *
+     * @return 読み込み単位の件数
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * 読み込み単位の件数を設定する。
+     * 明示的に指定しなかった場合のデフォルトは100件となる。
+     *
+     * @param windowSize 読み込み単位の件数
+     * @return このオブジェクト自体
+     */
+    public CoalescingSendSettings setWindowSize(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be greater than 0. windowSize = " + windowSize);
+        }
+        this.windowSize = windowSize;
+        return this;
+    }
+}
@@ -0,0 +1,234 @@
+package nablarch.fw.messaging.action;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link AsyncMessageReceiveAction}でFormクラスを使用せずに受信電文を登録する場合の設定を保持するクラス。
+ * <p/>
+ * システムリポジトリ上に"directBindingSettings"という名前で本クラスを設定した場合、
+ * {@link AsyncMessageReceiveAction}はFormオブジェクトを生成せず、受信電文のレコードの各項目を
+ * INSERT文(INSERT_MESSAGE)の同名の名前付きパラメータにそのまま設定して登録する。
+ * このため、INSERT文の名前付きパラメータ名は、フォーマット定義ファイルの項目名と一致させること。
+ * <p/>
+ * 受信電文連番及び共通項目(ユーザID、リクエストID、実行時ID、システム日時)は、
+ * 本クラスで指定したパラメータ名で設定する。
+ * Formクラスのアノテーション({@link nablarch.core.db.statement.autoproperty.UserId}など)による自動設定は行われない。
+ * システム日時は{@link nablarch.core.date.SystemTimeUtil}から取得するため、システムリポジトリにシステム日時提供クラスを設定すること。
+ * <p/>
+ * 1電文を1レコードとして登録する場合に使用できる。
+ * 対象とするリクエストID({@link #setRequestIds(List)})を指定した場合は、それ以外のリクエストIDはFormクラスを使用して登録する。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="directBindingSettings" class="nablarch.fw.messaging.action.DirectBindingSettings">
+ *   <property name="receivedSequenceParameterName" value="messageId" />
+ *   <property name="userIdParameterNames">
+ *     <list>
+ *       <value>insertUserId</value>
+ *       <value>updatedUserId</value>
+ *     </list>
+ *   </property>
+ *   <property name="currentDateTimeParameterNames">
+ *     <list>
+ *       <value>insertDate</value>
+ *       <value>updatedDate</value>
+ *     </list>
+ *   </property>
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class DirectBindingSettings {
+
+    /** 対象とするリクエストIDのリスト */
+    private List<String> requestIds = new ArrayList<String>();
+
+    /** 登録するレコードのレコードタイプ名 */
+    private String recordType = "Data";
+
+    /** 受信電文連番のパラメータ名 */
+    private String receivedSequenceParameterName = "messageId";
+
+    /** ユーザIDのパラメータ名のリスト */
+    private List<String> userIdParameterNames = new ArrayList<String>();
+
+    /** リクエストIDのパラメータ名のリスト */
+    private List<String> requestIdParameterNames = new ArrayList<String>();
+
+    /** 実行時IDのパラメータ名のリスト */
+    private List<String> executionIdParameterNames = new ArrayList<String>();
+
+    /** システム日時のパラメータ名のリスト */
+    private List<String> currentDateTimeParameterNames = new ArrayList<String>();
+
+    /** システム日付のパラメータ名のリスト */
+    private List<String> currentDateParameterNames = new ArrayList<String>();
+
+    /**
+     * 対象とするリクエストIDのリストを取得する。
+     *
+     * @return 対象とするリクエストIDのリスト
+     */
+    public List<String> getRequestIds() {
+        return requestIds;
+    }
+
+    /**
+     * 対象とするリクエストIDのリストを設定する。
+     * 明示的に指定しなかった場合は、全てのリクエストIDが対象となる。
+     *
+     * @param requestIds 対象とするリクエストIDのリスト
+     * @return このオブジェクト自体
+     */
+    public DirectBindingSettings setRequestIds(List<String> requestIds) {
+        this.requestIds = requestIds;
+        return this;
+    }
+
+    /**
+     * 登録するレコードのレコードタイプ名を取得する。
+     *
+     * @return レコードタイプ名
+     */
+    public String getRecordType() {
+        return recordType;
+    }
+
+    /**
+     * 登録するレコードのレコードタイプ名を設定する。
+     * 明示的に指定しなかった場合のデフォルトは"Data"となる。
+     *
+     * @param recordType レコードタイプ名
+     * @return このオブジェクト自体
+     */
+    public DirectBindingSettings setRecordType(String recordType) {
+        this.recordType = recordType;
+        return this;
+    }
+
+    /**
+     * 受信電文連番のパラメータ名を取得する。
+     *
+     * @return 受信電文連番のパラメータ名
+     */
+    public String getReceivedSequenceParameterName() {
+        return receivedSequenceParameterName;
+    }
+
+    /**
+     * 受信電文連番のパラメータ名を設定する。
+     * 明示的に指定しなかった場合のデフォルトは"messageId"となる。
+     *
+     * @param receivedSequenceParameterName 受信電文連番のパラメータ名
+     * @return このオブジェクト自体
+     */
+    public DirectBindingSettings setReceivedSequenceParameterName(String receivedSequenceParameterName) {
+        this.receivedSequenceParameterName = receivedSequenceParameterName;
+        return this;
+    }
+
+    /**
+     * ユーザIDのパラメータ名のリストを取得する。
+     *
+     * @return ユーザIDのパラメータ名のリスト
+     */
+    public List<String> getUserIdParameterNames() {
+        return userIdParameterNames;
+    }
+
+    /**
+     * ユーザID({@link nablarch.core.ThreadContext#getUserId()})を設定するパラメータ名のリストを設定する。
+     *
+     * @param userIdParameterNames ユーザIDのパラメータ名のリスト
+     * @return このオブジェクト自体
+     */
+    public DirectBindingSettings setUserIdParameterNames(List<String> userIdParameterNames) {
+        this.userIdParameterNames = userIdParameterNames;
+        return this;
+    }
+
+    /**
+     * リクエストIDのパラメータ名のリストを取得する。
+     *
+     * @return リクエストIDのパラメータ名のリスト
+     */
+    public List<String> getRequestIdParameterNames() {
+        return requestIdParameterNames;
+    }
+
+    /**
+     * リクエストID({@link nablarch.core.ThreadContext#getRequestId()})を設定するパラメータ名のリストを設定する。
+     *
+     * @param requestIdParameterNames リクエストIDのパラメータ名のリスト
+     * @return このオブジェクト自体
+     */
+    public DirectBindingSettings setRequestIdParameterNames(List<String> requestIdParameterNames) {
+        this.requestIdParameterNames = requestIdParameterNames;
+        return this;
+    }
+
+    /**
+     * 実行時IDのパラメータ名のリストを取得する。
+     *
+     * @return 実行時IDのパラメータ名のリスト
+     */
+    public List<String> getExecutionIdParameterNames() {
+        return executionIdParameterNames;
+    }
+
+    /**
+     * 実行時ID({@link nablarch.core.ThreadContext#getExecutionId()})を設定するパラメータ名のリストを設定する。
+     *
+     * @param executionIdParameterNames 実行時IDのパラメータ名のリスト
+     * @return このオブジェクト自体
+     */
+    public DirectBindingSettings setExecutionIdParameterNames(List<String> executionIdParameterNames) {
+        this.executionIdParameterNames = executionIdParameterNames;
+        return this;
+    }
+
+    /**
+     * システム日時のパラメータ名のリストを取得する。
+     *
+     * @return システム日時のパラメータ名のリスト
+     */
+    public List<String> getCurrentDateTimeParameterNames() {
+        return currentDateTimeParameterNames;
+    }
+
+    /**
+     * システム日時({@link java.sql.Timestamp})を設定するパラメータ名のリストを設定する。
+     *
+     * @param currentDateTimeParameterNames システム日時のパラメータ名のリスト
+     * @return このオブジェクト自体
+     */
+    public DirectBindingSettings setCurrentDateTimeParameterNames(List<String> currentDateTimeParameterNames) {
+        this.currentDateTimeParameterNames = currentDateTimeParameterNames;
+        return this;
+    }
+
+    /**
+     * システム日付のパラメータ名のリストを取得する。
+     *
+     * @return システム日付のパラメータ名のリスト
+     */
+    public List<String> getCurrentDateParameterNames() {
+        return currentDateParameterNames;
+    }
+
+    /**
+     * システム日付(yyyyMMdd形式の文字列)を設定するパラメータ名のリストを設定する。
+     *
+     * @param currentDateParameterNames システム日付のパラメータ名のリスト
+     * @return このオブジェクト自体
+     */
+    public DirectBindingSettings setCurrentDateParameterNames(List<String> currentDateParameterNames) {
+        this.currentDateParameterNames = currentDateParameterNames;
+        return this;
+    }
+}
@@ -0,0 +1,102 @@
+package nablarch.fw.messaging.action;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import nablarch.core.dataformat.FormatterFactory;
+import nablarch.core.dataformat.LayoutDefinition;
+import nablarch.core.util.annotation.Published;
+
+/**
+ * フォーマット定義ファイルの解析結果をキャッシュする{@link FormatterFactory}。
+ * <p/>
+ * フォーマット定義ファイルは、ファイル単位に初回のみ{@link FormatterFactory#createDefinition(File)}で解析し、
+ * 解析結果({@link LayoutDefinition})を保持する。
+ * 2回目以降は、保持している解析結果からフォーマッタを生成するため、フォーマット定義ファイルの読み込みは行わない。
+ * 解析には本クラスに設定したエンコーディング({@link #setEncoding(String)})を使用する。
+ * <p/>
+ * フォーマッタは入出力ストリームを状態として持つため、フォーマッタ自体はキャッシュせず、呼び出し毎に生成する。
+ * <p/>
+ * {@link #setCheckModified(boolean)}にtrueを設定した場合は、フォーマッタ生成時にフォーマット定義ファイルの最終更新日時を確認し、
+ * 解析時から変更されている場合は再度解析を行う。
+ * <p/>
+ * 本クラスは、システムリポジトリ上に"formatterFactory"という名前で設定し、{@link FormatterFactory#getInstance()}から使用する。
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="formatterFactory" class="nablarch.fw.messaging.action.FormatterCache">
+ *   <property name="checkModified" value="true" />
+ *   <property name="encoding" value="UTF-8" />
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class FormatterCache extends FormatterFactory {
+
+    /** フォーマット定義ファイルの絶対パスをキーとした解析結果 */
+    private final ConcurrentMap<String, CachedDefinition> definitions = new ConcurrentHashMap<String, CachedDefinition>();
+
+    /** フォーマット定義ファイルの変更を確認するか否か */
+    private boolean checkModified = false;
+
+    /**
+     * 指定されたフォーマット定義ファイルの解析結果を取得する。
+     * <p/>
+     * 解析結果を保持していない場合や、フォーマット定義ファイルが変更されている場合は
+     * {@link #createDefinition(File)}で解析を行う。
+     *
+     * @param layoutFile フォーマット定義ファイル
+     * @return 解析結果
+     */
+    @Override
+    protected LayoutDefinition getDefinitionFromCache(File layoutFile) {
+        String path = layoutFile.getAbsolutePath();
+        CachedDefinition cached = definitions.get(path);
+        if (cached != null && (!checkModified || cached.lastModified == layoutFile.lastModified())) {
+            return cached.definition;
+        }
+        // 解析中に変更された場合に検知できるよう、最終更新日時は解析前に取得する。
+        long lastModified = layoutFile.lastModified();
+        LayoutDefinition definition = createDefinition(layoutFile);
+        definitions.put(path, new CachedDefinition(definition, lastModified));
+        return definition;
+    }
+
+    /**
+     * フォーマット定義ファイルの変更を確認するか否かを設定する。
+     * <p/>
+     * 明示的に指定しなかった場合のデフォルトはfalse(確認しない)となる。
+     *
+     * @param checkModified フォーマット定義ファイルの変更を確認する場合はtrue
+     * @return このオブジェクト自体
+     */
+    public FormatterCache setCheckModified(boolean checkModified) {
+        this.checkModified = checkModified;
+        return this;
+    }
+
+    /**
+     * フォーマット定義ファイルの解析結果と、解析時の最終更新日時を保持するクラス。
+     */
+    private static final class CachedDefinition {
+
+        /** 解析結果 */
+        private final LayoutDefinition definition;
+
+        /** 解析時のフォーマット定義ファイルの最終更新日時 */
+        private final long lastModified;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param definition 解析結果
+         * @param lastModified 解析時のフォーマット定義ファイルの最終更新日時
+         */
+        private CachedDefinition(LayoutDefinition definition, long lastModified) {
+            this.definition = definition;
+            this.lastModified = lastModified;
+        }
+    }
+}
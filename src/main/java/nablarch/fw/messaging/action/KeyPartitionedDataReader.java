@@ -0,0 +1,148 @@
+package nablarch.fw.messaging.action;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nablarch.core.db.statement.SqlRow;
+import nablarch.core.util.annotation.Published;
+import nablarch.fw.DataReader;
+import nablarch.fw.ExecutionContext;
+
+/**
+ * 入力データをキー項目の値によってパーティションに振り分け、パーティション単位にスレッドへ割り当てるデータリーダ。
+ * <p/>
+ * マルチスレッド実行制御ハンドラ({@link nablarch.fw.handler.MultiThreadExecutionHandler})配下の各スレッドは、
+ * 最初に本リーダを呼び出した時点でパーティションが割り当てられ、以降は割り当てられたパーティションのデータのみを読み込む。
+ * 同じキー値を持つデータは必ず同じスレッドで読み込み順に処理されるため、キー単位の処理順序が保証される。
+ * <p/>
+ * 他のスレッドに割り当てられたデータは、そのスレッドが読み込むまで本リーダ内に保持する。
+ * 保持件数が上限に達した場合、自スレッドのデータが無いスレッドは、他のスレッドがデータを読み込むまで待機する。
+ * <p/>
+ * パーティション数は、マルチスレッド実行制御ハンドラのスレッド数と一致させること。
+ * スレッド数がパーティション数より多い場合、複数のスレッドが同じパーティションを読み込むため処理順序は保証されない。
+ */
+@Published(tag = "architect")
+public class KeyPartitionedDataReader implements DataReader<SqlRow> {
+
+    /** 元となるデータリーダ */
+    private final DataReader<SqlRow> sourceReader;
+
+    /** パーティションのキーとなる項目名 */
+    private final String keyColumnName;
+
+    /** 他のスレッドに割り当てられたデータの最大保持件数 */
+    private final int maxBufferedRows;
+
+    /** パーティション毎の読み込み待ちのデータ */
+    private final Deque<SqlRow>[] partitions;
+
+    /** 読み込み待ちのデータの件数 */
+    private int bufferedRows;
+
+    /** スレッドへのパーティションの割り当て数 */
+    private final AtomicInteger assignedPartitions = new AtomicInteger();
+
+    /** スレッドに割り当てられたパーティション */
+    private final ThreadLocal<Integer> partition = new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return assignedPartitions.getAndIncrement() % partitions.length;
+        }
+    };
+
+    /**
+     * コンストラクタ。
+     *
+     * @param sourceReader 元となるデータリーダ
+     * @param keyColumnName パーティションのキーとなる項目名
+     * @param partitionCount パーティション数
+     * @param maxBufferedRows 他のスレッドに割り当てられたデータの最大保持件数
+     */
+    @SuppressWarnings("unchecked")
+    public KeyPartitionedDataReader(DataReader<SqlRow> sourceReader, String keyColumnName,
+            int partitionCount, int maxBufferedRows) {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("partitionCount must be greater than 0. partitionCount = " + partitionCount);
+        }
+        if (maxBufferedRows <= 0) {
+            throw new IllegalArgumentException("maxBufferedRows must be greater than 0. maxBufferedRows = " + maxBufferedRows);
+        }
+        this.sourceReader = sourceReader;
+        this.keyColumnName = keyColumnName;
+        this.maxBufferedRows = maxBufferedRows;
+        partitions = new Deque[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new ArrayDeque<SqlRow>();
+        }
+    }
+
+    /**
+     * 呼び出し元スレッドに割り当てられたパーティションのデータを読み込む。
+     * <p/>
+     * パーティションにデータが無い場合は、元となるデータリーダから読み込んだデータを各パーティションに振り分け、
+     * 自スレッドのデータが見つかるまで読み込みを繰り返す。
+     *
+     * @param ctx 実行コンテキスト
+     * @return 読み込んだデータ(読み込むデータが無い場合はnull)
+     */
+    public synchronized SqlRow read(ExecutionContext ctx) {
+        Deque<SqlRow> own = partitions[partition.get()];
+        while (own.isEmpty()) {
+            if (!sourceReader.hasNext(ctx)) {
+                return null;
+            }
+            if (bufferedRows >= maxBufferedRows) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+                continue;
+            }
+            SqlRow row = sourceReader.read(ctx);
+            if (row == null) {
+                continue;
+            }
+            partitions[partitionOf(row)].add(row);
+            bufferedRows++;
+        }
+        bufferedRows--;
+        notifyAll();
+        return own.poll();
+    }
+
+    /**
+     * 呼び出し元スレッドが読み込むデータが存在するか否かを返す。
+     *
+     * @param ctx 実行コンテキスト
+     * @return 自スレッドのパーティションにデータがあるか、元となるデータリーダに未読のデータがある場合はtrue
+     */
+    public synchronized boolean hasNext(ExecutionContext ctx) {
+        return !partitions[partition.get()].isEmpty() || sourceReader.hasNext(ctx);
+    }
+
+    /**
+     * 元となるデータリーダをクローズする。
+     *
+     * @param ctx 実行コンテキスト
+     */
+    public synchronized void close(ExecutionContext ctx) {
+        sourceReader.close(ctx);
+    }
+
+    /**
+     * データを振り分けるパーティションを返す。
+     *
+     * @param row データ
+     * @return パーティション
+     */
+    private int partitionOf(SqlRow row) {
+        Object key = row.get(keyColumnName);
+        if (key == null) {
+            return 0;
+        }
+        return (key.hashCode() & Integer.MAX_VALUE) % partitions.length;
+    }
+}
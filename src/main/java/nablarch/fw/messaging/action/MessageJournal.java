@@ -0,0 +1,496 @@
+package nablarch.fw.messaging.action;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import nablarch.core.repository.disposal.Disposable;
+import nablarch.core.repository.initialization.Initializable;
+import nablarch.core.util.annotation.Published;
+import nablarch.fw.results.ServiceUnavailable;
+
+/**
+ * 受信電文をローカルファイルに追記するジャーナル。
+ * <p/>
+ * {@link AsyncMessageReceiveAction}は、システムリポジトリ上に"messageJournal"という名前で本クラスが設定されている場合、
+ * 受信電文を受信テーブルに登録せず、本クラスに追記する(ライトビハインド)。
+ * 追記した電文は、{@link MessageJournalLoader}が受信テーブルにまとめて登録する。
+ * <p/>
+ * ジャーナルファイルはメモリマップドファイルとして扱い、{@link #append(String, String, byte[])}は
+ * 追記した内容がファイルに同期(fsync)されるまで待機する。
+ * 同時に追記を行ったスレッドの同期はまとめて1回で行う(グループコミット)。
+ * <p/>
+ * ジャーナルファイルはリングバッファとして使用し、ファイルの終端に達した場合は先頭に戻って追記する。
+ * エントリの位置は周回を含めた論理位置で管理し、エントリのチェックサムには論理位置を含める。
+ * このため、以前の周回で書き込まれたエントリが復元時に読み込まれることはない。
+ * <p/>
+ * ジャーナルファイルには、受信テーブルへの登録が完了した位置を保持する。
+ * プロセスの異常終了後に再起動した場合、登録が完了していない電文から再度登録を行う。
+ * 登録が完了した電文の領域は順次再利用するため、追記と登録が継続して行われている間も容量は解放される。
+ * 登録が完了していない電文で容量が不足した場合は、登録が完了して容量が空くまで{@link ServiceUnavailable}を送出する。
+ * <p/>
+ * ジャーナルファイルは、1プロセスからのみ使用すること。
+ * また、登録が完了していない電文が存在する状態で容量を変更しないこと。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="messageJournal" class="nablarch.fw.messaging.action.MessageJournal">
+ *   <property name="filePath" value="/var/nablarch/journal/RECEIVE.TEST.journal" />
+ *   <property name="capacity" value="67108864" />
+ * </component>
+ * }
+ * </pre>
+ * 本クラスは、初期化対象リスト及び廃棄対象リストに設定すること。
+ */
+@Published(tag = "architect")
+public class MessageJournal implements Initializable, Disposable {
+
+    /** ヘッダ部(登録完了位置)のサイズ */
+    private static final int HEADER_SIZE = 8;
+
+    /** エントリのヘッダ部(長さとチェックサム)のサイズ */
+    private static final int ENTRY_HEADER_SIZE = 8;
+
+    /** 受信電文連番及びリクエストIDの文字コード */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** ジャーナルファイルのパス */
+    private String filePath;
+
+    /** ジャーナルファイルの容量(バイト) */
+    private int capacity = 64 * 1024 * 1024;
+
+    /** ジャーナルファイル */
+    private RandomAccessFile file;
+
+    /** ジャーナルファイルをマップしたバッファ */
+    private MappedByteBuffer buffer;
+
+    /** エントリを格納する領域のサイズ */
+    private int dataSize;
+
+    /** 同期処理のロック */
+    private final Object forceLock = new Object();
+
+    /** 次に追記する位置(論理位置) */
+    private long writePosition;
+
+    /** ファイルへの同期が完了した位置(論理位置) */
+    private volatile long forcedPosition;
+
+    /** 受信テーブルへの登録が完了した位置(論理位置) */
+    private volatile long loadedPosition;
+
+    /** {@link #read(int)}で読み込んだ最後のエントリの終端位置(論理位置) */
+    private long readPosition;
+
+    /**
+     * ジャーナルファイルをオープンする。
+     * <p/>
+     * ジャーナルファイルに登録が完了していない電文が存在する場合は、その電文から読み込めるようにする。
+     */
+    public void initialize() {
+        if (filePath == null) {
+            throw new IllegalStateException("filePath was not set.");
+        }
+        try {
+            File journalFile = new File(filePath);
+            File dir = journalFile.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs()) {
+                throw new IOException("failed to create directory. directory = " + dir);
+            }
+            file = new RandomAccessFile(journalFile, "rw");
+            if (file.length() < capacity) {
+                file.setLength(capacity);
+            }
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to open message journal. file path = " + filePath, e);
+        }
+        dataSize = capacity - HEADER_SIZE;
+        recover();
+    }
+
+    /**
+     * ジャーナルファイルから登録完了位置及び追記位置を復元する。
+     */
+    private void recover() {
+        long loaded = buffer.getLong(0);
+        loadedPosition = loaded < 0 ? 0 : loaded;
+        long position = loadedPosition;
+        while (true) {
+            long next = nextEntryPosition(position);
+            if (next < 0) {
+                break;
+            }
+            position = next;
+        }
+        writePosition = position;
+        forcedPosition = position;
+        readPosition = loadedPosition;
+    }
+
+    /**
+     * 指定された位置のエントリが有効な場合、次のエントリの位置を返す。
+     * <p/>
+     * 長さが登録の完了していない領域に収まらないエントリや、チェックサムが一致しないエントリ
+     * (書き込み途中のエントリや、以前の周回で書き込まれたエントリ)は有効なエントリとみなさない。
+     *
+     * @param position エントリの位置(論理位置)
+     * @return 次のエントリの位置。有効なエントリでない場合は-1
+     */
+    private long nextEntryPosition(long position) {
+        ByteBuffer header = ByteBuffer.wrap(getBytes(position, ENTRY_HEADER_SIZE));
+        int length = header.getInt();
+        long end = position + ENTRY_HEADER_SIZE + length;
+        if (length <= 0 || end - loadedPosition > dataSize) {
+            return -1;
+        }
+        byte[] body = getBytes(position + ENTRY_HEADER_SIZE, length);
+        if (checksum(position, body) != header.getInt()) {
+            return -1;
+        }
+        return end;
+    }
+
+    /**
+     * 受信電文を追記する。
+     * <p/>
+     * 追記した内容がファイルに同期されるまで待機する。
+     *
+     * @param receivedSequence 受信電文連番
+     * @param requestId リクエストID
+     * @param message 受信電文のバイト列
+     * @throws ServiceUnavailable ジャーナルファイルの容量が不足している場合
+     */
+    public void append(String receivedSequence, String requestId, byte[] message) throws ServiceUnavailable {
+        append(receivedSequence, requestId, null, 0L, message);
+    }
+
+    /**
+     * 受信電文を、受信したキュー及び送信日時とともに追記する。
+     * <p/>
+     * 追記した内容がファイルに同期されるまで待機する。
+     * 受信したキュー及び送信日時は、{@link MessageJournalLoader}が登録完了時に完了ラグを計測するために使用する。
+     *
+     * @param receivedSequence 受信電文連番
+     * @param requestId リクエストID
+     * @param destination 受信したキューの論理名(不明な場合はnull)
+     * @param sentAt 送信日時(JMSTimestamp)。不明な場合は0
+     * @param message 受信電文のバイト列
+     * @throws ServiceUnavailable ジャーナルファイルの容量が不足している場合
+     */
+    public void append(String receivedSequence, String requestId, String destination, long sentAt, byte[] message)
+            throws ServiceUnavailable {
+        byte[] sequence = receivedSequence.getBytes(CHARSET);
+        byte[] id = requestId.getBytes(CHARSET);
+        byte[] queue = (destination == null ? "" : destination).getBytes(CHARSET);
+        byte[] body = ByteBuffer.allocate(4 + sequence.length + 4 + id.length + 4 + queue.length + 8 + message.length)
+                .putInt(sequence.length).put(sequence).putInt(id.length).put(id)
+                .putInt(queue.length).put(queue).putLong(sentAt).put(message).array();
+        if (HEADER_SIZE + ENTRY_HEADER_SIZE + body.length > capacity) {
+            throw new IllegalArgumentException("message is too large for the journal. message length = "
+                    + message.length + ", capacity = " + capacity);
+        }
+        long end;
+        synchronized (this) {
+            long position = writePosition;
+            end = position + ENTRY_HEADER_SIZE + body.length;
+            if (end - loadedPosition > dataSize) {
+                throw new ServiceUnavailable("message journal is full. file path = " + filePath);
+            }
+            putBytes(position + ENTRY_HEADER_SIZE, body);
+            putBytes(position, ByteBuffer.allocate(ENTRY_HEADER_SIZE)
+                    .putInt(body.length).putInt(checksum(position, body)).array());
+            writePosition = end;
+        }
+        awaitForced(end);
+    }
+
+    /**
+     * 指定された位置までファイルへの同期が完了するまで待機する。
+     * <p/>
+     * 他のスレッドの同期により指定された位置までの同期が完了していた場合は、同期を行わない。
+     *
+     * @param position 位置(論理位置)
+     */
+    private void awaitForced(long position) {
+        synchronized (forceLock) {
+            if (forcedPosition >= position) {
+                return;
+            }
+            long target;
+            synchronized (this) {
+                target = writePosition;
+            }
+            buffer.force();
+            forcedPosition = target;
+        }
+    }
+
+    /**
+     * 受信テーブルへの登録が完了していない電文を読み込む。
+     * <p/>
+     * 読み込み対象は、ファイルへの同期が完了した電文のみとなる。
+     * 読み込んだ電文の登録が完了した場合は、{@link #markLoaded()}を呼び出すこと。
+     * {@link #markLoaded()}を呼び出さずに再度本メソッドを呼び出した場合は、同じ電文を再度読み込む。
+     *
+     * @param maxCount 読み込む最大件数
+     * @return 読み込んだ電文
+     */
+    public synchronized List<Entry> read(int maxCount) {
+        List<Entry> entries = new ArrayList<Entry>();
+        long position = loadedPosition;
+        long limit = forcedPosition;
+        while (entries.size() < maxCount && position < limit) {
+            int length = ByteBuffer.wrap(getBytes(position, 4)).getInt();
+            ByteBuffer body = ByteBuffer.wrap(getBytes(position + ENTRY_HEADER_SIZE, length));
+            String sequence = getString(body);
+            String requestId = getString(body);
+            String destination = getString(body);
+            long sentAt = body.getLong();
+            byte[] message = new byte[body.remaining()];
+            body.get(message);
+            entries.add(new Entry(sequence, requestId, destination.length() == 0 ? null : destination, sentAt,
+                    message));
+            position += ENTRY_HEADER_SIZE + length;
+        }
+        readPosition = position;
+        return entries;
+    }
+
+    /**
+     * {@link #read(int)}で読み込んだ電文の受信テーブルへの登録が完了したことを記録する。
+     * <p/>
+     * 登録完了位置をファイルに同期した後に、登録が完了した電文の領域を追記に再利用できるようにする。
+     * (同期前に再利用すると、異常終了時に登録が完了していない電文を上書きしてしまうため)
+     */
+    public void markLoaded() {
+        synchronized (forceLock) {
+            long position;
+            synchronized (this) {
+                position = readPosition;
+            }
+            buffer.putLong(0, position);
+            buffer.force();
+            loadedPosition = position;
+        }
+    }
+
+    /**
+     * 受信テーブルへの登録が完了していない電文のバイト数を取得する。
+     *
+     * @return 登録が完了していない電文のバイト数
+     */
+    public synchronized int getPendingBytes() {
+        return (int) (writePosition - loadedPosition);
+    }
+
+    /**
+     * ジャーナルファイルをクローズする。
+     */
+    public void dispose() {
+        if (file == null) {
+            return;
+        }
+        try {
+            buffer.force();
+            file.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to close message journal. file path = " + filePath, e);
+        } finally {
+            file = null;
+        }
+    }
+
+    /**
+     * バッファの指定位置からバイト列を読み込む。
+     * <p/>
+     * 領域の終端に達した場合は、領域の先頭から続きを読み込む。
+     *
+     * @param position 位置(論理位置)
+     * @param length 長さ
+     * @return バイト列
+     */
+    private byte[] getBytes(long position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        int offset = (int) (position % dataSize);
+        int first = Math.min(length, dataSize - offset);
+        source.position(HEADER_SIZE + offset);
+        source.get(bytes, 0, first);
+        if (first < length) {
+            source.position(HEADER_SIZE);
+            source.get(bytes, first, length - first);
+        }
+        return bytes;
+    }
+
+    /**
+     * バッファの指定位置にバイト列を書き込む。
+     * <p/>
+     * 領域の終端に達した場合は、領域の先頭から続きを書き込む。
+     *
+     * @param position 位置(論理位置)
+     * @param bytes バイト列
+     */
+    private void putBytes(long position, byte[] bytes) {
+        ByteBuffer target = buffer.duplicate();
+        int offset = (int) (position % dataSize);
+        int first = Math.min(bytes.length, dataSize - offset);
+        target.position(HEADER_SIZE + offset);
+        target.put(bytes, 0, first);
+        if (first < bytes.length) {
+            target.position(HEADER_SIZE);
+            target.put(bytes, first, bytes.length - first);
+        }
+    }
+
+    /**
+     * 長さ付きの文字列を読み込む。
+     *
+     * @param source 読み込み元
+     * @return 文字列
+     */
+    private static String getString(ByteBuffer source) {
+        byte[] bytes = new byte[source.getInt()];
+        source.get(bytes);
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * エントリのチェックサムを計算する。
+     * <p/>
+     * 以前の周回で同じ領域に書き込まれたエントリと区別するため、エントリの位置(論理位置)を含めて計算する。
+     *
+     * @param position エントリの位置(論理位置)
+     * @param body エントリの本文
+     * @return チェックサム
+     */
+    private static int checksum(long position, byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(8).putLong(position).array(), 0, 8);
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * ジャーナルファイルのパスを設定する。
+     *
+     * @param filePath ジャーナルファイルのパス
+     * @return このオブジェクト自体
+     */
+    public MessageJournal setFilePath(String filePath) {
+        this.filePath = filePath;
+        return this;
+    }
+
+    /**
+     * ジャーナルファイルの容量(バイト)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは64MBとなる。
+     *
+     * @param capacity ジャーナルファイルの容量
+     * @return このオブジェクト自体
+     */
+    public MessageJournal setCapacity(int capacity) {
+        if (capacity <= HEADER_SIZE + ENTRY_HEADER_SIZE) {
+            throw new IllegalArgumentException("capacity is too small. capacity = " + capacity);
+        }
+        this.capacity = capacity;
+        return this;
+    }
+
+    /**
+     * ジャーナルに追記した受信電文。
+     */
+    @Published(tag = "architect")
+    public static final class Entry {
+
+        /** 受信電文連番 */
+        private final String receivedSequence;
+
+        /** リクエストID */
+        private final String requestId;
+
+        /** 受信したキューの論理名 */
+        private final String destination;
+
+        /** 送信日時 */
+        private final long sentAt;
+
+        /** 受信電文のバイト列 */
+        private final byte[] message;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param receivedSequence 受信電文連番
+         * @param requestId リクエストID
+         * @param destination 受信したキューの論理名
+         * @param sentAt 送信日時
+         * @param message 受信電文のバイト列
+         */
+        Entry(String receivedSequence, String requestId, String destination, long sentAt, byte[] message) {
+            this.receivedSequence = receivedSequence;
+            this.requestId = requestId;
+            this.destination = destination;
+            this.sentAt = sentAt;
+            this.message = message;
+        }
+
+        /**
+         * 受信電文連番を取得する。
+         *
+         * @return 受信電文連番
+         */
+        public String getReceivedSequence() {
+            return receivedSequence;
+        }
+
+        /**
+         * リクエストIDを取得する。
+         * <p/>
+         * 受信時に{@link AsyncMessageReceiveAction}が解決したリクエストID(電文の属性から取得した値を含む)となる。
+         *
+         * @return リクエストID
+         */
+        public String getRequestId() {
+            return requestId;
+        }
+
+        /**
+         * 受信したキューの論理名を取得する。
+         *
+         * @return 受信したキューの論理名。不明な場合はnull
+         */
+        public String getDestination() {
+            return destination;
+        }
+
+        /**
+         * 送信日時(JMSTimestamp)を取得する。
+         *
+         * @return 送信日時。不明な場合は0
+         */
+        public long getSentAt() {
+            return sentAt;
+        }
+
+        /**
+         * 受信電文のバイト列を取得する。
+         *
+         * @return 受信電文のバイト列
+         */
+        public byte[] getMessage() {
+            return message;
+        }
+    }
+}
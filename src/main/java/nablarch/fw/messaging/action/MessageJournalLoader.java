@@ -0,0 +1,389 @@
+package nablarch.fw.messaging.action;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import nablarch.core.db.DbAccessException;
+import nablarch.core.db.connection.AppDbConnection;
+import nablarch.core.db.statement.exception.SqlStatementException;
+import nablarch.core.db.transaction.SimpleDbTransactionExecutor;
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.core.repository.disposal.Disposable;
+import nablarch.core.repository.initialization.Initializable;
+import nablarch.core.util.annotation.Published;
+import nablarch.fw.DataReader;
+import nablarch.fw.ExecutionContext;
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.fw.messaging.RequestMessage;
+import nablarch.fw.messaging.reader.FwHeaderReader;
+
+/**
+ * {@link MessageJournal}に追記された受信電文を、受信テーブルにまとめて登録するクラス。
+ * <p/>
+ * 初期化時({@link #initialize()})にバックグラウンドスレッドを起動し、
+ * {@link #setLoadInterval(long)}の間隔でジャーナルに追記された電文を読み込む。
+ * 読み込んだ電文は、{@link #setBatchSize(int)}で指定した件数単位に1トランザクションで受信テーブルに登録する。
+ * <p/>
+ * 受信テーブルへの登録は{@link AsyncMessageReceiveAction}と同じ方法(Formクラス及びSQL文)で行う。
+ * 受信電文連番はジャーナルへの追記時に採番済みのため、プロセスの異常終了後に同じ電文を再度登録した場合は
+ * 一意制約違反となり、その電文は登録されない。
+ * 電文の登録先は、受信時に解決したリクエストID(ジャーナルに保持した値)により決定する。
+ * 登録が完了した電文は、受信時にジャーナルに保持した送信日時を元に
+ * {@link AsyncMessageReceiveAction}と同じ方法で完了ラグを計測する。
+ * <p/>
+ * 形式不正の電文など登録できない電文は、{@link #onLoadError(MessageJournal.Entry, RuntimeException)}に通知して
+ * 読み飛ばす。{@link #setQuarantineDir(String)}で退避ディレクトリを設定した場合は、電文をファイルに退避する。
+ * <p/>
+ * トランザクション管理クラスのトランザクション名は、
+ * {@link AsyncMessageReceiveActionSettings#getDbTransactionName()}と同じ名前を設定すること。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="messageJournalLoader" class="nablarch.fw.messaging.action.MessageJournalLoader">
+ *   <property name="messageJournal" ref="messageJournal" />
+ *   <property name="dbTransactionManager" ref="journalLoaderTransaction" />
+ *   <property name="batchSize" value="1000" />
+ *   <property name="quarantineDir" value="/var/nablarch/journal/quarantine" />
+ * </component>
+ * }
+ * </pre>
+ * 本クラスは、初期化対象リスト及び廃棄対象リストに設定すること(ジャーナルより後に初期化すること)。
+ */
+@Published(tag = "architect")
+public class MessageJournalLoader implements Initializable, Disposable {
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(MessageJournalLoader.class);
+
+    /** 受信電文のジャーナル */
+    private MessageJournal messageJournal;
+
+    /** トランザクション管理クラス */
+    private SimpleDbTransactionManager dbTransactionManager;
+
+    /** 受信テーブルへの登録を行うアクション */
+    private AsyncMessageReceiveAction action = new AsyncMessageReceiveAction();
+
+    /** 受信電文からリクエストメッセージを生成するリーダ */
+    private FwHeaderReader fwHeaderReader = new FwHeaderReader();
+
+    /** 登録できなかった電文を退避するディレクトリ */
+    private String quarantineDir;
+
+    /** 1トランザクションで登録する電文数 */
+    private int batchSize = 1000;
+
+    /** ジャーナルを読み込む間隔(msec) */
+    private long loadInterval = 1000L;
+
+    /** 登録を行うスレッド */
+    private ScheduledExecutorService executor;
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 登録を行うバックグラウンドスレッドを起動する。
+     */
+    public synchronized void initialize() {
+        if (messageJournal == null) {
+            throw new IllegalStateException("messageJournal was not set.");
+        }
+        if (dbTransactionManager == null) {
+            throw new IllegalStateException("dbTransactionManager was not set.");
+        }
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "message-journal-loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    load();
+                } catch (RuntimeException e) {
+                    LOGGER.logWarn("failed to load the message journal. it will be retried.", e);
+                }
+            }
+        }, 0, loadInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 登録を行うバックグラウンドスレッドを停止する。
+     */
+    public synchronized void dispose() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * ジャーナルに追記された電文を全て受信テーブルに登録する。
+     * <p/>
+     * 通常はバックグラウンドスレッドから呼び出される。
+     * <p/>
+     * バッチサイズ単位の登録に失敗した場合は、その電文を1件ずつ個別のトランザクションで登録し直す。
+     * 個別に登録しても失敗した電文は{@link #onLoadError(MessageJournal.Entry, RuntimeException)}に通知し、
+     * 登録が完了したものとして次の電文に進む。
+     * (登録できない電文により、後続の電文の登録が止まり続けることを防ぐため)
+     * ただし、データベースへの接続障害などSQL文の実行エラー以外のデータベースアクセスエラーの場合は、
+     * 電文固有の問題ではないため例外を送出し、次回の読み込み時に同じ電文から登録を再試行する。
+     *
+     * @return 登録した電文数(エラーとなった電文を含む)
+     */
+    public synchronized int load() {
+        int count = 0;
+        while (true) {
+            List<MessageJournal.Entry> entries = messageJournal.read(batchSize);
+            if (entries.isEmpty()) {
+                return count;
+            }
+            try {
+                insert(entries);
+                messageJournal.markLoaded();
+                recordCompletionLag(entries);
+            } catch (RuntimeException e) {
+                if (isRetryable(e)) {
+                    throw e;
+                }
+                LOGGER.logWarn("failed to load the message journal in batch."
+                        + " the messages will be loaded one by one.", e);
+                loadOneByOne(entries.size());
+            }
+            count += entries.size();
+        }
+    }
+
+    /**
+     * ジャーナルに追記された電文を、1件ずつ個別のトランザクションで受信テーブルに登録する。
+     *
+     * @param count 登録する電文数
+     */
+    private void loadOneByOne(int count) {
+        for (int i = 0; i < count; i++) {
+            List<MessageJournal.Entry> entries = messageJournal.read(1);
+            try {
+                insert(entries);
+            } catch (RuntimeException e) {
+                if (isRetryable(e)) {
+                    throw e;
+                }
+                onLoadError(entries.get(0), e);
+                messageJournal.markLoaded();
+                continue;
+            }
+            messageJournal.markLoaded();
+            recordCompletionLag(entries);
+        }
+    }
+
+    /**
+     * 受信テーブルへの登録が完了した電文の完了ラグを計測する。
+     *
+     * @param entries 登録が完了した電文
+     */
+    private void recordCompletionLag(List<MessageJournal.Entry> entries) {
+        for (MessageJournal.Entry entry : entries) {
+            action.recordCompletionLag(entry.getDestination(), entry.getSentAt());
+        }
+    }
+
+    /**
+     * 電文を1トランザクションで受信テーブルに登録する。
+     *
+     * @param entries ジャーナルから読み込んだ電文
+     */
+    private void insert(final List<MessageJournal.Entry> entries) {
+        new SimpleDbTransactionExecutor<Void>(dbTransactionManager) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                List<String> requestIds = new ArrayList<String>(entries.size());
+                List<String> receivedSequences = new ArrayList<String>(entries.size());
+                List<RequestMessage> messages = new ArrayList<RequestMessage>(entries.size());
+                for (MessageJournal.Entry entry : entries) {
+                    requestIds.add(entry.getRequestId());
+                    receivedSequences.add(entry.getReceivedSequence());
+                    messages.add(toRequestMessage(entry.getMessage()));
+                }
+                action.insertJournaledMessages(requestIds, receivedSequences, messages);
+                return null;
+            }
+        }.doTransaction();
+    }
+
+    /**
+     * 登録を再試行すべき例外か否か。
+     *
+     * @param e 例外
+     * @return SQL文の実行エラー以外のデータベースアクセスエラーの場合はtrue
+     */
+    private static boolean isRetryable(RuntimeException e) {
+        return e instanceof DbAccessException && !(e instanceof SqlStatementException);
+    }
+
+    /**
+     * 受信テーブルに登録できなかった電文を通知する。
+     * <p/>
+     * デフォルト実装では、ERRORレベルのログを出力する。
+     * また、退避ディレクトリが設定されている場合は、受信電文のバイト列を
+     * 退避ディレクトリに受信電文連番をファイル名として出力する。
+     * 退避した電文を別の方法で保存する場合などは、本メソッドをオーバーライドすること。
+     * <p/>
+     * 本メソッドから例外が送出された場合は、登録の完了を記録せず、次回の読み込み時に同じ電文から登録を再試行する。
+     *
+     * @param entry 登録できなかった電文
+     * @param e 発生した例外
+     */
+    protected void onLoadError(MessageJournal.Entry entry, RuntimeException e) {
+        LOGGER.logError("failed to load a journaled message. the message was skipped."
+                + " request id = [" + entry.getRequestId() + "],"
+                + " received sequence = [" + entry.getReceivedSequence() + "]", e);
+        if (quarantineDir == null) {
+            return;
+        }
+        File file = new File(quarantineDir, entry.getReceivedSequence());
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("failed to create directory. directory = " + dir);
+            }
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(entry.getMessage());
+            } finally {
+                out.close();
+            }
+        } catch (IOException ioe) {
+            throw new IllegalStateException("failed to quarantine a journaled message. file = " + file, ioe);
+        }
+    }
+
+    /**
+     * 受信電文のバイト列からリクエストメッセージを生成する。
+     *
+     * @param bytes 受信電文のバイト列
+     * @return リクエストメッセージ
+     */
+    private RequestMessage toRequestMessage(final byte[] bytes) {
+        fwHeaderReader.setMessageReader(new DataReader<ReceivedMessage>() {
+            public ReceivedMessage read(ExecutionContext ctx) {
+                return new ReceivedMessage(bytes);
+            }
+
+            public boolean hasNext(ExecutionContext ctx) {
+                return true;
+            }
+
+            public void close(ExecutionContext ctx) {
+            }
+        });
+        return fwHeaderReader.read(new ExecutionContext());
+    }
+
+    /**
+     * 受信電文のジャーナルを設定する。
+     *
+     * @param messageJournal 受信電文のジャーナル
+     * @return このオブジェクト自体
+     */
+    public MessageJournalLoader setMessageJournal(MessageJournal messageJournal) {
+        this.messageJournal = messageJournal;
+        return this;
+    }
+
+    /**
+     * トランザクション管理クラスを設定する。
+     *
+     * @param dbTransactionManager トランザクション管理クラス
+     * @return このオブジェクト自体
+     */
+    public MessageJournalLoader setDbTransactionManager(SimpleDbTransactionManager dbTransactionManager) {
+        this.dbTransactionManager = dbTransactionManager;
+        return this;
+    }
+
+    /**
+     * 受信テーブルへの登録を行うアクションを設定する。
+     * 明示的に指定しなかった場合は{@link AsyncMessageReceiveAction}を使用する。
+     *
+     * @param action 受信テーブルへの登録を行うアクション
+     * @return このオブジェクト自体
+     */
+    public MessageJournalLoader setAction(AsyncMessageReceiveAction action) {
+        this.action = action;
+        return this;
+    }
+
+    /**
+     * 受信電文からリクエストメッセージを生成するリーダを設定する。
+     * <p/>
+     * フォーマット定義ファイルの配置ディレクトリ等をデフォルトから変更している場合に、
+     * 受信時と同じ設定のリーダを設定すること。
+     *
+     * @param fwHeaderReader リーダ
+     * @return このオブジェクト自体
+     */
+    public MessageJournalLoader setFwHeaderReader(FwHeaderReader fwHeaderReader) {
+        this.fwHeaderReader = fwHeaderReader;
+        return this;
+    }
+
+    /**
+     * 受信テーブルに登録できなかった電文を退避するディレクトリを設定する。
+     * 明示的に指定しなかった場合は、電文を退避しない(ログ出力のみ)。
+     *
+     * @param quarantineDir 退避ディレクトリのパス
+     * @return このオブジェクト自体
+     */
+    public MessageJournalLoader setQuarantineDir(String quarantineDir) {
+        this.quarantineDir = quarantineDir;
+        return this;
+    }
+
+    /**
+     * 1トランザクションで登録する電文数を設定する。
+     * 明示的に指定しなかった場合のデフォルトは1000件となる。
+     *
+     * @param batchSize 1トランザクションで登録する電文数
+     * @return このオブジェクト自体
+     */
+    public MessageJournalLoader setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than 0. batchSize = " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * ジャーナルを読み込む間隔(msec)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは1秒となる。
+     *
+     * @param loadInterval ジャーナルを読み込む間隔
+     * @return このオブジェクト自体
+     */
+    public MessageJournalLoader setLoadInterval(long loadInterval) {
+        if (loadInterval <= 0) {
+            throw new IllegalArgumentException("loadInterval must be greater than 0. loadInterval = " + loadInterval);
+        }
+        this.loadInterval = loadInterval;
+        return this;
+    }
+}
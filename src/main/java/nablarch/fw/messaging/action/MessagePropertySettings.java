@@ -0,0 +1,112 @@
+package nablarch.fw.messaging.action;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * 電文のリクエストID及びレイアウトのバージョンをメッセージのユーザ定義属性(JMSプロパティ)として送受信する場合の設定を保持するクラス。
+ * <p/>
+ * システムリポジトリ上に"messagePropertySettings"という名前で本クラスを設定した場合、
+ * {@link AsyncMessageSendAction}は送信するメッセージに、リクエストID及びレイアウトのバージョンを属性として設定する。
+ * <p/>
+ * {@link AsyncMessageReceiveAction}は、受信したメッセージがリクエストIDの属性を持つ場合、
+ * 電文のヘッダ部ではなく属性の値をリクエストIDとして使用する。
+ * ただし、電文のヘッダ部にもリクエストIDが存在し、属性の値と異なる場合は電文を拒否する。
+ * また、レイアウトのバージョンの属性を持ち、その値がリクエストIDに対して設定したバージョンと異なる場合は、
+ * 業務データ部を読み込まずに電文を拒否する。
+ * <p/>
+ * リクエストIDの属性は、受信キューのメッセージセレクタ
+ * ({@link nablarch.fw.messaging.provider.JmsMessagingProvider#setMessageSelectors(Map)})にも使用できる。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="messagePropertySettings" class="nablarch.fw.messaging.action.MessagePropertySettings">
+ *   <property name="layoutVersions">
+ *     <map>
+ *       <entry key="RM11AC0101" value="2" />
+ *     </map>
+ *   </property>
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class MessagePropertySettings {
+
+    /** リクエストIDの属性名 */
+    private String requestIdPropertyName = "RequestId";
+
+    /** レイアウトのバージョンの属性名 */
+    private String layoutVersionPropertyName = "LayoutVersion";
+
+    /** リクエストID毎のレイアウトのバージョン */
+    private Map<String, String> layoutVersions = new HashMap<String, String>();
+
+    /**
+     * リクエストIDの属性名を取得する。
+     *
+     * @return リクエストIDの属性名
+     */
+    public String getRequestIdPropertyName() {
+        return requestIdPropertyName;
+    }
+
+    /**
+     * リクエストIDの属性名を設定する。
+     * 明示的に指定しなかった場合のデフォルトは"RequestId"となる。
+     *
+     * @param requestIdPropertyName リクエストIDの属性名
+     * @return このオブジェクト自体
+     */
+    public MessagePropertySettings setRequestIdPropertyName(String requestIdPropertyName) {
+        this.requestIdPropertyName = requestIdPropertyName;
+        return this;
+    }
+
+    /**
+     * レイアウトのバージョンの属性名を取得する。
+     *
+     * @return レイアウトのバージョンの属性名
+     */
+    public String getLayoutVersionPropertyName() {
+        return layoutVersionPropertyName;
+    }
+
+    /**
+     * レイアウトのバージョンの属性名を設定する。
+     * 明示的に指定しなかった場合のデフォルトは"LayoutVersion"となる。
+     *
+     * @param layoutVersionPropertyName レイアウトのバージョンの属性名
+     * @return このオブジェクト自体
+     */
+    public MessagePropertySettings setLayoutVersionPropertyName(String layoutVersionPropertyName) {
+        this.layoutVersionPropertyName = layoutVersionPropertyName;
+        return this;
+    }
+
+    /**
+     * リクエストID毎のレイアウトのバージョンを取得する。
+     *
+     * @return リクエストIDをキーとしたレイアウトのバージョン
+     */
+    public Map<String, String> getLayoutVersions() {
+        return layoutVersions;
+    }
+
+    /**
+     * リクエストID毎のレイアウトのバージョンを設定する。
+     * <p/>
+     * バージョンを設定しなかったリクエストIDは、送信時にバージョンの属性を設定せず、
+     * 受信時にバージョンの確認を行わない。
+     *
+     * @param layoutVersions リクエストIDをキーとしたレイアウトのバージョン
+     * @return このオブジェクト自体
+     */
+    public MessagePropertySettings setLayoutVersions(Map<String, String> layoutVersions) {
+        this.layoutVersions = layoutVersions;
+        return this;
+    }
+}
@@ -0,0 +1,289 @@
+package nablarch.fw.messaging.action;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nablarch.core.util.annotation.Published;
+import nablarch.fw.DataReader;
+import nablarch.fw.ExecutionContext;
+import nablarch.fw.messaging.MessagingContext;
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.fw.messaging.provider.JmsMessagingProvider;
+
+/**
+ * 複数の受信キューからメッセージを読み込むデータリーダ。
+ * <p/>
+ * {@link nablarch.fw.messaging.reader.MessageReader}の代わりに使用することで、
+ * 1つの受信プロセス(スレッド及びMOMへの接続)で複数の受信キューのメッセージを処理できる。
+ * <p/>
+ * 読み込み時は、スケジューリング方式に従って決定した順番で各受信キューを待機せずに確認し、
+ * 最初に受信できたメッセージを返す。いずれの受信キューにもメッセージが存在しない場合は、
+ * 読み込みタイムアウト({@link #setReadTimeout(long)})までの間、同じ順番で各受信キューを
+ * 受信待機時間({@link #setReceiveSlice(long)})ずつ待機して確認することを繰り返す。
+ * このため、待機中にいずれかの受信キューに到着したメッセージは、最大で「(受信キュー数 - 1) × 受信待機時間」の
+ * 遅延で受信される。1回の読み込みの待機時間は、読み込みタイムアウトを超えない。
+ * <p/>
+ * スケジューリング方式は以下の2つから選択できる。
+ * <dl>
+ * <dt>重み付け公平(デフォルト)</dt>
+ * <dd>
+ * 受信キュー毎の重み({@link #setWeights(Map)})の比率で、最初に確認する受信キューを順番に割り当てる。
+ * メッセージが滞留している受信キュー同士では、重みの比率で処理件数が配分されるため、
+ * 流量の少ない受信キューが流量の多い受信キューに埋もれることは無い。
+ * </dd>
+ * <dt>優先度({@link #setPriority(boolean)}にtrueを設定)</dt>
+ * <dd>
+ * 常に受信キュー名のリストの順番に確認する。先頭の受信キューのメッセージを最優先で処理する。
+ * </dd>
+ * </dl>
+ * 待機せずに確認する処理は、{@link JmsMessagingProvider}を使用している場合は
+ * キャッシュしているMessageConsumerの{@code receiveNoWait()}で行う。
+ * それ以外の場合は、1ミリ秒のタイムアウトで受信する。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="dataReader" class="nablarch.fw.messaging.reader.FwHeaderReader">
+ *   <property name="messageReader">
+ *     <component class="nablarch.fw.messaging.action.MultiQueueMessageReader">
+ *       <property name="receiveQueueNames">
+ *         <list>
+ *           <value>RECEIVE.ORDER</value>
+ *           <value>RECEIVE.MASTER</value>
+ *         </list>
+ *       </property>
+ *       <property name="weights">
+ *         <map>
+ *           <entry key="RECEIVE.ORDER" value="3" />
+ *         </map>
+ *       </property>
+ *       <property name="readTimeout" value="1000" />
+ *       <property name="receiveSlice" value="100" />
+ *     </component>
+ *   </property>
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class MultiQueueMessageReader implements DataReader<ReceivedMessage> {
+
+    /** 待機せずに受信できない場合の受信タイムアウト(msec) */
+    private static final long NO_WAIT_TIMEOUT = 1L;
+
+    /** 受信キュー名のリスト */
+    private List<String> receiveQueueNames = new ArrayList<String>();
+
+    /** 受信キュー毎の重み */
+    private Map<String, String> weights = new HashMap<String, String>();
+
+    /** 優先度によるスケジューリングを行う場合はtrue */
+    private boolean priority = false;
+
+    /** 読み込みタイムアウト(msec) */
+    private long readTimeout = 5000L;
+
+    /** 受信キュー毎の受信待機時間(msec) */
+    private long receiveSlice = 100L;
+
+    /** クローズされている場合はtrue */
+    private volatile boolean closed = false;
+
+    /** 受信キュー毎の重み(受信キュー名のリストの順) */
+    private int[] queueWeights;
+
+    /** 受信キュー毎の現在の重み(受信キュー名のリストの順) */
+    private int[] currentWeights;
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 受信キューを順番に確認し、最初に受信できたメッセージを返す。
+     * いずれの受信キューでも読み込みタイムアウトまでにメッセージを受信できなかった場合は{@code null}を返す。
+     */
+    public ReceivedMessage read(ExecutionContext ctx) {
+        if (closed) {
+            return null;
+        }
+        List<String> queueNames = nextOrder();
+        MessagingContext context = MessagingContext.getInstance();
+        for (String queueName : queueNames) {
+            ReceivedMessage message = receiveNoWait(context, queueName);
+            if (message != null) {
+                return message;
+            }
+        }
+        long deadline = System.currentTimeMillis() + readTimeout;
+        while (!closed) {
+            for (String queueName : queueNames) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                ReceivedMessage message = context.receiveSync(queueName, Math.min(receiveSlice, remaining));
+                if (message != null) {
+                    return message;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 指定された受信キューのメッセージを待機せずに受信する。
+     *
+     * @param context メッセージングコンテキスト
+     * @param queueName 受信キュー名
+     * @return 受信したメッセージ(受信可能なメッセージが存在しない場合は{@code null})
+     */
+    private ReceivedMessage receiveNoWait(MessagingContext context, String queueName) {
+        if (context instanceof JmsMessagingProvider.Context) {
+            return ((JmsMessagingProvider.Context) context).receiveSyncNoWait(queueName);
+        }
+        return context.receiveSync(queueName, NO_WAIT_TIMEOUT);
+    }
+
+    /**
+     * 今回の読み込みで受信キューを確認する順番を決定する。
+     * <p/>
+     * 重み付け公平の場合は、各受信キューの現在の重みに重みを加算し、現在の重みが最大の受信キューを最初に確認する。
+     * 最初に確認する受信キューの現在の重みからは、重みの合計を減算する。(smooth weighted round-robin)
+     * 2番目以降は、最初に確認する受信キューに続く受信キューをリストの順に確認する。
+     *
+     * @return 受信キュー名のリスト
+     */
+    synchronized List<String> nextOrder() {
+        if (receiveQueueNames.isEmpty()) {
+            throw new IllegalStateException("receiveQueueNames must be assigned.");
+        }
+        if (priority) {
+            return receiveQueueNames;
+        }
+        if (queueWeights == null) {
+            queueWeights = new int[receiveQueueNames.size()];
+            for (int i = 0; i < queueWeights.length; i++) {
+                String weight = weights.get(receiveQueueNames.get(i));
+                queueWeights[i] = weight == null ? 1 : toWeight(receiveQueueNames.get(i), weight);
+            }
+            currentWeights = new int[queueWeights.length];
+        }
+        int total = 0;
+        int first = 0;
+        for (int i = 0; i < queueWeights.length; i++) {
+            currentWeights[i] += queueWeights[i];
+            total += queueWeights[i];
+            if (currentWeights[i] > currentWeights[first]) {
+                first = i;
+            }
+        }
+        currentWeights[first] -= total;
+
+        List<String> queueNames = new ArrayList<String>(receiveQueueNames.size());
+        for (int i = 0; i < receiveQueueNames.size(); i++) {
+            queueNames.add(receiveQueueNames.get((first + i) % receiveQueueNames.size()));
+        }
+        return queueNames;
+    }
+
+    /**
+     * 重みの設定値を数値に変換する。
+     *
+     * @param queueName 受信キュー名
+     * @param weight 重みの設定値
+     * @return 重み
+     */
+    private static int toWeight(String queueName, String weight) {
+        int value = Integer.parseInt(weight);
+        if (value <= 0) {
+            throw new IllegalArgumentException(
+                    "weight must be greater than 0. queue name = " + queueName + ", weight = " + weight);
+        }
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * クローズされるまでは常にtrueを返す。
+     */
+    public boolean hasNext(ExecutionContext ctx) {
+        return !closed;
+    }
+
+    /** {@inheritDoc} */
+    public void close(ExecutionContext ctx) {
+        closed = true;
+    }
+
+    /**
+     * 受信キュー名のリストを設定する。
+     * 優先度によるスケジューリングを行う場合は、優先度の高い順に設定すること。
+     *
+     * @param receiveQueueNames 受信キュー名のリスト
+     * @return このオブジェクト自体
+     */
+    public synchronized MultiQueueMessageReader setReceiveQueueNames(List<String> receiveQueueNames) {
+        this.receiveQueueNames = receiveQueueNames;
+        queueWeights = null;
+        return this;
+    }
+
+    /**
+     * 受信キュー毎の重みを設定する。
+     * <p/>
+     * 受信キュー名をキーとし、重み(正の整数)を値とする。
+     * 重みを設定しなかった受信キューの重みは1となる。
+     * 優先度によるスケジューリングを行う場合は使用しない。
+     *
+     * @param weights 受信キュー名をキーとした重み
+     * @return このオブジェクト自体
+     */
+    public synchronized MultiQueueMessageReader setWeights(Map<String, String> weights) {
+        this.weights = weights;
+        queueWeights = null;
+        return this;
+    }
+
+    /**
+     * 優先度によるスケジューリングを行うか否かを設定する。
+     * 明示的に指定しなかった場合のデフォルトはfalse(重み付け公平)となる。
+     *
+     * @param priority 優先度によるスケジューリングを行う場合はtrue
+     * @return このオブジェクト自体
+     */
+    public synchronized MultiQueueMessageReader setPriority(boolean priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * 読み込みタイムアウト(msec)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは5秒となる。
+     *
+     * @param readTimeout 読み込みタイムアウト
+     * @return このオブジェクト自体
+     */
+    public MultiQueueMessageReader setReadTimeout(long readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    /**
+     * メッセージが存在しない場合に、受信キュー毎に待機する時間(msec)を設定する。
+     * <p/>
+     * 値を小さくすると、待機中に到着したメッセージを受信するまでの遅延は小さくなるが、MOMへの受信要求の回数が増える。
+     * 明示的に指定しなかった場合のデフォルトは100ミリ秒となる。
+     *
+     * @param receiveSlice 受信キュー毎の受信待機時間
+     * @return このオブジェクト自体
+     */
+    public MultiQueueMessageReader setReceiveSlice(long receiveSlice) {
+        if (receiveSlice <= 0) {
+            throw new IllegalArgumentException("receiveSlice must be greater than 0. receiveSlice = " + receiveSlice);
+        }
+        this.receiveSlice = receiveSlice;
+        return this;
+    }
+}
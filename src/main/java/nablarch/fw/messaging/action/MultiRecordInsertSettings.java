@@ -0,0 +1,91 @@
+package nablarch.fw.messaging.action;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link AsyncMessageReceiveAction}で1電文に含まれる複数のレコードを受信テーブルに登録する場合の設定を保持するクラス。
+ * <p/>
+ * システムリポジトリ上に"multiRecordInsertSettings"という名前で本クラスを設定した場合、
+ * {@link AsyncMessageReceiveAction}は対象のリクエストIDの電文の業務データ部のレコードを1件ずつ読み込み、
+ * レコード毎に受信電文連番を採番して、受信テーブルにJDBCのバッチ更新で登録する。
+ * バッチ更新は読み込んだレコードがバッチサイズに達した時点、及び電文の最後のレコードを読み込んだ時点で実行される。
+ * 読み込んだレコードは登録後に電文から破棄するため、大量のレコードを含む電文でも全レコードをメモリ上に保持しない。
+ * いずれかのレコードの登録に失敗した場合は、電文全体を失敗とする(一部のレコードのみを登録することはない)。
+ * <p/>
+ * 本クラスは、受信電文のジャーナル({@link MessageJournal})と併用できない(併用した場合は初期処理でエラーとなる)。
+ * <p/>
+ * レコードはFormクラスを使用せずに、INSERT文(INSERT_MESSAGE)の名前付きパラメータに設定して登録する。
+ * 登録対象のレコードタイプ名、受信電文連番及び共通項目のパラメータ名は{@link DirectBindingSettings}の設定を使用する。
+ * ({@link DirectBindingSettings}が設定されていない場合は、そのデフォルト値を使用する)
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="multiRecordInsertSettings" class="nablarch.fw.messaging.action.MultiRecordInsertSettings">
+ *   <property name="requestIds">
+ *     <list>
+ *       <value>RM11AC0101</value>
+ *     </list>
+ *   </property>
+ *   <property name="batchSize" value="500" />
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class MultiRecordInsertSettings {
+
+    /** 対象とするリクエストIDのリスト */
+    private List<String> requestIds = new ArrayList<String>();
+
+    /** バッチサイズ */
+    private int batchSize = 100;
+
+    /**
+     * 対象とするリクエストIDのリストを取得する。
+     *
+     * @return 対象とするリクエストIDのリスト
+     */
+    public List<String> getRequestIds() {
+        return requestIds;
+    }
+
+    /**
+     * 対象とするリクエストIDのリストを設定する。
+     * 明示的に指定しなかった場合は、全てのリクエストIDが対象となる。
+     *
+     * @param requestIds 対象とするリクエストIDのリスト
+     * @return このオブジェクト自体
+     */
+    public MultiRecordInsertSettings setRequestIds(List<String> requestIds) {
+        this.requestIds = requestIds;
+        return this;
+    }
+
+    /**
+     * バッチサイズを取得する。
+     *
+     * @return バッチサイズ
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * バッチサイズを設定する。
+     * 明示的に指定しなかった場合のデフォルトは100件となる。
+     *
+     * @param batchSize バッチサイズ
+     * @return このオブジェクト自体
+     */
+    public MultiRecordInsertSettings setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than 0. batchSize = " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+}
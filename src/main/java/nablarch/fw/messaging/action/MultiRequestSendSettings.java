@@ -0,0 +1,115 @@
+package nablarch.fw.messaging.action;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link AsyncMessageSendAction}で複数のメッセージリクエストIDの電文を1プロセスで送信する場合の設定を保持するクラス。
+ * <p/>
+ * システムリポジトリ上に"multiRequestSendSettings"という名前で本クラスを設定した場合、
+ * {@link AsyncMessageSendAction}は起動引数のメッセージリクエストIDの代わりに、
+ * {@link #setMessageRequestIds(List)}で指定した全てのメッセージリクエストIDの送信対象データを、
+ * メッセージリクエストID毎に1件ずつ順番に読み込んで送信する。
+ * <p/>
+ * SQLリソース及び業務データ部のフォーマット定義ファイルは、メッセージリクエストID毎に使用する。
+ * 送信先のキュー名及びFormクラス名は、メッセージリクエストID毎に指定することができ、
+ * 指定しなかった場合は{@link AsyncMessageSendActionSettings}の設定値を使用する。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="multiRequestSendSettings" class="nablarch.fw.messaging.action.MultiRequestSendSettings">
+ *   <property name="messageRequestIds">
+ *     <list>
+ *       <value>MSGREQ0001</value>
+ *       <value>MSGREQ0002</value>
+ *     </list>
+ *   </property>
+ *   <property name="queueNames">
+ *     <map>
+ *       <entry key="MSGREQ0002" value="SEND.QUEUE2" />
+ *     </map>
+ *   </property>
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class MultiRequestSendSettings {
+
+    /** メッセージリクエストIDのリスト */
+    private List<String> messageRequestIds = new ArrayList<String>();
+
+    /** メッセージリクエストID毎の送信先のキュー名 */
+    private Map<String, String> queueNames = new HashMap<String, String>();
+
+    /** メッセージリクエストID毎のFormクラス名 */
+    private Map<String, String> formClassNames = new HashMap<String, String>();
+
+    /**
+     * メッセージリクエストIDのリストを取得する。
+     *
+     * @return メッセージリクエストIDのリスト
+     */
+    public List<String> getMessageRequestIds() {
+        return messageRequestIds;
+    }
+
+    /**
+     * メッセージリクエストIDのリストを設定する。
+     *
+     * @param messageRequestIds メッセージリクエストIDのリスト
+     * @return このオブジェクト自体
+     */
+    public MultiRequestSendSettings setMessageRequestIds(List<String> messageRequestIds) {
+        if (messageRequestIds == null || messageRequestIds.isEmpty()) {
+            throw new IllegalArgumentException("messageRequestIds must not be empty.");
+        }
+        this.messageRequestIds = messageRequestIds;
+        return this;
+    }
+
+    /**
+     * メッセージリクエストID毎の送信先のキュー名を取得する。
+     *
+     * @return メッセージリクエストIDをキーとした送信先のキュー名
+     */
+    public Map<String, String> getQueueNames() {
+        return queueNames;
+    }
+
+    /**
+     * メッセージリクエストID毎の送信先のキュー名を設定する。
+     *
+     * @param queueNames メッセージリクエストIDをキーとした送信先のキュー名
+     * @return このオブジェクト自体
+     */
+    public MultiRequestSendSettings setQueueNames(Map<String, String> queueNames) {
+        this.queueNames = queueNames;
+        return this;
+    }
+
+    /**
+     * メッセージリクエストID毎のFormクラス名を取得する。
+     *
+     * @return メッセージリクエストIDをキーとしたFormクラス名
+     */
+    public Map<String, String> getFormClassNames() {
+        return formClassNames;
+    }
+
+    /**
+     * メッセージリクエストID毎のFormクラス名を設定する。
+     *
+     * @param formClassNames メッセージリクエストIDをキーとしたFormクラス名
+     * @return このオブジェクト自体
+     */
+    public MultiRequestSendSettings setFormClassNames(Map<String, String> formClassNames) {
+        this.formClassNames = formClassNames;
+        return this;
+    }
+}
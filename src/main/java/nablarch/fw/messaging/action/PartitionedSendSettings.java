@@ -0,0 +1,78 @@
+package nablarch.fw.messaging.action;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link AsyncMessageSendAction}をマルチスレッドで実行する場合に、送信対象データをキー項目の値で振り分けるための設定を保持するクラス。
+ * <p/>
+ * システムリポジトリ上に"partitionedSendSettings"という名前で本クラスを設定した場合、
+ * {@link AsyncMessageSendAction}は送信対象データを{@link KeyPartitionedDataReader}で読み込む。
+ * パーティション数は、マルチスレッド実行制御ハンドラ({@link nablarch.fw.handler.MultiThreadExecutionHandler})のスレッド数となる。
+ * <p/>
+ * これにより、同じキー値を持つデータは同じスレッドで抽出順に送信される。
+ * 各スレッドの送信は、マルチスレッド実行制御ハンドラ配下に設定したメッセージングコンテキスト管理ハンドラ
+ * ({@link nablarch.fw.messaging.handler.MessagingContextHandler})によりスレッド毎のメッセージングコンテキストで行われ、
+ * ステータスのバッチ更新({@link BatchStatusUpdateSettings})もスレッド毎に行われる。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="partitionedSendSettings" class="nablarch.fw.messaging.action.PartitionedSendSettings">
+ *   <property name="keyColumnName" value="KEI_NO" />
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class PartitionedSendSettings {
+
+    /** パーティションのキーとなる項目名 */
+    private String keyColumnName;
+
+    /** 他のスレッドに割り当てられたデータの最大保持件数 */
+    private int maxBufferedRows = 1000;
+
+    /**
+     * パーティションのキーとなる項目名を取得する。
+     *
+     * @return パーティションのキーとなる項目名
+     */
+    public String getKeyColumnName() {
+        return keyColumnName;
+    }
+
+    /**
+     * パーティションのキーとなる項目名を設定する。
+     *
+     * @param keyColumnName パーティションのキーとなる項目名
+     * @return このオブジェクト自体
+     */
+    public PartitionedSendSettings setKeyColumnName(String keyColumnName) {
+        this.keyColumnName = keyColumnName;
+        return this;
+    }
+
+    /**
+     * 他のスレッドに割り当てられたデータの最大保持件数を取得する。
+     *
+     * @return 最大保持件数
+     */
+    public int getMaxBufferedRows() {
+        return maxBufferedRows;
+    }
+
+    /**
+     * 他のスレッドに割り当てられたデータの最大保持件数を設定する。
+     * 明示的に指定しなかった場合のデフォルトは1000件となる。
+     *
+     * @param maxBufferedRows 最大保持件数
+     * @return このオブジェクト自体
+     */
+    public PartitionedSendSettings setMaxBufferedRows(int maxBufferedRows) {
+        if (maxBufferedRows <= 0) {
+            throw new IllegalArgumentException("maxBufferedRows must be greater than 0. maxBufferedRows = " + maxBufferedRows);
+        }
+        this.maxBufferedRows = maxBufferedRows;
+        return this;
+    }
+}
@@ -0,0 +1,508 @@
+package nablarch.fw.messaging.action;
+
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import nablarch.core.db.DbAccessException;
+import nablarch.core.db.connection.AppDbConnection;
+import nablarch.core.db.connection.DbConnectionContext;
+import nablarch.core.db.connection.TransactionManagerConnection;
+import nablarch.core.db.statement.SqlPStatement;
+import nablarch.core.db.statement.exception.DuplicateStatementException;
+import nablarch.core.transaction.TransactionContext;
+import nablarch.core.util.annotation.Published;
+import nablarch.fw.messaging.RequestMessage;
+import nablarch.fw.messaging.provider.JmsMessagingProvider.Context.JmsHeaderName;
+
+/**
+ * 再配信された電文など、処理済みの電文を検出するクラス。
+ * <p/>
+ * 処理済みの電文のキー(デフォルトはJMSMessageID)を、{@link #setTableName(String)}で指定したテーブルに記録する。
+ * 記録はアクションの処理と同じトランザクションで行うため、ロールバックされた電文は処理済みとはならない。
+ * <p/>
+ * 電文毎にテーブルを検索するとデータベースの負荷が高くなるため、記録したキーをメモリ上のブルームフィルタにも保持し、
+ * ブルームフィルタで処理済みの可能性がある(偽陽性を含む)と判定された場合のみ、テーブルを検索する。
+ * テーブルの検索で処理済みと確定したキーは、件数上限付きのLRUキャッシュに保持し、以降はテーブルを検索しない。
+ * <p/>
+ * ブルームフィルタは、{@link #setWindow(long)}で指定した期間単位に世代を切り替え、直近2世代のみを保持する。
+ * このため、少なくとも指定期間内に記録したキーは確実に検出できる。
+ * 指定期間を超えて再配信された電文は、テーブルを検索しないため処理済みと判定されない場合がある。
+ * また、プロセスの再起動時はブルームフィルタが初期化されるため、再起動前に記録したキーは検出されない。
+ * <p/>
+ * 記録用のテーブルは、キーを主キーとし、記録日時のカラムを持つこと。
+ * 保持期間を過ぎたレコードの削除は、本クラスでは行わない。
+ * <p/>
+ * {@link AsyncMessageReceiveAction}は、システムリポジトリ上に"receivedMessageDeduplicator"という名前で
+ * 本クラスが設定されている場合に、本クラスを使用する。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="receivedMessageDeduplicator" class="nablarch.fw.messaging.action.ReceivedMessageDeduplicator">
+ *   <property name="tableName" value="RECEIVED_MESSAGE_KEY" />
+ *   <property name="keyColumnName" value="MESSAGE_KEY" />
+ *   <property name="receivedDateColumnName" value="RECEIVED_DATE" />
+ *   <property name="window" value="3600000" />
+ *   <property name="expectedInsertions" value="1000000" />
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class ReceivedMessageDeduplicator {
+
+    /** 電文のキーを保持するヘッダ名 */
+    private String keyHeaderName = JmsHeaderName.MESSAGE_ID;
+
+    /** 再配信された電文のみを検査するか否か */
+    private boolean redeliveredOnly = true;
+
+    /** 記録用テーブルの物理名 */
+    private String tableName;
+
+    /** キーカラムの物理名 */
+    private String keyColumnName;
+
+    /** 記録日時カラムの物理名 */
+    private String receivedDateColumnName;
+
+    /** データベーストランザクション名 */
+    private String dbTransactionName = TransactionContext.DEFAULT_TRANSACTION_CONTEXT_KEY;
+
+    /** ブルームフィルタの世代を切り替える期間(msec) */
+    private long window = 60 * 60 * 1000L;
+
+    /** 1世代に記録するキーの想定件数 */
+    private int expectedInsertions = 100000;
+
+    /** ブルームフィルタの偽陽性率 */
+    private double falsePositiveRate = 0.01;
+
+    /** 処理済みと確定したキーのキャッシュ件数の上限値 */
+    private int maxCacheSize = 10000;
+
+    /** 現世代のブルームフィルタ */
+    private volatile BloomFilter current;
+
+    /** 前世代のブルームフィルタ */
+    private volatile BloomFilter previous;
+
+    /** 処理済みと確定したキーのキャッシュ */
+    private Map<String, Boolean> duplicatedKeys;
+
+    /**
+     * 処理済みの電文か否かを判定する。
+     * <p/>
+     * キーを持たない電文や、再配信された電文のみを検査する設定で再配信されていない電文は、処理済みではないと判定する。
+     *
+     * @param message 電文
+     * @return 処理済みの電文の場合はtrue
+     */
+    public boolean isDuplicate(RequestMessage message) {
+        String key = getKey(message);
+        if (key == null || (redeliveredOnly && !Boolean.TRUE.equals(message.getHeader(JmsHeaderName.REDELIVERED)))) {
+            return false;
+        }
+        BloomFilter currentFilter = getCurrentFilter();
+        BloomFilter previousFilter = previous;
+        if (!currentFilter.mightContain(key) && (previousFilter == null || !previousFilter.mightContain(key))) {
+            return false;
+        }
+        synchronized (this) {
+            if (duplicatedKeys.containsKey(key)) {
+                return true;
+            }
+        }
+        if (!exists(key)) {
+            return false;
+        }
+        synchronized (this) {
+            duplicatedKeys.put(key, Boolean.TRUE);
+        }
+        return true;
+    }
+
+    /**
+     * 電文を処理済みとして記録する。
+     * <p/>
+     * アクションの処理と同じトランザクションで呼び出すこと。
+     * 他のスレッドが同じキーを記録済みの場合(同じ電文が並行して処理された場合)はfalseを返す。
+     * この場合、記録はセーブポイントまでロールバックするため、同じトランザクションの他の処理は取り消されない。
+     *
+     * @param message 電文
+     * @return 記録できた場合はtrue
+     */
+    public boolean record(RequestMessage message) {
+        String key = getKey(message);
+        if (key == null) {
+            return true;
+        }
+        TransactionManagerConnection connection = DbConnectionContext.getTransactionManagerConnection(
+                dbTransactionName);
+        SqlPStatement statement = connection.prepareStatement("INSERT INTO " + tableName
+                + " (" + keyColumnName + ", " + receivedDateColumnName + ") VALUES (?, ?)");
+        statement.setString(1, key);
+        statement.setTimestamp(2, new Timestamp(currentTimeMillis()));
+        // SQL文のエラーでトランザクション全体が無効となるデータベースがあるため、セーブポイントを設定して登録する。
+        Savepoint savepoint = setSavepoint(connection);
+        try {
+            statement.executeUpdate();
+        } catch (DuplicateStatementException e) {
+            rollback(connection, savepoint);
+            return false;
+        }
+        releaseSavepoint(connection, savepoint);
+        getCurrentFilter().put(key);
+        return true;
+    }
+
+    /**
+     * セーブポイントを設定する。
+     *
+     * @param connection データベース接続
+     * @return セーブポイント
+     */
+    private static Savepoint setSavepoint(TransactionManagerConnection connection) {
+        try {
+            return connection.getConnection().setSavepoint();
+        } catch (SQLException e) {
+            throw new DbAccessException("failed to set savepoint.", e);
+        }
+    }
+
+    /**
+     * セーブポイントまでロールバックする。
+     *
+     * @param connection データベース接続
+     * @param savepoint セーブポイント
+     */
+    private static void rollback(TransactionManagerConnection connection, Savepoint savepoint) {
+        try {
+            connection.getConnection().rollback(savepoint);
+        } catch (SQLException e) {
+            throw new DbAccessException("failed to rollback to savepoint.", e);
+        }
+    }
+
+    /**
+     * セーブポイントを解放する。
+     * <p/>
+     * バッチ登録などで1トランザクションに多数の電文を記録した場合に、セーブポイントが蓄積されることを防ぐ。
+     *
+     * @param connection データベース接続
+     * @param savepoint セーブポイント
+     */
+    private static void releaseSavepoint(TransactionManagerConnection connection, Savepoint savepoint) {
+        try {
+            connection.getConnection().releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            throw new DbAccessException("failed to release savepoint.", e);
+        }
+    }
+
+    /**
+     * 記録用テーブルにキーが存在するか否か。
+     *
+     * @param key キー
+     * @return 存在する場合はtrue
+     */
+    private boolean exists(String key) {
+        AppDbConnection connection = DbConnectionContext.getConnection(dbTransactionName);
+        SqlPStatement statement = connection.prepareStatement("SELECT " + keyColumnName
+                + " FROM " + tableName + " WHERE " + keyColumnName + " = ?");
+        statement.setString(1, key);
+        return !statement.retrieve().isEmpty();
+    }
+
+    /**
+     * 電文のキーを取得する。
+     * <p/>
+     * デフォルト実装では、{@link #setKeyHeaderName(String)}で指定したヘッダの値を返す。
+     * 業務データ中の項目をキーとする場合は、本メソッドをオーバーライドすること。
+     *
+     * @param message 電文
+     * @return キー。キーを持たない場合はnull
+     */
+    protected String getKey(RequestMessage message) {
+        Object key = message.getHeader(keyHeaderName);
+        return key == null ? null : key.toString();
+    }
+
+    /**
+     * 現世代のブルームフィルタを取得する。
+     * <p/>
+     * 世代を切り替える期間を経過している場合は、世代を切り替える。
+     *
+     * @return 現世代のブルームフィルタ
+     */
+    private BloomFilter getCurrentFilter() {
+        long now = currentTimeMillis();
+        BloomFilter filter = current;
+        if (filter != null && now - filter.createdAt < window) {
+            return filter;
+        }
+        synchronized (this) {
+            if (current == null) {
+                current = new BloomFilter(expectedInsertions, falsePositiveRate, now);
+                duplicatedKeys = createCache(maxCacheSize);
+            } else if (now - current.createdAt >= window) {
+                previous = now - current.createdAt >= window * 2 ? null : current;
+                current = new BloomFilter(expectedInsertions, falsePositiveRate, now);
+            }
+            return current;
+        }
+    }
+
+    /**
+     * 件数上限付きのLRUキャッシュを生成する。
+     *
+     * @param maxSize 件数の上限値
+     * @return キャッシュ
+     */
+    private static Map<String, Boolean> createCache(final int maxSize) {
+        return new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * 現在時刻を取得する。
+     *
+     * @return 現在時刻(msec)
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * 電文のキーを保持するヘッダ名を設定する。
+     * 明示的に指定しなかった場合のデフォルトはJMSMessageIDとなる。
+     *
+     * @param keyHeaderName ヘッダ名
+     * @return このオブジェクト自体
+     */
+    public ReceivedMessageDeduplicator setKeyHeaderName(String keyHeaderName) {
+        this.keyHeaderName = keyHeaderName;
+        return this;
+    }
+
+    /**
+     * 再配信された電文(JMSRedeliveredがtrueの電文)のみを検査するか否かを設定する。
+     * <p/>
+     * 送信元が同じ電文を重複して送信する可能性があり、業務データ中の項目をキーとする場合はfalseを設定すること。
+     * 明示的に指定しなかった場合のデフォルトはtrueとなる。
+     * なお、本設定に関わらず、全ての電文のキーを記録する。
+     *
+     * @param redeliveredOnly 再配信された電文のみを検査する場合はtrue
+     * @return このオブジェクト自体
+     */
+    public ReceivedMessageDeduplicator setRedeliveredOnly(boolean redeliveredOnly) {
+        this.redeliveredOnly = redeliveredOnly;
+        return this;
+    }
+
+    /**
+     * 記録用テーブルの物理名を設定する。
+     *
+     * @param tableName テーブル名
+     * @return このオブジェクト自体
+     */
+    public ReceivedMessageDeduplicator setTableName(String tableName) {
+        this.tableName = tableName;
+        return this;
+    }
+
+    /**
+     * キーカラムの物理名を設定する。
+     *
+     * @param keyColumnName カラム名
+     * @return このオブジェクト自体
+     */
+    public ReceivedMessageDeduplicator setKeyColumnName(String keyColumnName) {
+        this.keyColumnName = keyColumnName;
+        return this;
+    }
+
+    /**
+     * 記録日時カラムの物理名を設定する。
+     *
+     * @param receivedDateColumnName カラム名
+     * @return このオブジェクト自体
+     */
+    public ReceivedMessageDeduplicator setReceivedDateColumnName(String receivedDateColumnName) {
+        this.receivedDateColumnName = receivedDateColumnName;
+        return this;
+    }
+
+    /**
+     * データベーストランザクション名を設定する。
+     * 明示的に指定しなかった場合は、デフォルトのトランザクション名を使用する。
+     *
+     * @param dbTransactionName データベーストランザクション名
+     * @return このオブジェクト自体
+     */
+    public ReceivedMessageDeduplicator setDbTransactionName(String dbTransactionName) {
+        this.dbTransactionName = dbTransactionName;
+        return this;
+    }
+
+    /**
+     * ブルームフィルタの世代を切り替える期間(msec)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは1時間となる。
+     *
+     * @param window 世代を切り替える期間
+     * @return このオブジェクト自体
+     */
+    public ReceivedMessageDeduplicator setWindow(long window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be greater than 0. window = " + window);
+        }
+        this.window = window;
+        return this;
+    }
+
+    /**
+     * 1世代に記録するキーの想定件数を設定する。
+     * ブルームフィルタのサイズは、本設定と偽陽性率から決定する。
+     * 明示的に指定しなかった場合のデフォルトは100000件となる。
+     *
+     * @param expectedInsertions 想定件数
+     * @return このオブジェクト自体
+     */
+    public ReceivedMessageDeduplicator setExpectedInsertions(int expectedInsertions) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException(
+                    "expectedInsertions must be greater than 0. expectedInsertions = " + expectedInsertions);
+        }
+        this.expectedInsertions = expectedInsertions;
+        return this;
+    }
+
+    /**
+     * ブルームフィルタの偽陽性率を設定する。
+     * 明示的に指定しなかった場合のデフォルトは0.01となる。
+     *
+     * @param falsePositiveRate 偽陽性率(0より大きく1未満)
+     * @return このオブジェクト自体
+     */
+    public ReceivedMessageDeduplicator setFalsePositiveRate(double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException(
+                    "falsePositiveRate must be between 0 and 1. falsePositiveRate = " + falsePositiveRate);
+        }
+        this.falsePositiveRate = falsePositiveRate;
+        return this;
+    }
+
+    /**
+     * 処理済みと確定したキーのキャッシュ件数の上限値を設定する。
+     * 明示的に指定しなかった場合のデフォルトは10000件となる。
+     *
+     * @param maxCacheSize キャッシュ件数の上限値
+     * @return このオブジェクト自体
+     */
+    public ReceivedMessageDeduplicator setMaxCacheSize(int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+        return this;
+    }
+
+    /**
+     * ブルームフィルタ。
+     */
+    private static final class BloomFilter {
+
+        /** ビット配列 */
+        private final AtomicLongArray bits;
+
+        /** ビット数 */
+        private final int numBits;
+
+        /** ハッシュ関数の数 */
+        private final int numHashFunctions;
+
+        /** 生成日時(msec) */
+        private final long createdAt;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param expectedInsertions 想定件数
+         * @param falsePositiveRate 偽陽性率
+         * @param createdAt 生成日時
+         */
+        private BloomFilter(int expectedInsertions, double falsePositiveRate, long createdAt) {
+            double ln2 = Math.log(2);
+            long size = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+            numBits = (int) Math.min(Math.max(size, 64L), Integer.MAX_VALUE - 63);
+            numHashFunctions = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * ln2));
+            bits = new AtomicLongArray((numBits + 63) / 64);
+            this.createdAt = createdAt;
+        }
+
+        /**
+         * キーを追加する。
+         *
+         * @param key キー
+         */
+        private void put(String key) {
+            long hash = hash(key);
+            int hash1 = (int) hash;
+            int hash2 = (int) (hash >>> 32);
+            for (int i = 1; i <= numHashFunctions; i++) {
+                int index = ((hash1 + i * hash2) & Integer.MAX_VALUE) % numBits;
+                long mask = 1L << index;
+                while (true) {
+                    long word = bits.get(index >>> 6);
+                    if ((word & mask) != 0 || bits.compareAndSet(index >>> 6, word, word | mask)) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * キーが追加されている可能性があるか否か。
+         *
+         * @param key キー
+         * @return 追加されている可能性がある場合はtrue
+         */
+        private boolean mightContain(String key) {
+            long hash = hash(key);
+            int hash1 = (int) hash;
+            int hash2 = (int) (hash >>> 32);
+            for (int i = 1; i <= numHashFunctions; i++) {
+                int index = ((hash1 + i * hash2) & Integer.MAX_VALUE) % numBits;
+                if ((bits.get(index >>> 6) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * キーの64ビットハッシュ値(FNV-1a)を計算する。
+         *
+         * @param key キー
+         * @return ハッシュ値
+         */
+        private static long hash(String key) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                hash ^= key.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            // 上位ビットと下位ビットを十分に混合する。
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package nablarch.fw.messaging.action;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.core.util.annotation.Published;
+import nablarch.fw.messaging.MessagingContext;
+import nablarch.fw.messaging.RequestMessage;
+import nablarch.fw.messaging.SendingMessage;
+import nablarch.fw.messaging.provider.JmsMessagingProvider.Context.JmsHeaderName;
+
+/**
+ * リクエストID単位に同時処理数の上限を設けるクラス(バルクヘッド)。
+ * <p/>
+ * 特定のリクエストIDの処理が遅延した場合に、そのリクエストIDの電文が全てのスレッドを占有し、
+ * 他のリクエストIDの電文が処理されなくなることを防ぐ。
+ * <p/>
+ * 上限値を超えた電文は、{@link #setOverflowQueueName(String)}で指定したキューに送信する。
+ * 受信キューと同じキューを指定した場合は、電文が後から再処理される。
+ * 別のキューを指定した場合は、そのキューに電文が退避される。
+ * 送信する電文のボディには、受信した電文のバイト列(フレームワーク制御ヘッダを含む)をそのまま設定し、
+ * 受信した電文のヘッダ(ユーザ定義属性を含む)を引き継ぐ。
+ * ただし、メッセージID、送信先キュー及びMOMが設定するJMSヘッダ(送信日時、再取得の有無、JMS拡張ヘッダなど)は引き継がない。
+ * 最初に受信した電文の送信日時は、ユーザ定義属性({@link #ORIGINAL_TIMESTAMP})として引き継ぐ。
+ * <p/>
+ * 送信する電文には、{@link #setRedeliveryDelay(long)}で指定した時間後の配信日時
+ * ({@link JmsHeaderName#DELIVERY_TIME})を設定する。
+ * これにより、受信キューに送信した電文がすぐに再受信され、上限値を超えたまま送信を繰り返すことを防ぐ。
+ * なお、再処理される電文は後から受信した電文より後に処理されるため、電文の処理順序は保証されない。
+ * <p/>
+ * {@link AsyncMessageReceiveAction}は、システムリポジトリ上に"requestBulkhead"という名前で
+ * 本クラスが設定されている場合に、本クラスを使用する。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="requestBulkhead" class="nablarch.fw.messaging.action.RequestBulkhead">
+ *   <property name="defaultMaxInFlight" value="4" />
+ *   <property name="maxInFlights">
+ *     <map>
+ *       <entry key="RM11AC0101" value="1" />
+ *     </map>
+ *   </property>
+ *   <property name="overflowQueueName" value="RECEIVE.TEST" />
+ *   <property name="redeliveryDelay" value="1000" />
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class RequestBulkhead {
+
+    /**
+     * 転送する電文に、最初に受信した電文の送信日時(JMSTimestamp)を設定するユーザ定義属性名。
+     * <p/>
+     * 転送した電文の送信日時は転送時の日時となるため、{@link AsyncMessageReceiveAction}は本属性がある場合、
+     * 本属性の値から完了ラグを計測する。
+     */
+    public static final String ORIGINAL_TIMESTAMP = "NablarchOriginalTimestamp";
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(RequestBulkhead.class);
+
+    /** リクエストID毎の同時処理数の上限値 */
+    private Map<String, Integer> maxInFlights = new HashMap<String, Integer>();
+
+    /** 個別に上限値を設定していないリクエストIDの同時処理数の上限値 */
+    private int defaultMaxInFlight = 0;
+
+    /** 上限値を超えた電文の送信先キューの論理名 */
+    private String overflowQueueName;
+
+    /** 上限値を超えた電文の配信遅延時間(msec) */
+    private long redeliveryDelay = 1000L;
+
+    /** リクエストID毎の処理中の電文数 */
+    private final ConcurrentMap<String, AtomicInteger> inFlights = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * 指定されたリクエストIDの処理の実行権を取得する。
+     *
+     * @param requestId リクエストID
+     * @return 処理中の電文数が上限値未満で、実行権を取得できた場合はtrue
+     */
+    public boolean tryAcquire(String requestId) {
+        int max = getMaxInFlight(requestId);
+        AtomicInteger inFlight = getInFlightCounter(requestId);
+        while (true) {
+            int current = inFlight.get();
+            if (max > 0 && current >= max) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * {@link #tryAcquire(String)}で取得した実行権を解放する。
+     *
+     * @param requestId リクエストID
+     */
+    public void release(String requestId) {
+        getInFlightCounter(requestId).decrementAndGet();
+    }
+
+    /**
+     * 上限値を超えた電文を、{@link #setOverflowQueueName(String)}で指定したキューに送信する。
+     *
+     * @param message 上限値を超えた電文
+     */
+    public void overflow(RequestMessage message) {
+        if (overflowQueueName == null) {
+            throw new IllegalStateException("overflowQueueName was not set.");
+        }
+        SendingMessage sendingMessage = new SendingMessage();
+        for (Map.Entry<String, Object> header : message.getHeaderMap().entrySet()) {
+            if (isInheritedHeader(header.getKey())) {
+                sendingMessage.setHeader(header.getKey(), header.getValue());
+            }
+        }
+        // 繰り返し転送された場合も、最初に受信した電文の送信日時を引き継ぐ。
+        Object timestamp = message.getHeader(JmsHeaderName.TIMESTAMP);
+        if (message.getHeader(ORIGINAL_TIMESTAMP) == null && timestamp != null) {
+            sendingMessage.setHeader(ORIGINAL_TIMESTAMP, timestamp);
+        }
+        sendingMessage.setDestination(overflowQueueName);
+        if (redeliveryDelay > 0) {
+            sendingMessage.setHeader(JmsHeaderName.DELIVERY_TIME, System.currentTimeMillis() + redeliveryDelay);
+        }
+        byte[] body = message.getBodyBytes();
+        sendingMessage.getBodyStream().write(body, 0, body.length);
+        MessagingContext.getInstance().send(sendingMessage);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.logDebug("the number of in-flight messages reached the limit. the message was forwarded."
+                    + " request id = [" + message.getRequestPath() + "]"
+                    + ", queue name = [" + overflowQueueName + "]");
+        }
+    }
+
+    /**
+     * 転送する電文に引き継ぐヘッダか否かを判定する。
+     * <p/>
+     * メッセージID、送信先キュー及びMOMが設定するJMSヘッダ以外のヘッダを引き継ぐ。
+     * JMSヘッダのうち、メッセージタイプ、優先度及びパーシステンス設定は引き継ぐ。
+     *
+     * @param name ヘッダ名
+     * @return 引き継ぐヘッダの場合はtrue
+     */
+    private static boolean isInheritedHeader(String name) {
+        if (name.equals(JmsHeaderName.MESSAGE_ID) || name.equals(JmsHeaderName.DESTINATION)) {
+            return false;
+        }
+        if (name.equals(JmsHeaderName.TYPE) || name.equals(JmsHeaderName.PRIORITY)
+                || name.equals(JmsHeaderName.DELIVERY_MODE)) {
+            return true;
+        }
+        return !name.startsWith("JMS");
+    }
+
+    /**
+     * 指定されたリクエストIDの処理中の電文数を取得する。
+     *
+     * @param requestId リクエストID
+     * @return 処理中の電文数
+     */
+    public int getInFlight(String requestId) {
+        return getInFlightCounter(requestId).get();
+    }
+
+    /**
+     * リクエストIDに対応する同時処理数の上限値を取得する。
+     *
+     * @param requestId リクエストID
+     * @return 同時処理数の上限値(0以下の場合は無制限)
+     */
+    private int getMaxInFlight(String requestId) {
+        Integer max = maxInFlights.get(requestId);
+        return max == null ? defaultMaxInFlight : max;
+    }
+
+    /**
+     * リクエストIDに対応する処理中電文数のカウンタを取得する。
+     *
+     * @param requestId リクエストID
+     * @return カウンタ
+     */
+    private AtomicInteger getInFlightCounter(String requestId) {
+        AtomicInteger counter = inFlights.get(requestId);
+        if (counter == null) {
+            AtomicInteger newCounter = new AtomicInteger();
+            counter = inFlights.putIfAbsent(requestId, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * リクエストID毎の同時処理数の上限値を設定する。
+     *
+     * @param maxInFlights リクエストIDをキー、同時処理数の上限値を値とするMap
+     * @return このオブジェクト自体
+     */
+    public RequestBulkhead setMaxInFlights(Map<String, Integer> maxInFlights) {
+        this.maxInFlights = new HashMap<String, Integer>(maxInFlights);
+        return this;
+    }
+
+    /**
+     * 個別に上限値を設定していないリクエストIDの同時処理数の上限値を設定する。
+     * 0以下の場合は無制限となる。
+     * 明示的に指定しなかった場合のデフォルトは0(無制限)となる。
+     *
+     * @param defaultMaxInFlight 同時処理数の上限値
+     * @return このオブジェクト自体
+     */
+    public RequestBulkhead setDefaultMaxInFlight(int defaultMaxInFlight) {
+        this.defaultMaxInFlight = defaultMaxInFlight;
+        return this;
+    }
+
+    /**
+     * 上限値を超えた電文の送信先キューの論理名を設定する。
+     * <p/>
+     * 受信キューを指定した場合は後から再処理され、別のキューを指定した場合は退避される。
+     *
+     * @param overflowQueueName 送信先キューの論理名
+     * @return このオブジェクト自体
+     */
+    public RequestBulkhead setOverflowQueueName(String overflowQueueName) {
+        this.overflowQueueName = overflowQueueName;
+        return this;
+    }
+
+    /**
+     * 上限値を超えた電文の配信遅延時間(msec)を設定する。
+     * <p/>
+     * 転送する電文は、この時間が経過するまで受信側に配信されない(MOMが配信遅延時間をサポートしている必要がある)。
+     * 0の場合は配信遅延時間を設定しない。退避用のキューを指定する場合に使用する。
+     * 明示的に指定しなかった場合のデフォルトは1000msecとなる。
+     *
+     * @param redeliveryDelay 配信遅延時間(msec)
+     * @return このオブジェクト自体
+     */
+    public RequestBulkhead setRedeliveryDelay(long redeliveryDelay) {
+        if (redeliveryDelay < 0) {
+            throw new IllegalArgumentException(
+                    "redeliveryDelay must not be negative. redeliveryDelay = " + redeliveryDelay);
+        }
+        this.redeliveryDelay = redeliveryDelay;
+        return this;
+    }
+}
@@ -0,0 +1,60 @@
+package nablarch.fw.messaging.action;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link AsyncMessageSendAction}で送信対象データ毎に配信日時を指定して送信する場合の設定を保持するクラス。
+ * <p/>
+ * システムリポジトリ上に"scheduledDeliverySettings"という名前で本クラスを設定した場合、
+ * {@link AsyncMessageSendAction}は送信対象データの配信日時カラムの値を、送信電文の配信日時ヘッダ
+ * ({@link nablarch.fw.messaging.provider.JmsMessagingProvider.Context.JmsHeaderName#DELIVERY_TIME})に設定する。
+ * {@link nablarch.fw.messaging.provider.JmsMessagingProvider}は、配信日時までの時間を配信遅延時間
+ * (JMS 2.0の{@code MessageProducer#setDeliveryDelay(long)})としてMOMに通知するため、
+ * 配信日時が未来の送信対象データも即時にMOMに引き渡され、配信日時になるまで受信側には配信されない。
+ * <p/>
+ * このため、送信対象データを抽出するSQL文(SELECT_SEND_DATA)で配信日時による絞り込みを行う必要は無い。
+ * 配信日時カラムの値が{@code null}の送信対象データや、配信日時を過ぎている送信対象データは即時に配信される。
+ * <p/>
+ * 電文のまとめ送信設定({@link TelegramPackingSettings})がある場合、配信日時が異なる送信対象データは同じ電文にまとめない。
+ * (配信日時が変わった時点で送信待ちの電文を送信し、新しい電文を開始する。)
+ * <p/>
+ * 配信遅延時間はMOMがサポートしている必要がある。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="scheduledDeliverySettings" class="nablarch.fw.messaging.action.ScheduledDeliverySettings">
+ *   <property name="deliveryTimeColumnName" value="deliveryTime" />
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class ScheduledDeliverySettings {
+
+    /** 配信日時のカラム名 */
+    private String deliveryTimeColumnName = "deliveryTime";
+
+    /**
+     * 配信日時のカラム名を取得する。
+     *
+     * @return 配信日時のカラム名
+     */
+    public String getDeliveryTimeColumnName() {
+        return deliveryTimeColumnName;
+    }
+
+    /**
+     * 配信日時のカラム名を設定する。
+     * <p/>
+     * カラムの値は、{@link java.util.Date}(TIMESTAMP型など)又はエポックミリ秒の数値であること。
+     * 明示的に指定しなかった場合のデフォルトは"deliveryTime"となる。
+     *
+     * @param deliveryTimeColumnName 配信日時のカラム名
+     * @return このオブジェクト自体
+     */
+    public ScheduledDeliverySettings setDeliveryTimeColumnName(String deliveryTimeColumnName) {
+        this.deliveryTimeColumnName = deliveryTimeColumnName;
+        return this;
+    }
+}
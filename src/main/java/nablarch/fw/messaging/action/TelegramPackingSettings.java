@@ -0,0 +1,88 @@
+package nablarch.fw.messaging.action;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * {@link AsyncMessageSendAction}で複数の送信対象データを1つの電文にまとめて送信する場合の設定を保持するクラス。
+ * <p/>
+ * システムリポジトリ上に"telegramPackingSettings"という名前で本クラスを設定した場合、
+ * {@link AsyncMessageSendAction}は1つのヘッダ部(先頭の送信対象データから生成する)の後ろに、
+ * 複数の送信対象データを業務データ部のレコードとして格納した電文を送信する。
+ * <p/>
+ * 電文は、レコード数が最大レコード数に達した時点、次のレコードを追加すると最大バイト数を超える時点、
+ * 及びトランザクションのコミット直前に送信される。
+ * このため、コミット間隔を指定したループ制御ハンドラ({@link nablarch.fw.handler.LoopHandler})と組み合わせて使用すること。
+ * 送信対象データのステータスは、これまでどおり送信対象データ毎に更新する。
+ * <p/>
+ * 電文の送信に失敗した場合、トランザクションはロールバックされるため、同じ電文にまとめた送信対象データは
+ * 次回の対象データ抽出時に再度送信対象となる。(送信に失敗した時点で処理していた送信対象データのステータスはエラーとなる。)
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="telegramPackingSettings" class="nablarch.fw.messaging.action.TelegramPackingSettings">
+ *   <property name="maxRecords" value="100" />
+ *   <property name="maxBytes" value="65536" />
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class TelegramPackingSettings {
+
+    /** 1電文の最大レコード数 */
+    private int maxRecords = 100;
+
+    /** 1電文の最大バイト数 */
+    private int maxBytes = 0;
+
+    /**
+     * 1電文の最大レコード数を取得する。
+     *
+     * @return 最大レコード数
+     */
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    /**
+     * 1電文の最大レコード数(ヘッダ部を除く)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは100件となる。
+     *
+     * @param maxRecords 最大レコード数
+     * @return このオブジェクト自体
+     */
+    public TelegramPackingSettings setMaxRecords(int maxRecords) {
+        if (maxRecords <= 0) {
+            throw new IllegalArgumentException("maxRecords must be greater than 0. maxRecords = " + maxRecords);
+        }
+        this.maxRecords = maxRecords;
+        return this;
+    }
+
+    /**
+     * 1電文の最大バイト数を取得する。
+     *
+     * @return 最大バイト数
+     */
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 1電文の最大バイト数(ヘッダ部を含む)を設定する。
+     * 次のレコードは書式化した上で最大バイト数を超えるか否かを判定するため、レコード長が可変の場合も電文は最大バイト数を超えない。
+     * ただし、1レコードで最大バイト数を超える場合は、そのレコードのみを格納した電文を送信する。
+     * 明示的に指定しなかった場合のデフォルトは0(バイト数による制限なし)となる。
+     *
+     * @param maxBytes 最大バイト数
+     * @return このオブジェクト自体
+     */
+    public TelegramPackingSettings setMaxBytes(int maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative. maxBytes = " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        return this;
+    }
+}
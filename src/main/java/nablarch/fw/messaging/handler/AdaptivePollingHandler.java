@@ -0,0 +1,270 @@
+package nablarch.fw.messaging.handler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.core.util.annotation.Published;
+import nablarch.fw.DataReader;
+import nablarch.fw.DataReaderFactory;
+import nablarch.fw.ExecutionContext;
+import nablarch.fw.Handler;
+
+/**
+ * 常駐バッチのデータ監視間隔を、処理対象データの有無に応じて調整するハンドラ。
+ * <p/>
+ * 後続ハンドラの実行(1回分のデータ監視)で処理対象データが存在した場合は、待機せずに直ちに次のデータ監視を行う。
+ * 処理対象データが存在しなかった場合は待機し、待機時間は処理対象データが存在しない間、
+ * 最小待機時間({@link #setMinInterval(long)})から最大待機時間({@link #setMaxInterval(long)})まで指数的に延長する。
+ * <p/>
+ * 処理対象データを登録する処理から{@link #wakeUp()}を呼び出した場合は、待機を中断して直ちにデータ監視を行う。
+ * (同一JVM内で登録する場合のみ有効)
+ * <p/>
+ * 処理対象データの有無は、後続の{@link DataReaderFactory}(業務アクション)が生成したデータリーダをラップし、
+ * 読み込んだ件数を数えることで判定する。
+ * <p/>
+ * 本ハンドラは、{@link nablarch.fw.handler.ProcessResidentHandler}の後ろ、
+ * {@link nablarch.fw.handler.MultiThreadExecutionHandler}の直前に設定すること。
+ * 待機は本ハンドラで行うため、{@link nablarch.fw.handler.ProcessResidentHandler}のデータ監視間隔には1を設定すること。
+ * なお、待機中はプロセス停止の確認も行われないため、最大待機時間はプロセス停止に要する時間を考慮して設定すること。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="adaptivePollingHandler" class="nablarch.fw.messaging.handler.AdaptivePollingHandler">
+ *   <property name="minInterval" value="100" />
+ *   <property name="maxInterval" value="30000" />
+ * </component>
+ * }
+ * </pre>
+ */
+@Published(tag = "architect")
+public class AdaptivePollingHandler implements Handler<Object, Object> {
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(AdaptivePollingHandler.class);
+
+    /** 最小待機時間(msec) */
+    private long minInterval = 100L;
+
+    /** 最大待機時間(msec) */
+    private long maxInterval = 30000L;
+
+    /** 次回のデータ監視までの待機時間(msec) */
+    private long currentInterval = 0L;
+
+    /** 待機の中断が要求されている場合はtrue */
+    private boolean wakeUpRequested;
+
+    /** 待機に使用するロック */
+    private final Object lock = new Object();
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 後続ハンドラを実行した後、処理対象データの有無に応じた時間待機する。
+     */
+    public Object handle(Object data, ExecutionContext context) {
+        AtomicLong readCount = new AtomicLong();
+        prepareDataReader(data, context, readCount);
+
+        Object result = context.handleNext(data);
+
+        long interval = nextInterval(readCount.get() > 0);
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.logTrace("read count = " + readCount.get() + ", next data watch interval = " + interval + "ms");
+        }
+        if (interval > 0) {
+            await(interval);
+        }
+        return result;
+    }
+
+    /**
+     * 読み込み件数を数えるデータリーダを生成するよう、実行コンテキストを設定する。
+     * <p/>
+     * 実行コンテキストにデータリーダが設定されている場合は、そのデータリーダを読み込み件数を数えるデータリーダでラップする。
+     * 設定されていない場合は、後続の{@link DataReaderFactory}をラップしたデータリーダファクトリを実行コンテキストに設定する。
+     * データリーダの生成は後続ハンドラ({@link nablarch.fw.handler.MultiThreadExecutionHandler})に委ねるため、
+     * データリーダは並行実行数({@link nablarch.core.ThreadContext#getConcurrentNumber()})が設定された後に生成される。
+     *
+     * @param data 入力データ
+     * @param context 実行コンテキスト
+     * @param readCount 読み込み件数
+     */
+    @SuppressWarnings("unchecked")
+    private void prepareDataReader(Object data, ExecutionContext context, AtomicLong readCount) {
+        if (context.getDataReader() != null) {
+            context.setDataReader(new CountingDataReader<Object>(context.getDataReader(), readCount));
+            return;
+        }
+        DataReaderFactory<Object> factory = context.findHandler(data, DataReaderFactory.class, AdaptivePollingHandler.class);
+        if (factory == null) {
+            throw new IllegalStateException("Any DataReader or DataReaderFactory is not available.");
+        }
+        context.setDataReaderFactory(new CountingDataReaderFactory<Object>(factory, readCount));
+    }
+
+    /**
+     * 次回のデータ監視までの待機時間を算出する。
+     *
+     * @param found 処理対象データが存在した場合はtrue
+     * @return 待機時間(msec)
+     */
+    synchronized long nextInterval(boolean found) {
+        if (found) {
+            currentInterval = 0L;
+        } else if (currentInterval == 0L) {
+            currentInterval = minInterval;
+        } else {
+            currentInterval = Math.min(currentInterval * 2, maxInterval);
+        }
+        return currentInterval;
+    }
+
+    /**
+     * 指定された時間待機する。
+     * <p/>
+     * 待機中に{@link #wakeUp()}が呼び出された場合は、待機を中断する。
+     * 待機中にスレッドが割り込まれた場合は、割り込み状態を復元した上で実行時例外を送出する。
+     *
+     * @param interval 待機時間(msec)
+     */
+    private void await(long interval) {
+        long deadline = System.currentTimeMillis() + interval;
+        synchronized (lock) {
+            try {
+                long remaining = interval;
+                while (!wakeUpRequested && remaining > 0) {
+                    lock.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } finally {
+                wakeUpRequested = false;
+            }
+        }
+    }
+
+    /**
+     * 待機を中断し、直ちにデータ監視を行うよう要求する。
+     * <p/>
+     * 待機中でない場合は、次回の待機が中断される。
+     * 処理対象データを登録した後に呼び出すこと。
+     */
+    public void wakeUp() {
+        synchronized (this) {
+            currentInterval = 0L;
+        }
+        synchronized (lock) {
+            wakeUpRequested = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 最小待機時間(msec)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは100ミリ秒となる。
+     *
+     * @param minInterval 最小待機時間
+     * @return このオブジェクト自体
+     */
+    public AdaptivePollingHandler setMinInterval(long minInterval) {
+        if (minInterval <= 0) {
+            throw new IllegalArgumentException("minInterval must be greater than 0. minInterval = " + minInterval);
+        }
+        this.minInterval = minInterval;
+        return this;
+    }
+
+    /**
+     * 最大待機時間(msec)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは30秒となる。
+     *
+     * @param maxInterval 最大待機時間
+     * @return このオブジェクト自体
+     */
+    public AdaptivePollingHandler setMaxInterval(long maxInterval) {
+        if (maxInterval <= 0) {
+            throw new IllegalArgumentException("maxInterval must be greater than 0. maxInterval = " + maxInterval);
+        }
+        this.maxInterval = maxInterval;
+        return this;
+    }
+
+    /**
+     * 読み込み件数を数えるデータリーダを生成するデータリーダファクトリ。
+     *
+     * @param <TData> 読み込むデータの型
+     */
+    private static final class CountingDataReaderFactory<TData> implements DataReaderFactory<TData> {
+
+        /** 元となるデータリーダファクトリ */
+        private final DataReaderFactory<TData> factory;
+
+        /** 読み込み件数 */
+        private final AtomicLong readCount;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param factory 元となるデータリーダファクトリ
+         * @param readCount 読み込み件数
+         */
+        private CountingDataReaderFactory(DataReaderFactory<TData> factory, AtomicLong readCount) {
+            this.factory = factory;
+            this.readCount = readCount;
+        }
+
+        /** {@inheritDoc} */
+        public DataReader<TData> createReader(ExecutionContext ctx) {
+            return new CountingDataReader<TData>(factory.createReader(ctx), readCount);
+        }
+    }
+
+    /**
+     * 読み込み件数を数えるデータリーダ。
+     *
+     * @param <TData> 読み込むデータの型
+     */
+    private static final class CountingDataReader<TData> implements DataReader<TData> {
+
+        /** 元となるデータリーダ */
+        private final DataReader<TData> reader;
+
+        /** 読み込み件数 */
+        private final AtomicLong readCount;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param reader 元となるデータリーダ
+         * @param readCount 読み込み件数
+         */
+        private CountingDataReader(DataReader<TData> reader, AtomicLong readCount) {
+            this.reader = reader;
+            this.readCount = readCount;
+        }
+
+        /** {@inheritDoc} */
+        public TData read(ExecutionContext ctx) {
+            TData data = reader.read(ctx);
+            if (data != null) {
+                readCount.incrementAndGet();
+            }
+            return data;
+        }
+
+        /** {@inheritDoc} */
+        public boolean hasNext(ExecutionContext ctx) {
+            return reader.hasNext(ctx);
+        }
+
+        /** {@inheritDoc} */
+        public void close(ExecutionContext ctx) {
+            reader.close(ctx);
+        }
+    }
+}
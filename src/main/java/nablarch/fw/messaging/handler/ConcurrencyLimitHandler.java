@@ -0,0 +1,84 @@
+package nablarch.fw.messaging.handler;
+
+import nablarch.core.util.annotation.Published;
+import nablarch.fw.ExecutionContext;
+import nablarch.fw.Handler;
+import nablarch.fw.messaging.MessagingContext;
+import nablarch.fw.messaging.action.AdaptiveConcurrencyLimiter;
+import nablarch.fw.messaging.provider.JmsMessagingProvider;
+import nablarch.fw.results.ServiceUnavailable;
+
+/**
+ * {@link AdaptiveConcurrencyLimiter}が許可した数のスレッドのみ、メッセージの受信処理を実行させるハンドラ。
+ * <p/>
+ * 実行権を取得できなかったスレッドは、メッセージを受信せずに{@link ServiceUnavailable}を送出し、
+ * {@link nablarch.fw.handler.RequestThreadLoopHandler}のリトライ間隔の間待機する。
+ * 受信済みのメッセージをJVM内で待機させないため、データベースの処理遅延時に処理待ちの電文が滞留することはない。
+ * <p/>
+ * また、スレッドが使用するメッセージングコンテキストが{@link JmsMessagingProvider.Context}の場合、
+ * 待機中はコネクションを一時停止({@link JmsMessagingProvider.Context#pause()})し、
+ * MOMからメッセージが先読みされることを防ぐ。
+ * さらに、キャッシュしているコンシューマをクローズ({@link JmsMessagingProvider.Context#closeConsumers()})し、
+ * 先読み済みのメッセージを他のコンシューマで受信できるようMOMに返却する。
+ * コネクションは、実行権を取得した時点で再開する(コンシューマは次の受信時に再生成される)。
+ * <p/>
+ * 本ハンドラは、{@link MessagingContextHandler}及び{@link nablarch.fw.handler.RequestThreadLoopHandler}より後ろ、
+ * トランザクション制御ハンドラ及び{@link nablarch.fw.handler.DataReadHandler}より前に設定すること。
+ */
+@Published(tag = "architect")
+public class ConcurrencyLimitHandler implements Handler<Object, Object> {
+
+    /** 同時処理数を制御するクラス */
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 実行権を取得できた場合は後続ハンドラを実行し、取得できなかった場合は{@link ServiceUnavailable}を送出する。
+     */
+    public Object handle(Object data, ExecutionContext context) {
+        JmsMessagingProvider.Context messagingContext = getJmsContext();
+        if (!concurrencyLimiter.tryAcquire()) {
+            if (messagingContext != null && !messagingContext.isPaused()) {
+                messagingContext.pause();
+                messagingContext.closeConsumers();
+            }
+            throw new ServiceUnavailable("the number of in-flight messages reached the concurrency limit. limit = "
+                    + concurrencyLimiter.getLimit());
+        }
+        try {
+            if (messagingContext != null) {
+                messagingContext.resume();
+            }
+            return context.handleNext(data);
+        } finally {
+            concurrencyLimiter.release();
+        }
+    }
+
+    /**
+     * スレッドに紐付くJMSベースのメッセージングコンテキストを取得する。
+     *
+     * @return メッセージングコンテキスト。JMSベースのコンテキストが紐付いていない場合はnull
+     */
+    private JmsMessagingProvider.Context getJmsContext() {
+        try {
+            MessagingContext messagingContext = MessagingContext.getInstance();
+            return messagingContext instanceof JmsMessagingProvider.Context
+                    ? (JmsMessagingProvider.Context) messagingContext : null;
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 同時処理数を制御するクラスを設定する。
+     *
+     * @param concurrencyLimiter 同時処理数を制御するクラス
+     * @return このオブジェクト自体
+     */
+    public ConcurrencyLimitHandler setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+}
@@ -0,0 +1,412 @@
+package nablarch.fw.messaging.handler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.core.util.annotation.Published;
+import nablarch.fw.DataReader;
+import nablarch.fw.ExecutionContext;
+import nablarch.fw.Handler;
+import nablarch.fw.messaging.MessagingContext;
+import nablarch.fw.messaging.provider.JmsMessagingProvider;
+import nablarch.fw.messaging.provider.QueueBacklog;
+import nablarch.fw.messaging.provider.QueueBacklogSampler;
+import nablarch.fw.results.ServiceUnavailable;
+
+/**
+ * 常駐型の受信処理において、同時にメッセージを受信するスレッド数を負荷に応じて増減させるハンドラ。
+ * <p/>
+ * スレッド数の上限値({@link #setMaxConcurrency(int)})分のスレッドを
+ * {@link nablarch.fw.handler.MultiThreadExecutionHandler}で起動しておき、
+ * 本ハンドラが許可した数のスレッドのみが後続ハンドラ(メッセージの受信処理)を実行する。
+ * 許可されなかったスレッドは{@link ServiceUnavailable}を送出し、
+ * {@link nablarch.fw.handler.RequestThreadLoopHandler}のリトライ間隔の間待機する。
+ * <p/>
+ * スレッドが使用するメッセージングコンテキストが{@link JmsMessagingProvider.Context}の場合、
+ * 待機中はコネクションを一時停止({@link JmsMessagingProvider.Context#pause()})した上で、
+ * キャッシュしているMessageConsumerをクローズ({@link JmsMessagingProvider.Context#closeConsumers()})する。
+ * これにより、待機中のスレッドが先読みしたメッセージはMOMに返却され、実行中のスレッドで処理される。
+ * コネクションは、実行権を取得した時点で再開する。
+ * <p/>
+ * 同時受信数は、{@link #setEvaluationInterval(long)}の間隔で以下の指標を元に1ずつ増減する。
+ * <ul>
+ *   <li>受信待ち時間の割合(メッセージを受信できなかったループの処理時間 / 全ループの処理時間)</li>
+ *   <li>キューの滞留件数({@link #setBacklogSampler(QueueBacklogSampler)}を設定した場合のみ)</li>
+ *   <li>1メッセージ当たりの平均処理時間({@link #setMaxLatency(long)}を設定した場合のみ)</li>
+ * </ul>
+ * 受信待ちの割合が{@link #setScaleUpWaitRatio(double)}以下で、滞留件数が「同時受信数 × {@link #setBacklogPerConsumer(int)}」
+ * を超え、平均処理時間が{@link #setMaxLatency(long)}以下の場合に同時受信数を増やす。
+ * 平均処理時間が上限を超えている場合は、後続の処理(データベース等)が飽和しているとみなし同時受信数を増やさない。
+ * 受信待ちの割合が{@link #setScaleDownWaitRatio(double)}以上で、滞留件数が上記の閾値以下の場合に同時受信数を減らす。
+ * 増減が頻繁に繰り返されることを防ぐため、前回の変更から増加時は{@link #setScaleUpCooldown(long)}、
+ * 減少時は{@link #setScaleDownCooldown(long)}が経過するまで変更を行わない。
+ * <p/>
+ * 本ハンドラは、{@link MessagingContextHandler}及び{@link nablarch.fw.handler.RequestThreadLoopHandler}より後ろ、
+ * トランザクション制御ハンドラ及び{@link nablarch.fw.handler.DataReadHandler}より前に設定すること。
+ */
+@Published(tag = "architect")
+public class ConsumerAutoScalingHandler implements Handler<Object, Object> {
+
+    /** ロガー */
+    private static final Logger LOGGER = LoggerManager.get(ConsumerAutoScalingHandler.class);
+
+    /** 同時受信数の下限値 */
+    private int minConcurrency = 1;
+
+    /** 同時受信数の上限値 */
+    private int maxConcurrency = 0;
+
+    /** 評価間隔(msec) */
+    private long evaluationInterval = 10 * 1000L;
+
+    /** 同時受信数を増やした後、再度変更するまでの待機時間(msec) */
+    private long scaleUpCooldown = 30 * 1000L;
+
+    /** 同時受信数を減らした後、再度変更するまでの待機時間(msec) */
+    private long scaleDownCooldown = 120 * 1000L;
+
+    /** 同時受信数を増やす受信待ち時間の割合の閾値 */
+    private double scaleUpWaitRatio = 0.1;
+
+    /** 同時受信数を減らす受信待ち時間の割合の閾値 */
+    private double scaleDownWaitRatio = 0.5;
+
+    /** 1スレッド当たりの許容滞留件数 */
+    private int backlogPerConsumer = 10;
+
+    /** 同時受信数を増やすことのできる平均処理時間の上限値(msec) */
+    private long maxLatency = 0;
+
+    /** キューの滞留状況を計測するクラス */
+    private QueueBacklogSampler backlogSampler = null;
+
+    /** 滞留件数を参照するキューの論理名 */
+    private String queueName = null;
+
+    /** 現在の同時受信数 */
+    private volatile int concurrency = 0;
+
+    /** 後続ハンドラを実行中のスレッド数 */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /** 評価期間中にメッセージを受信したループの処理時間(nsec) */
+    private long busyNanos = 0;
+
+    /** 評価期間中にメッセージを受信できなかったループの処理時間(nsec) */
+    private long idleNanos = 0;
+
+    /** 評価期間中に受信したメッセージ数 */
+    private int receivedCount = 0;
+
+    /** 評価期間の開始日時(msec) */
+    private long windowStartedAt = 0;
+
+    /** 前回同時受信数を変更した日時(msec) */
+    private long lastScaledAt = 0;
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 現在の同時受信数に空きがある場合は後続ハンドラを実行し、空きが無い場合は{@link ServiceUnavailable}を送出する。
+     */
+    public Object handle(Object data, ExecutionContext context) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalStateException("maxConcurrency was not set.");
+        }
+        JmsMessagingProvider.Context messagingContext = getJmsContext();
+        if (!acquire()) {
+            if (messagingContext != null && !messagingContext.isPaused()) {
+                messagingContext.pause();
+                messagingContext.closeConsumers();
+            }
+            throw new ServiceUnavailable("the number of concurrent consumers reached the current limit. limit = "
+                    + concurrency);
+        }
+        long startedAt = System.nanoTime();
+        boolean received = false;
+        try {
+            if (messagingContext != null) {
+                messagingContext.resume();
+            }
+            Object result = context.handleNext(data);
+            received = !(result instanceof DataReader.NoMoreRecord);
+            return result;
+        } finally {
+            active.decrementAndGet();
+            record(received, System.nanoTime() - startedAt);
+            evaluate(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * スレッドに紐付くJMSベースのメッセージングコンテキストを取得する。
+     *
+     * @return メッセージングコンテキスト。JMSベースのコンテキストが紐付いていない場合はnull
+     */
+    private JmsMessagingProvider.Context getJmsContext() {
+        try {
+            MessagingContext messagingContext = MessagingContext.getInstance();
+            return messagingContext instanceof JmsMessagingProvider.Context
+                    ? (JmsMessagingProvider.Context) messagingContext : null;
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 後続ハンドラの実行権を取得する。
+     *
+     * @return 取得できた場合はtrue
+     */
+    private boolean acquire() {
+        while (true) {
+            int current = active.get();
+            if (current >= concurrency) {
+                return false;
+            }
+            if (active.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 1ループの処理結果を記録する。
+     *
+     * @param received メッセージを受信した場合はtrue
+     * @param elapsedNanos 処理時間(nsec)
+     */
+    synchronized void record(boolean received, long elapsedNanos) {
+        if (received) {
+            busyNanos += elapsedNanos;
+            receivedCount++;
+        } else {
+            idleNanos += elapsedNanos;
+        }
+    }
+
+    /**
+     * 評価間隔が経過している場合、記録した指標を元に同時受信数を見直す。
+     *
+     * @param now 現在日時(msec)
+     */
+    synchronized void evaluate(long now) {
+        if (windowStartedAt == 0) {
+            windowStartedAt = now;
+            return;
+        }
+        if (now - windowStartedAt < evaluationInterval) {
+            return;
+        }
+        long total = busyNanos + idleNanos;
+        double waitRatio = total == 0 ? 1.0 : (double) idleNanos / total;
+        long latency = receivedCount == 0 ? 0 : busyNanos / receivedCount / 1000000L;
+        int backlog = getBacklog();
+        int threshold = concurrency * backlogPerConsumer;
+
+        int next = concurrency;
+        if (concurrency < maxConcurrency
+                && now - lastScaledAt >= scaleUpCooldown
+                && waitRatio <= scaleUpWaitRatio
+                && (backlog < 0 || backlog > threshold)
+                && (maxLatency <= 0 || latency <= maxLatency)) {
+            next = concurrency + 1;
+        } else if (concurrency > minConcurrency
+                && now - lastScaledAt >= scaleDownCooldown
+                && waitRatio >= scaleDownWaitRatio
+                && (backlog < 0 || backlog <= threshold)) {
+            next = concurrency - 1;
+        }
+        if (next != concurrency) {
+            LOGGER.logInfo("the number of concurrent consumers was changed."
+                    + " concurrency = [" + concurrency + " -> " + next + "]"
+                    + ", wait ratio = [" + waitRatio + "]"
+                    + ", backlog = [" + backlog + "]"
+                    + ", latency = [" + latency + "ms]");
+            concurrency = next;
+            lastScaledAt = now;
+        }
+        busyNanos = 0;
+        idleNanos = 0;
+        receivedCount = 0;
+        windowStartedAt = now;
+    }
+
+    /**
+     * キューの滞留件数を取得する。
+     *
+     * @return 滞留件数。計測していない場合は-1
+     */
+    private int getBacklog() {
+        if (backlogSampler == null || queueName == null) {
+            return -1;
+        }
+        QueueBacklog backlog = backlogSampler.getBacklog(queueName);
+        return backlog == null ? -1 : backlog.getDepth();
+    }
+
+    /**
+     * 現在の同時受信数を取得する。
+     *
+     * @return 現在の同時受信数
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * 同時受信数の下限値を設定する。
+     * 同時受信数の上限値以下の値を設定すること。
+     * 明示的に指定しなかった場合のデフォルトは1となる。
+     *
+     * @param minConcurrency 同時受信数の下限値
+     * @return このオブジェクト自体
+     */
+    public ConsumerAutoScalingHandler setMinConcurrency(int minConcurrency) {
+        if (minConcurrency <= 0) {
+            throw new IllegalArgumentException(
+                    "minConcurrency must be greater than 0. minConcurrency = " + minConcurrency);
+        }
+        if (maxConcurrency > 0 && minConcurrency > maxConcurrency) {
+            throw new IllegalArgumentException("minConcurrency must be less than or equal to maxConcurrency."
+                    + " minConcurrency = " + minConcurrency + ", maxConcurrency = " + maxConcurrency);
+        }
+        this.minConcurrency = minConcurrency;
+        return this;
+    }
+
+    /**
+     * 同時受信数の上限値を設定する。
+     * <p/>
+     * {@link nablarch.fw.handler.MultiThreadExecutionHandler}の並行実行スレッド数と同じ値を設定すること。
+     * 同時受信数の下限値以上の値を設定すること。
+     * 同時受信数の初期値は本設定値となる。
+     *
+     * @param maxConcurrency 同時受信数の上限値
+     * @return このオブジェクト自体
+     */
+    public ConsumerAutoScalingHandler setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException(
+                    "maxConcurrency must be greater than 0. maxConcurrency = " + maxConcurrency);
+        }
+        if (maxConcurrency < minConcurrency) {
+            throw new IllegalArgumentException("minConcurrency must be less than or equal to maxConcurrency."
+                    + " minConcurrency = " + minConcurrency + ", maxConcurrency = " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.concurrency = maxConcurrency;
+        return this;
+    }
+
+    /**
+     * 同時受信数を見直す間隔(msec)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは10秒となる。
+     *
+     * @param evaluationInterval 評価間隔(msec)
+     * @return このオブジェクト自体
+     */
+    public ConsumerAutoScalingHandler setEvaluationInterval(long evaluationInterval) {
+        this.evaluationInterval = evaluationInterval;
+        return this;
+    }
+
+    /**
+     * 同時受信数を増やす際に、前回の変更から経過している必要のある時間(msec)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは30秒となる。
+     *
+     * @param scaleUpCooldown 待機時間(msec)
+     * @return このオブジェクト自体
+     */
+    public ConsumerAutoScalingHandler setScaleUpCooldown(long scaleUpCooldown) {
+        this.scaleUpCooldown = scaleUpCooldown;
+        return this;
+    }
+
+    /**
+     * 同時受信数を減らす際に、前回の変更から経過している必要のある時間(msec)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは2分となる。
+     *
+     * @param scaleDownCooldown 待機時間(msec)
+     * @return このオブジェクト自体
+     */
+    public ConsumerAutoScalingHandler setScaleDownCooldown(long scaleDownCooldown) {
+        this.scaleDownCooldown = scaleDownCooldown;
+        return this;
+    }
+
+    /**
+     * 同時受信数を増やす受信待ち時間の割合(0.0～1.0)を設定する。
+     * 受信待ち時間の割合がこの値以下の場合に同時受信数を増やす。
+     * 明示的に指定しなかった場合のデフォルトは0.1となる。
+     *
+     * @param scaleUpWaitRatio 受信待ち時間の割合
+     * @return このオブジェクト自体
+     */
+    public ConsumerAutoScalingHandler setScaleUpWaitRatio(double scaleUpWaitRatio) {
+        this.scaleUpWaitRatio = scaleUpWaitRatio;
+        return this;
+    }
+
+    /**
+     * 同時受信数を減らす受信待ち時間の割合(0.0～1.0)を設定する。
+     * 受信待ち時間の割合がこの値以上の場合に同時受信数を減らす。
+     * 明示的に指定しなかった場合のデフォルトは0.5となる。
+     *
+     * @param scaleDownWaitRatio 受信待ち時間の割合
+     * @return このオブジェクト自体
+     */
+    public ConsumerAutoScalingHandler setScaleDownWaitRatio(double scaleDownWaitRatio) {
+        this.scaleDownWaitRatio = scaleDownWaitRatio;
+        return this;
+    }
+
+    /**
+     * 1スレッド当たりの許容滞留件数を設定する。
+     * 明示的に指定しなかった場合のデフォルトは10件となる。
+     *
+     * @param backlogPerConsumer 1スレッド当たりの許容滞留件数
+     * @return このオブジェクト自体
+     */
+    public ConsumerAutoScalingHandler setBacklogPerConsumer(int backlogPerConsumer) {
+        this.backlogPerConsumer = backlogPerConsumer;
+        return this;
+    }
+
+    /**
+     * 同時受信数を増やすことのできる1メッセージ当たりの平均処理時間の上限値(msec)を設定する。
+     * 0以下の場合は平均処理時間を考慮しない。
+     * 明示的に指定しなかった場合のデフォルトは0となる。
+     *
+     * @param maxLatency 平均処理時間の上限値(msec)
+     * @return このオブジェクト自体
+     */
+    public ConsumerAutoScalingHandler setMaxLatency(long maxLatency) {
+        this.maxLatency = maxLatency;
+        return this;
+    }
+
+    /**
+     * キューの滞留状況を計測するクラスを設定する。
+     * 設定しなかった場合、滞留件数を考慮しない。
+     *
+     * @param backlogSampler キューの滞留状況を計測するクラス
+     * @return このオブジェクト自体
+     */
+    public ConsumerAutoScalingHandler setBacklogSampler(QueueBacklogSampler backlogSampler) {
+        this.backlogSampler = backlogSampler;
+        return this;
+    }
+
+    /**
+     * 滞留件数を参照するキューの論理名を設定する。
+     *
+     * @param queueName キューの論理名
+     * @return このオブジェクト自体
+     */
+    public ConsumerAutoScalingHandler setQueueName(String queueName) {
+        this.queueName = queueName;
+        return this;
+    }
+}
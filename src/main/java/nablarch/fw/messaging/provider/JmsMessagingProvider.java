@@ -1,5 +1,6 @@
 package nablarch.fw.messaging.provider;
 
+import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
@@ -14,6 +15,7 @@ import jakarta.jms.Message;
 import jakarta.jms.MessageConsumer;
 import jakarta.jms.MessageProducer;
 import jakarta.jms.Queue;
+import jakarta.jms.QueueBrowser;
 import jakarta.jms.Session;
 
 import nablarch.core.log.Logger;
@@ -79,6 +81,12 @@ public class JmsMessagingProvider implements MessagingProvider {
     /** {@link MessagingException}ファクトリオブジェクト */
     private MessagingExceptionFactory messagingExceptionFactory = new BasicMessagingExceptionFactory();
     
+    /** 受信メッセージの配送ラグを計測するモニタ (nullの場合は計測しない) */
+    private QueueLagMonitor queueLagMonitor = null;
+
+    /** 受信キューの論理名をキーとしたメッセージセレクタ */
+    private Map<String, String> messageSelectors = new HashMap<String, String>();
+    
     // ------------------------------------------------- MessagingProvider API
     /** {@inheritDoc}
      *  この実装では、コネクションファクトリからJMSコネクションを取得し、
@@ -216,6 +224,51 @@ public class JmsMessagingProvider implements MessagingProvider {
         return this;
     }
     
+    /**
+     * 受信メッセージの配送ラグを計測するモニタを設定する。
+     * <p/>
+     * 設定した場合、同期受信したメッセージのJMSTimestampヘッダと受信時刻との差を
+     * 受信キューの論理名単位に計測する。
+     * 明示的に指定しなかった場合は計測を行わない。
+     * 
+     * @param queueLagMonitor 配送ラグを計測するモニタ
+     * @return このオブジェクト自体
+     */
+    public JmsMessagingProvider setQueueLagMonitor(QueueLagMonitor queueLagMonitor) {
+        this.queueLagMonitor = queueLagMonitor;
+        return this;
+    }
+    
+    /**
+     * 受信キュー毎のメッセージセレクタを設定する。
+     * <p/>
+     * 受信キューの論理名をキーとし、JMSのメッセージセレクタ構文の文字列を値とする。
+     * 設定した受信キューでは、メッセージセレクタに合致するメッセージのみをMOM側で選別して受信する。
+     * これにより、同じ受信キューを監視する複数の受信プロセスで、処理するメッセージを
+     * ユーザ定義属性(例えば送信側で設定したリクエストID)によって分担させることができる。
+     * <p/>
+     * 関連メッセージIDを指定した同期応答の受信には適用しない。
+     * 明示的に指定しなかった場合は、全てのメッセージを受信する。
+     * <p/>
+     * 設定例を以下に示す。
+     * <pre>
+     * {@literal
+     * <property name="messageSelectors">
+     *   <map>
+     *     <entry key="RECEIVE.TEST" value="RequestId IN ('RM11AC0101', 'RM11AC0102')" />
+     *   </map>
+     * </property>
+     * }
+     * </pre>
+     *
+     * @param messageSelectors 受信キューの論理名をキーとしたメッセージセレクタ
+     * @return このオブジェクト自体
+     */
+    public JmsMessagingProvider setMessageSelectors(Map<String, String> messageSelectors) {
+        this.messageSelectors = messageSelectors;
+        return this;
+    }
+
     /**
      *  メッセージングコンテキストのJMSベース実装
      */
@@ -236,6 +289,9 @@ public class JmsMessagingProvider implements MessagingProvider {
         /** MessageConsumerを保持しておくキャッシュ */
         private Map<String, MessageConsumer> consumerCache = new HashMap<String, MessageConsumer>();
 
+        /** メッセージ配送を一時停止しているか否か */
+        private boolean paused = false;
+
         // ---------------------------------------------------- Constructor
         /**
          * コンストラクタ
@@ -322,6 +378,11 @@ public class JmsMessagingProvider implements MessagingProvider {
 
         /** {@inheritDoc}
          *  この実装では、JMSの実装系を使用して送信処理を行う。
+         *  <p/>
+         *  送信電文が配信日時ヘッダ({@link JmsHeaderName#DELIVERY_TIME})を持つ場合、
+         *  配信日時までの時間を配信遅延時間としてMessageProducerに設定して送信する。
+         *  (MessageProducerはキャッシュしているため、送信後に配信遅延時間を0に戻す。)
+         *  配信日時を過ぎている場合は、配信遅延時間を設定せずに送信する。
          */
         public String sendMessage(SendingMessage message) {
             try {
@@ -329,7 +390,17 @@ public class JmsMessagingProvider implements MessagingProvider {
                 writeHeadersTo(jmsMessage, message.getHeaderMap());
                 jmsMessage.writeBytes(message.getBodyBytes());
                 MessageProducer producer = createProducer(message.getDestination());
-                producer.send(jmsMessage);
+                long deliveryDelay = getDeliveryDelay(message.getHeaderMap());
+                if (deliveryDelay > 0) {
+                    producer.setDeliveryDelay(deliveryDelay);
+                    try {
+                        producer.send(jmsMessage);
+                    } finally {
+                        producer.setDeliveryDelay(0L);
+                    }
+                } else {
+                    producer.send(jmsMessage);
+                }
                 
                 String messageId = jmsMessage.getJMSMessageID();
                 message.setMessageId(messageId);
@@ -341,6 +412,31 @@ public class JmsMessagingProvider implements MessagingProvider {
             }
         }
 
+        /**
+         * 配信日時ヘッダから配信遅延時間(msec)を算出する。
+         * <p/>
+         * 配信日時ヘッダには、配信日時のエポックミリ秒({@link Long})又は{@link Date}を設定する。
+         *
+         * @param headers 送信電文のヘッダ
+         * @return 配信遅延時間(配信日時ヘッダが無い場合や、配信日時を過ぎている場合は0以下)
+         */
+        private long getDeliveryDelay(Map<String, Object> headers) {
+            Object deliveryTime = headers.get(JmsHeaderName.DELIVERY_TIME);
+            if (deliveryTime == null) {
+                return 0L;
+            }
+            long time;
+            if (deliveryTime instanceof Date) {
+                time = ((Date) deliveryTime).getTime();
+            } else if (deliveryTime instanceof Number) {
+                time = ((Number) deliveryTime).longValue();
+            } else {
+                throw new IllegalArgumentException("the delivery time must be a Long or a Date. delivery time = ["
+                        + deliveryTime + "], class = [" + deliveryTime.getClass().getName() + "]");
+            }
+            return time - System.currentTimeMillis();
+        }
+
         /**
          * 受信キューの名前に応じたMessageConsumerを生成する。
          * <p/>
@@ -348,8 +444,10 @@ public class JmsMessagingProvider implements MessagingProvider {
          * MessageConsumerを生成する。
          * セレクタを指定したMessageConsumerは再利用できないため、本メソッドが呼ばれるたびに生成する。
          * 
-         * メッセージIDを指定しなかった場合、セレクタを指定せずにMessageConsumerを生成する。
-         * セレクタを指定しないMessageConsumerは再利用可能なため、
+         * メッセージIDを指定しなかった場合、受信キューに設定されたメッセージセレクタ
+         * ({@link JmsMessagingProvider#setMessageSelectors(Map)})を指定してMessageConsumerを生成する。
+         * (メッセージセレクタが設定されていない場合は、セレクタを指定せずに生成する。)
+         * このMessageConsumerは再利用可能なため、
          * 受信キューの名前毎に生成したMessageConsumerをキャッシュする。
          * 受信キューの論理名に対応するMessageConsumerがキャッシュに存在する場合、
          * MessageConsumerを生成せずに、キャッシュに存在するMessageConsumerを返す。
@@ -369,7 +467,9 @@ public class JmsMessagingProvider implements MessagingProvider {
                 MessageConsumer consumer = consumerCache.get(queueName);
                 if (consumer == null) {
                     Queue queue = getQueueOf(queueName);
-                    consumer = sess.createConsumer(queue);
+                    String selector = provider.messageSelectors.get(queueName);
+                    consumer = (selector == null) ? sess.createConsumer(queue)
+                                                  : sess.createConsumer(queue, selector);
                     consumerCache.put(queueName, consumer);
                 }
                 return consumer;
@@ -382,15 +482,52 @@ public class JmsMessagingProvider implements MessagingProvider {
          */
         public ReceivedMessage
         receiveMessage(String queueName, String messageId, long timeout) {
+            return receiveMessage(queueName, messageId, timeout, false);
+        }
+
+        /**
+         * 指定されたキュー上のメッセージを待機せずに同期受信する。
+         * <p/>
+         * キャッシュしているMessageConsumerの{@link MessageConsumer#receiveNoWait()}で受信するため、
+         * 受信可能なメッセージが存在しない場合は直ちに{@code null}を返す。
+         * 複数のキューを順番に確認する場合など、1つのキューで待機したくない場合に使用する。
+         *
+         * @param queueName 受信キューの論理名
+         * @return 受信したメッセージ(受信可能なメッセージが存在しない場合は{@code null})
+         */
+        public ReceivedMessage receiveSyncNoWait(String queueName) {
+            ReceivedMessage received = receiveMessage(queueName, null, 0, true);
+            if (received != null && LOGGER.isInfoEnabled()) {
+                emitLog(received);
+            }
+            return received;
+        }
+
+        /**
+         * 指定されたキュー上のメッセージを同期受信する。
+         *
+         * @param queueName 受信キューの論理名
+         * @param messageId 受信するメッセージの関連メッセージID(指定しない場合は{@code null})
+         * @param timeout 受信タイムアウト(msec)
+         * @param noWait 待機せずに受信する場合は{@code true}
+         * @return 受信したメッセージ(タイムアウトした場合は{@code null})
+         */
+        private ReceivedMessage
+        receiveMessage(String queueName, String messageId, long timeout, boolean noWait) {
             MessageConsumer consumer = null;
             try {
                 timeout = (timeout <= 0) ? provider.timeout
                                          : timeout;
                 consumer = createConsumer(queueName, messageId);
-                Message received = consumer.receive(timeout);
+                Message received = noWait ? consumer.receiveNoWait()
+                                          : consumer.receive(timeout);
                 if (received == null) {
                     return null;
                 }
+                if (provider.queueLagMonitor != null) {
+                    provider.queueLagMonitor.recordDeliveryLag(
+                            queueName, received.getJMSTimestamp(), System.currentTimeMillis());
+                }
                 if (received.getJMSRedelivered()) {
                     rejectIfExpiresRedeliverLimit(received, queueName);
                 }
@@ -428,6 +565,112 @@ public class JmsMessagingProvider implements MessagingProvider {
             }
         }
         
+        /**
+         * 指定されたキュー上のメッセージを参照(ブラウズ)し、滞留状況を取得する。
+         * <p/>
+         * メッセージの参照は{@link QueueBrowser}を用いて行うため、メッセージは消費されない。
+         * 参照件数が上限値に達した時点で参照を打ち切る。
+         *
+         * @param queueName キューの論理名
+         * @param maxCount 参照件数の上限値
+         * @return 滞留状況
+         */
+        public QueueBacklog browseBacklog(String queueName, int maxCount) {
+            QueueBrowser browser = null;
+            try {
+                browser = sess.createBrowser(getQueueOf(queueName));
+                int depth = 0;
+                long oldest = 0;
+                Enumeration<?> messages = browser.getEnumeration();
+                while (depth < maxCount && messages.hasMoreElements()) {
+                    Message message = (Message) messages.nextElement();
+                    long timestamp = message.getJMSTimestamp();
+                    if (timestamp > 0 && (oldest == 0 || timestamp < oldest)) {
+                        oldest = timestamp;
+                    }
+                    depth++;
+                }
+                return new QueueBacklog(queueName, depth, messages.hasMoreElements(),
+                        oldest, System.currentTimeMillis());
+
+            } catch (JMSException e) {
+                throw provider.messagingExceptionFactory.createMessagingException(
+                        "an error occurred while browsing the queue. queue name = " + queueName, e);
+            } finally {
+                try {
+                    if (browser != null) {
+                        browser.close();
+                    }
+                } catch (JMSException e) {
+                    LOGGER.logWarn("could not close JMS QueueBrowser.", e);
+                }
+            }
+        }
+
+        /**
+         * このコンテキストが使用するコネクションへのメッセージ配送を一時停止する。
+         * <p/>
+         * 既に一時停止している場合は何もしない。
+         * 一時停止中は、MOMからこのコンテキストのコンシューマへメッセージが配送(先読み)されない。
+         */
+        public void pause() {
+            if (paused) {
+                return;
+            }
+            try {
+                conn.stop();
+                paused = true;
+            } catch (JMSException e) {
+                throw provider.messagingExceptionFactory.createMessagingException(
+                        "an error occurred while pausing the connection.", e);
+            }
+        }
+
+        /**
+         * {@link #pause()}で一時停止したメッセージ配送を再開する。
+         * <p/>
+         * 一時停止していない場合は何もしない。
+         */
+        public void resume() {
+            if (!paused) {
+                return;
+            }
+            try {
+                conn.start();
+                paused = false;
+            } catch (JMSException e) {
+                throw provider.messagingExceptionFactory.createMessagingException(
+                        "an error occurred while resuming the connection.", e);
+            }
+        }
+
+        /**
+         * メッセージ配送を一時停止しているか否かを返す。
+         *
+         * @return 一時停止している場合はtrue
+         */
+        public boolean isPaused() {
+            return paused;
+        }
+
+        /**
+         * キャッシュしているMessageConsumerをクローズし、キャッシュから削除する。
+         * <p/>
+         * MessageConsumerが先読みしたメッセージはMOMに返却され、他のコンシューマに配送される。
+         * MessageConsumerは、次回の受信時に再生成される。
+         * クローズ処理で例外が発生した場合、WARNレベルのログ出力を行い、例外の再スローは行わない。
+         */
+        public void closeConsumers() {
+            for (MessageConsumer consumer : consumerCache.values()) {
+                try {
+                    consumer.close();
+                } catch (JMSException e) {
+                    LOGGER.logWarn("could not close JMS Consumer.", e);
+                }
+            }
+            consumerCache.clear();
+        }
+
         // ------------------------------------------------------ helper methods
         /**
          * JMSメッセージヘッダを読み込む。
@@ -554,6 +797,8 @@ public class JmsMessagingProvider implements MessagingProvider {
             public static final String EXPIRATION    = "JMSExpiration";
             /** 再取得の有無 (boolean デフォルト:false) */
             public static final String REDELIVERED   = "JMSRedelivered";
+            /** 配信日時(msec) (long又はjava.util.Date 送信側のみで使用:配信遅延時間に変換してMessageProducerに設定) */
+            public static final String DELIVERY_TIME = "JMSDeliveryTime";
             /*
              * JMS拡張ヘッダ
              * (MOMによってサポート状況が異なるので極力使用しない。)
@@ -0,0 +1,100 @@
+package nablarch.fw.messaging.provider;
+
+import nablarch.core.util.annotation.Published;
+
+/**
+ * キュー上のメッセージの滞留状況を保持するクラス。
+ * <p/>
+ * {@link QueueBacklogSampler}がキューを参照(ブラウズ)した時点の値を保持する。
+ * 参照件数には上限があるため、上限に達した場合の滞留件数は下限値となる({@link #isBounded()}がtrueとなる)。
+ */
+@Published(tag = "architect")
+public class QueueBacklog {
+
+    /** キューの論理名 */
+    private final String queueName;
+
+    /** 滞留件数 */
+    private final int depth;
+
+    /** 参照件数の上限に達したか否か */
+    private final boolean bounded;
+
+    /** 最も古いメッセージの送信日時(msec) */
+    private final long oldestTimestamp;
+
+    /** 計測日時(msec) */
+    private final long sampledAt;
+
+    /**
+     * コンストラクタ。
+     *
+     * @param queueName キューの論理名
+     * @param depth 滞留件数
+     * @param bounded 参照件数の上限に達したか否か
+     * @param oldestTimestamp 最も古いメッセージの送信日時(msec)。滞留メッセージが存在しない場合は0
+     * @param sampledAt 計測日時(msec)
+     */
+    public QueueBacklog(String queueName, int depth, boolean bounded, long oldestTimestamp, long sampledAt) {
+        this.queueName = queueName;
+        this.depth = depth;
+        this.bounded = bounded;
+        this.oldestTimestamp = oldestTimestamp;
+        this.sampledAt = sampledAt;
+    }
+
+    /**
+     * キューの論理名を取得する。
+     *
+     * @return キューの論理名
+     */
+    public String getQueueName() {
+        return queueName;
+    }
+
+    /**
+     * 滞留件数を取得する。
+     *
+     * @return 滞留件数
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * 参照件数の上限に達したか否かを取得する。
+     * <p/>
+     * trueの場合、実際の滞留件数は{@link #getDepth()}以上となる。
+     *
+     * @return 参照件数の上限に達した場合はtrue
+     */
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * 最も古いメッセージの滞留時間(計測日時 - 送信日時)を取得する。
+     * <p/>
+     * 参照件数の上限に達した場合は、参照したメッセージの中で最も古いメッセージの滞留時間となる。
+     *
+     * @return 最も古いメッセージの滞留時間(msec)。滞留メッセージが存在しない場合は-1
+     */
+    public long getOldestMessageAge() {
+        return oldestTimestamp <= 0 ? -1 : Math.max(0, sampledAt - oldestTimestamp);
+    }
+
+    /**
+     * 計測日時を取得する。
+     *
+     * @return 計測日時(msec)
+     */
+    public long getSampledAt() {
+        return sampledAt;
+    }
+
+    @Override
+    public String toString() {
+        return "queue name = [" + queueName + "], depth = [" + depth + (bounded ? "+" : "")
+                + "], oldest message age = [" + getOldestMessageAge() + "ms]";
+    }
+}
@@ -0,0 +1,213 @@
+package nablarch.fw.messaging.provider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.core.repository.disposal.Disposable;
+import nablarch.core.repository.initialization.Initializable;
+import nablarch.core.util.annotation.Published;
+
+/**
+ * キュー上のメッセージの滞留状況を定期的に計測するクラス。
+ * <p/>
+ * 初期化時({@link #initialize()})にバックグラウンドスレッドを起動し、
+ * {@link #setSamplingInterval(long)}の間隔で、設定された各キューを{@link jakarta.jms.QueueBrowser}により参照する。
+ * 計測結果は{@link #getBacklog(String)}で取得できるほか、{@link #publish(QueueBacklog)}に通知される。
+ * <p/>
+ * キューの参照はMOMに負荷を掛けるため、1回の計測で参照するメッセージ件数は
+ * {@link #setMaxBrowseCount(int)}で指定した件数を上限とする。
+ * <p/>
+ * 設定例を以下に示す。
+ * <pre>
+ * {@literal
+ * <component name="queueBacklogSampler" class="nablarch.fw.messaging.provider.QueueBacklogSampler">
+ *   <property name="messagingProvider" ref="messagingProvider" />
+ *   <property name="queueNames">
+ *     <list>
+ *       <value>RECEIVE.TEST</value>
+ *     </list>
+ *   </property>
+ *   <property name="samplingInterval" value="30000" />
+ * </component>
+ * }
+ * </pre>
+ * 本クラスは、初期化対象リスト及び廃棄対象リストに設定すること。
+ */
+@Published(tag = "architect")
+public class QueueBacklogSampler implements Initializable, Disposable {
+
+    /** メッセージングログを出力するロガー */
+    private static final Logger LOGGER = LoggerManager.get("MESSAGING");
+
+    /** 計測に使用するメッセージングプロバイダ */
+    private JmsMessagingProvider messagingProvider;
+
+    /** 計測対象のキューの論理名 */
+    private List<String> queueNames = new ArrayList<String>();
+
+    /** 計測間隔(msec) */
+    private long samplingInterval = 60 * 1000L;
+
+    /** 1回の計測で参照するメッセージ件数の上限値 */
+    private int maxBrowseCount = 10000;
+
+    /** キューの論理名をキーとする直近の計測結果 */
+    private final Map<String, QueueBacklog> backlogs = new ConcurrentHashMap<String, QueueBacklog>();
+
+    /** 計測を行うスレッド */
+    private ScheduledExecutorService executor;
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 計測を行うバックグラウンドスレッドを起動する。
+     */
+    public synchronized void initialize() {
+        if (messagingProvider == null) {
+            throw new IllegalStateException("messagingProvider was not set.");
+        }
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "queue-backlog-sampler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    sample();
+                } catch (RuntimeException e) {
+                    LOGGER.logWarn("failed to sample the queue backlog.", e);
+                }
+            }
+        }, 0, samplingInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * 計測を行うバックグラウンドスレッドを停止する。
+     */
+    public synchronized void dispose() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * 設定された全てのキューの滞留状況を計測する。
+     * <p/>
+     * 通常はバックグラウンドスレッドから呼び出される。
+     * キューの参照に失敗した場合はWARNレベルのログを出力し、直近の計測結果を残したまま次のキューの計測を続ける。
+     */
+    public void sample() {
+        JmsMessagingProvider.Context context =
+                (JmsMessagingProvider.Context) messagingProvider.createContext();
+        try {
+            for (String queueName : queueNames) {
+                QueueBacklog backlog;
+                try {
+                    backlog = context.browseBacklog(queueName, maxBrowseCount);
+                } catch (RuntimeException e) {
+                    LOGGER.logWarn("failed to sample the queue backlog. queue name = " + queueName, e);
+                    continue;
+                }
+                backlogs.put(queueName, backlog);
+                publish(backlog);
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * 計測結果を通知する。
+     * <p/>
+     * デフォルト実装では、DEBUGレベルのログを出力する。
+     * メトリクス収集基盤へ連携する場合は、本メソッドをオーバーライドすること。
+     *
+     * @param backlog 計測結果
+     */
+    protected void publish(QueueBacklog backlog) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.logDebug("queue backlog sampled. " + backlog);
+        }
+    }
+
+    /**
+     * 直近の計測結果を取得する。
+     *
+     * @param queueName キューの論理名
+     * @return 直近の計測結果。未計測の場合はnull
+     */
+    public QueueBacklog getBacklog(String queueName) {
+        return backlogs.get(queueName);
+    }
+
+    /**
+     * 計測に使用するメッセージングプロバイダを設定する。
+     *
+     * @param messagingProvider メッセージングプロバイダ
+     * @return このオブジェクト自体
+     */
+    public QueueBacklogSampler setMessagingProvider(JmsMessagingProvider messagingProvider) {
+        this.messagingProvider = messagingProvider;
+        return this;
+    }
+
+    /**
+     * 計測対象のキューの論理名を設定する。
+     *
+     * @param queueNames 計測対象のキューの論理名
+     * @return このオブジェクト自体
+     */
+    public QueueBacklogSampler setQueueNames(List<String> queueNames) {
+        this.queueNames = new ArrayList<String>(queueNames);
+        return this;
+    }
+
+    /**
+     * 計測間隔(msec)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは1分となる。
+     *
+     * @param samplingInterval 計測間隔(msec)
+     * @return このオブジェクト自体
+     */
+    public QueueBacklogSampler setSamplingInterval(long samplingInterval) {
+        if (samplingInterval <= 0) {
+            throw new IllegalArgumentException(
+                    "samplingInterval must be greater than 0. samplingInterval = " + samplingInterval);
+        }
+        this.samplingInterval = samplingInterval;
+        return this;
+    }
+
+    /**
+     * 1回の計測で参照するメッセージ件数の上限値を設定する。
+     * 明示的に指定しなかった場合のデフォルトは10000件となる。
+     *
+     * @param maxBrowseCount 参照するメッセージ件数の上限値
+     * @return このオブジェクト自体
+     */
+    public QueueBacklogSampler setMaxBrowseCount(int maxBrowseCount) {
+        if (maxBrowseCount <= 0) {
+            throw new IllegalArgumentException(
+                    "maxBrowseCount must be greater than 0. maxBrowseCount = " + maxBrowseCount);
+        }
+        this.maxBrowseCount = maxBrowseCount;
+        return this;
+    }
+}
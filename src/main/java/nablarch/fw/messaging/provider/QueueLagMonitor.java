@@ -0,0 +1,301 @@
+package nablarch.fw.messaging.provider;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import nablarch.core.log.Logger;
+import nablarch.core.log.LoggerManager;
+import nablarch.core.util.annotation.Published;
+
+/**
+ * 受信キュー単位に、メッセージの滞留時間(ラグ)を計測するクラス。
+ * <p/>
+ * 送信日時(JMSTimestampヘッダ)を起点として、以下の2種類のラグを受信キューの論理名単位に保持する。
+ * <pre>
+ * - 配送ラグ : 受信時刻 - 送信日時
+ * - 完了ラグ : 業務処理完了時刻 - 送信日時
+ * </pre>
+ * 各ラグは直近{@link #setWindowSize(int)}件の計測値を保持し、
+ * 任意のパーセンタイル値を{@link #getDeliveryLag(String, double)}、
+ * {@link #getCompletionLag(String, double)}で取得できる。
+ * <p/>
+ * 計測値が設定されたSLO(ミリ秒)を超過した場合は、{@link #onSloViolation(String, String, long, long)}
+ * が呼び出される。デフォルト実装では、受信キュー単位に{@link #setAlertInterval(long)}の間隔で
+ * WARNレベルのログを出力する。
+ * <p/>
+ * 本クラスは{@link JmsMessagingProvider#setQueueLagMonitor(QueueLagMonitor)}に設定することで
+ * 配送ラグが計測される。完了ラグは、{@link nablarch.fw.messaging.action.AsyncMessageReceiveAction}が
+ * リポジトリ上の"queueLagMonitor"という名前のコンポーネントに対して計測値を登録する。
+ */
+@Published(tag = "architect")
+public class QueueLagMonitor {
+
+    /** メッセージングログを出力するロガー */
+    private static final Logger LOGGER = LoggerManager.get("MESSAGING");
+
+    /** ラグ種別:配送ラグ */
+    public static final String DELIVERY_LAG = "delivery";
+
+    /** ラグ種別:完了ラグ */
+    public static final String COMPLETION_LAG = "completion";
+
+    /** 受信キュー単位に保持する計測値の件数 */
+    private int windowSize = 1000;
+
+    /** 配送ラグのSLO(msec) 0以下の場合は監視しない */
+    private long deliveryLagSlo = 0;
+
+    /** 完了ラグのSLO(msec) 0以下の場合は監視しない */
+    private long completionLagSlo = 0;
+
+    /** SLO超過ログの出力間隔(msec) */
+    private long alertInterval = 60 * 1000L;
+
+    /** 受信キュー名をキーとする配送ラグの計測値 */
+    private final ConcurrentMap<String, LagWindow> deliveryLags = new ConcurrentHashMap<String, LagWindow>();
+
+    /** 受信キュー名をキーとする完了ラグの計測値 */
+    private final ConcurrentMap<String, LagWindow> completionLags = new ConcurrentHashMap<String, LagWindow>();
+
+    /** ラグ種別 + 受信キュー名をキーとする、SLO超過ログの最終出力時刻 */
+    private final Map<String, Long> lastAlerted = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * 配送ラグを登録する。
+     * <p/>
+     * 送信日時が0以下(MOM側でタイムスタンプが無効化されている場合)は何もしない。
+     *
+     * @param queueName 受信キューの論理名
+     * @param sentTimestamp 送信日時(msec)
+     * @param receivedTime 受信時刻(msec)
+     */
+    public void recordDeliveryLag(String queueName, long sentTimestamp, long receivedTime) {
+        record(DELIVERY_LAG, deliveryLags, deliveryLagSlo, queueName, sentTimestamp, receivedTime);
+    }
+
+    /**
+     * 完了ラグを登録する。
+     * <p/>
+     * 送信日時が0以下(MOM側でタイムスタンプが無効化されている場合)は何もしない。
+     *
+     * @param queueName 受信キューの論理名
+     * @param sentTimestamp 送信日時(msec)
+     * @param completedTime 業務処理の完了時刻(msec)
+     */
+    public void recordCompletionLag(String queueName, long sentTimestamp, long completedTime) {
+        record(COMPLETION_LAG, completionLags, completionLagSlo, queueName, sentTimestamp, completedTime);
+    }
+
+    /**
+     * 配送ラグのパーセンタイル値を取得する。
+     *
+     * @param queueName 受信キューの論理名
+     * @param percentile パーセンタイル(0より大きく100以下)
+     * @return 配送ラグ(msec)。計測値が存在しない場合は-1
+     */
+    public long getDeliveryLag(String queueName, double percentile) {
+        return percentileOf(deliveryLags.get(queueName), percentile);
+    }
+
+    /**
+     * 完了ラグのパーセンタイル値を取得する。
+     *
+     * @param queueName 受信キューの論理名
+     * @param percentile パーセンタイル(0より大きく100以下)
+     * @return 完了ラグ(msec)。計測値が存在しない場合は-1
+     */
+    public long getCompletionLag(String queueName, double percentile) {
+        return percentileOf(completionLags.get(queueName), percentile);
+    }
+
+    /**
+     * SLO超過時の処理を行う。
+     * <p/>
+     * デフォルト実装では、同一のラグ種別・受信キューに対して{@link #setAlertInterval(long)}の間隔で
+     * WARNレベルのログを出力する。
+     * 監視ツールへの通知などを行う場合は、本メソッドをオーバーライドすること。
+     *
+     * @param lagType ラグ種別({@link #DELIVERY_LAG}または{@link #COMPLETION_LAG})
+     * @param queueName 受信キューの論理名
+     * @param lag 計測したラグ(msec)
+     * @param slo SLO(msec)
+     */
+    protected void onSloViolation(String lagType, String queueName, long lag, long slo) {
+        String key = lagType + '|' + queueName;
+        long now = System.currentTimeMillis();
+        Long last = lastAlerted.get(key);
+        if (last != null && now - last < alertInterval) {
+            return;
+        }
+        lastAlerted.put(key, now);
+        LOGGER.logWarn(String.format(
+                "%s lag exceeded the SLO. queue name = [%s], lag = [%dms], slo = [%dms], p50 = [%dms], p99 = [%dms]",
+                lagType, queueName, lag, slo,
+                percentileOf(windowsOf(lagType).get(queueName), 50),
+                percentileOf(windowsOf(lagType).get(queueName), 99)));
+    }
+
+    /**
+     * 計測値を登録する。
+     *
+     * @param lagType ラグ種別
+     * @param windows 登録先
+     * @param slo SLO(msec)
+     * @param queueName 受信キューの論理名
+     * @param from 起点となる時刻(msec)
+     * @param to 終点となる時刻(msec)
+     */
+    private void record(String lagType, ConcurrentMap<String, LagWindow> windows, long slo,
+            String queueName, long from, long to) {
+        if (from <= 0 || queueName == null) {
+            return;
+        }
+        long lag = Math.max(0, to - from);
+        LagWindow window = windows.get(queueName);
+        if (window == null) {
+            LagWindow created = new LagWindow(windowSize);
+            window = windows.putIfAbsent(queueName, created);
+            if (window == null) {
+                window = created;
+            }
+        }
+        window.add(lag);
+        if (slo > 0 && lag > slo) {
+            onSloViolation(lagType, queueName, lag, slo);
+        }
+    }
+
+    /**
+     * ラグ種別に対応する計測値を取得する。
+     *
+     * @param lagType ラグ種別
+     * @return 計測値
+     */
+    private Map<String, LagWindow> windowsOf(String lagType) {
+        return DELIVERY_LAG.equals(lagType) ? deliveryLags : completionLags;
+    }
+
+    /**
+     * パーセンタイル値を算出する。
+     *
+     * @param window 計測値
+     * @param percentile パーセンタイル
+     * @return パーセンタイル値。計測値が存在しない場合は-1
+     */
+    private static long percentileOf(LagWindow window, double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException(
+                    "percentile must be greater than 0 and less than or equal to 100. percentile = " + percentile);
+        }
+        return window == null ? -1 : window.percentile(percentile);
+    }
+
+    /**
+     * 受信キュー単位に保持する計測値の件数を設定する。
+     * 明示的に指定しなかった場合のデフォルトは1000件となる。
+     *
+     * @param windowSize 保持する件数
+     * @return このオブジェクト自体
+     */
+    public QueueLagMonitor setWindowSize(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be greater than 0. windowSize = " + windowSize);
+        }
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    /**
+     * 配送ラグのSLO(msec)を設定する。
+     * 0以下の場合(デフォルト)は監視を行わない。
+     *
+     * @param deliveryLagSlo 配送ラグのSLO(msec)
+     * @return このオブジェクト自体
+     */
+    public QueueLagMonitor setDeliveryLagSlo(long deliveryLagSlo) {
+        this.deliveryLagSlo = deliveryLagSlo;
+        return this;
+    }
+
+    /**
+     * 完了ラグのSLO(msec)を設定する。
+     * 0以下の場合(デフォルト)は監視を行わない。
+     *
+     * @param completionLagSlo 完了ラグのSLO(msec)
+     * @return このオブジェクト自体
+     */
+    public QueueLagMonitor setCompletionLagSlo(long completionLagSlo) {
+        this.completionLagSlo = completionLagSlo;
+        return this;
+    }
+
+    /**
+     * SLO超過ログの出力間隔(msec)を設定する。
+     * 明示的に指定しなかった場合のデフォルトは1分となる。
+     *
+     * @param alertInterval SLO超過ログの出力間隔(msec)
+     * @return このオブジェクト自体
+     */
+    public QueueLagMonitor setAlertInterval(long alertInterval) {
+        this.alertInterval = alertInterval;
+        return this;
+    }
+
+    /**
+     * 直近の計測値を固定長で保持するリングバッファ。
+     */
+    private static final class LagWindow {
+
+        /** 計測値 */
+        private final long[] values;
+
+        /** 次に書き込む位置 */
+        private int next = 0;
+
+        /** 保持している件数 */
+        private int size = 0;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param capacity 保持する件数
+         */
+        LagWindow(int capacity) {
+            values = new long[capacity];
+        }
+
+        /**
+         * 計測値を追加する。
+         *
+         * @param value 計測値
+         */
+        synchronized void add(long value) {
+            values[next] = value;
+            next = (next + 1) % values.length;
+            if (size < values.length) {
+                size++;
+            }
+        }
+
+        /**
+         * パーセンタイル値を算出する(nearest-rank法)。
+         *
+         * @param percentile パーセンタイル
+         * @return パーセンタイル値
+         */
+        long percentile(double percentile) {
+            long[] sorted;
+            synchronized (this) {
+                if (size == 0) {
+                    return -1;
+                }
+                sorted = Arrays.copyOf(values, size);
+            }
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package nablarch.fw.messaging.action;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * {@link AdaptiveConcurrencyLimiter}のテスト。
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    /**
+     * 処理中の電文数が上限値に達した場合、実行権を取得できないこと。
+     */
+    @Test
+    public void testAcquire() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter().setMaxLimit(2);
+        assertThat(limiter.tryAcquire(), is(true));
+        assertThat(limiter.tryAcquire(), is(true));
+        assertThat(limiter.tryAcquire(), is(false));
+        assertThat(limiter.getInFlight(), is(2));
+
+        limiter.release();
+        assertThat(limiter.tryAcquire(), is(true));
+    }
+
+    /**
+     * 処理時間が閾値を超えた場合は上限値が乗法的に減少し、閾値以下の場合は加法的に回復すること。
+     */
+    @Test
+    public void testIncreaseAndDecrease() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter()
+                .setMaxLimit(8)
+                .setLatencyThreshold(100)
+                .setBackoffInterval(0);
+        assertThat(limiter.getLimit(), is(8));
+
+        limiter.onSample(101);
+        assertThat(limiter.getLimit(), is(4));
+        limiter.onError();
+        assertThat(limiter.getLimit(), is(2));
+        limiter.onSample(500);
+        limiter.onSample(500);
+        assertThat("下限値を下回らないこと", limiter.getLimit(), is(1));
+
+        limiter.onSample(100);
+        assertThat(limiter.getLimit(), is(2));
+        // 2 -> 2.5 -> 2.9 -> 3.24
+        limiter.onSample(10);
+        limiter.onSample(10);
+        assertThat(limiter.getLimit(), is(2));
+        limiter.onSample(10);
+        assertThat(limiter.getLimit(), is(3));
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(10);
+        }
+        assertThat("最大値を上回らないこと", limiter.getLimit(), is(8));
+    }
+
+    /**
+     * 減少の最小間隔内では、連続して上限値が減少しないこと。
+     */
+    @Test
+    public void testBackoffInterval() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter()
+                .setMaxLimit(8)
+                .setLatencyThreshold(100)
+                .setBackoffInterval(60000);
+        limiter.onSample(1000);
+        limiter.onSample(1000);
+        limiter.onError();
+        assertThat(limiter.getLimit(), is(4));
+    }
+
+    /**
+     * 最大値を設定していない場合、及び不正な値を設定した場合。
+     */
+    @Test
+    public void testInvalidSettings() {
+        try {
+            new AdaptiveConcurrencyLimiter().tryAcquire();
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("maxLimit was not set."));
+        }
+        try {
+            new AdaptiveConcurrencyLimiter().setMaxLimit(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("maxLimit must be greater than 0. maxLimit = 0"));
+        }
+        try {
+            new AdaptiveConcurrencyLimiter().setMinLimit(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("minLimit must be greater than 0. minLimit = 0"));
+        }
+        try {
+            new AdaptiveConcurrencyLimiter().setBackoffRatio(1);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is(
+                    "backoffRatio must be greater than 0 and less than 1. backoffRatio = 1.0"));
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package nablarch.fw.messaging.action;
 
+import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -16,24 +21,39 @@ import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import nablarch.common.idgenerator.IdGenerator;
 import nablarch.common.idgenerator.formatter.LpadFormatter;
+import nablarch.core.ThreadContext;
+import nablarch.core.dataformat.DataRecord;
+import nablarch.core.date.BasicSystemTimeProvider;
 import nablarch.core.dataformat.DataRecordFormatter;
 import nablarch.core.dataformat.FormatterFactory;
+import nablarch.core.db.connection.AppDbConnection;
+import nablarch.core.db.statement.exception.DuplicateStatementException;
+import nablarch.core.db.statement.exception.SqlStatementException;
+import nablarch.core.db.transaction.SimpleDbTransactionExecutor;
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
 import nablarch.core.transaction.TransactionContext;
 import nablarch.core.util.FilePathSetting;
+import nablarch.fw.DataReader;
 import nablarch.fw.ExecutionContext;
+import nablarch.fw.handler.LoopHandler;
 import nablarch.fw.launcher.CommandLine;
 import nablarch.fw.launcher.Main;
 import nablarch.fw.messaging.FwHeader;
+import nablarch.fw.messaging.FwHeaderDefinition;
 import nablarch.fw.messaging.MessageReadError;
 import nablarch.fw.messaging.MessagingContext;
 import nablarch.fw.messaging.MessagingProvider;
 import nablarch.fw.messaging.ReceivedMessage;
 import nablarch.fw.messaging.RequestMessage;
 import nablarch.fw.messaging.SendingMessage;
+import nablarch.fw.messaging.StandardFwHeaderDefinition;
 import nablarch.fw.messaging.action.form.INVALID_CONSTRUCTORForm;
+import nablarch.fw.messaging.provider.JmsMessagingProvider.Context.JmsHeaderName;
+import nablarch.fw.messaging.provider.QueueLagMonitor;
 import nablarch.test.core.messaging.EmbeddedMessagingProvider;
 import nablarch.test.support.SystemRepositoryResource;
 import nablarch.test.support.db.helper.DatabaseTestRunner;
@@ -428,6 +448,886 @@ public class AsyncMessageReceiveActionTest {
 
     }
 
+    /**
+     * Formファクトリがキャッシュされた後も、Formクラスが存在しない場合やコンストラクタで例外が発生した場合に
+     * 同じエラーとなること。
+     */
+    @Test
+    public void testFormFactoryCache() {
+
+        AsyncMessageReceiveActionSettings settings = new AsyncMessageReceiveActionSettings();
+        settings.setFormClassPackage("nablarch.fw.messaging.action.form");
+        repositoryResource.addComponent("asyncMessageReceiveActionSettings", settings);
+
+        AsyncMessageReceiveAction action = new AsyncMessageReceiveAction() {
+            @Override
+            protected String generateReceivedSequence() {
+                return "0000000001";
+            }
+        };
+
+        for (int i = 0; i < 2; i++) {
+            FwHeader header = new FwHeader();
+            header.setRequestId("HOGE");
+            try {
+                action.createForm("HOGE", new RequestMessage(header, new ReceivedMessage(new byte[0])));
+                fail("does not run.");
+            } catch (RuntimeException e) {
+                assertThat(e.getMessage(), is(
+                        "form class was not found. form class name = nablarch.fw.messaging.action.form.HOGEForm"));
+                assertThat(e.getCause() instanceof ClassNotFoundException, is(true));
+            }
+        }
+
+        for (int i = 0; i < 2; i++) {
+            FwHeader header = new FwHeader();
+            header.setRequestId("MSGREQ0001");
+            try {
+                // 業務データを読み込んでいないため、コンストラクタでNullPointerExceptionが発生する。
+                action.createForm("MSGREQ0001", new RequestMessage(header, new ReceivedMessage(new byte[0])));
+                fail("does not run.");
+            } catch (RuntimeException e) {
+                assertThat(e.getMessage(), is(
+                        "failed to create form instance. form class name = nablarch.fw.messaging.action.form.MSGREQ0001Form"));
+                assertThat(e.getCause() instanceof NullPointerException, is(true));
+            }
+        }
+    }
+
+    /**
+     * FormファクトリはリクエストID単位にキャッシュされ、キャッシュ後は設定オブジェクトを参照しないこと。
+     * また、コンストラクタで発生した{@link Error}はラップされずに送出されること。
+     */
+    @Test
+    public void testFormFactoryCachePerRequestId() {
+
+        final AsyncMessageReceiveActionSettings settings = new AsyncMessageReceiveActionSettings();
+        settings.setFormClassPackage("nablarch.fw.messaging.action.form");
+        final AtomicInteger settingsCount = new AtomicInteger();
+
+        AsyncMessageReceiveAction action = new AsyncMessageReceiveAction() {
+            @Override
+            protected AsyncMessageReceiveActionSettings getSettings() {
+                settingsCount.incrementAndGet();
+                return settings;
+            }
+
+            @Override
+            protected String generateReceivedSequence() {
+                return "0000000001";
+            }
+        };
+
+        for (int i = 0; i < 3; i++) {
+            FwHeader header = new FwHeader();
+            header.setRequestId("ERROR");
+            try {
+                action.createForm("ERROR", new RequestMessage(header, new ReceivedMessage(new byte[0])));
+                fail("does not run.");
+            } catch (Error e) {
+                assertThat(e.getMessage(), is("error in constructor."));
+            }
+        }
+        assertThat("設定オブジェクトはFormファクトリの生成時にのみ参照されること", settingsCount.get(), is(1));
+    }
+
+    /**
+     * バッチ登録設定がある場合、バッチサイズに達した時点及びコミット直前に受信電文がバッチ登録されること。
+     * また、登録エラーとなった電文のみがスキップされること。
+     */
+    @Test
+    public void testBatchInsert() {
+        clearMessageTable();
+
+        AsyncMessageReceiveActionSettings settings = new AsyncMessageReceiveActionSettings();
+        settings.setFormClassPackage("nablarch.fw.messaging.action.form");
+        settings.setSqlFilePackage("nablarch.fw.messaging.action.sql");
+        settings.setDbTransactionName("test");
+        repositoryResource.addComponent("asyncMessageReceiveActionSettings", settings);
+        repositoryResource.addComponent("batchInsertSettings", new BatchInsertSettings().setBatchSize(3));
+
+        // 4件目の電文は、2件目の電文と同じ受信電文連番とし、一意制約違反とする。
+        final String[] sequences = {"1", "2", "3", "2", "5", "6", "7", "8", "9"};
+        final List<Object> errorForms = new ArrayList<Object>();
+        final AsyncMessageReceiveAction action = new AsyncMessageReceiveAction() {
+            private int index = 0;
+
+            @Override
+            protected String generateReceivedSequence() {
+                return sequences[index++];
+            }
+
+            @Override
+            protected void onBatchInsertError(String requestId, Object form, SqlStatementException e) {
+                assertThat(requestId, is("MSGREQ0001"));
+                errorForms.add(form);
+            }
+        };
+
+        final ExecutionContext ctx = new ExecutionContext();
+        ctx.setDataReader(new DataReader<Object>() {
+            public Object read(ExecutionContext ctx) {
+                return null;
+            }
+
+            public boolean hasNext(ExecutionContext ctx) {
+                return true;
+            }
+
+            public void close(ExecutionContext ctx) {
+            }
+        });
+
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        new SimpleDbTransactionExecutor<Void>(tran) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", false);
+                for (int i = 0; i < 2; i++) {
+                    action.handle(createMSGREQ0001Message(), ctx);
+                }
+                assertThat("バッチサイズに達するまでは登録されないこと", countMessages(connection), is(0));
+
+                // 3件目でバッチサイズに達する。
+                action.handle(createMSGREQ0001Message(), ctx);
+                assertThat(countMessages(connection), is(3));
+
+                // 4件目(一意制約違反)から6件目でバッチサイズに達する。
+                for (int i = 0; i < 3; i++) {
+                    action.handle(createMSGREQ0001Message(), ctx);
+                }
+                assertThat(errorForms.size(), is(1));
+                assertThat("エラーとなった電文以外は登録されること", countMessages(connection), is(5));
+
+                // コミット直前の場合は、バッチサイズに達していなくても登録される。
+                ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", true);
+                action.handle(createMSGREQ0001Message(), ctx);
+                assertThat(countMessages(connection), is(6));
+
+                // 電文の処理で例外が発生した場合は、登録待ちの電文は破棄される。
+                ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", false);
+                action.handle(createMSGREQ0001Message(), ctx);
+                RequestMessage invalid = createMSGREQ0001Message();
+                invalid.getFwHeader().setRequestId("NOTFOUND");
+                try {
+                    action.handle(invalid, ctx);
+                    fail();
+                } catch (RuntimeException e) {
+                    // OK
+                }
+                ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", true);
+                action.handle(createMSGREQ0001Message(), ctx);
+                assertThat(countMessages(connection), is(7));
+                return null;
+            }
+        }.doTransaction();
+
+        List<ReceiveMessage1> messageList = VariousDbTestHelper.findAll(ReceiveMessage1.class, "messageId");
+        assertThat(messageList.size(), is(7));
+        assertThat(messageList.get(0).messageId, is("1"));
+        assertThat(messageList.get(1).messageId, is("2"));
+        assertThat(messageList.get(2).messageId, is("3"));
+        assertThat(messageList.get(3).messageId, is("5"));
+        assertThat(messageList.get(4).messageId, is("6"));
+        assertThat(messageList.get(5).messageId, is("7"));
+        assertThat(messageList.get(5).keiNo, is("0000000001"));
+        assertThat(messageList.get(6).messageId, is("9"));
+    }
+
+    /**
+     * バッチ登録設定があり、ハンドラキューに{@link nablarch.fw.handler.LoopHandler}が存在しない場合は、
+     * 初期処理でエラーとなること。
+     */
+    @Test
+    public void testBatchInsertWithoutLoopHandler() {
+        repositoryResource.addComponent("batchInsertSettings", new BatchInsertSettings());
+        AsyncMessageReceiveAction action = new AsyncMessageReceiveAction();
+        CommandLine commandLine = new CommandLine(
+                "-diConfig", "diConfig",
+                "-requestPath", "requestPath",
+                "-userId", "userId");
+        try {
+            action.initialize(commandLine, new ExecutionContext());
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage().startsWith("batchInsertSettings requires LoopHandler in the handler queue."),
+                    is(true));
+        }
+        ExecutionContext ctx = new ExecutionContext();
+        ctx.getHandlerQueue().add(new LoopHandler());
+        action.initialize(commandLine, ctx);
+    }
+
+    /**
+     * エラー電文登録用のSQL_IDが設定されている場合、バッチ登録でエラーとなった電文はエラーテーブルに登録されること。
+     */
+    @Test
+    public void testBatchInsertErrorTable() {
+        clearMessageTable();
+
+        AsyncMessageReceiveActionSettings settings = new AsyncMessageReceiveActionSettings();
+        settings.setFormClassPackage("nablarch.fw.messaging.action.form");
+        settings.setSqlFilePackage("nablarch.fw.messaging.action.sql");
+        settings.setDbTransactionName("test");
+        repositoryResource.addComponent("asyncMessageReceiveActionSettings", settings);
+        repositoryResource.addComponent("batchInsertSettings", new BatchInsertSettings()
+                .setBatchSize(3)
+                .setErrorSqlId("INSERT_ERROR_MESSAGE"));
+
+        // 2件目の電文は、受信電文連番を桁あふれとし、一意制約違反以外のエラーとする。
+        final String[] sequences = {"1", "123456789012345678901", "3"};
+        final AsyncMessageReceiveAction action = new AsyncMessageReceiveAction() {
+            private int index = 0;
+
+            @Override
+            protected String generateReceivedSequence() {
+                return sequences[index++];
+            }
+        };
+
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        new SimpleDbTransactionExecutor<Void>(tran) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                ExecutionContext ctx = new ExecutionContext();
+                ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", false);
+                ctx.setDataReader(new DataReader<Object>() {
+                    public Object read(ExecutionContext ctx) {
+                        return null;
+                    }
+
+                    public boolean hasNext(ExecutionContext ctx) {
+                        return true;
+                    }
+
+                    public void close(ExecutionContext ctx) {
+                    }
+                });
+                for (int i = 0; i < 3; i++) {
+                    action.handle(createMSGREQ0001Message(), ctx);
+                }
+                return null;
+            }
+        }.doTransaction();
+
+        assertThat(VariousDbTestHelper.findAll(ReceiveMessage1.class).size(), is(2));
+        List<ReceiveMessage2> errorList = VariousDbTestHelper.findAll(ReceiveMessage2.class);
+        assertThat(errorList.size(), is(1));
+        assertThat(errorList.get(0).messageId, is("0000000001"));
+        assertThat(errorList.get(0).kanjiName, is("123456789012345678901"));
+    }
+
+    /**
+     * エラー電文登録用のSQL_IDが設定されていない場合、バッチ登録でエラーとなった電文は破棄されずに例外が送出され、
+     * コミット間隔内の電文は全て登録されないこと。
+     */
+    @Test
+    public void testBatchInsertErrorWithoutErrorSqlId() {
+        clearMessageTable();
+
+        AsyncMessageReceiveActionSettings settings = new AsyncMessageReceiveActionSettings();
+        settings.setFormClassPackage("nablarch.fw.messaging.action.form");
+        settings.setSqlFilePackage("nablarch.fw.messaging.action.sql");
+        settings.setDbTransactionName("test");
+        repositoryResource.addComponent("asyncMessageReceiveActionSettings", settings);
+        repositoryResource.addComponent("batchInsertSettings", new BatchInsertSettings().setBatchSize(3));
+
+        // 2件目の電文は、受信電文連番を桁あふれとし、一意制約違反以外のエラーとする。
+        final String[] sequences = {"1", "123456789012345678901", "3"};
+        final AsyncMessageReceiveAction action = new AsyncMessageReceiveAction() {
+            private int index = 0;
+
+            @Override
+            protected String generateReceivedSequence() {
+                return sequences[index++];
+            }
+        };
+
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        try {
+            new SimpleDbTransactionExecutor<Void>(tran) {
+                @Override
+                public Void execute(AppDbConnection connection) {
+                    ExecutionContext ctx = new ExecutionContext();
+                    ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", false);
+                    ctx.setDataReader(new DataReader<Object>() {
+                        public Object read(ExecutionContext ctx) {
+                            return null;
+                        }
+
+                        public boolean hasNext(ExecutionContext ctx) {
+                            return true;
+                        }
+
+                        public void close(ExecutionContext ctx) {
+                        }
+                    });
+                    for (int i = 0; i < 3; i++) {
+                        action.handle(createMSGREQ0001Message(), ctx);
+                    }
+                    return null;
+                }
+            }.doTransaction();
+            fail("does not run.");
+        } catch (SqlStatementException e) {
+            assertThat(e instanceof DuplicateStatementException, is(false));
+        }
+
+        assertThat("トランザクションがロールバックされること",
+                VariousDbTestHelper.findAll(ReceiveMessage1.class).size(), is(0));
+    }
+
+    /**
+     * 同一スレッドで使用するデータベース接続が切り替わった場合でも、キャッシュしたINSERT文ではなく
+     * 新しいデータベース接続のINSERT文で登録されること。
+     */
+    @Test
+    public void testStatementCache() {
+        clearMessageTable();
+
+        AsyncMessageReceiveActionSettings settings = new AsyncMessageReceiveActionSettings();
+        settings.setFormClassPackage("nablarch.fw.messaging.action.form");
+        settings.setSqlFilePackage("nablarch.fw.messaging.action.sql");
+        settings.setDbTransactionName("test");
+        repositoryResource.addComponent("asyncMessageReceiveActionSettings", settings);
+
+        final AsyncMessageReceiveAction action = new AsyncMessageReceiveAction() {
+            private int sequence = 0;
+
+            @Override
+            protected String generateReceivedSequence() {
+                return String.valueOf(++sequence);
+            }
+        };
+
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        for (int i = 0; i < 2; i++) {
+            new SimpleDbTransactionExecutor<Void>(tran) {
+                @Override
+                public Void execute(AppDbConnection connection) {
+                    action.handle(createMSGREQ0001Message(), new ExecutionContext());
+                    action.handle(createMSGREQ0001Message(), new ExecutionContext());
+                    return null;
+                }
+            }.doTransaction();
+        }
+
+        List<ReceiveMessage1> messageList = VariousDbTestHelper.findAll(ReceiveMessage1.class, "messageId");
+        assertThat(messageList.size(), is(4));
+        assertThat(messageList.get(0).messageId, is("1"));
+        assertThat(messageList.get(3).messageId, is("4"));
+    }
+
+    /**
+     * ジャーナルが設定されている場合、受信電文はジャーナルに追記され、
+     * {@link MessageJournalLoader}により受信テーブルに登録されること。
+     */
+    @Test
+    public void testMessageJournal() throws Exception {
+        clearMessageTable();
+
+        AsyncMessageReceiveActionSettings settings = new AsyncMessageReceiveActionSettings();
+        settings.setFormClassPackage("nablarch.fw.messaging.action.form");
+        settings.setSqlFilePackage("nablarch.fw.messaging.action.sql");
+        settings.setDbTransactionName("test");
+        repositoryResource.addComponent("asyncMessageReceiveActionSettings", settings);
+
+        File journalFile = File.createTempFile("receive", ".journal");
+        journalFile.deleteOnExit();
+        MessageJournal journal = new MessageJournal().setFilePath(journalFile.getPath()).setCapacity(4096);
+        journal.initialize();
+        repositoryResource.addComponent("messageJournal", journal);
+
+        AsyncMessageReceiveAction action = new AsyncMessageReceiveAction() {
+            private int sequence = 0;
+
+            @Override
+            protected String generateReceivedSequence() {
+                return String.valueOf(++sequence);
+            }
+        };
+        FwHeaderDefinition fwHeaderDefinition = new StandardFwHeaderDefinition();
+        for (int i = 0; i < 3; i++) {
+            RequestMessage message = fwHeaderDefinition.readFwHeaderFrom(
+                    new ReceivedMessage(createMSGREQ0001Bytes()));
+            assertThat(action.handle(message, new ExecutionContext()).isSuccess(), is(true));
+        }
+        assertThat("ジャーナルに追記され、受信テーブルには登録されないこと",
+                VariousDbTestHelper.findAll(ReceiveMessage1.class).size(), is(0));
+
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        MessageJournalLoader loader = new MessageJournalLoader()
+                .setMessageJournal(journal)
+                .setDbTransactionManager(tran)
+                .setBatchSize(2);
+        assertThat(loader.load(), is(3));
+
+        List<ReceiveMessage1> messageList = VariousDbTestHelper.findAll(ReceiveMessage1.class, "messageId");
+        assertThat(messageList.size(), is(3));
+        assertThat(messageList.get(0).messageId, is("1"));
+        assertThat(messageList.get(0).keiNo, is("0000000001"));
+        assertThat(messageList.get(2).messageId, is("3"));
+        assertThat(journal.getPendingBytes(), is(0));
+
+        // 登録完了を記録する前に異常終了した場合を想定し、登録済みの電文を再度ジャーナルに追記する。
+        journal.append("2", "MSGREQ0001", createMSGREQ0001Bytes());
+        journal.append("3", "MSGREQ0001", createMSGREQ0001Bytes());
+        assertThat("登録済みの電文は一意制約違反となり、エラーとならないこと", loader.load(), is(2));
+        assertThat(VariousDbTestHelper.findAll(ReceiveMessage1.class).size(), is(3));
+
+        // 登録できない電文は退避され、後続の電文の登録は継続されること。
+        File quarantineDir = new File(journalFile.getParentFile(), journalFile.getName() + ".quarantine");
+        loader.setQuarantineDir(quarantineDir.getPath());
+        journal.append("4", "MSGREQ0001", createMSGREQ0001Bytes());
+        journal.append("5", "NOTFOUND", createMSGREQ0001Bytes());
+        journal.append("6", "MSGREQ0001", createMSGREQ0001Bytes());
+        assertThat(loader.load(), is(3));
+        messageList = VariousDbTestHelper.findAll(ReceiveMessage1.class, "messageId");
+        assertThat(messageList.size(), is(5));
+        assertThat(messageList.get(3).messageId, is("4"));
+        assertThat(messageList.get(4).messageId, is("6"));
+        File quarantined = new File(quarantineDir, "5");
+        assertThat(quarantined.length(), is((long) createMSGREQ0001Bytes().length));
+        assertThat(journal.getPendingBytes(), is(0));
+        quarantined.delete();
+
+        // 受信テーブルの制約に違反する電文(受信電文連番が桁あふれ)も退避され、後続の電文の登録は継続されること。
+        String invalidSequence = "000000000000000000007";
+        journal.append("7", "MSGREQ0001", createMSGREQ0001Bytes());
+        journal.append(invalidSequence, "MSGREQ0001", createMSGREQ0001Bytes());
+        journal.append("8", "MSGREQ0001", createMSGREQ0001Bytes());
+        assertThat(loader.load(), is(3));
+        messageList = VariousDbTestHelper.findAll(ReceiveMessage1.class, "messageId");
+        assertThat(messageList.size(), is(7));
+        assertThat(messageList.get(5).messageId, is("7"));
+        assertThat(messageList.get(6).messageId, is("8"));
+        quarantined = new File(quarantineDir, invalidSequence);
+        assertThat(quarantined.length(), is((long) createMSGREQ0001Bytes().length));
+        assertThat(journal.getPendingBytes(), is(0));
+        quarantined.delete();
+        quarantineDir.delete();
+        journal.dispose();
+    }
+
+    /**
+     * ジャーナルに追記した電文の完了ラグは、受信テーブルへの登録が完了した時点で計測されること。
+     */
+    @Test
+    public void testCompletionLagWithMessageJournal() throws Exception {
+        clearMessageTable();
+
+        AsyncMessageReceiveActionSettings settings = new AsyncMessageReceiveActionSettings();
+        settings.setFormClassPackage("nablarch.fw.messaging.action.form");
+        settings.setSqlFilePackage("nablarch.fw.messaging.action.sql");
+        settings.setDbTransactionName("test");
+        repositoryResource.addComponent("asyncMessageReceiveActionSettings", settings);
+        QueueLagMonitor monitor = new QueueLagMonitor();
+        repositoryResource.addComponent("queueLagMonitor", monitor);
+
+        File journalFile = File.createTempFile("receive", ".journal");
+        journalFile.deleteOnExit();
+        MessageJournal journal = new MessageJournal().setFilePath(journalFile.getPath()).setCapacity(4096);
+        journal.initialize();
+        repositoryResource.addComponent("messageJournal", journal);
+
+        AsyncMessageReceiveAction action = new AsyncMessageReceiveAction() {
+            @Override
+            protected String generateReceivedSequence() {
+                return "1";
+            }
+        };
+        RequestMessage message = new StandardFwHeaderDefinition().readFwHeaderFrom(
+                new ReceivedMessage(createMSGREQ0001Bytes()));
+        message.setDestination("RECEIVE.TEST");
+        message.setHeader(JmsHeaderName.TIMESTAMP, System.currentTimeMillis() - 60000L);
+        assertThat(action.handle(message, new ExecutionContext()).isSuccess(), is(true));
+        assertThat("ジャーナルへの追記時点では計測されないこと",
+                monitor.getCompletionLag("RECEIVE.TEST", 100), is(-1L));
+
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        assertThat(new MessageJournalLoader()
+                .setMessageJournal(journal)
+                .setDbTransactionManager(tran)
+                .load(), is(1));
+        assertThat("受信時の送信日時から計測されること",
+                monitor.getCompletionLag("RECEIVE.TEST", 100) >= 60000L, is(true));
+        journal.dispose();
+    }
+
+    /**
+     * バッチ登録する電文の完了ラグは、登録待ちの電文を全て登録した時点で計測されること。
+     * また、バルクヘッドにより転送された電文は、最初に受信した電文の送信日時から計測されること。
+     */
+    @Test
+    public void testCompletionLagWithBatchInsert() {
+        clearMessageTable();
+
+        AsyncMessageReceiveActionSettings settings = new AsyncMessageReceiveActionSettings();
+        settings.setFormClassPackage("nablarch.fw.messaging.action.form");
+        settings.setSqlFilePackage("nablarch.fw.messaging.action.sql");
+        settings.setDbTransactionName("test");
+        repositoryResource.addComponent("asyncMessageReceiveActionSettings", settings);
+        repositoryResource.addComponent("batchInsertSettings", new BatchInsertSettings().setBatchSize(10));
+        final QueueLagMonitor monitor = new QueueLagMonitor();
+        repositoryResource.addComponent("queueLagMonitor", monitor);
+
+        final AsyncMessageReceiveAction action = new AsyncMessageReceiveAction() {
+            private int sequence = 0;
+
+            @Override
+            protected String generateReceivedSequence() {
+                return String.valueOf(++sequence);
+            }
+        };
+        final ExecutionContext ctx = new ExecutionContext();
+        ctx.setDataReader(new DataReader<Object>() {
+            public Object read(ExecutionContext ctx) {
+                return null;
+            }
+
+            public boolean hasNext(ExecutionContext ctx) {
+                return true;
+            }
+
+            public void close(ExecutionContext ctx) {
+            }
+        });
+
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        new SimpleDbTransactionExecutor<Void>(tran) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                long now = System.currentTimeMillis();
+                ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", false);
+                RequestMessage message = createMSGREQ0001Message();
+                message.setDestination("RECEIVE.TEST");
+                message.setHeader(JmsHeaderName.TIMESTAMP, now);
+                action.handle(message, ctx);
+                assertThat("登録待ちの間は計測されないこと",
+                        monitor.getCompletionLag("RECEIVE.TEST", 100), is(-1L));
+
+                ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", true);
+                RequestMessage overflowed = createMSGREQ0001Message();
+                overflowed.setDestination("RECEIVE.SIDE");
+                overflowed.setHeader(JmsHeaderName.TIMESTAMP, now);
+                overflowed.setHeader(RequestBulkhead.ORIGINAL_TIMESTAMP, now - 60000L);
+                action.handle(overflowed, ctx);
+                assertThat(countMessages(connection), is(2));
+                assertThat("登録待ちの電文も計測されること",
+                        monitor.getCompletionLag("RECEIVE.TEST", 100) >= 0L, is(true));
+                assertThat("最初に受信した電文の送信日時から計測されること",
+                        monitor.getCompletionLag("RECEIVE.SIDE", 100) >= 60000L, is(true));
+                return null;
+            }
+        }.doTransaction();
+    }
+
+    /**
+     * メッセージの属性設定がある場合、リクエストIDは電文の属性から取得されること。
+     * また、レイアウトのバージョンが設定と異なる電文、及び属性とフレームワーク制御ヘッダのリクエストIDが異なる電文は
+     * 拒否されること。
+     */
+    @Test
+    public void testMessageProperties() {
+        clearMessageTable();
+
+        AsyncMessageReceiveActionSettings settings = new AsyncMessageReceiveActionSettings();
+        settings.setFormClassPackage("nablarch.fw.messaging.action.form");
+        settings.setSqlFilePackage("nablarch.fw.messaging.action.sql");
+        settings.setDbTransactionName("test");
+        repositoryResource.addComponent("asyncMessageReceiveActionSettings", settings);
+        repositoryResource.addComponent("messagePropertySettings", new MessagePropertySettings()
+                .setLayoutVersions(new HashMap<String, String>() {{
+                    put("MSGREQ0001", "2");
+                }}));
+
+        final AsyncMessageReceiveAction action = new AsyncMessageReceiveAction() {
+            @Override
+            protected String generateReceivedSequence() {
+                return "1";
+            }
+        };
+
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        new SimpleDbTransactionExecutor<Void>(tran) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                RequestMessage message = createMSGREQ0001Message();
+                message.setHeader("RequestId", "MSGREQ0001");
+                message.setHeader("LayoutVersion", "2");
+                action.handle(message, new ExecutionContext());
+                return null;
+            }
+        }.doTransaction();
+        assertThat("属性のリクエストIDで受信テーブルに登録されること",
+                VariousDbTestHelper.findAll(ReceiveMessage1.class).size(), is(1));
+
+        FwHeader header = new FwHeader();
+        header.setRequestId("MSGREQ0001");
+        RequestMessage message = new RequestMessage(header, new ReceivedMessage(new byte[0])) {
+            @Override
+            public List<DataRecord> readRecords() {
+                throw new AssertionError("the body must not be read.");
+            }
+        };
+        message.setHeader("LayoutVersion", "1");
+        try {
+            action.handle(message, new ExecutionContext());
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("the layout version of the received message is not supported."
+                    + " request id = [MSGREQ0001], layout version = [1], expected layout version = [2]"));
+        }
+
+        message = createMSGREQ0001Message();
+        message.getFwHeader().setRequestId("HOGE");
+        message.setHeader("RequestId", "MSGREQ0001");
+        try {
+            action.handle(message, new ExecutionContext());
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("the request id of the message property does not match"
+                    + " the request id of the framework header."
+                    + " property request id = [MSGREQ0001], header request id = [HOGE]"));
+        }
+    }
+
+    /**
+     * Formクラスを使用しない登録の設定がある場合、Formオブジェクトを生成せずに
+     * 受信電文のレコードの項目及び共通項目がINSERT文のパラメータに設定されること。
+     */
+    @Test
+    public void testDirectBinding() {
+        clearMessageTable();
+
+        AsyncMessageReceiveActionSettings settings = new AsyncMessageReceiveActionSettings();
+        // Formクラスが使用された場合はエラーとなるよう、存在しないパッケージを指定する。
+        settings.setFormClassPackage("nablarch.fw.messaging.action.notfound");
+        settings.setSqlFilePackage("nablarch.fw.messaging.action.sql");
+        settings.setDbTransactionName("test");
+        repositoryResource.addComponent("asyncMessageReceiveActionSettings", settings);
+        repositoryResource.addComponent("directBindingSettings", new DirectBindingSettings()
+                .setUserIdParameterNames(asList("insertUserId", "updatedUserId"))
+                .setRequestIdParameterNames(asList("insertRequestId"))
+                .setExecutionIdParameterNames(asList("insertExecutionId"))
+                .setCurrentDateTimeParameterNames(asList("insertDate", "updatedDate"))
+                .setCurrentDateParameterNames(asList("jsnDate")));
+        repositoryResource.addComponent("systemTimeProvider", new BasicSystemTimeProvider());
+
+        final AsyncMessageReceiveAction action = new AsyncMessageReceiveAction() {
+            private int sequence = 0;
+
+            @Override
+            protected String generateReceivedSequence() {
+                return String.valueOf(++sequence);
+            }
+        };
+        ThreadContext.setUserId("user01");
+        ThreadContext.setRequestId("REQ01");
+        ThreadContext.setExecutionId("EXE01");
+
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        new SimpleDbTransactionExecutor<Void>(tran) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                action.handle(createMSGREQ0001Message(), new ExecutionContext());
+                return null;
+            }
+        }.doTransaction();
+
+        repositoryResource.addComponent("batchInsertSettings", new BatchInsertSettings().setBatchSize(2));
+        new SimpleDbTransactionExecutor<Void>(tran) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                ExecutionContext ctx = new ExecutionContext();
+                action.handle(createMSGREQ0001Message(), ctx);
+                action.handle(createMSGREQ0001Message(), ctx);
+                return null;
+            }
+        }.doTransaction();
+
+        List<ReceiveMessage1> messageList = VariousDbTestHelper.findAll(ReceiveMessage1.class, "messageId");
+        assertThat(messageList.size(), is(3));
+        ReceiveMessage1 message = messageList.get(0);
+        assertThat(message.messageId, is("1"));
+        assertThat(message.keiNo, is("0000000001"));
+        assertThat(message.itemName1, is("アイテム１"));
+        assertThat(message.itemAmount1, is(100L));
+        assertThat(message.insertUserId, is("user01"));
+        assertThat(message.updatedUserId, is("user01"));
+        assertThat(message.insertRequestId, is("REQ01"));
+        assertThat(message.insertExecutionId, is("EXE01"));
+        assertThat(message.jsnDate.length(), is(8));
+        assertThat(message.insertDate, notNullValue());
+        assertThat(message.updatedDate, notNullValue());
+        assertThat(messageList.get(2).messageId, is("3"));
+    }
+
+    /**
+     * 複数レコードの電文の登録設定を行った場合、業務データ部のレコード毎に受信電文連番が採番され、
+     * バッチサイズ単位にバッチ登録されること。
+     * 読み込んだレコードは電文に保持されないこと。
+     */
+    @Test
+    public void testMultiRecordInsert() {
+        clearMessageTable();
+
+        AsyncMessageReceiveActionSettings settings = new AsyncMessageReceiveActionSettings();
+        // Formクラスが使用された場合はエラーとなるよう、存在しないパッケージを指定する。
+        settings.setFormClassPackage("nablarch.fw.messaging.action.notfound");
+        settings.setSqlFilePackage("nablarch.fw.messaging.action.sql");
+        settings.setDbTransactionName("test");
+        repositoryResource.addComponent("asyncMessageReceiveActionSettings", settings);
+        repositoryResource.addComponent("multiRecordInsertSettings", new MultiRecordInsertSettings()
+                .setRequestIds(asList("MSGREQ0001"))
+                .setBatchSize(2));
+        repositoryResource.addComponent("directBindingSettings", new DirectBindingSettings()
+                .setUserIdParameterNames(asList("insertUserId", "updatedUserId"))
+                .setRequestIdParameterNames(asList("insertRequestId"))
+                .setExecutionIdParameterNames(asList("insertExecutionId"))
+                .setCurrentDateTimeParameterNames(asList("insertDate", "updatedDate"))
+                .setCurrentDateParameterNames(asList("jsnDate")));
+        repositoryResource.addComponent("systemTimeProvider", new BasicSystemTimeProvider());
+
+        final List<Integer> batchSizes = new ArrayList<Integer>();
+        final LinkedList<String> sequences = new LinkedList<String>(asList("1", "2", "3", "4", "5"));
+        final AsyncMessageReceiveAction action = new AsyncMessageReceiveAction() {
+            @Override
+            protected String generateReceivedSequence() {
+                return sequences.removeFirst();
+            }
+
+            @Override
+            protected void insertRecordsInBatch(String requestId, List<Object> parameters) {
+                batchSizes.add(parameters.size());
+                super.insertRecordsInBatch(requestId, parameters);
+            }
+        };
+        ThreadContext.setUserId("user01");
+        ThreadContext.setRequestId("REQ01");
+        ThreadContext.setExecutionId("EXE01");
+
+        SendingMessage sendingMessage = new SendingMessage();
+        sendingMessage.setFormatter(createFormatter("MSGREQ0001"));
+        for (int i = 1; i <= 5; i++) {
+            Map<String, Object> data = new HashMap<String, Object>();
+            data.put("keiNo", "000000000" + i);
+            data.put("itemCode1", "0001");
+            data.put("itemName1", "アイテム" + i);
+            data.put("itemAmount1", 100 * i);
+            sendingMessage.addRecord(data);
+        }
+        FwHeader header = new FwHeader();
+        header.setRequestId("MSGREQ0001");
+        final RequestMessage message = new RequestMessage(header, new ReceivedMessage(sendingMessage.getBodyBytes()));
+        message.setFormatter(createFormatter("MSGREQ0001"));
+
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        new SimpleDbTransactionExecutor<Void>(tran) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                action.handle(message, new ExecutionContext());
+                return null;
+            }
+        }.doTransaction();
+
+        assertThat(batchSizes, is(asList(2, 2, 1)));
+        assertThat(message.getRecords().size(), is(0));
+        List<ReceiveMessage1> messageList = VariousDbTestHelper.findAll(ReceiveMessage1.class, "messageId");
+        assertThat(messageList.size(), is(5));
+        for (int i = 0; i < 5; i++) {
+            ReceiveMessage1 received = messageList.get(i);
+            assertThat(received.messageId, is(String.valueOf(i + 1)));
+            assertThat(received.keiNo, is("000000000" + (i + 1)));
+            assertThat(received.itemAmount1, is(100L * (i + 1)));
+            assertThat(received.insertUserId, is("user01"));
+        }
+
+        // いずれかのレコードが登録できない場合は、電文全体が失敗すること。
+        final RequestMessage duplicated = new RequestMessage(header, new ReceivedMessage(sendingMessage.getBodyBytes()));
+        duplicated.setFormatter(createFormatter("MSGREQ0001"));
+        sequences.addAll(asList("6", "7", "1", "8", "9"));
+        try {
+            new SimpleDbTransactionExecutor<Void>(tran) {
+                @Override
+                public Void execute(AppDbConnection connection) {
+                    action.handle(duplicated, new ExecutionContext());
+                    return null;
+                }
+            }.doTransaction();
+            fail();
+        } catch (DuplicateStatementException e) {
+            assertThat(VariousDbTestHelper.findAll(ReceiveMessage1.class).size(), is(5));
+        }
+
+        // ジャーナルとの併用は初期処理で拒否されること。
+        repositoryResource.addComponent("messageJournal", new MessageJournal());
+        try {
+            action.initialize(new CommandLine(
+                    "-diConfig", "diConfig",
+                    "-requestPath", "requestPath",
+                    "-userId", "userId"), new ExecutionContext());
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage().startsWith("messageJournal and multiRecordInsertSettings cannot be used together."),
+                    is(true));
+        }
+    }
+
+    /**
+     * フレームワーク制御ヘッダを含むMSGREQ0001の受信電文のバイト列を生成する。
+     *
+     * @return 受信電文のバイト列
+     */
+    private byte[] createMSGREQ0001Bytes() {
+        SendingMessage sendingMessage = new SendingMessage();
+        Map<String, Object> header = new HashMap<String, Object>();
+        header.put("requestId", "MSGREQ0001");
+        sendingMessage.setFormatter(createFormatter("header"));
+        sendingMessage.addRecord(header);
+
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("keiNo", "0000000001");
+        data.put("itemCode1", "0001");
+        data.put("itemName1", "アイテム１");
+        data.put("itemAmount1", 100);
+        sendingMessage.setFormatter(createFormatter("MSGREQ0001"));
+        sendingMessage.addRecord(data);
+        return sendingMessage.getBodyBytes();
+    }
+
+    /**
+     * 受信テーブル(RECEIVE_MESSAGE_1)の件数を取得する。
+     *
+     * @param connection データベース接続
+     * @return 件数
+     */
+    private static int countMessages(AppDbConnection connection) {
+        return connection.prepareStatement("SELECT MESSAGE_ID FROM RECEIVE_MESSAGE_1").retrieve().size();
+    }
+
+    /**
+     * MSGREQ0001の受信電文を生成する。
+     *
+     * @return 受信電文
+     */
+    private RequestMessage createMSGREQ0001Message() {
+        SendingMessage sendingMessage = new SendingMessage();
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("keiNo", "0000000001");
+        data.put("itemCode1", "0001");
+        data.put("itemName1", "アイテム１");
+        data.put("itemAmount1", 100);
+        sendingMessage.setFormatter(createFormatter("MSGREQ0001"));
+        sendingMessage.addRecord(data);
+
+        FwHeader header = new FwHeader();
+        header.setRequestId("MSGREQ0001");
+        RequestMessage message = new RequestMessage(header, new ReceivedMessage(sendingMessage.getBodyBytes()));
+        message.setFormatter(createFormatter("MSGREQ0001"));
+        return message;
+    }
+
     /** メッセージテーブルの状態を0レコードにする。 */
     private static void clearMessageTable() {
         VariousDbTestHelper.delete(ReceiveMessage1.class);
@@ -1,18 +1,22 @@
 package nablarch.fw.messaging.action;
 
+import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import nablarch.core.ThreadContext;
 import nablarch.core.dataformat.DataRecord;
@@ -24,12 +28,14 @@ import nablarch.core.db.transaction.SimpleDbTransactionExecutor;
 import nablarch.core.db.transaction.SimpleDbTransactionManager;
 import nablarch.core.transaction.TransactionContext;
 import nablarch.core.util.FilePathSetting;
+import nablarch.fw.DataReader;
 import nablarch.fw.ExecutionContext;
 import nablarch.fw.launcher.CommandLine;
 import nablarch.fw.launcher.Main;
 import nablarch.fw.messaging.MessagingContext;
 import nablarch.fw.messaging.MessagingProvider;
 import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.fw.messaging.SendingMessage;
 import nablarch.test.support.SystemRepositoryResource;
 import nablarch.test.support.db.helper.DatabaseTestRunner;
 import nablarch.test.support.db.helper.VariousDbTestHelper;
@@ -507,6 +513,568 @@ public class AsyncMessageSendActionTest {
         }.doTransaction();
     }
 
+    /**
+     * ステータスのバッチ更新設定がある場合、バッチサイズに達した時点及びコミット直前にまとめて更新されること。
+     * また、更新件数が1件とならなかったデータがある場合は、そのデータを含む例外が送出され、
+     * 異常終了時にインプットデータのステータスはエラーに更新されないこと。
+     */
+    @Test
+    public void testBatchStatusUpdate() {
+        VariousDbTestHelper.setUpTable(
+                new SendMessage1("00000000000000000001", "1111111111", "0001", "アイテム１０", 100L, null, null, null, "0",
+                        null, null, null, null, null, null),
+                new SendMessage1("00000000000000000002", "1111111112", "0001", "アイテム１１", 1000L, null, null, null, "0",
+                        null, null, null, null, null, null),
+                new SendMessage1("00000000000000000003", "1111111112", "0011", "アイテム１２", 10000L, null, null, null, "0",
+                        null, null, null, null, null, null));
+
+        final AsyncMessageSendActionSettings settings = new AsyncMessageSendActionSettings();
+        settings.setFormClassName("nablarch.fw.messaging.action.form.SendTempForm");
+        settings.setTransactionName("test");
+        settings.setSqlFilePackage("nablarch.fw.messaging.action.sql");
+        repositoryResource.addComponent("asyncMessageSendActionSettings", settings);
+        repositoryResource.addComponent("batchStatusUpdateSettings", new BatchStatusUpdateSettings().setBatchSize(2));
+
+        final AsyncMessageSendAction action = new AsyncMessageSendAction();
+        action.initialize(new CommandLine(
+                "-diConfig", "diConfig",
+                "-requestPath", "requestPath",
+                "-userId", "userId",
+                "-messageRequestId", "MSGREQ0003"), null);
+        final ExecutionContext ctx = new ExecutionContext();
+        ctx.setDataReader(new DataReader<SqlRow>() {
+            public SqlRow read(ExecutionContext ctx) {
+                return null;
+            }
+
+            public boolean hasNext(ExecutionContext ctx) {
+                return true;
+            }
+
+            public void close(ExecutionContext ctx) {
+            }
+        });
+        ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", false);
+
+        doTransaction(new Runnable() {
+            public void run() {
+                action.transactionNormalEnd(createSqlRow("00000000000000000001"), ctx);
+            }
+        });
+        assertThat("バッチサイズに達するまでは更新されないこと", findStatuses(), is(asList("0", "0", "0")));
+
+        doTransaction(new Runnable() {
+            public void run() {
+                action.transactionNormalEnd(createSqlRow("00000000000000000002"), ctx);
+            }
+        });
+        assertThat("バッチサイズに達した時点で更新されること", findStatuses(), is(asList("1", "1", "0")));
+
+        doTransaction(new Runnable() {
+            public void run() {
+                ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", true);
+                action.transactionNormalEnd(createSqlRow("00000000000000000003"), ctx);
+            }
+        });
+        assertThat("コミット直前に更新されること", findStatuses(), is(asList("1", "1", "1")));
+
+        doTransaction(new Runnable() {
+            public void run() {
+                ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", false);
+                action.transactionNormalEnd(createSqlRow("00000000000000000001"), ctx);
+                try {
+                    action.transactionNormalEnd(createSqlRow("99999999999999999999"), ctx);
+                    fail();
+                } catch (IllegalStateException e) {
+                    assertThat(e.getMessage(), is(
+                            "update data was not single record. updated record count = 0, message request id = MSGREQ0003, "
+                                    + "input data = {messageId=99999999999999999999}"));
+                    action.transactionAbnormalEnd(e, createSqlRow("00000000000000000002"), ctx);
+                }
+
+                action.transactionNormalEnd(createSqlRow("00000000000000000002"), ctx);
+                action.transactionAbnormalEnd(new RuntimeException(), createSqlRow("00000000000000000003"), ctx);
+                List<SqlRow> pendingUpdates = ctx.getRequestScopedVar("nablarch_async-message-send_pending-updates");
+                assertThat("異常終了時は更新待ちのデータが破棄されること", pendingUpdates.isEmpty(), is(true));
+            }
+        });
+        assertThat(findStatuses(), is(asList("1", "1", "9")));
+    }
+
+    /**
+     * 複数メッセージリクエストIDの送信設定がある場合、メッセージリクエストID毎に1件ずつ順番に読み込まれ、
+     * ヘッダ部のリクエストID、送信先のキュー及びステータスの更新先がメッセージリクエストID毎に解決されること。
+     */
+    @Test
+    public void testMultiRequestSend() {
+        VariousDbTestHelper.setUpTable(
+                new SendMessage1("00000000000000000001", "1111111111", "0001", "アイテム１０", 100L, null, null, null, "0",
+                        null, null, null, null, null, null),
+                new SendMessage1("00000000000000000002", "1111111112", "0001", "アイテム１１", 1000L, null, null, null, "0",
+                        null, null, null, null, null, null),
+                new SendMessage1("00000000000000000003", "1111111112", "0011", "アイテム１２", 10000L, null, null, null, "0",
+                        null, null, null, null, null, null));
+        VariousDbTestHelper.setUpTable(
+                new SendMessage2("00000000000000000011", "漢字１", "ｶﾅ1", "1@mail", "01", "0001", "0", null, null, null,
+                        null, null, null));
+
+        AsyncMessageSendActionSettings settings = new AsyncMessageSendActionSettings();
+        settings.setFormClassName("nablarch.fw.messaging.action.form.SendTempForm");
+        settings.setTransactionName("test");
+        settings.setSqlFilePackage("nablarch.fw.messaging.action.sql");
+        settings.setQueueName("SEND.TEST");
+        repositoryResource.addComponent("asyncMessageSendActionSettings", settings);
+        repositoryResource.addComponent("multiRequestSendSettings", new MultiRequestSendSettings()
+                .setMessageRequestIds(asList("MSGREQ0003", "MSGREQ0004"))
+                .setQueueNames(new HashMap<String, String>() {{
+                    put("MSGREQ0004", "SEND.TEST2");
+                }}));
+
+        final AsyncMessageSendAction action = new AsyncMessageSendAction();
+        action.initialize(new CommandLine(
+                "-diConfig", "diConfig",
+                "-requestPath", "requestPath",
+                "-userId", "userId"), null);
+        final ExecutionContext ctx = new ExecutionContext();
+        final List<String> read = new ArrayList<String>();
+        doTransaction(new Runnable() {
+            public void run() {
+                DataReader<SqlRow> reader = action.createReader(ctx);
+                while (reader.hasNext(ctx)) {
+                    SqlRow row = reader.read(ctx);
+                    String requestId = (String) action.createHeaderRecord(row).get("requestId");
+                    assertThat(action.getQueueName(requestId), is(requestId.equals("MSGREQ0004") ? "SEND.TEST2" : "SEND.TEST"));
+                    read.add(requestId + ':' + row.getString("messageId"));
+                    action.transactionNormalEnd(row, ctx);
+                }
+                reader.close(ctx);
+            }
+        });
+        assertThat(read, is(asList(
+                "MSGREQ0003:00000000000000000001",
+                "MSGREQ0004:00000000000000000011",
+                "MSGREQ0003:00000000000000000002",
+                "MSGREQ0003:00000000000000000003")));
+        assertThat(findStatuses(), is(asList("1", "1", "1")));
+        assertThat(VariousDbTestHelper.findAll(SendMessage2.class).get(0).status, is("1"));
+    }
+
+    /**
+     * 起動引数で指定したメッセージリクエストIDのデータ部のフォーマッタは、
+     * サブクラスでオーバーライドした{@link AsyncMessageSendAction#createDataRecordFormatter()}で生成されること。
+     */
+    @Test
+    public void testOverrideCreateDataRecordFormatter() {
+        AsyncMessageSendActionSettings settings = new AsyncMessageSendActionSettings();
+        settings.setFormatDir("format");
+        repositoryResource.addComponent("asyncMessageSendActionSettings", settings);
+
+        final AtomicInteger count = new AtomicInteger();
+        AsyncMessageSendAction action = new AsyncMessageSendAction() {
+            @Override
+            protected DataRecordFormatter createDataRecordFormatter() {
+                count.incrementAndGet();
+                return super.createDataRecordFormatter();
+            }
+        };
+        action.initialize(new CommandLine(
+                "-diConfig", "diConfig",
+                "-requestPath", "requestPath",
+                "-userId", "userId",
+                "-messageRequestId", "MSGREQ0003"), null);
+
+        assertThat(action.createDataRecordFormatter("MSGREQ0003"), is(notNullValue()));
+        assertThat(count.get(), is(1));
+        assertThat("起動引数以外のメッセージリクエストIDは呼び出されないこと",
+                action.createDataRecordFormatter("MSGREQ0004"), is(notNullValue()));
+        assertThat(count.get(), is(1));
+    }
+
+    /**
+     * 最新データのみの送信設定がある場合、同じキー値を持つデータは最新のデータのみが読み込まれ、
+     * 置き換えられたデータのステータスは最新のデータと同時に更新されること。
+     */
+    @Test
+    public void testCoalescingSend() {
+        VariousDbTestHelper.setUpTable(
+                new SendMessage1("00000000000000000001", "1111111112", "0001", "アイテム１０", 100L, null, null, null, "0",
+                        null, null, null, null, null, null),
+                new SendMessage1("00000000000000000002", "1111111111", "0001", "アイテム１１", 1000L, null, null, null, "0",
+                        null, null, null, null, null, null),
+                new SendMessage1("00000000000000000003", "1111111112", "0011", "アイテム１２", 10000L, null, null, null, "0",
+                        null, null, null, null, null, null),
+                new SendMessage1("00000000000000000004", "1111111113", "0011", "アイテム１３", 10000L, null, null, null, "0",
+                        null, null, null, null, null, null),
+                new SendMessage1("00000000000000000005", "1111111113", "0011", "アイテム１４", 10000L, null, null, null, "0",
+                        null, null, null, null, null, null));
+
+        AsyncMessageSendActionSettings settings = new AsyncMessageSendActionSettings();
+        settings.setFormClassName("nablarch.fw.messaging.action.form.SendTempForm");
+        settings.setTransactionName("test");
+        settings.setSqlFilePackage("nablarch.fw.messaging.action.sql");
+        repositoryResource.addComponent("asyncMessageSendActionSettings", settings);
+        repositoryResource.addComponent("coalescingSendSettings", new CoalescingSendSettings()
+                .setKeyColumnNames(asList("KEI_NO")));
+
+        final AsyncMessageSendAction action = new AsyncMessageSendAction();
+        action.initialize(new CommandLine(
+                "-diConfig", "diConfig",
+                "-requestPath", "requestPath",
+                "-userId", "userId",
+                "-messageRequestId", "MSGREQ0003"), null);
+        final ExecutionContext ctx = new ExecutionContext();
+        final List<String> read = new ArrayList<String>();
+        doTransaction(new Runnable() {
+            public void run() {
+                DataReader<SqlRow> reader = action.createReader(ctx);
+                while (reader.hasNext(ctx)) {
+                    SqlRow row = reader.read(ctx);
+                    read.add(row.getString("messageId"));
+                    if (row.getString("messageId").equals("00000000000000000005")) {
+                        action.transactionAbnormalEnd(new RuntimeException(), row, ctx);
+                    } else {
+                        action.transactionNormalEnd(row, ctx);
+                    }
+                }
+                reader.close(ctx);
+            }
+        });
+        assertThat(read, is(asList("00000000000000000002", "00000000000000000003", "00000000000000000005")));
+        assertThat("送信に失敗した場合は、置き換えられたデータもエラーとなること",
+                findStatuses(), is(asList("1", "1", "1", "9", "9")));
+    }
+
+    /**
+     * メッセージの属性設定がある場合、メッセージリクエストID及びレイアウトのバージョンがメッセージの属性に設定されること。
+     */
+    @Test
+    public void testMessageProperties() {
+        AsyncMessageSendActionSettings settings = new AsyncMessageSendActionSettings();
+        settings.setFormatDir("format");
+        settings.setHeaderFormatName("header");
+        settings.setQueueName("SEND.TEST");
+        repositoryResource.addComponent("asyncMessageSendActionSettings", settings);
+        repositoryResource.addComponent("messagePropertySettings", new MessagePropertySettings()
+                .setLayoutVersions(new HashMap<String, String>() {{
+                    put("MSGREQ0003", "2");
+                }}));
+
+        AsyncMessageSendAction action = new AsyncMessageSendAction();
+        action.initialize(new CommandLine(
+                "-diConfig", "diConfig",
+                "-requestPath", "requestPath",
+                "-userId", "userId",
+                "-messageRequestId", "MSGREQ0003"), null);
+
+        final List<SendingMessage> sent = new ArrayList<SendingMessage>();
+        MessagingContext.attach(new MessagingContext() {
+            @Override
+            public String sendMessage(SendingMessage message) {
+                sent.add(message);
+                return "ID:1";
+            }
+
+            @Override
+            public ReceivedMessage receiveMessage(String receiveQueue, String messageId, long timeout) {
+                return null;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        try {
+            SqlRow inputData = new SqlRow(new HashMap<String, Object>() {{
+                put("KEI_NO", "1111111111");
+                put("ITEM_CODE_1", "0001");
+                put("ITEM_NAME_1", "アイテム１０");
+                put("ITEM_AMOUNT_1", 100L);
+                put("ITEM_CODE_2", "0002");
+                put("ITEM_NAME_2", "アイテム２０");
+                put("ITEM_AMOUNT_2", 200L);
+            }}, new HashMap<String, Integer>());
+            action.handle(inputData, new ExecutionContext());
+        } finally {
+            MessagingContext.detach();
+        }
+        assertThat(sent.size(), is(1));
+        assertThat(sent.get(0).getDestination(), is("SEND.TEST"));
+        assertThat(sent.get(0).getHeader("RequestId"), is((Object) "MSGREQ0003"));
+        assertThat(sent.get(0).getHeader("LayoutVersion"), is((Object) "2"));
+    }
+
+    /**
+     * 配信日時指定の送信設定を行った場合、インプットデータの配信日時がメッセージの配信日時ヘッダに設定されること。
+     * 配信日時がnullの場合は、配信日時ヘッダが設定されないこと。
+     */
+    @Test
+    public void testScheduledDelivery() {
+        AsyncMessageSendActionSettings settings = new AsyncMessageSendActionSettings();
+        settings.setFormatDir("format");
+        settings.setHeaderFormatName("header");
+        settings.setQueueName("SEND.TEST");
+        repositoryResource.addComponent("asyncMessageSendActionSettings", settings);
+        repositoryResource.addComponent("scheduledDeliverySettings", new ScheduledDeliverySettings()
+                .setDeliveryTimeColumnName("sendAt"));
+
+        AsyncMessageSendAction action = new AsyncMessageSendAction();
+        action.initialize(new CommandLine(
+                "-diConfig", "diConfig",
+                "-requestPath", "requestPath",
+                "-userId", "userId",
+                "-messageRequestId", "MSGREQ0003"), null);
+
+        final List<SendingMessage> sent = new ArrayList<SendingMessage>();
+        MessagingContext.attach(new MessagingContext() {
+            @Override
+            public String sendMessage(SendingMessage message) {
+                sent.add(message);
+                return "ID:1";
+            }
+
+            @Override
+            public ReceivedMessage receiveMessage(String receiveQueue, String messageId, long timeout) {
+                return null;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        Timestamp sendAt = Timestamp.valueOf("2030-01-02 03:04:05");
+        try {
+            SqlRow scheduled = createItemRow("0000000001");
+            scheduled.put("sendAt", sendAt);
+            action.handle(scheduled, new ExecutionContext());
+            SqlRow immediate = createItemRow("0000000002");
+            immediate.put("sendAt", null);
+            action.handle(immediate, new ExecutionContext());
+        } finally {
+            MessagingContext.detach();
+        }
+        assertThat(sent.size(), is(2));
+        assertThat(sent.get(0).getHeader("JMSDeliveryTime"), is((Object) sendAt));
+        assertThat(sent.get(1).getHeaderMap().containsKey("JMSDeliveryTime"), is(false));
+    }
+
+    /**
+     * 電文のまとめ送信設定を行った場合、最大レコード数、最大バイト数、トランザクションのコミット直前の
+     * いずれかの時点で、複数のインプットデータを業務データ部のレコードとした電文が送信されること。
+     */
+    @Test
+    public void testTelegramPacking() {
+        AsyncMessageSendActionSettings settings = new AsyncMessageSendActionSettings();
+        settings.setFormatDir("format");
+        settings.setHeaderFormatName("header");
+        settings.setQueueName("SEND.TEST");
+        repositoryResource.addComponent("asyncMessageSendActionSettings", settings);
+        TelegramPackingSettings telegramPackingSettings = new TelegramPackingSettings().setMaxRecords(2);
+        repositoryResource.addComponent("telegramPackingSettings", telegramPackingSettings);
+
+        AsyncMessageSendAction action = new AsyncMessageSendAction();
+        action.initialize(new CommandLine(
+                "-diConfig", "diConfig",
+                "-requestPath", "requestPath",
+                "-userId", "userId",
+                "-messageRequestId", "MSGREQ0003"), null);
+
+        final List<SendingMessage> sent = new ArrayList<SendingMessage>();
+        MessagingContext.attach(new MessagingContext() {
+            @Override
+            public String sendMessage(SendingMessage message) {
+                sent.add(message);
+                return "ID:1";
+            }
+
+            @Override
+            public ReceivedMessage receiveMessage(String receiveQueue, String messageId, long timeout) {
+                return null;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        try {
+            // 最大レコード数に達した時点、及びコミット直前に送信される。
+            ExecutionContext ctx = createLoopContext();
+            action.handle(createItemRow("0000000001"), ctx);
+            assertThat(sent.size(), is(0));
+            action.handle(createItemRow("0000000002"), ctx);
+            assertThat(sent.size(), is(1));
+            action.handle(createItemRow("0000000003"), ctx);
+            assertThat(sent.size(), is(1));
+            ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", true);
+            action.handle(createItemRow("0000000004"), ctx);
+            assertThat(sent.size(), is(2));
+            assertThat(readKeiNos(sent.get(0)), is(asList("0000000001", "0000000002")));
+            assertThat(readKeiNos(sent.get(1)), is(asList("0000000003", "0000000004")));
+            assertThat(sent.get(1).getDestination(), is("SEND.TEST"));
+
+            // 次のレコードを追加すると最大バイト数を超える時点で送信される。
+            sent.clear();
+            telegramPackingSettings.setMaxRecords(100).setMaxBytes(30 + 308 * 2);
+            ctx = createLoopContext();
+            for (int i = 1; i <= 4; i++) {
+                action.handle(createItemRow("000000000" + i), ctx);
+            }
+            assertThat(sent.size(), is(1));
+            ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", true);
+            action.handle(createItemRow("0000000005"), ctx);
+            assertThat(sent.size(), is(3));
+            assertThat(sent.get(0).getBodyBytes().length, is(30 + 308 * 2));
+            assertThat(readKeiNos(sent.get(0)), is(asList("0000000001", "0000000002")));
+            assertThat(readKeiNos(sent.get(1)), is(asList("0000000003", "0000000004")));
+            assertThat(readKeiNos(sent.get(2)), is(asList("0000000005")));
+
+            // 1レコードで最大バイト数を超える場合は、そのレコードのみを格納した電文が送信される。
+            sent.clear();
+            telegramPackingSettings.setMaxBytes(30 + 308 - 1);
+            ctx = createLoopContext();
+            for (int i = 1; i <= 3; i++) {
+                if (i == 3) {
+                    ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", true);
+                }
+                action.handle(createItemRow("000000000" + i), ctx);
+            }
+            assertThat(sent.size(), is(3));
+            for (int i = 0; i < 3; i++) {
+                assertThat(sent.get(i).getBodyBytes().length, is(30 + 308));
+                assertThat(sent.get(i).getRecords().size(), is(2));
+                assertThat(readKeiNos(sent.get(i)), is(asList("000000000" + (i + 1))));
+            }
+
+            // 配信日時が異なるインプットデータは、同じ電文にまとめられないこと。
+            sent.clear();
+            telegramPackingSettings.setMaxBytes(0);
+            repositoryResource.addComponent("scheduledDeliverySettings", new ScheduledDeliverySettings()
+                    .setDeliveryTimeColumnName("sendAt"));
+            Timestamp sendAt = Timestamp.valueOf("2030-01-02 03:04:05");
+            Object[] deliveryTimes = {null, sendAt, new Timestamp(sendAt.getTime()), sendAt.getTime() + 1000};
+            ctx = createLoopContext();
+            for (int i = 1; i <= 4; i++) {
+                if (i == 4) {
+                    ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", true);
+                }
+                SqlRow row = createItemRow("000000000" + i);
+                row.put("sendAt", deliveryTimes[i - 1]);
+                action.handle(row, ctx);
+            }
+            assertThat(sent.size(), is(3));
+            assertThat(readKeiNos(sent.get(0)), is(asList("0000000001")));
+            assertThat(sent.get(0).getHeaderMap().containsKey("JMSDeliveryTime"), is(false));
+            assertThat(readKeiNos(sent.get(1)), is(asList("0000000002", "0000000003")));
+            assertThat(sent.get(1).getHeader("JMSDeliveryTime"), is((Object) sendAt));
+            assertThat(readKeiNos(sent.get(2)), is(asList("0000000004")));
+            assertThat(sent.get(2).getHeader("JMSDeliveryTime"), is((Object) (sendAt.getTime() + 1000)));
+        } finally {
+            MessagingContext.detach();
+        }
+    }
+
+    /**
+     * コミット間隔の途中(トランザクションのコミット直前ではない)の実行コンテキストを生成する。
+     *
+     * @return 実行コンテキスト
+     */
+    private static ExecutionContext createLoopContext() {
+        ExecutionContext ctx = new ExecutionContext();
+        ctx.setDataReader(new DataReader<SqlRow>() {
+            @Override
+            public SqlRow read(ExecutionContext ctx) {
+                return null;
+            }
+
+            @Override
+            public boolean hasNext(ExecutionContext ctx) {
+                return true;
+            }
+
+            @Override
+            public void close(ExecutionContext ctx) {
+            }
+        });
+        ctx.setRequestScopedVar("nablarch_LoopHandler_is_about_to_commit", false);
+        return ctx;
+    }
+
+    /**
+     * 送信した電文の業務データ部のレコードから契約番号を読み込む。
+     *
+     * @param message 送信した電文
+     * @return 契約番号のリスト
+     */
+    private List<String> readKeiNos(SendingMessage message) {
+        ReceivedMessage received = new ReceivedMessage(message.getBodyBytes());
+        received.setFormatter(createFormatter("header"));
+        received.readRecord();
+        received.setFormatter(createFormatter("MSGREQ0003"));
+        List<String> keiNos = new ArrayList<String>();
+        for (DataRecord record : received.readRecords()) {
+            keiNos.add(record.getString("KEI_NO"));
+        }
+        return keiNos;
+    }
+
+    /**
+     * 契約番号を持つ送信対象のインプットデータを生成する。
+     *
+     * @param keiNo 契約番号
+     * @return インプットデータ
+     */
+    private static SqlRow createItemRow(final String keiNo) {
+        return new SqlRow(new HashMap<String, Object>() {{
+            put("KEI_NO", keiNo);
+            put("ITEM_CODE_1", "0001");
+            put("ITEM_NAME_1", "アイテム１０");
+            put("ITEM_AMOUNT_1", 100L);
+            put("ITEM_CODE_2", "0002");
+            put("ITEM_NAME_2", "アイテム２０");
+            put("ITEM_AMOUNT_2", 200L);
+        }}, new HashMap<String, Integer>());
+    }
+
+    /**
+     * 送信用テーブルのステータスをメッセージID順に取得する。
+     *
+     * @return ステータスのリスト
+     */
+    private static List<String> findStatuses() {
+        List<String> statuses = new ArrayList<String>();
+        for (SendMessage1 entity : VariousDbTestHelper.findAll(SendMessage1.class, "messageId")) {
+            statuses.add(entity.status);
+        }
+        return statuses;
+    }
+
+    /**
+     * メッセージIDを持つインプットデータを生成する。
+     *
+     * @param messageId メッセージID
+     * @return インプットデータ
+     */
+    private static SqlRow createSqlRow(String messageId) {
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put("messageId", messageId);
+        return new SqlRow(row, new HashMap<String, Integer>());
+    }
+
+    /**
+     * トランザクション内で処理を実行する。
+     *
+     * @param runnable 処理
+     */
+    private void doTransaction(final Runnable runnable) {
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        new SimpleDbTransactionExecutor<Void>(tran) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                runnable.run();
+                return null;
+            }
+        }.doTransaction();
+    }
+
     /** データレコードのフォーマット定義ファイルが存在しない場合。 */
     @Test
     public void formatNotFound() {
@@ -550,6 +1118,59 @@ public class AsyncMessageSendActionTest {
         }
     }
 
+    /**
+     * フォーマッタキャッシュが設定されている場合、フォーマッタキャッシュを使用してフォーマッタが生成されること。
+     * また、ヘッダ部に設定する項目は初回のみ設定から取得されること。
+     */
+    @Test
+    public void testFormatterCache() {
+        AsyncMessageSendActionSettings settings = new AsyncMessageSendActionSettings();
+        settings.setFormatDir("format");
+        settings.setHeaderFormatName("header.test");
+        settings.setHeaderItemList(new ArrayList<String>() {{
+            add("messageId");
+        }});
+        repositoryResource.addComponent("asyncMessageSendActionSettings", settings);
+
+        final List<File> layoutFiles = new ArrayList<File>();
+        FormatterCache formatterCache = new FormatterCache() {
+            @Override
+            public DataRecordFormatter createFormatter(File layoutFile) {
+                layoutFiles.add(layoutFile);
+                return super.createFormatter(layoutFile);
+            }
+        };
+        repositoryResource.addComponent("formatterFactory", formatterCache);
+
+        AsyncMessageSendAction action = new AsyncMessageSendAction();
+        action.initialize(new CommandLine(
+                "-diConfig", "diConfig",
+                "-requestPath", "requestPath",
+                "-userId", "userId",
+                "-messageRequestId", "MSGREQ0003"), null);
+
+        assertThat(action.createHeaderRecordFormatter(), notNullValue());
+        assertThat(action.createHeaderRecordFormatter(), notNullValue());
+        assertThat(action.createDataRecordFormatter(), notNullValue());
+        assertThat(layoutFiles.size(), is(3));
+        assertThat(layoutFiles.get(1), sameInstance(layoutFiles.get(0)));
+        assertThat(layoutFiles.get(0).getName(), is("header.test.fmt"));
+        assertThat(layoutFiles.get(2).getName(), is("MSGREQ0003_SEND.fmt"));
+
+        SqlRow inputData = new SqlRow(new HashMap<String, Object>() {{
+            put("messageId", "00000000000000000001");
+            put("kbn", "1");
+        }}, new HashMap<String, Integer>());
+        assertThat(action.createHeaderRecord(inputData).get("messageId"), is((Object) "00000000000000000001"));
+
+        settings.setHeaderItemList(new ArrayList<String>() {{
+            add("kbn");
+        }});
+        Map<String, Object> header = action.createHeaderRecord(inputData);
+        assertThat("ヘッダ部の項目は初回に取得した項目が使用されること", header.containsKey("kbn"), is(false));
+        assertThat(header.get("requestId"), is((Object) "MSGREQ0003"));
+    }
+
     private DataRecordFormatter createFormatter(String formatFileName) {
         formatFileName = formatFileName.startsWith("header")
                 ? formatFileName
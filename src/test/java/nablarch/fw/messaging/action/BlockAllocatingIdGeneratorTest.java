@@ -0,0 +1,177 @@
+package nablarch.fw.messaging.action;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nablarch.common.idgenerator.IdFormatter;
+import nablarch.common.idgenerator.IdGenerator;
+import nablarch.common.idgenerator.formatter.LpadFormatter;
+
+import org.junit.Test;
+
+/**
+ * {@link BlockAllocatingIdGenerator}のテスト。
+ */
+public class BlockAllocatingIdGeneratorTest {
+
+    /**
+     * ブロック単位に値が確保され、ブロックを使い切った場合のみブロック番号が採番されること。
+     */
+    @Test
+    public void testGenerateId() {
+        CountingIdGenerator blockNumberGenerator = new CountingIdGenerator();
+        Map<String, Integer> blockSizes = new HashMap<String, Integer>();
+        blockSizes.put("02", 2);
+        BlockAllocatingIdGenerator generator = new BlockAllocatingIdGenerator()
+                .setBlockNumberGenerator(blockNumberGenerator)
+                .setDefaultBlockSize(3)
+                .setBlockSizes(blockSizes);
+
+        assertThat(generator.generateId("01"), is("1"));
+        assertThat(generator.generateId("01"), is("2"));
+        assertThat(generator.generateId("01"), is("3"));
+        assertThat(blockNumberGenerator.count.get(), is(1));
+        assertThat(generator.generateId("01"), is("4"));
+        assertThat(blockNumberGenerator.count.get(), is(2));
+
+        assertThat("フォーマッタで編集されること",
+                generator.generateId("02", new LpadFormatter(5, '0')), is("00001"));
+        assertThat(generator.generateId("02", new LpadFormatter(5, '0')), is("00002"));
+        assertThat(generator.generateId("02", new LpadFormatter(5, '0')), is("00003"));
+        assertThat(blockNumberGenerator.count.get(), is(4));
+    }
+
+    /**
+     * 他のJVMが確保したブロックは使用されないこと(欠番となること)。
+     */
+    @Test
+    public void testBlockAllocatedByOtherProcess() {
+        CountingIdGenerator blockNumberGenerator = new CountingIdGenerator();
+        BlockAllocatingIdGenerator generator = new BlockAllocatingIdGenerator()
+                .setBlockNumberGenerator(blockNumberGenerator)
+                .setDefaultBlockSize(10);
+
+        assertThat(generator.generateId("01"), is("1"));
+        // 他のJVMがブロック番号2を確保
+        blockNumberGenerator.generateId("01");
+        for (int i = 2; i <= 10; i++) {
+            generator.generateId("01");
+        }
+        assertThat(generator.generateId("01"), is("21"));
+    }
+
+    /**
+     * 複数スレッドから採番した場合でも、値が重複しないこと。
+     */
+    @Test
+    public void testConcurrentGenerateId() throws Exception {
+        CountingIdGenerator blockNumberGenerator = new CountingIdGenerator();
+        final BlockAllocatingIdGenerator generator = new BlockAllocatingIdGenerator()
+                .setBlockNumberGenerator(blockNumberGenerator)
+                .setDefaultBlockSize(7);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(new Callable<List<String>>() {
+                    public List<String> call() {
+                        List<String> ids = new ArrayList<String>();
+                        for (int j = 0; j < 1000; j++) {
+                            ids.add(generator.generateId("01"));
+                        }
+                        return ids;
+                    }
+                }));
+            }
+            Set<Long> ids = new HashSet<Long>();
+            for (Future<List<String>> future : futures) {
+                for (String id : future.get()) {
+                    ids.add(Long.valueOf(id));
+                }
+            }
+            assertThat(ids.size(), is(4000));
+            assertThat("欠番なく払い出されること", Collections.max(ids), is(4000L));
+            assertThat("ブロックを使い切った場合のみブロックが確保されること", blockNumberGenerator.count.get(), is(572));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * ブロック番号が数値でない場合や、ブロックサイズが不正な場合。
+     */
+    @Test
+    public void testInvalid() {
+        BlockAllocatingIdGenerator generator = new BlockAllocatingIdGenerator()
+                .setBlockNumberGenerator(new IdGenerator() {
+                    public String generateId(String id) {
+                        return "A01";
+                    }
+
+                    public String generateId(String id, IdFormatter formatter) {
+                        return generateId(id);
+                    }
+                });
+        try {
+            generator.generateId("01");
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("block number must be numeric. id = [01], block number = [A01]"));
+        }
+
+        try {
+            generator.setDefaultBlockSize(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("defaultBlockSize must be greater than 0. defaultBlockSize = 0"));
+        }
+
+        try {
+            generator.setBlockSizes(Collections.singletonMap("01", -1));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("block size must be greater than 0. id = [01], block size = [-1]"));
+        }
+    }
+
+    /**
+     * 採番対象ID毎の呼び出し回数を値とする採番クラス。
+     */
+    private static class CountingIdGenerator implements IdGenerator {
+
+        /** 全採番対象IDの呼び出し回数 */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /** 採番対象ID毎の呼び出し回数 */
+        private final Map<String, AtomicInteger> counts = new HashMap<String, AtomicInteger>();
+
+        public synchronized String generateId(String id) {
+            count.incrementAndGet();
+            AtomicInteger idCount = counts.get(id);
+            if (idCount == null) {
+                idCount = new AtomicInteger();
+                counts.put(id, idCount);
+            }
+            return String.valueOf(idCount.incrementAndGet());
+        }
+
+        public String generateId(String id, IdFormatter formatter) {
+            return generateId(id);
+        }
+    }
+}
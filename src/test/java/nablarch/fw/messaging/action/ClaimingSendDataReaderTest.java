@@ -0,0 +1,205 @@
+package nablarch.fw.messaging.action;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import nablarch.core.db.statement.ParameterizedSqlPStatement;
+import nablarch.core.db.statement.SqlRow;
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
+import nablarch.fw.ExecutionContext;
+import nablarch.test.support.SystemRepositoryResource;
+import nablarch.test.support.db.helper.DatabaseTestRunner;
+import nablarch.test.support.db.helper.VariousDbTestHelper;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * {@link ClaimingSendDataReader}のテスト。
+ */
+@RunWith(DatabaseTestRunner.class)
+public class ClaimingSendDataReaderTest {
+
+    @Rule
+    public SystemRepositoryResource repositoryResource = new SystemRepositoryResource(
+            "nablarch/fw/messaging/action/AsyncMessageSendActionTest.xml");
+
+    /** 現在時刻 */
+    private long now = 1000000L;
+
+    @BeforeClass
+    public static void classSetUp() throws Exception {
+        executeUpdate("DROP TABLE SEND_OUTBOX", true);
+        executeUpdate("CREATE TABLE SEND_OUTBOX ("
+                + " MESSAGE_ID VARCHAR(20) NOT NULL,"
+                + " STATUS CHAR(1) NOT NULL,"
+                + " OWNER_ID VARCHAR(40),"
+                + " LEASE_EXPIRY_DATE TIMESTAMP,"
+                + " PRIMARY KEY (MESSAGE_ID))", false);
+    }
+
+    @AfterClass
+    public static void classTearDown() throws Exception {
+        executeUpdate("DROP TABLE SEND_OUTBOX", true);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        executeUpdate("DELETE FROM SEND_OUTBOX", false);
+        for (int i = 1; i <= 5; i++) {
+            executeUpdate("INSERT INTO SEND_OUTBOX (MESSAGE_ID, STATUS) VALUES ('" + i + "', '0')", false);
+        }
+        executeUpdate("INSERT INTO SEND_OUTBOX (MESSAGE_ID, STATUS) VALUES ('6', '1')", false);
+    }
+
+    /**
+     * 複数のリーダが交互に読み込んだ場合に、各レコードがいずれか1つのリーダでのみ読み込まれること。
+     */
+    @Test
+    public void testClaim() throws Exception {
+        ClaimingSendDataReader reader1 = createReader("owner1");
+        ClaimingSendDataReader reader2 = createReader("owner2");
+        ExecutionContext ctx = new ExecutionContext();
+
+        List<String> read1 = new ArrayList<String>();
+        List<String> read2 = new ArrayList<String>();
+        while (reader1.hasNext(ctx) | reader2.hasNext(ctx)) {
+            SqlRow row = reader1.read(ctx);
+            if (row != null) {
+                read1.add(row.getString("MESSAGE_ID"));
+            }
+            row = reader2.read(ctx);
+            if (row != null) {
+                read2.add(row.getString("MESSAGE_ID"));
+            }
+        }
+        assertThat(read1, is(asList("1", "2", "5")));
+        assertThat(read2, is(asList("3", "4")));
+
+        List<String> all = new ArrayList<String>(read1);
+        all.addAll(read2);
+        Collections.sort(all);
+        assertThat("送信済みのレコードは読み込まれないこと", all, is(asList("1", "2", "3", "4", "5")));
+        assertThat(findOwners(), is(asList("owner1", "owner1", "owner2", "owner2", "owner1", null)));
+    }
+
+    /**
+     * リース期限が切れたレコードは、他のリーダで占有できること。
+     */
+    @Test
+    public void testLeaseExpired() throws Exception {
+        ExecutionContext ctx = new ExecutionContext();
+        ClaimingSendDataReader reader1 = createReader("owner1");
+        assertThat(reader1.read(ctx).getString("MESSAGE_ID"), is("1"));
+
+        ClaimingSendDataReader reader2 = createReader("owner2");
+        assertThat("リース期限内のレコードは占有できないこと", reader2.read(ctx).getString("MESSAGE_ID"), is("3"));
+
+        now += 60000L;
+        ClaimingSendDataReader reader3 = createReader("owner3");
+        List<String> read3 = new ArrayList<String>();
+        while (reader3.hasNext(ctx)) {
+            read3.add(reader3.read(ctx).getString("MESSAGE_ID"));
+        }
+        assertThat(read3, is(asList("1", "2", "3", "4", "5")));
+        assertThat(reader3.read(ctx) == null, is(true));
+    }
+
+    /**
+     * JDBCドライバがバッチ更新の更新件数を返さない場合は、占有がロールバックされ例外が送出されること。
+     */
+    @Test
+    public void testUpdateCountsUnavailable() throws Exception {
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        ClaimingSendDataReader reader = new ClaimingSendDataReader(tran, "nablarch.fw.messaging.action.sql.OUTBOX",
+                "MESSAGE_ID", "owner1", 2, 30000L) {
+            @Override
+            int[] executeClaim(ParameterizedSqlPStatement claim) {
+                int[] updateCounts = super.executeClaim(claim);
+                Arrays.fill(updateCounts, Statement.SUCCESS_NO_INFO);
+                return updateCounts;
+            }
+        };
+        try {
+            reader.hasNext(new ExecutionContext());
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("the JDBC driver did not return the update counts of CLAIM_SEND_DATA."
+                    + " claimed rows cannot be determined. sql resource = nablarch.fw.messaging.action.sql.OUTBOX"));
+        }
+        assertThat(findOwners(), is(Arrays.<String>asList(null, null, null, null, null, null)));
+    }
+
+    /**
+     * テスト対象のリーダを生成する。
+     *
+     * @param owner 占有者
+     * @return リーダ
+     */
+    private ClaimingSendDataReader createReader(String owner) {
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        return new ClaimingSendDataReader(tran, "nablarch.fw.messaging.action.sql.OUTBOX",
+                "MESSAGE_ID", owner, 2, 30000L) {
+            @Override
+            long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    /**
+     * 占有者をメッセージID順に取得する。
+     *
+     * @return 占有者のリスト
+     */
+    private static List<String> findOwners() throws SQLException {
+        Connection connection = VariousDbTestHelper.getNativeConnection();
+        try {
+            ResultSet rs = connection.createStatement().executeQuery(
+                    "SELECT OWNER_ID FROM SEND_OUTBOX ORDER BY MESSAGE_ID");
+            List<String> owners = new ArrayList<String>();
+            while (rs.next()) {
+                owners.add(rs.getString(1));
+            }
+            return owners;
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * SQL文を実行する。
+     *
+     * @param sql SQL文
+     * @param ignoreError エラーを無視する場合はtrue
+     */
+    private static void executeUpdate(String sql, boolean ignoreError) throws SQLException {
+        Connection connection = VariousDbTestHelper.getNativeConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.executeUpdate(sql);
+            connection.commit();
+        } catch (SQLException e) {
+            if (!ignoreError) {
+                throw e;
+            }
+        } finally {
+            connection.close();
+        }
+    }
+}
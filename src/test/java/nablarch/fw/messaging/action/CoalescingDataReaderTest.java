@@ -0,0 +1,101 @@
+package nablarch.fw.messaging.action;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import nablarch.core.db.statement.SqlRow;
+import nablarch.fw.DataReader;
+import nablarch.fw.ExecutionContext;
+
+import org.junit.Test;
+
+/**
+ * {@link CoalescingDataReader}のテスト。
+ */
+public class CoalescingDataReaderTest {
+
+    /**
+     * 読み込み単位の中で同じキー値を持つデータは、最新のデータのみが読み込み順に返されること。
+     * 置き換えられたデータは、最新のデータに紐付けて古い順に取得できること。
+     */
+    @Test
+    public void testRead() {
+        CoalescingDataReader reader = new CoalescingDataReader(createSourceReader(
+                "A", "B", "A", "C", "A", "B",
+                "A", "C"), asList("KEY"), 6);
+        ExecutionContext ctx = new ExecutionContext();
+        List<SqlRow> rows = new ArrayList<SqlRow>();
+        while (reader.hasNext(ctx)) {
+            rows.add(reader.read(ctx));
+        }
+        assertThat(reader.read(ctx), nullValue());
+
+        assertThat(sequencesOf(rows), is(asList(3, 4, 5, 6, 7)));
+        assertThat(sequencesOf(reader.removeSupersededRows(rows.get(1))), is(asList(0, 2)));
+        assertThat(sequencesOf(reader.removeSupersededRows(rows.get(2))), is(asList(1)));
+        assertThat(reader.removeSupersededRows(rows.get(0)).isEmpty(), is(true));
+        assertThat("読み込み単位を跨いだデータは置き換えられないこと",
+                reader.removeSupersededRows(rows.get(3)).isEmpty(), is(true));
+        assertThat("取得済みの置き換えられたデータは削除されること",
+                reader.removeSupersededRows(rows.get(1)).isEmpty(), is(true));
+    }
+
+    /**
+     * 読み込み単位の件数が0以下の場合は、例外が送出されること。
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWindowSize() {
+        new CoalescingDataReader(createSourceReader(), asList("KEY"), 0);
+    }
+
+    /**
+     * データのシーケンス番号のリストを返す。
+     *
+     * @param rows データ
+     * @return シーケンス番号のリスト
+     */
+    private static List<Integer> sequencesOf(List<SqlRow> rows) {
+        List<Integer> sequences = new ArrayList<Integer>();
+        for (SqlRow row : rows) {
+            sequences.add((Integer) row.get("SEQ"));
+        }
+        return sequences;
+    }
+
+    /**
+     * 指定されたキー値のデータを順に読み込むデータリーダを生成する。
+     *
+     * @param keys キー値
+     * @return データリーダ
+     */
+    private static DataReader<SqlRow> createSourceReader(String... keys) {
+        List<SqlRow> rows = new ArrayList<SqlRow>();
+        for (int i = 0; i < keys.length; i++) {
+            Map<String, Object> row = new HashMap<String, Object>();
+            row.put("KEY", keys[i]);
+            row.put("SEQ", i);
+            rows.add(new SqlRow(row, new HashMap<String, Integer>()));
+        }
+        final Iterator<SqlRow> iterator = rows.iterator();
+        return new DataReader<SqlRow>() {
+            public SqlRow read(ExecutionContext ctx) {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+
+            public boolean hasNext(ExecutionContext ctx) {
+                return iterator.hasNext();
+            }
+
+            public void close(ExecutionContext ctx) {
+            }
+        };
+    }
+}
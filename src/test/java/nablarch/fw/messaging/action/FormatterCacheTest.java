@@ -0,0 +1,136 @@
+package nablarch.fw.messaging.action;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nablarch.core.dataformat.DataRecordFormatter;
+import nablarch.core.dataformat.LayoutDefinition;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * {@link FormatterCache}のテスト。
+ */
+public class FormatterCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 同一のフォーマット定義ファイルは1度だけ解析され、
+     * 解析結果から生成したフォーマッタで出力できること。
+     */
+    @Test
+    public void testCreateFormatter() throws Exception {
+        File layoutFile = writeLayoutFile("test.fmt", 10);
+        FormatterCache cache = new FormatterCache();
+
+        LayoutDefinition definition = cache.getDefinitionFromCache(layoutFile);
+        assertThat(cache.getDefinitionFromCache(layoutFile), sameInstance(definition));
+
+        DataRecordFormatter first = cache.createFormatter(layoutFile);
+        DataRecordFormatter second = cache.createFormatter(layoutFile);
+        assertThat("フォーマッタは呼び出し毎に生成されること", second, not(sameInstance(first)));
+
+        assertThat(write(first, "abc"), is("abc       "));
+        assertThat(write(second, "12345"), is("12345     "));
+
+        // フォーマット定義ファイルを変更しても、変更の確認を行わない場合は再解析しない
+        writeLayoutFile("test.fmt", 5);
+        layoutFile.setLastModified(layoutFile.lastModified() + 10000L);
+        assertThat(cache.getDefinitionFromCache(layoutFile), sameInstance(definition));
+        assertThat(write(cache.createFormatter(layoutFile), "abc"), is("abc       "));
+    }
+
+    /**
+     * 変更の確認を行う場合、フォーマット定義ファイルが変更されたときに再解析されること。
+     */
+    @Test
+    public void testCheckModified() throws Exception {
+        File layoutFile = writeLayoutFile("test.fmt", 10);
+        FormatterCache cache = new FormatterCache().setCheckModified(true);
+
+        LayoutDefinition definition = cache.getDefinitionFromCache(layoutFile);
+        assertThat(cache.getDefinitionFromCache(layoutFile), sameInstance(definition));
+
+        writeLayoutFile("test.fmt", 5);
+        layoutFile.setLastModified(layoutFile.lastModified() + 10000L);
+        LayoutDefinition modified = cache.getDefinitionFromCache(layoutFile);
+        assertThat(modified, not(sameInstance(definition)));
+        assertThat(cache.getDefinitionFromCache(layoutFile), sameInstance(modified));
+        assertThat(write(cache.createFormatter(layoutFile), "abc"), is("abc  "));
+    }
+
+    /**
+     * フォーマット定義ファイルは、{@link nablarch.core.dataformat.FormatterFactory#createDefinition(File)}で解析されること。
+     */
+    @Test
+    public void testCreateDefinition() throws Exception {
+        File layoutFile = writeLayoutFile("test.fmt", 10);
+        final List<File> parsed = new ArrayList<File>();
+        FormatterCache cache = new FormatterCache() {
+            @Override
+            protected LayoutDefinition createDefinition(File layoutFile) {
+                parsed.add(layoutFile);
+                return super.createDefinition(layoutFile);
+            }
+        };
+        cache.setEncoding("UTF-8");
+
+        assertThat(write(cache.createFormatter(layoutFile), "abc"), is("abc       "));
+        assertThat(write(cache.createFormatter(layoutFile), "12345"), is("12345     "));
+        assertThat(parsed, is(Collections.singletonList(layoutFile)));
+    }
+
+    /**
+     * 固定長のフォーマット定義ファイルを作成する。
+     *
+     * @param name ファイル名
+     * @param length レコード長
+     * @return 作成したファイル
+     */
+    private File writeLayoutFile(String name, int length) throws Exception {
+        File file = new File(folder.getRoot(), name);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("file-type:        \"Fixed\"\n");
+            writer.write("text-encoding:    \"UTF-8\"\n");
+            writer.write("record-length:    " + length + "\n");
+            writer.write("[Data]\n");
+            writer.write("1   data   X(" + length + ")\n");
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * フォーマッタでデータを出力する。
+     *
+     * @param formatter フォーマッタ
+     * @param data 出力するデータ
+     * @return 出力結果
+     */
+    private static String write(DataRecordFormatter formatter, String data) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        formatter.setOutputStream(out).initialize();
+        Map<String, Object> record = new HashMap<String, Object>();
+        record.put("data", data);
+        formatter.writeRecord(record);
+        formatter.close();
+        return out.toString("UTF-8");
+    }
+}
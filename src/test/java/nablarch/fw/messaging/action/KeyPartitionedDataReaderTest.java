@@ -0,0 +1,125 @@
+package nablarch.fw.messaging.action;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import nablarch.core.db.statement.SqlRow;
+import nablarch.fw.DataReader;
+import nablarch.fw.ExecutionContext;
+
+import org.junit.Test;
+
+/**
+ * {@link KeyPartitionedDataReader}のテスト。
+ */
+public class KeyPartitionedDataReaderTest {
+
+    /**
+     * 全てのデータが1度だけ読み込まれ、同じキー値のデータは同じスレッドで抽出順に読み込まれること。
+     */
+    @Test(timeout = 10000)
+    public void testRead() throws Exception {
+        assertPartitioned(new KeyPartitionedDataReader(createSourceReader(300, 7), "KEY", 3, 1000), 3, 300);
+    }
+
+    /**
+     * 保持件数が上限に達した場合でも、全てのデータが読み込まれること。
+     */
+    @Test(timeout = 10000)
+    public void testMaxBufferedRows() throws Exception {
+        assertPartitioned(new KeyPartitionedDataReader(createSourceReader(300, 7), "KEY", 3, 1), 3, 300);
+    }
+
+    /**
+     * 複数スレッドでデータを読み込み、振り分け結果を検証する。
+     *
+     * @param reader テスト対象
+     * @param threadCount スレッド数
+     * @param rowCount データ件数
+     */
+    private static void assertPartitioned(final KeyPartitionedDataReader reader, int threadCount, int rowCount)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<List<SqlRow>>> futures = new ArrayList<Future<List<SqlRow>>>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(new Callable<List<SqlRow>>() {
+                    public List<SqlRow> call() {
+                        ExecutionContext ctx = new ExecutionContext();
+                        List<SqlRow> rows = new ArrayList<SqlRow>();
+                        while (reader.hasNext(ctx)) {
+                            SqlRow row = reader.read(ctx);
+                            if (row != null) {
+                                rows.add(row);
+                            }
+                        }
+                        return rows;
+                    }
+                }));
+            }
+
+            Map<Object, Integer> threadOfKey = new HashMap<Object, Integer>();
+            List<Integer> sequences = new ArrayList<Integer>();
+            for (int i = 0; i < threadCount; i++) {
+                Map<Object, Integer> lastSequence = new HashMap<Object, Integer>();
+                for (SqlRow row : futures.get(i).get()) {
+                    Object key = row.get("KEY");
+                    Integer thread = threadOfKey.put(key, i);
+                    assertThat("同じキー値のデータは同じスレッドで読み込まれること", thread == null || thread == i, is(true));
+                    Integer sequence = (Integer) row.get("SEQ");
+                    Integer last = lastSequence.put(key, sequence);
+                    assertThat("同じキー値のデータは抽出順に読み込まれること", last == null || last < sequence, is(true));
+                    sequences.add(sequence);
+                }
+            }
+            Collections.sort(sequences);
+            assertThat(sequences.size(), is(rowCount));
+            for (int i = 0; i < rowCount; i++) {
+                assertThat(sequences.get(i), is(i));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 元となるデータリーダを生成する。
+     *
+     * @param rowCount データ件数
+     * @param keyCount キー値の種類
+     * @return データリーダ
+     */
+    private static DataReader<SqlRow> createSourceReader(int rowCount, int keyCount) {
+        List<SqlRow> rows = new ArrayList<SqlRow>();
+        for (int i = 0; i < rowCount; i++) {
+            Map<String, Object> row = new HashMap<String, Object>();
+            row.put("KEY", "key" + (i % keyCount));
+            row.put("SEQ", i);
+            rows.add(new SqlRow(row, new HashMap<String, Integer>()));
+        }
+        final Iterator<SqlRow> iterator = rows.iterator();
+        return new DataReader<SqlRow>() {
+            public SqlRow read(ExecutionContext ctx) {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+
+            public boolean hasNext(ExecutionContext ctx) {
+                return iterator.hasNext();
+            }
+
+            public void close(ExecutionContext ctx) {
+            }
+        };
+    }
+}
@@ -0,0 +1,213 @@
+package nablarch.fw.messaging.action;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import nablarch.fw.results.ServiceUnavailable;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * {@link MessageJournal}のテスト。
+ */
+public class MessageJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** 受信電文連番・リクエストID・電文がそれぞれ4・4・8バイトで、受信したキューが不明なエントリのサイズ */
+    private static final int ENTRY_SIZE = 8 + 4 + 4 + 4 + 4 + 4 + 8 + 8;
+
+    /** テスト対象 */
+    private MessageJournal journal;
+
+    @After
+    public void tearDown() {
+        if (journal != null) {
+            journal.dispose();
+        }
+    }
+
+    /**
+     * 追記した電文が読み込めること。登録完了を記録するまでは同じ電文が読み込まれること。
+     */
+    @Test
+    public void testAppendAndRead() throws Exception {
+        journal = open(new File(folder.getRoot(), "test.journal"), 1024);
+
+        journal.append("0001", "REQ1", "message1".getBytes("UTF-8"));
+        journal.append("0002", "REQ1", "message2".getBytes("UTF-8"));
+        journal.append("0003", "REQ1", "message3".getBytes("UTF-8"));
+
+        List<MessageJournal.Entry> entries = journal.read(2);
+        assertThat(entries.size(), is(2));
+        assertThat(entries.get(0).getReceivedSequence(), is("0001"));
+        assertThat(entries.get(0).getRequestId(), is("REQ1"));
+        assertThat(new String(entries.get(0).getMessage(), "UTF-8"), is("message1"));
+        assertThat(entries.get(0).getDestination(), nullValue());
+        assertThat(entries.get(0).getSentAt(), is(0L));
+        assertThat(entries.get(1).getReceivedSequence(), is("0002"));
+
+        assertThat("登録完了を記録していないため、同じ電文が読み込まれること",
+                journal.read(2).get(0).getReceivedSequence(), is("0001"));
+
+        journal.markLoaded();
+        entries = journal.read(2);
+        assertThat(entries.size(), is(1));
+        assertThat(entries.get(0).getReceivedSequence(), is("0003"));
+        assertThat(journal.getPendingBytes() > 0, is(true));
+
+        journal.markLoaded();
+        assertThat(journal.read(2).size(), is(0));
+        assertThat(journal.getPendingBytes(), is(0));
+
+        journal.append("0004", "REQ1", "message4".getBytes("UTF-8"));
+        entries = journal.read(10);
+        assertThat(entries.size(), is(1));
+        assertThat(entries.get(0).getReceivedSequence(), is("0004"));
+    }
+
+    /**
+     * 受信したキュー及び送信日時を指定して追記した場合、電文とともに読み込めること。
+     */
+    @Test
+    public void testAppendWithDestination() throws Exception {
+        journal = open(new File(folder.getRoot(), "destination.journal"), 1024);
+
+        journal.append("0001", "REQ1", "RECEIVE.TEST", 1000L, "message1".getBytes("UTF-8"));
+
+        MessageJournal.Entry entry = journal.read(1).get(0);
+        assertThat(entry.getReceivedSequence(), is("0001"));
+        assertThat(entry.getRequestId(), is("REQ1"));
+        assertThat(entry.getDestination(), is("RECEIVE.TEST"));
+        assertThat(entry.getSentAt(), is(1000L));
+        assertThat(new String(entry.getMessage(), "UTF-8"), is("message1"));
+    }
+
+    /**
+     * 再オープンした場合、登録が完了していない電文から読み込まれること。
+     * また、書き込み途中のエントリは読み込まれないこと。
+     */
+    @Test
+    public void testRecover() throws Exception {
+        File file = new File(folder.getRoot(), "recover.journal");
+        journal = open(file, 1024);
+        journal.append("0001", "REQ1", "message1".getBytes("UTF-8"));
+        journal.append("0002", "REQ1", "message2".getBytes("UTF-8"));
+        journal.append("0003", "REQ1", "message3".getBytes("UTF-8"));
+        journal.read(1);
+        journal.markLoaded();
+        journal.dispose();
+
+        // 3件目のエントリの本文を破損させる(書き込み途中に異常終了した状態)
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            int entrySize = 8 + 4 + 4 + 4 + 4 + 4 + 8 + "message1".length();
+            raf.seek(8 + entrySize * 2 + 8 + 4 + 4 + 4 + 4 + 4 + 8);
+            raf.write('X');
+        } finally {
+            raf.close();
+        }
+
+        journal = open(file, 1024);
+        List<MessageJournal.Entry> entries = journal.read(10);
+        assertThat(entries.size(), is(1));
+        assertThat(entries.get(0).getReceivedSequence(), is("0002"));
+
+        journal.append("0004", "REQ1", "message4".getBytes("UTF-8"));
+        entries = journal.read(10);
+        assertThat(entries.size(), is(2));
+        assertThat("破損したエントリは上書きされること", entries.get(1).getReceivedSequence(), is("0004"));
+    }
+
+    /**
+     * 容量が不足した場合は{@link ServiceUnavailable}が送出されること。
+     */
+    @Test
+    public void testFull() throws Exception {
+        journal = open(new File(folder.getRoot(), "full.journal"), 8 + ENTRY_SIZE * 2);
+        journal.append("0001", "REQ1", "message1".getBytes("UTF-8"));
+        journal.append("0002", "REQ1", "message2".getBytes("UTF-8"));
+        try {
+            journal.append("0003", "REQ1", "message3".getBytes("UTF-8"));
+            fail();
+        } catch (ServiceUnavailable e) {
+            assertThat(e.getMessage().startsWith("message journal is full."), is(true));
+        }
+
+        journal.read(10);
+        journal.markLoaded();
+        journal.append("0003", "REQ1", "message3".getBytes("UTF-8"));
+        assertThat(journal.read(10).get(0).getReceivedSequence(), is("0003"));
+
+        try {
+            journal.append("0004", "REQ1", new byte[64]);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("message is too large for the journal. message length = 64, capacity = 96"));
+        }
+    }
+
+    /**
+     * 登録が完了した領域は再利用され、ファイルの終端を跨いだエントリも読み込めること。
+     * 再オープンした場合も、ファイルの終端を跨いだエントリから読み込まれること。
+     */
+    @Test
+    public void testWrapAround() throws Exception {
+        File file = new File(folder.getRoot(), "wrap.journal");
+        journal = open(file, 8 + 50);
+        journal.append("0001", "REQ1", "message1".getBytes("UTF-8"));
+        journal.read(10);
+        journal.markLoaded();
+
+        // 2件目のエントリはファイルの終端を跨いで追記される。
+        journal.append("0002", "REQ2", "message2".getBytes("UTF-8"));
+        try {
+            journal.append("0003", "REQ1", "message3".getBytes("UTF-8"));
+            fail();
+        } catch (ServiceUnavailable e) {
+            assertThat(e.getMessage().startsWith("message journal is full."), is(true));
+        }
+        journal.dispose();
+
+        journal = open(file, 8 + 50);
+        List<MessageJournal.Entry> entries = journal.read(10);
+        assertThat(entries.size(), is(1));
+        assertThat(entries.get(0).getReceivedSequence(), is("0002"));
+        assertThat(entries.get(0).getRequestId(), is("REQ2"));
+        assertThat(new String(entries.get(0).getMessage(), "UTF-8"), is("message2"));
+        journal.markLoaded();
+
+        journal.append("0003", "REQ1", "message3".getBytes("UTF-8"));
+        journal.dispose();
+
+        journal = open(file, 8 + 50);
+        entries = journal.read(10);
+        assertThat("以前の周回のエントリは読み込まれないこと", entries.size(), is(1));
+        assertThat(entries.get(0).getReceivedSequence(), is("0003"));
+    }
+
+    /**
+     * ジャーナルをオープンする。
+     *
+     * @param file ジャーナルファイル
+     * @param capacity 容量
+     * @return ジャーナル
+     */
+    private static MessageJournal open(File file, int capacity) {
+        MessageJournal journal = new MessageJournal()
+                .setFilePath(file.getPath())
+                .setCapacity(capacity);
+        journal.initialize();
+        return journal;
+    }
+}
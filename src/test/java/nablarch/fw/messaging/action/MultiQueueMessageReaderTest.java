@@ -0,0 +1,136 @@
+package nablarch.fw.messaging.action;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import nablarch.fw.ExecutionContext;
+import nablarch.fw.messaging.MessagingContext;
+import nablarch.fw.messaging.SendingMessage;
+import nablarch.test.core.messaging.EmbeddedMessagingProvider;
+
+import org.junit.Test;
+
+/**
+ * {@link MultiQueueMessageReader}のテスト。
+ */
+public class MultiQueueMessageReaderTest {
+
+    /**
+     * 重み付け公平の場合は重みの比率で、優先度の場合は受信キュー名のリストの順で、最初に確認する受信キューが決定されること。
+     */
+    @Test
+    public void testNextOrder() {
+        MultiQueueMessageReader reader = new MultiQueueMessageReader()
+                .setReceiveQueueNames(asList("Q1", "Q2", "Q3"))
+                .setWeights(new HashMap<String, String>() {{
+                    put("Q1", "3");
+                }});
+        List<String> firsts = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            firsts.add(reader.nextOrder().get(0));
+        }
+        assertThat(firsts, is(asList("Q1", "Q2", "Q1", "Q3", "Q1", "Q1", "Q2", "Q1", "Q3", "Q1")));
+        assertThat(reader.nextOrder(), is(asList("Q1", "Q2", "Q3")));
+        assertThat(reader.nextOrder(), is(asList("Q2", "Q3", "Q1")));
+
+        reader.setPriority(true);
+        assertThat(reader.nextOrder(), is(asList("Q1", "Q2", "Q3")));
+        assertThat(reader.nextOrder(), is(asList("Q1", "Q2", "Q3")));
+    }
+
+    /**
+     * 複数の受信キューのメッセージが重みの比率で読み込まれること。
+     * いずれの受信キューにもメッセージが存在しない場合はnullが返されること。
+     */
+    @Test(timeout = 30000)
+    public void testRead() throws Exception {
+        EmbeddedMessagingProvider provider = new EmbeddedMessagingProvider();
+        EmbeddedMessagingProvider.waitUntilServerStarted();
+        provider.setQueueNames(asList("MULTI.Q1", "MULTI.Q2"));
+        MessagingContext context = provider.createContext();
+        MessagingContext.attach(context);
+        try {
+            for (int i = 1; i <= 3; i++) {
+                context.send(new SendingMessage().setDestination("MULTI.Q1").setCorrelationId("Q1-" + i));
+            }
+            context.send(new SendingMessage().setDestination("MULTI.Q2").setCorrelationId("Q2-1"));
+
+            MultiQueueMessageReader reader = new MultiQueueMessageReader()
+                    .setReceiveQueueNames(asList("MULTI.Q2", "MULTI.Q1"))
+                    .setWeights(new HashMap<String, String>() {{
+                        put("MULTI.Q1", "2");
+                    }})
+                    .setReadTimeout(100);
+            ExecutionContext ctx = new ExecutionContext();
+            List<String> read = new ArrayList<String>();
+            for (int i = 0; i < 4; i++) {
+                read.add(reader.read(ctx).getCorrelationId());
+            }
+            assertThat(read, is(asList("Q1-1", "Q2-1", "Q1-2", "Q1-3")));
+            assertThat(reader.read(ctx), nullValue());
+
+            reader.close(ctx);
+            assertThat(reader.hasNext(ctx), is(false));
+            assertThat(reader.read(ctx), nullValue());
+        } finally {
+            MessagingContext.detach();
+            context.close();
+            EmbeddedMessagingProvider.stopServer();
+        }
+    }
+
+    /**
+     * 待機中に最初に確認する受信キュー以外の受信キューに到着したメッセージが、読み込みタイムアウトを待たずに読み込まれること。
+     */
+    @Test(timeout = 30000)
+    public void testReadWhileWaiting() throws Exception {
+        EmbeddedMessagingProvider provider = new EmbeddedMessagingProvider();
+        EmbeddedMessagingProvider.waitUntilServerStarted();
+        provider.setQueueNames(asList("WAIT.Q1", "WAIT.Q2"));
+        MessagingContext context = provider.createContext();
+        final MessagingContext sender = provider.createContext();
+        MessagingContext.attach(context);
+        try {
+            MultiQueueMessageReader reader = new MultiQueueMessageReader()
+                    .setReceiveQueueNames(asList("WAIT.Q1", "WAIT.Q2"))
+                    .setPriority(true)
+                    .setReadTimeout(10000)
+                    .setReceiveSlice(50);
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    sender.send(new SendingMessage().setDestination("WAIT.Q2").setCorrelationId("Q2-1"));
+                }
+            };
+            long start = System.currentTimeMillis();
+            thread.start();
+            assertThat(reader.read(new ExecutionContext()).getCorrelationId(), is("Q2-1"));
+            assertThat(System.currentTimeMillis() - start < 5000, is(true));
+            thread.join();
+        } finally {
+            MessagingContext.detach();
+            context.close();
+            sender.close();
+            EmbeddedMessagingProvider.stopServer();
+        }
+    }
+
+    /**
+     * 受信待機時間に0以下の値を指定した場合は、例外が送出されること。
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidReceiveSlice() {
+        new MultiQueueMessageReader().setReceiveSlice(0);
+    }
+}
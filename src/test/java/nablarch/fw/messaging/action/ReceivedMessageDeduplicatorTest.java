@@ -0,0 +1,266 @@
+package nablarch.fw.messaging.action;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+import nablarch.core.db.connection.AppDbConnection;
+import nablarch.core.db.transaction.SimpleDbTransactionExecutor;
+import nablarch.core.db.transaction.SimpleDbTransactionManager;
+import nablarch.fw.messaging.FwHeader;
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.fw.messaging.RequestMessage;
+import nablarch.fw.messaging.provider.JmsMessagingProvider.Context.JmsHeaderName;
+import nablarch.test.support.SystemRepositoryResource;
+import nablarch.test.support.db.helper.DatabaseTestRunner;
+import nablarch.test.support.db.helper.VariousDbTestHelper;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * {@link ReceivedMessageDeduplicator}のテスト。
+ */
+@RunWith(DatabaseTestRunner.class)
+public class ReceivedMessageDeduplicatorTest {
+
+    @Rule
+    public SystemRepositoryResource repositoryResource = new SystemRepositoryResource(
+            "nablarch/fw/messaging/action/AsyncMessageReceiveActionTest.xml");
+
+    /** 現在時刻 */
+    private long now = 1000000L;
+
+    /** テスト対象 */
+    private ReceivedMessageDeduplicator deduplicator;
+
+    @BeforeClass
+    public static void classSetUp() throws Exception {
+        executeUpdate("DROP TABLE RECEIVED_MESSAGE_KEY", true);
+        executeUpdate("CREATE TABLE RECEIVED_MESSAGE_KEY ("
+                + " MESSAGE_KEY VARCHAR(100) NOT NULL,"
+                + " RECEIVED_DATE TIMESTAMP NOT NULL,"
+                + " PRIMARY KEY (MESSAGE_KEY))", false);
+    }
+
+    @AfterClass
+    public static void classTearDown() throws Exception {
+        executeUpdate("DROP TABLE RECEIVED_MESSAGE_KEY", true);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        executeUpdate("DELETE FROM RECEIVED_MESSAGE_KEY", false);
+        deduplicator = new ReceivedMessageDeduplicator() {
+            @Override
+            long currentTimeMillis() {
+                return now;
+            }
+        };
+        deduplicator.setTableName("RECEIVED_MESSAGE_KEY")
+                .setKeyColumnName("MESSAGE_KEY")
+                .setReceivedDateColumnName("RECEIVED_DATE")
+                .setDbTransactionName("test")
+                .setWindow(1000L)
+                .setExpectedInsertions(100);
+    }
+
+    /**
+     * 記録した電文が再配信された場合に処理済みと判定されること。
+     * 再配信されていない電文や、記録していない電文は処理済みと判定されないこと。
+     */
+    @Test
+    public void testIsDuplicate() throws Exception {
+        doTransaction(new Runnable() {
+            public void run() {
+                assertThat(deduplicator.isDuplicate(message("ID:1", true)), is(false));
+                assertThat(deduplicator.record(message("ID:1", false)), is(true));
+                assertThat(deduplicator.record(message("ID:2", false)), is(true));
+            }
+        });
+        assertThat(countKeys(), is(2));
+
+        doTransaction(new Runnable() {
+            public void run() {
+                assertThat(deduplicator.isDuplicate(message("ID:1", true)), is(true));
+                assertThat(deduplicator.isDuplicate(message("ID:2", true)), is(true));
+                assertThat("再配信されていない電文は検査しないこと", deduplicator.isDuplicate(message("ID:1", false)), is(false));
+                assertThat(deduplicator.isDuplicate(message("ID:3", true)), is(false));
+                assertThat("他のスレッドが記録済みの場合はfalseを返すこと", deduplicator.record(message("ID:1", false)), is(false));
+            }
+        });
+
+        deduplicator.setRedeliveredOnly(false);
+        doTransaction(new Runnable() {
+            public void run() {
+                assertThat(deduplicator.isDuplicate(message("ID:1", false)), is(true));
+                assertThat("キーを持たない電文は処理済みと判定されないこと",
+                        deduplicator.isDuplicate(new RequestMessage(new FwHeader(), new ReceivedMessage(new byte[0]))),
+                        is(false));
+            }
+        });
+    }
+
+    /**
+     * 記録済みのキーを記録した場合、その記録のみがロールバックされ、
+     * 同じトランザクションの前後の記録はコミットされること。
+     */
+    @Test
+    public void testRecordDuplicateInTransaction() throws Exception {
+        doTransaction(new Runnable() {
+            public void run() {
+                assertThat(deduplicator.record(message("ID:1", false)), is(true));
+            }
+        });
+        doTransaction(new Runnable() {
+            public void run() {
+                assertThat(deduplicator.record(message("ID:2", false)), is(true));
+                assertThat(deduplicator.record(message("ID:1", false)), is(false));
+                assertThat(deduplicator.record(message("ID:3", false)), is(true));
+            }
+        });
+        assertThat(countKeys(), is(3));
+    }
+
+    /**
+     * ロールバックされた記録は、処理済みと判定されないこと。
+     */
+    @Test
+    public void testRollback() {
+        try {
+            doTransaction(new Runnable() {
+                public void run() {
+                    deduplicator.record(message("ID:1", false));
+                    throw new IllegalStateException("rollback");
+                }
+            });
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("rollback"));
+        }
+        doTransaction(new Runnable() {
+            public void run() {
+                assertThat(deduplicator.isDuplicate(message("ID:1", true)), is(false));
+            }
+        });
+    }
+
+    /**
+     * ブルームフィルタの世代が切り替わった後も、直前の世代のキーは検出され、
+     * 2世代前のキーはテーブルに存在しても検出されないこと。
+     */
+    @Test
+    public void testWindow() throws Exception {
+        doTransaction(new Runnable() {
+            public void run() {
+                deduplicator.record(message("ID:1", false));
+            }
+        });
+        now += 1500L;
+        doTransaction(new Runnable() {
+            public void run() {
+                assertThat(deduplicator.isDuplicate(message("ID:1", true)), is(true));
+            }
+        });
+        now += 1000L;
+        doTransaction(new Runnable() {
+            public void run() {
+                assertThat("2世代前のキーは検出されないこと", deduplicator.isDuplicate(message("ID:1", true)), is(false));
+            }
+        });
+
+        Connection connection = VariousDbTestHelper.getNativeConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO RECEIVED_MESSAGE_KEY (MESSAGE_KEY, RECEIVED_DATE) VALUES (?, ?)");
+            statement.setString(1, "ID:9");
+            statement.setTimestamp(2, new Timestamp(now));
+            statement.executeUpdate();
+            connection.commit();
+        } finally {
+            connection.close();
+        }
+        doTransaction(new Runnable() {
+            public void run() {
+                assertThat("ブルームフィルタに存在しないキーはテーブルを検索しないこと",
+                        deduplicator.isDuplicate(message("ID:9", true)), is(false));
+            }
+        });
+    }
+
+    /**
+     * 記録用テーブルの件数を取得する。
+     *
+     * @return 件数
+     */
+    private static int countKeys() throws SQLException {
+        Connection connection = VariousDbTestHelper.getNativeConnection();
+        try {
+            ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM RECEIVED_MESSAGE_KEY");
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * SQL文を実行する。
+     *
+     * @param sql SQL文
+     * @param ignoreError エラーを無視する場合はtrue
+     */
+    private static void executeUpdate(String sql, boolean ignoreError) throws SQLException {
+        Connection connection = VariousDbTestHelper.getNativeConnection();
+        try {
+            Statement statement = connection.createStatement();
+            statement.executeUpdate(sql);
+            connection.commit();
+        } catch (SQLException e) {
+            if (!ignoreError) {
+                throw e;
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * 電文を生成する。
+     *
+     * @param messageId JMSMessageID
+     * @param redelivered 再配信された電文か否か
+     * @return 電文
+     */
+    private static RequestMessage message(String messageId, boolean redelivered) {
+        RequestMessage message = new RequestMessage(new FwHeader(), new ReceivedMessage(new byte[0]));
+        message.setHeader(JmsHeaderName.MESSAGE_ID, messageId);
+        message.setHeader(JmsHeaderName.REDELIVERED, redelivered);
+        return message;
+    }
+
+    /**
+     * トランザクション内で処理を実行する。
+     *
+     * @param runnable 処理
+     */
+    private void doTransaction(final Runnable runnable) {
+        SimpleDbTransactionManager tran = repositoryResource.getComponent("tran");
+        new SimpleDbTransactionExecutor<Void>(tran) {
+            @Override
+            public Void execute(AppDbConnection connection) {
+                runnable.run();
+                return null;
+            }
+        }.doTransaction();
+    }
+}
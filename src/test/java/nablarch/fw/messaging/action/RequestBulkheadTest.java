@@ -0,0 +1,149 @@
+package nablarch.fw.messaging.action;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nablarch.fw.messaging.FwHeader;
+import nablarch.fw.messaging.MessagingContext;
+import nablarch.fw.messaging.ReceivedMessage;
+import nablarch.fw.messaging.RequestMessage;
+import nablarch.fw.messaging.SendingMessage;
+import nablarch.fw.messaging.provider.JmsMessagingProvider.Context.JmsHeaderName;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * {@link RequestBulkhead}のテスト。
+ */
+public class RequestBulkheadTest {
+
+    @After
+    public void tearDown() {
+        MessagingContext.detach();
+    }
+
+    /**
+     * リクエストID単位に同時処理数が制限されること。
+     */
+    @Test
+    public void testAcquire() {
+        Map<String, Integer> maxInFlights = new HashMap<String, Integer>();
+        maxInFlights.put("SLOW", 1);
+        RequestBulkhead bulkhead = new RequestBulkhead()
+                .setMaxInFlights(maxInFlights)
+                .setDefaultMaxInFlight(2);
+
+        assertThat(bulkhead.tryAcquire("SLOW"), is(true));
+        assertThat(bulkhead.tryAcquire("SLOW"), is(false));
+        assertThat("他のリクエストIDには影響しないこと", bulkhead.tryAcquire("FAST"), is(true));
+        assertThat(bulkhead.tryAcquire("FAST"), is(true));
+        assertThat(bulkhead.tryAcquire("FAST"), is(false));
+
+        bulkhead.release("SLOW");
+        assertThat(bulkhead.getInFlight("SLOW"), is(0));
+        assertThat(bulkhead.tryAcquire("SLOW"), is(true));
+
+        // デフォルトは無制限
+        RequestBulkhead unlimited = new RequestBulkhead();
+        for (int i = 0; i < 100; i++) {
+            assertThat(unlimited.tryAcquire("ANY"), is(true));
+        }
+    }
+
+    /**
+     * 上限値を超えた電文が、受信した電文のバイト列及びヘッダを引き継いで、配信遅延時間を設定して指定キューに送信されること。
+     */
+    @Test
+    public void testOverflow() {
+        final List<SendingMessage> sent = new ArrayList<SendingMessage>();
+        MessagingContext.attach(new MessagingContext() {
+            @Override
+            public String sendMessage(SendingMessage message) {
+                sent.add(message);
+                return "ID:1";
+            }
+
+            @Override
+            public ReceivedMessage receiveMessage(String queueName, String messageId, long timeout) {
+                return null;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        byte[] body = "RM11AC0101    body".getBytes();
+        ReceivedMessage received = new ReceivedMessage(body);
+        received.setMessageId("ID:0");
+        received.setDestination("RECEIVE.TEST");
+        received.setCorrelationId("ID:C");
+        received.setHeader("RequestId", "RM11AC0101");
+        received.setHeader(JmsHeaderName.PRIORITY, 7);
+        received.setHeader(JmsHeaderName.REDELIVERED, true);
+        received.setHeader(JmsHeaderName.X_DELIVERY_COUNT, 2);
+        received.setHeader(JmsHeaderName.TIMESTAMP, 1000L);
+        RequestMessage message = new RequestMessage(new FwHeader().setRequestId("RM11AC0101"), received);
+        long before = System.currentTimeMillis();
+        new RequestBulkhead().setOverflowQueueName("RECEIVE.SIDE").overflow(message);
+
+        assertThat(sent.size(), is(1));
+        SendingMessage forwarded = sent.get(0);
+        assertThat(forwarded.getDestination(), is("RECEIVE.SIDE"));
+        assertThat(new String(forwarded.getBodyBytes()), is("RM11AC0101    body"));
+        assertThat("ヘッダが引き継がれること", forwarded.getCorrelationId(), is("ID:C"));
+        assertThat(forwarded.<String>getHeader("RequestId"), is("RM11AC0101"));
+        assertThat(forwarded.<Integer>getHeader(JmsHeaderName.PRIORITY), is(7));
+        assertThat("メッセージID及びMOMが設定するヘッダは引き継がれないこと",
+                forwarded.getHeaderMap().containsKey(JmsHeaderName.MESSAGE_ID), is(false));
+        assertThat(forwarded.getHeaderMap().containsKey(JmsHeaderName.REDELIVERED), is(false));
+        assertThat(forwarded.getHeaderMap().containsKey(JmsHeaderName.X_DELIVERY_COUNT), is(false));
+        assertThat(forwarded.getHeaderMap().containsKey(JmsHeaderName.TIMESTAMP), is(false));
+        assertThat("受信した電文の送信日時が引き継がれること",
+                forwarded.<Long>getHeader(RequestBulkhead.ORIGINAL_TIMESTAMP), is(1000L));
+        long deliveryTime = forwarded.<Long>getHeader(JmsHeaderName.DELIVERY_TIME);
+        assertThat("デフォルトの配信遅延時間が設定されること",
+                deliveryTime >= before + 1000L && deliveryTime <= System.currentTimeMillis() + 1000L, is(true));
+
+        new RequestBulkhead().setOverflowQueueName("ESCAPE").setRedeliveryDelay(0L).overflow(message);
+        assertThat("配信遅延時間が0の場合は配信日時が設定されないこと",
+                sent.get(1).getHeaderMap().containsKey(JmsHeaderName.DELIVERY_TIME), is(false));
+
+        // 転送された電文を再度転送する場合は、最初に受信した電文の送信日時が引き継がれること。
+        ReceivedMessage redelivered = new ReceivedMessage(body);
+        redelivered.setHeader(JmsHeaderName.TIMESTAMP, 2000L);
+        redelivered.setHeader(RequestBulkhead.ORIGINAL_TIMESTAMP, 1000L);
+        new RequestBulkhead().setOverflowQueueName("RECEIVE.SIDE")
+                .overflow(new RequestMessage(new FwHeader().setRequestId("RM11AC0101"), redelivered));
+        assertThat(sent.get(2).<Long>getHeader(RequestBulkhead.ORIGINAL_TIMESTAMP), is(1000L));
+    }
+
+    /**
+     * 配信遅延時間に負の値を指定した場合は、例外が送出されること。
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeRedeliveryDelay() {
+        new RequestBulkhead().setRedeliveryDelay(-1L);
+    }
+
+    /**
+     * 送信先キューが設定されていない場合。
+     */
+    @Test
+    public void testOverflowQueueNotSet() {
+        try {
+            new RequestBulkhead().overflow(new RequestMessage(
+                    new FwHeader().setRequestId("RM11AC0101"), new ReceivedMessage(new byte[0])));
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("overflowQueueName was not set."));
+        }
+    }
+}
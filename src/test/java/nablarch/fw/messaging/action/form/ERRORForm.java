@@ -0,0 +1,13 @@
+package nablarch.fw.messaging.action.form;
+
+import nablarch.fw.messaging.RequestMessage;
+
+/**
+ * コンストラクタで{@link Error}を送出するFormクラス。
+ */
+public class ERRORForm {
+
+    public ERRORForm(String receivedSequence, RequestMessage message) {
+        throw new Error("error in constructor.");
+    }
+}
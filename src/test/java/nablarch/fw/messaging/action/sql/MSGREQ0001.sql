@@ -32,4 +32,14 @@ INSERT INTO RECEIVE_MESSAGE_1
   :insertRequestId,
   :updatedUserId,
   :updatedDate
-  )
\ No newline at end of file
+  )
+
+INSERT_ERROR_MESSAGE =
+INSERT INTO RECEIVE_MESSAGE_2
+  (
+  MESSAGE_ID,
+  KANJI_NAME
+  ) VALUES (
+  :keiNo,
+  :messageId
+  )
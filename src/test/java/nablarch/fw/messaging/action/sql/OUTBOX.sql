@@ -0,0 +1,23 @@
+SELECT_CLAIMABLE_SEND_DATA =
+SELECT
+    MESSAGE_ID,
+    STATUS
+FROM
+    SEND_OUTBOX
+WHERE
+    STATUS = '0'
+    AND (OWNER_ID IS NULL OR LEASE_EXPIRY_DATE < :currentDate)
+    AND $if (lastKey) {MESSAGE_ID > :lastKey}
+ORDER BY
+    MESSAGE_ID
+
+CLAIM_SEND_DATA =
+UPDATE
+    SEND_OUTBOX
+SET
+    OWNER_ID = :owner,
+    LEASE_EXPIRY_DATE = :leaseExpiryDate
+WHERE
+    MESSAGE_ID = :messageId
+    AND STATUS = '0'
+    AND (OWNER_ID IS NULL OR LEASE_EXPIRY_DATE < :currentDate)
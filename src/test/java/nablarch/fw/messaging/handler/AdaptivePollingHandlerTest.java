@@ -0,0 +1,154 @@
+package nablarch.fw.messaging.handler;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import nablarch.core.ThreadContext;
+import nablarch.fw.DataReader;
+import nablarch.fw.DataReaderFactory;
+import nablarch.fw.ExecutionContext;
+import nablarch.fw.Handler;
+import nablarch.fw.handler.MultiThreadExecutionHandler;
+
+import org.junit.Test;
+
+/**
+ * {@link AdaptivePollingHandler}のテスト。
+ */
+public class AdaptivePollingHandlerTest {
+
+    /**
+     * 処理対象データが存在しない間は待機時間が最大待機時間まで指数的に延長され、
+     * 処理対象データが存在した場合は待機しないこと。
+     */
+    @Test
+    public void testNextInterval() {
+        AdaptivePollingHandler handler = new AdaptivePollingHandler()
+                .setMinInterval(100)
+                .setMaxInterval(500);
+        assertThat(handler.nextInterval(false), is(100L));
+        assertThat(handler.nextInterval(false), is(200L));
+        assertThat(handler.nextInterval(false), is(400L));
+        assertThat(handler.nextInterval(false), is(500L));
+        assertThat(handler.nextInterval(false), is(500L));
+        assertThat(handler.nextInterval(true), is(0L));
+        assertThat(handler.nextInterval(false), is(100L));
+
+        handler.wakeUp();
+        assertThat("待機の中断が要求された場合は最小待機時間から延長されること", handler.nextInterval(false), is(100L));
+    }
+
+    /**
+     * 後続ハンドラがデータを読み込んだ場合は待機せず、読み込まなかった場合は待機すること。
+     * 待機中に{@link AdaptivePollingHandler#wakeUp()}が呼び出された場合は、待機を中断すること。
+     */
+    @Test(timeout = 10000)
+    public void testHandle() throws Exception {
+        final AdaptivePollingHandler handler = new AdaptivePollingHandler()
+                .setMinInterval(60000)
+                .setMaxInterval(60000);
+        final List<String> processed = new ArrayList<String>();
+
+        long start = System.currentTimeMillis();
+        new ExecutionContext().addHandler(handler).addHandler(new Action("a", "b")).handleNext(processed);
+        assertThat(processed, is(Arrays.asList("a", "b")));
+        assertThat("データが存在した場合は待機しないこと", System.currentTimeMillis() - start < 5000, is(true));
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                handler.wakeUp();
+            }
+        };
+        thread.start();
+        start = System.currentTimeMillis();
+        new ExecutionContext().addHandler(handler).addHandler(new Action()).handleNext(processed);
+        long elapsed = System.currentTimeMillis() - start;
+        assertThat("データが存在しない場合は待機すること", elapsed >= 200, is(true));
+        assertThat("待機が中断されること", elapsed < 5000, is(true));
+        thread.join();
+    }
+
+    /**
+     * データリーダは、後続の{@link MultiThreadExecutionHandler}が並行実行数を設定した後に生成されること。
+     */
+    @Test(timeout = 10000)
+    public void testDataReaderCreatedAfterConcurrentNumberSet() {
+        ThreadContext.setConcurrentNumber(1);
+        final List<Integer> concurrentNumbers = new ArrayList<Integer>();
+        final List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+        new ExecutionContext()
+                .addHandler(new AdaptivePollingHandler())
+                .addHandler(new MultiThreadExecutionHandler().setConcurrentNumber(3))
+                .addHandler(new Action("a", "b", "c") {
+                    @Override
+                    public DataReader<String> createReader(ExecutionContext ctx) {
+                        concurrentNumbers.add(ThreadContext.getConcurrentNumber());
+                        return super.createReader(ctx);
+                    }
+
+                    @Override
+                    public Object handle(List<String> processed, ExecutionContext context) {
+                        synchronized (processed) {
+                            return super.handle(processed, context);
+                        }
+                    }
+                })
+                .handleNext(processed);
+        assertThat(concurrentNumbers, is(Arrays.asList(3)));
+        assertThat(processed.size(), is(3));
+    }
+
+    /**
+     * データリーダを生成し、読み込んだデータを処理するアクション。
+     */
+    private static class Action implements Handler<List<String>, Object>, DataReaderFactory<String> {
+
+        /** 読み込むデータ */
+        private final List<String> values;
+
+        /**
+         * コンストラクタ。
+         *
+         * @param values 読み込むデータ
+         */
+        Action(String... values) {
+            this.values = Arrays.asList(values);
+        }
+
+        public Object handle(List<String> processed, ExecutionContext context) {
+            while (context.hasNextData()) {
+                String value = context.readNextData();
+                processed.add(value);
+            }
+            return null;
+        }
+
+        public DataReader<String> createReader(ExecutionContext ctx) {
+            final Iterator<String> iterator = values.iterator();
+            return new DataReader<String>() {
+                public String read(ExecutionContext ctx) {
+                    return iterator.next();
+                }
+
+                public boolean hasNext(ExecutionContext ctx) {
+                    return iterator.hasNext();
+                }
+
+                public void close(ExecutionContext ctx) {
+                }
+            };
+        }
+    }
+}
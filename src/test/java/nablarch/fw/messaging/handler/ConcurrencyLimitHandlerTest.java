@@ -0,0 +1,125 @@
+package nablarch.fw.messaging.handler;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import nablarch.fw.ExecutionContext;
+import nablarch.fw.Handler;
+import nablarch.fw.messaging.MessagingContext;
+import nablarch.fw.messaging.SendingMessage;
+import nablarch.fw.messaging.action.AdaptiveConcurrencyLimiter;
+import nablarch.fw.messaging.provider.JmsMessagingProvider;
+import nablarch.fw.messaging.provider.JmsMessagingProviderTest.StubConnection;
+import nablarch.fw.results.ServiceUnavailable;
+import nablarch.test.core.messaging.EmbeddedMessagingProvider;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * {@link ConcurrencyLimitHandler}のテスト。
+ */
+public class ConcurrencyLimitHandlerTest {
+
+    @After
+    public void tearDown() {
+        MessagingContext.detach();
+    }
+
+    /**
+     * 実行権を取得できない場合はコネクションを一時停止して{@link ServiceUnavailable}を送出し、
+     * 実行権を取得できた場合はコネクションを再開して後続ハンドラを実行すること。
+     */
+    @Test
+    public void testHandle() throws Exception {
+        final JmsMessagingProvider.Context messagingContext =
+                new JmsMessagingProvider.Context(new StubConnection(), new JmsMessagingProvider());
+        MessagingContext.attach(messagingContext);
+
+        final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter().setMaxLimit(1);
+        final ConcurrencyLimitHandler handler = new ConcurrencyLimitHandler().setConcurrencyLimiter(limiter);
+
+        Object result = new ExecutionContext().addHandler(handler).addHandler(new Handler<Object, Object>() {
+            public Object handle(Object data, ExecutionContext context) {
+                assertThat(limiter.getInFlight(), is(1));
+                try {
+                    new ExecutionContext().addHandler(handler).handleNext(data);
+                    fail();
+                } catch (ServiceUnavailable e) {
+                    assertThat(e.getMessage(), is(
+                            "the number of in-flight messages reached the concurrency limit. limit = 1"));
+                }
+                assertThat(messagingContext.isPaused(), is(true));
+                return "ok";
+            }
+        }).handleNext(null);
+        assertThat((String) result, is("ok"));
+        assertThat(limiter.getInFlight(), is(0));
+
+        try {
+            new ExecutionContext().addHandler(handler).addHandler(new Handler<Object, Object>() {
+                public Object handle(Object data, ExecutionContext context) {
+                    assertThat("実行権を取得した時点でコネクションが再開されること", messagingContext.isPaused(), is(false));
+                    throw new IllegalArgumentException("error");
+                }
+            }).handleNext(null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat("例外発生時も実行権が解放されること", limiter.getInFlight(), is(0));
+            assertThat(messagingContext.isPaused(), is(false));
+        }
+    }
+
+    /**
+     * 実行権を取得できずに待機している間、先読み済みのメッセージが他のコンシューマで受信できること。
+     */
+    @Test(timeout = 30000)
+    public void testReleasePrefetchedMessagesWhilePaused() throws Exception {
+        EmbeddedMessagingProvider.waitUntilServerStarted();
+        EmbeddedMessagingProvider provider = new EmbeddedMessagingProvider();
+        provider.setQueueNames(Arrays.asList("LIMITED.QUEUE"));
+        JmsMessagingProvider.Context parked = (JmsMessagingProvider.Context) provider.createContext();
+        MessagingContext active = provider.createContext();
+        try {
+            parked.send(new SendingMessage().setDestination("LIMITED.QUEUE").setCorrelationId("1"));
+            parked.send(new SendingMessage().setDestination("LIMITED.QUEUE").setCorrelationId("2"));
+            assertThat(parked.receiveSync("LIMITED.QUEUE", 1000).getCorrelationId(), is("1"));
+
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter().setMaxLimit(1);
+            limiter.tryAcquire();
+            MessagingContext.attach(parked);
+            try {
+                new ExecutionContext().addHandler(new ConcurrencyLimitHandler().setConcurrencyLimiter(limiter))
+                        .handleNext(null);
+                fail();
+            } catch (ServiceUnavailable e) {
+                assertThat(parked.isPaused(), is(true));
+            }
+            assertThat("先読みされていたメッセージが他のコンシューマで受信できること",
+                    active.receiveSync("LIMITED.QUEUE", 5000).getCorrelationId(), is("2"));
+        } finally {
+            parked.close();
+            active.close();
+            EmbeddedMessagingProvider.stopServer();
+        }
+    }
+
+    /**
+     * メッセージングコンテキストが存在しない場合でも同時処理数が制御されること。
+     */
+    @Test
+    public void testWithoutMessagingContext() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter().setMaxLimit(1);
+        limiter.tryAcquire();
+        try {
+            new ExecutionContext().addHandler(new ConcurrencyLimitHandler().setConcurrencyLimiter(limiter))
+                    .handleNext(null);
+            fail();
+        } catch (ServiceUnavailable e) {
+            assertThat(limiter.getInFlight(), is(1));
+        }
+    }
+}
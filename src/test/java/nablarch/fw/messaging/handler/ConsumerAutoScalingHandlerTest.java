@@ -0,0 +1,242 @@
+package nablarch.fw.messaging.handler;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import nablarch.fw.DataReader;
+import nablarch.fw.ExecutionContext;
+import nablarch.fw.Handler;
+import nablarch.fw.messaging.MessagingContext;
+import nablarch.fw.messaging.provider.JmsMessagingProvider;
+import nablarch.fw.messaging.provider.JmsMessagingProviderTest.StubConnection;
+import nablarch.fw.messaging.provider.QueueBacklog;
+import nablarch.fw.messaging.provider.QueueBacklogSampler;
+import nablarch.fw.results.ServiceUnavailable;
+
+import org.junit.Test;
+
+/**
+ * {@link ConsumerAutoScalingHandler}のテスト。
+ */
+public class ConsumerAutoScalingHandlerTest {
+
+    /**
+     * 受信待ちが多い場合は同時受信数が下限値まで減り、受信待ちが少ない場合は上限値まで増えること。
+     */
+    @Test
+    public void testScaleDownAndUp() {
+        ConsumerAutoScalingHandler handler = createHandler();
+        assertThat(handler.getConcurrency(), is(3));
+
+        long now = 1000000;
+        handler.evaluate(now);
+        for (int i = 0; i < 5; i++) {
+            now += 1000;
+            handler.record(false, 900000000L);
+            handler.record(true, 100000000L);
+            handler.evaluate(now);
+        }
+        assertThat(handler.getConcurrency(), is(1));
+
+        for (int i = 0; i < 5; i++) {
+            now += 1000;
+            handler.record(true, 1000000000L);
+            handler.evaluate(now);
+        }
+        assertThat(handler.getConcurrency(), is(3));
+    }
+
+    /**
+     * 前回の変更から待機時間が経過するまでは同時受信数が変更されないこと。
+     */
+    @Test
+    public void testCooldown() {
+        ConsumerAutoScalingHandler handler = createHandler().setScaleDownCooldown(5000);
+
+        long now = 1000000;
+        handler.evaluate(now);
+        now += 1000;
+        handler.record(false, 1000000000L);
+        handler.evaluate(now);
+        assertThat(handler.getConcurrency(), is(2));
+
+        now += 1000;
+        handler.record(false, 1000000000L);
+        handler.evaluate(now);
+        assertThat(handler.getConcurrency(), is(2));
+
+        now += 5000;
+        handler.record(false, 1000000000L);
+        handler.evaluate(now);
+        assertThat(handler.getConcurrency(), is(1));
+    }
+
+    /**
+     * 滞留件数が閾値以下の場合、及び平均処理時間が上限値を超える場合は同時受信数が増えないこと。
+     */
+    @Test
+    public void testBacklogAndLatency() {
+        final int[] depth = new int[] {5};
+        QueueBacklogSampler sampler = new QueueBacklogSampler() {
+            @Override
+            public QueueBacklog getBacklog(String queueName) {
+                return new QueueBacklog(queueName, depth[0], false, 0, 0);
+            }
+        };
+        ConsumerAutoScalingHandler handler = createHandler()
+                .setMinConcurrency(1)
+                .setMaxConcurrency(2)
+                .setBacklogSampler(sampler)
+                .setQueueName("RECEIVE.TEST")
+                .setMaxLatency(500);
+        long now = 1000000;
+        handler.evaluate(now);
+        now += 1000;
+        handler.record(false, 1000000000L);
+        handler.evaluate(now);
+        assertThat(handler.getConcurrency(), is(1));
+
+        // 滞留件数が閾値(1 × 10件)以下
+        now += 1000;
+        handler.record(true, 100000000L);
+        handler.evaluate(now);
+        assertThat(handler.getConcurrency(), is(1));
+
+        // 平均処理時間が上限値を超過
+        depth[0] = 100;
+        now += 1000;
+        handler.record(true, 600000000L);
+        handler.evaluate(now);
+        assertThat(handler.getConcurrency(), is(1));
+
+        now += 1000;
+        handler.record(true, 100000000L);
+        handler.evaluate(now);
+        assertThat(handler.getConcurrency(), is(2));
+    }
+
+    /**
+     * 同時受信数を超えるスレッドは後続ハンドラを実行せず{@link ServiceUnavailable}を送出すること。
+     */
+    @Test
+    public void testHandle() {
+        final ConsumerAutoScalingHandler handler = new ConsumerAutoScalingHandler().setMaxConcurrency(1);
+        final int[] count = new int[1];
+        Object result = new ExecutionContext().addHandler(handler).addHandler(new Handler<Object, Object>() {
+            public Object handle(Object data, ExecutionContext context) {
+                count[0]++;
+                try {
+                    new ExecutionContext().addHandler(handler).handleNext(data);
+                    fail();
+                } catch (ServiceUnavailable e) {
+                    assertThat(e.getMessage(), is(
+                            "the number of concurrent consumers reached the current limit. limit = 1"));
+                }
+                return new DataReader.NoMoreRecord();
+            }
+        }).handleNext(null);
+
+        assertThat(result instanceof DataReader.NoMoreRecord, is(true));
+        assertThat(count[0], is(1));
+
+        // 後続ハンドラの実行後は実行権が解放されていること
+        new ExecutionContext().addHandler(handler).addHandler(new Handler<Object, Object>() {
+            public Object handle(Object data, ExecutionContext context) {
+                count[0]++;
+                return null;
+            }
+        }).handleNext(null);
+        assertThat(count[0], is(2));
+    }
+
+    /**
+     * 実行権を取得できない場合はコネクションを一時停止してMessageConsumerをクローズし、
+     * 実行権を取得できた場合はコネクションを再開すること。
+     */
+    @Test
+    public void testPauseWhileParked() throws Exception {
+        final boolean[] consumerClosed = new boolean[1];
+        final JmsMessagingProvider.Context messagingContext =
+                new JmsMessagingProvider.Context(new StubConnection(), new JmsMessagingProvider()) {
+                    @Override
+                    public void closeConsumers() {
+                        consumerClosed[0] = true;
+                        super.closeConsumers();
+                    }
+                };
+        MessagingContext.attach(messagingContext);
+        try {
+            final ConsumerAutoScalingHandler handler = new ConsumerAutoScalingHandler().setMaxConcurrency(1);
+            new ExecutionContext().addHandler(handler).addHandler(new Handler<Object, Object>() {
+                public Object handle(Object data, ExecutionContext context) {
+                    try {
+                        new ExecutionContext().addHandler(handler).handleNext(data);
+                        fail();
+                    } catch (ServiceUnavailable e) {
+                        assertThat(messagingContext.isPaused(), is(true));
+                        assertThat(consumerClosed[0], is(true));
+                    }
+                    return null;
+                }
+            }).handleNext(null);
+
+            new ExecutionContext().addHandler(handler).addHandler(new Handler<Object, Object>() {
+                public Object handle(Object data, ExecutionContext context) {
+                    assertThat("実行権を取得した時点でコネクションが再開されること", messagingContext.isPaused(), is(false));
+                    return null;
+                }
+            }).handleNext(null);
+        } finally {
+            MessagingContext.detach();
+        }
+    }
+
+    /**
+     * 上限値を設定していない場合、及び不正な値を設定した場合。
+     */
+    @Test
+    public void testInvalidSettings() {
+        try {
+            new ExecutionContext().addHandler(new ConsumerAutoScalingHandler()).handleNext(null);
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("maxConcurrency was not set."));
+        }
+        try {
+            new ConsumerAutoScalingHandler().setMaxConcurrency(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("maxConcurrency must be greater than 0. maxConcurrency = 0"));
+        }
+        try {
+            new ConsumerAutoScalingHandler().setMinConcurrency(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("minConcurrency must be greater than 0. minConcurrency = 0"));
+        }
+        try {
+            new ConsumerAutoScalingHandler().setMaxConcurrency(2).setMinConcurrency(3);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is(
+                    "minConcurrency must be less than or equal to maxConcurrency. minConcurrency = 3, maxConcurrency = 2"));
+        }
+        try {
+            new ConsumerAutoScalingHandler().setMinConcurrency(3).setMaxConcurrency(2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is(
+                    "minConcurrency must be less than or equal to maxConcurrency. minConcurrency = 3, maxConcurrency = 2"));
+        }
+    }
+
+    private ConsumerAutoScalingHandler createHandler() {
+        return new ConsumerAutoScalingHandler()
+                .setMinConcurrency(1)
+                .setMaxConcurrency(3)
+                .setEvaluationInterval(1000)
+                .setScaleUpCooldown(0)
+                .setScaleDownCooldown(0);
+    }
+}
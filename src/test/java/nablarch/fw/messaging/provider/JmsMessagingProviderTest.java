@@ -40,6 +40,7 @@ import jakarta.jms.TopicSubscriber;
 import java.io.Serializable;
 import java.lang.reflect.Constructor;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -68,6 +69,9 @@ public class JmsMessagingProviderTest {
     
     /** エラーフラグ */
     private static boolean occursError = false;
+
+    /** キューブラウザで参照されるJMSメッセージ */
+    private static Message[] browsingMessages = new Message[0];
     
     /**
      * MOMによるメッセージ再配信が行われた場合の挙動のテスト
@@ -132,6 +136,63 @@ public class JmsMessagingProviderTest {
         assertEquals("value1", headers.get("NABLARCHProp1"));
     }
 
+    /**
+     * 受信時に配送ラグが計測されることのテスト
+     */
+    @Test public void recordingDeliveryLag() throws Exception {
+        receivingMessage = new StubMessage();
+        receivingMessage.setJMSTimestamp(System.currentTimeMillis() - 60000);
+
+        QueueLagMonitor monitor = new QueueLagMonitor();
+        createJmsProvider().setQueueLagMonitor(monitor)
+                           .createContext()
+                           .receiveSync("LOCAL.RECEIVE");
+
+        assertTrue(monitor.getDeliveryLag("LOCAL.RECEIVE", 50) >= 60000);
+        assertEquals(-1, monitor.getDeliveryLag("SERVICE1.REQUEST", 50));
+    }
+
+    /**
+     * キューの滞留状況の計測のテスト
+     */
+    @Test public void samplingQueueBacklog() throws Exception {
+        long now = System.currentTimeMillis();
+        StubMessage oldest = new StubMessage();
+        oldest.setJMSTimestamp(now - 60000);
+        StubMessage newest = new StubMessage();
+        newest.setJMSTimestamp(now - 1000);
+        browsingMessages = new Message[] {newest, oldest, new StubMessage()};
+
+        try {
+            QueueBacklogSampler sampler = new QueueBacklogSampler()
+                    .setMessagingProvider(createJmsProvider())
+                    .setQueueNames(Arrays.asList("LOCAL.RECEIVE"));
+            assertEquals(null, sampler.getBacklog("LOCAL.RECEIVE"));
+            sampler.sample();
+
+            QueueBacklog backlog = sampler.getBacklog("LOCAL.RECEIVE");
+            assertEquals("LOCAL.RECEIVE", backlog.getQueueName());
+            assertEquals(3, backlog.getDepth());
+            assertEquals(false, backlog.isBounded());
+            assertTrue(backlog.getOldestMessageAge() >= 60000);
+
+            // 参照件数の上限に達した場合
+            sampler.setMaxBrowseCount(2).sample();
+            backlog = sampler.getBacklog("LOCAL.RECEIVE");
+            assertEquals(2, backlog.getDepth());
+            assertEquals(true, backlog.isBounded());
+
+            // 滞留メッセージが存在しない場合
+            browsingMessages = new Message[0];
+            sampler.sample();
+            backlog = sampler.getBacklog("LOCAL.RECEIVE");
+            assertEquals(0, backlog.getDepth());
+            assertEquals(-1, backlog.getOldestMessageAge());
+        } finally {
+            browsingMessages = new Message[0];
+        }
+    }
+
     /**
      * JMSヘッダー/ユーザ定義属性の取り回しのテスト(送信時)
      */
@@ -782,6 +843,24 @@ public class JmsMessagingProviderTest {
         }
     }
 
+    public static class StubBrowser implements QueueBrowser {
+        private final Queue queue;
+        public StubBrowser(Queue queue) {
+            this.queue = queue;
+        }
+        public Queue getQueue() throws JMSException {
+            return queue;
+        }
+        public String getMessageSelector() throws JMSException {
+            return null;
+        }
+        public Enumeration getEnumeration() throws JMSException {
+            return Collections.enumeration(Arrays.asList(browsingMessages));
+        }
+        public void close() throws JMSException {
+        }
+    }
+
     public static class StubSession implements Session {
 
         public void close() throws JMSException {
@@ -795,7 +874,7 @@ public class JmsMessagingProviderTest {
         }
 
         public QueueBrowser createBrowser(Queue arg0) throws JMSException {
-            return null;
+            return new StubBrowser(arg0);
         }
 
         public QueueBrowser createBrowser(Queue arg0, String arg1)
@@ -1093,4 +1172,97 @@ public class JmsMessagingProviderTest {
         context.close();
         EmbeddedMessagingProvider.stopServer();
     }
+
+    /**
+     * 受信キューにメッセージセレクタが設定されている場合、
+     * メッセージセレクタに合致するメッセージのみが受信されることのテスト
+     */
+    @Test
+    public void testMessageSelectors() throws Exception {
+        EmbeddedMessagingProvider.waitUntilServerStarted();
+        EmbeddedMessagingProvider providerA = new EmbeddedMessagingProvider();
+        providerA.setQueueNames(Arrays.asList("SELECTOR.QUEUE"));
+        providerA.setMessageSelectors(Collections.singletonMap("SELECTOR.QUEUE", "RequestId = 'A'"));
+        EmbeddedMessagingProvider providerB = new EmbeddedMessagingProvider();
+        providerB.setQueueNames(Arrays.asList("SELECTOR.QUEUE"));
+        providerB.setMessageSelectors(Collections.singletonMap("SELECTOR.QUEUE", "RequestId = 'B'"));
+
+        MessagingContext contextA = providerA.createContext();
+        MessagingContext contextB = providerB.createContext();
+        try {
+            contextA.send(new SendingMessage()
+                                  .setDestination("SELECTOR.QUEUE")
+                                  .setCorrelationId("B-1")
+                                  .setHeader("RequestId", "B"));
+            contextA.send(new SendingMessage()
+                                  .setDestination("SELECTOR.QUEUE")
+                                  .setCorrelationId("A-1")
+                                  .setHeader("RequestId", "A"));
+
+            assertThat(contextA.receiveSync("SELECTOR.QUEUE", 1000).getCorrelationId(), is("A-1"));
+            assertEquals(null, contextA.receiveSync("SELECTOR.QUEUE", 100));
+            assertThat(contextB.receiveSync("SELECTOR.QUEUE", 1000).getCorrelationId(), is("B-1"));
+            assertEquals(null, contextB.receiveSync("SELECTOR.QUEUE", 100));
+        } finally {
+            contextA.close();
+            contextB.close();
+            EmbeddedMessagingProvider.stopServer();
+        }
+    }
+
+    /**
+     * 配信日時ヘッダを設定した電文は、配信日時になるまで受信できないこと。
+     * 配信日時ヘッダを設定していない電文は、同じMessageProducerで送信しても即時に受信できること。
+     */
+    @Test(timeout = 30000)
+    public void testDeliveryTime() throws Exception {
+        EmbeddedMessagingProvider.waitUntilServerStarted();
+        EmbeddedMessagingProvider provider = new EmbeddedMessagingProvider();
+        provider.setQueueNames(Arrays.asList("DELAYED.QUEUE"));
+        MessagingContext context = provider.createContext();
+        try {
+            long sentAt = System.currentTimeMillis();
+            context.send(new SendingMessage()
+                                 .setDestination("DELAYED.QUEUE")
+                                 .setCorrelationId("DELAYED")
+                                 .setHeader(JmsHeaderName.DELIVERY_TIME, sentAt + 1500L));
+            context.send(new SendingMessage()
+                                 .setDestination("DELAYED.QUEUE")
+                                 .setCorrelationId("IMMEDIATE"));
+
+            assertThat(context.receiveSync("DELAYED.QUEUE", 1000).getCorrelationId(), is("IMMEDIATE"));
+            assertThat(context.receiveSync("DELAYED.QUEUE", 5000).getCorrelationId(), is("DELAYED"));
+            assertThat(System.currentTimeMillis() - sentAt >= 1500L, is(true));
+        } finally {
+            context.close();
+            EmbeddedMessagingProvider.stopServer();
+        }
+    }
+
+    /**
+     * キャッシュしているMessageConsumerをクローズした場合、先読みされていたメッセージが他のコンシューマで受信できること。
+     */
+    @Test(timeout = 30000)
+    public void testCloseConsumers() throws Exception {
+        EmbeddedMessagingProvider.waitUntilServerStarted();
+        EmbeddedMessagingProvider provider = new EmbeddedMessagingProvider();
+        provider.setQueueNames(Arrays.asList("PARKED.QUEUE"));
+        JmsMessagingProvider.Context parked = (JmsMessagingProvider.Context) provider.createContext();
+        MessagingContext active = provider.createContext();
+        try {
+            parked.send(new SendingMessage().setDestination("PARKED.QUEUE").setCorrelationId("1"));
+            parked.send(new SendingMessage().setDestination("PARKED.QUEUE").setCorrelationId("2"));
+            assertThat(parked.receiveSync("PARKED.QUEUE", 1000).getCorrelationId(), is("1"));
+            assertEquals("先読みされたメッセージは他のコンシューマで受信できないこと",
+                    null, active.receiveSync("PARKED.QUEUE", 500));
+
+            parked.closeConsumers();
+            assertThat(active.receiveSync("PARKED.QUEUE", 5000).getCorrelationId(), is("2"));
+            assertEquals(null, parked.receiveSync("PARKED.QUEUE", 100));
+        } finally {
+            parked.close();
+            active.close();
+            EmbeddedMessagingProvider.stopServer();
+        }
+    }
 }
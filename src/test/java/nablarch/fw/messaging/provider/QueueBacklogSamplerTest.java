@@ -0,0 +1,207 @@
+package nablarch.fw.messaging.provider;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.jms.JMSException;
+
+import nablarch.fw.messaging.MessagingContext;
+import nablarch.fw.messaging.MessagingException;
+import nablarch.fw.messaging.provider.JmsMessagingProviderTest.StubConnection;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * {@link QueueBacklogSampler}のテスト。
+ */
+public class QueueBacklogSamplerTest {
+
+    /** テスト対象 */
+    private QueueBacklogSampler sampler;
+
+    @After
+    public void tearDown() {
+        if (sampler != null) {
+            sampler.dispose();
+        }
+    }
+
+    /**
+     * 設定された各キューの計測結果が通知され、直近の計測結果として取得できること。
+     */
+    @Test
+    public void testPublish() {
+        final List<QueueBacklog> published = new ArrayList<QueueBacklog>();
+        StubProvider provider = new StubProvider();
+        sampler = new QueueBacklogSampler() {
+            @Override
+            protected void publish(QueueBacklog backlog) {
+                published.add(backlog);
+            }
+        };
+        sampler.setMessagingProvider(provider)
+               .setQueueNames(Arrays.asList("QUEUE1", "QUEUE2"))
+               .setMaxBrowseCount(5);
+        assertThat(sampler.getBacklog("QUEUE1"), nullValue());
+
+        sampler.sample();
+
+        assertThat(published.size(), is(2));
+        assertThat(published.get(0).getQueueName(), is("QUEUE1"));
+        assertThat(published.get(0).getDepth(), is(5));
+        assertThat(published.get(0).isBounded(), is(true));
+        assertThat(published.get(0).getOldestMessageAge() >= 60000L, is(true));
+        assertThat(published.get(1).getQueueName(), is("QUEUE2"));
+        assertThat(sampler.getBacklog("QUEUE1"), is(published.get(0)));
+        assertThat(sampler.getBacklog("QUEUE2"), is(published.get(1)));
+        assertThat("最大参照件数が指定されること", provider.maxCounts, is(Arrays.asList(5, 5)));
+        assertThat("計測に使用したコンテキストがクローズされること", provider.closed.get(), is(1));
+    }
+
+    /**
+     * キューの参照に失敗した場合も、他のキューの計測は継続され、
+     * バックグラウンドスレッドでの計測も停止しないこと。
+     */
+    @Test(timeout = 10000)
+    public void testBrowseFailure() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        final List<String> published = Collections.synchronizedList(new ArrayList<String>());
+        StubProvider provider = new StubProvider();
+        provider.failingQueueName = "QUEUE1";
+        sampler = new QueueBacklogSampler() {
+            @Override
+            protected void publish(QueueBacklog backlog) {
+                published.add(backlog.getQueueName());
+                latch.countDown();
+            }
+        };
+        sampler.setMessagingProvider(provider)
+               .setQueueNames(Arrays.asList("QUEUE1", "QUEUE2"))
+               .setSamplingInterval(10);
+
+        sampler.initialize();
+        assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+        sampler.dispose();
+
+        assertThat(sampler.getBacklog("QUEUE1"), nullValue());
+        assertThat(sampler.getBacklog("QUEUE2").getQueueName(), is("QUEUE2"));
+        synchronized (published) {
+            for (String queueName : published) {
+                assertThat(queueName, is("QUEUE2"));
+            }
+        }
+        assertTrue("参照に失敗した後も計測が継続されること", provider.browsed.get() >= 6);
+    }
+
+    /**
+     * バックグラウンドスレッドで、計測間隔毎に計測されること。
+     */
+    @Test(timeout = 10000)
+    public void testSamplingInterval() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        final List<Long> sampledAt = Collections.synchronizedList(new ArrayList<Long>());
+        sampler = new QueueBacklogSampler() {
+            @Override
+            protected void publish(QueueBacklog backlog) {
+                sampledAt.add(System.nanoTime());
+                latch.countDown();
+            }
+        };
+        sampler.setMessagingProvider(new StubProvider())
+               .setQueueNames(Arrays.asList("QUEUE1"))
+               .setSamplingInterval(200);
+
+        long startedAt = System.nanoTime();
+        sampler.initialize();
+        assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+        sampler.dispose();
+
+        assertTrue("初回の計測は初期化直後に行われること",
+                TimeUnit.NANOSECONDS.toMillis(sampledAt.get(0) - startedAt) < 200);
+        for (int i = 1; i < 3; i++) {
+            long interval = TimeUnit.NANOSECONDS.toMillis(sampledAt.get(i) - sampledAt.get(i - 1));
+            assertTrue("計測間隔を空けて計測されること. interval = " + interval, interval >= 190);
+        }
+    }
+
+    /**
+     * 不正な設定の場合は例外が送出されること。
+     */
+    @Test
+    public void testInvalidSettings() {
+        try {
+            new QueueBacklogSampler().initialize();
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("messagingProvider was not set."));
+        }
+        try {
+            new QueueBacklogSampler().setSamplingInterval(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("samplingInterval must be greater than 0. samplingInterval = 0"));
+        }
+        try {
+            new QueueBacklogSampler().setMaxBrowseCount(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("maxBrowseCount must be greater than 0. maxBrowseCount = 0"));
+        }
+    }
+
+    /**
+     * キューの参照結果を固定で返すメッセージングプロバイダ。
+     */
+    private static class StubProvider extends JmsMessagingProvider {
+
+        /** 参照に失敗させるキュー名 */
+        private volatile String failingQueueName;
+
+        /** 参照回数 */
+        private final AtomicInteger browsed = new AtomicInteger();
+
+        /** クローズされたコンテキストの数 */
+        private final AtomicInteger closed = new AtomicInteger();
+
+        /** 指定された参照件数の上限値 */
+        private final List<Integer> maxCounts = Collections.synchronizedList(new ArrayList<Integer>());
+
+        @Override
+        public MessagingContext createContext() {
+            try {
+                return new Context(new StubConnection(), this) {
+                    @Override
+                    public QueueBacklog browseBacklog(String queueName, int maxCount) {
+                        browsed.incrementAndGet();
+                        maxCounts.add(maxCount);
+                        if (queueName.equals(failingQueueName)) {
+                            throw new MessagingException("browse error.");
+                        }
+                        long now = System.currentTimeMillis();
+                        return new QueueBacklog(queueName, maxCount, true, now - 60000, now);
+                    }
+
+                    @Override
+                    public void close() {
+                        closed.incrementAndGet();
+                        super.close();
+                    }
+                };
+            } catch (JMSException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
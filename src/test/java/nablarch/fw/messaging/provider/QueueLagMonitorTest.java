@@ -0,0 +1,119 @@
+package nablarch.fw.messaging.provider;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * {@link QueueLagMonitor}のテスト。
+ */
+public class QueueLagMonitorTest {
+
+    /**
+     * 配送ラグ・完了ラグのパーセンタイル値が受信キュー単位に算出されること。
+     */
+    @Test
+    public void testPercentile() {
+        QueueLagMonitor monitor = new QueueLagMonitor();
+        for (int i = 1; i <= 100; i++) {
+            monitor.recordDeliveryLag("QUEUE1", 1000, 1000 + i);
+            monitor.recordCompletionLag("QUEUE1", 1000, 1000 + i * 10);
+        }
+        monitor.recordDeliveryLag("QUEUE2", 1000, 1500);
+
+        assertThat(monitor.getDeliveryLag("QUEUE1", 50), is(50L));
+        assertThat(monitor.getDeliveryLag("QUEUE1", 99), is(99L));
+        assertThat(monitor.getDeliveryLag("QUEUE1", 100), is(100L));
+        assertThat(monitor.getCompletionLag("QUEUE1", 50), is(500L));
+        assertThat(monitor.getDeliveryLag("QUEUE2", 50), is(500L));
+
+        // 計測値が存在しない場合
+        assertThat(monitor.getDeliveryLag("QUEUE3", 50), is(-1L));
+        assertThat(monitor.getCompletionLag("QUEUE2", 50), is(-1L));
+    }
+
+    /**
+     * 保持件数を超えた場合、古い計測値から破棄されること。
+     */
+    @Test
+    public void testWindowSize() {
+        QueueLagMonitor monitor = new QueueLagMonitor().setWindowSize(3);
+        monitor.recordDeliveryLag("QUEUE", 1000, 2000);
+        monitor.recordDeliveryLag("QUEUE", 1000, 1001);
+        monitor.recordDeliveryLag("QUEUE", 1000, 1002);
+        monitor.recordDeliveryLag("QUEUE", 1000, 1003);
+
+        assertThat(monitor.getDeliveryLag("QUEUE", 100), is(3L));
+    }
+
+    /**
+     * 送信日時が設定されていない場合は計測対象外となること。
+     */
+    @Test
+    public void testNoTimestamp() {
+        QueueLagMonitor monitor = new QueueLagMonitor();
+        monitor.recordDeliveryLag("QUEUE", 0, 2000);
+        assertThat(monitor.getDeliveryLag("QUEUE", 50), is(-1L));
+    }
+
+    /**
+     * SLOを超過した計測値のみ通知されること。
+     */
+    @Test
+    public void testSloViolation() {
+        final List<String> violations = new ArrayList<String>();
+        QueueLagMonitor monitor = new QueueLagMonitor() {
+            @Override
+            protected void onSloViolation(String lagType, String queueName, long lag, long slo) {
+                violations.add(lagType + ':' + queueName + ':' + lag + ':' + slo);
+            }
+        };
+        monitor.setDeliveryLagSlo(100).setCompletionLagSlo(200);
+
+        monitor.recordDeliveryLag("QUEUE", 1000, 1100);
+        monitor.recordDeliveryLag("QUEUE", 1000, 1101);
+        monitor.recordCompletionLag("QUEUE", 1000, 1150);
+        monitor.recordCompletionLag("QUEUE", 1000, 1300);
+
+        assertThat(violations.size(), is(2));
+        assertThat(violations.get(0), is("delivery:QUEUE:101:100"));
+        assertThat(violations.get(1), is("completion:QUEUE:300:200"));
+    }
+
+    /**
+     * SLO超過ログの出力でエラーとならないこと。
+     */
+    @Test
+    public void testSloViolationLog() {
+        QueueLagMonitor monitor = new QueueLagMonitor().setDeliveryLagSlo(10).setAlertInterval(60000);
+        monitor.recordDeliveryLag("QUEUE", 1000, 2000);
+        monitor.recordDeliveryLag("QUEUE", 1000, 3000);
+        assertThat(monitor.getDeliveryLag("QUEUE", 100), is(2000L));
+    }
+
+    /**
+     * 不正なパーセンタイル、保持件数を指定した場合。
+     */
+    @Test
+    public void testInvalidArguments() {
+        QueueLagMonitor monitor = new QueueLagMonitor();
+        try {
+            monitor.getDeliveryLag("QUEUE", 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is(
+                    "percentile must be greater than 0 and less than or equal to 100. percentile = 0.0"));
+        }
+        try {
+            monitor.setWindowSize(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("windowSize must be greater than 0. windowSize = 0"));
+        }
+    }
+}